@@ -0,0 +1,104 @@
+package io.rsocket.internal;
+
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Closeable;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.local.LocalClientTransport;
+import io.rsocket.transport.local.LocalServerTransport;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-frame cost of the inbound path over the local transport, where no I/O hides the work done by
+ * the {@link ClientServerInputMultiplexer}: the round-trip latency of a request-response, i.e. one
+ * inbound frame on each side, and the time per element of a long request-stream. Compare the
+ * current tree with the baseline with {@code ./gradlew :benchmarks:jmh
+ * --include=ClientServerInputMultiplexerPerf} and {@code :benchmarks:jmhBaseline}, and add {@code
+ * --profilers=perfnorm} (Linux) or {@code --profilers=stack} for the CPU spent per frame.
+ */
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ClientServerInputMultiplexerPerf {
+
+  static final int STREAM_ELEMENTS = 100_000;
+
+  static final Payload PAYLOAD = EmptyPayload.INSTANCE;
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(PAYLOAD);
+  static final Flux<Payload> PAYLOAD_FLUX = Flux.range(0, STREAM_ELEMENTS).map(i -> PAYLOAD);
+
+  RSocket client;
+  Closeable server;
+
+  @Setup
+  public void setUp() {
+    server =
+        RSocketServer.create(
+                (setup, sendingSocket) ->
+                    Mono.just(
+                        new AbstractRSocket() {
+                          @Override
+                          public Mono<Payload> requestResponse(Payload payload) {
+                            payload.release();
+                            return PAYLOAD_MONO;
+                          }
+
+                          @Override
+                          public Flux<Payload> requestStream(Payload payload) {
+                            payload.release();
+                            return PAYLOAD_FLUX;
+                          }
+                        }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .bind(LocalServerTransport.create("multiplexer-perf"))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .connect(LocalClientTransport.create("multiplexer-perf"))
+            .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public boolean requestResponseLatency() {
+    return client.requestResponse(PAYLOAD).block().release();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(STREAM_ELEMENTS)
+  public Long requestStreamTimePerFrame() {
+    return client.requestStream(PAYLOAD).doOnNext(Payload::release).count().block();
+  }
+}
@@ -0,0 +1,79 @@
+package io.rsocket.core;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Issues 10,000 concurrent request-response interactions against a handler that blocks for 10ms,
+ * once through {@link BlockingRSocket} and once through the hand-rolled {@code
+ * Mono.fromCallable(...).subscribeOn(Schedulers.boundedElastic())} pattern. Run on JDK 21+ to
+ * compare virtual threads, and on older JDKs to compare the bounded pool fallback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class BlockingRSocketPerf {
+  static final int CONCURRENT_REQUESTS = 10_000;
+  static final long HANDLER_LATENCY_MILLIS = 10;
+
+  @Benchmark
+  public void blockingRSocket(Input input) {
+    input.bh.consume(run(input.blockingRSocket));
+  }
+
+  @Benchmark
+  public void boundedElastic(Input input) {
+    input.bh.consume(run(input.boundedElasticRSocket));
+  }
+
+  static Payload run(RSocket rsocket) {
+    return Flux.range(0, CONCURRENT_REQUESTS)
+        .flatMap(i -> rsocket.requestResponse(EmptyPayload.INSTANCE), CONCURRENT_REQUESTS)
+        .blockLast();
+  }
+
+  static Payload slowCall() throws InterruptedException {
+    Thread.sleep(HANDLER_LATENCY_MILLIS);
+    return EmptyPayload.INSTANCE;
+  }
+
+  @State(Scope.Benchmark)
+  public static class Input {
+    Blackhole bh;
+    RSocket blockingRSocket;
+    RSocket boundedElasticRSocket;
+
+    @Setup
+    public void setup(Blackhole bh) {
+      this.bh = bh;
+      this.blockingRSocket = BlockingRSocket.create().requestResponse(p -> slowCall());
+      this.boundedElasticRSocket =
+          new RSocket() {
+            @Override
+            public Mono<Payload> requestResponse(Payload payload) {
+              return Mono.fromCallable(BlockingRSocketPerf::slowCall)
+                  .subscribeOn(Schedulers.boundedElastic());
+            }
+          };
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package io.rsocket.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.DuplexConnection;
+import io.rsocket.Payload;
+import io.rsocket.frame.FrameLengthCodec;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.internal.ClientServerInputMultiplexer;
+import io.rsocket.lease.RequesterLeaseHandler;
+import io.rsocket.plugins.InitializingInterceptorRegistry;
+import io.rsocket.util.ByteBufPayload;
+import java.nio.charset.StandardCharsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Cost of dispatching one inbound {@code NEXT} frame of an open request-stream, from the frame
+ * leaving the connection through the {@link ClientServerInputMultiplexer} and {@link
+ * RSocketRequester} to the decoded payload reaching the subscriber, with each {@link
+ * PayloadDecoder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class InboundDispatchPerf {
+
+  @Param({"DEFAULT", "ZERO_COPY", "POOLED"})
+  String decoder;
+
+  DirectProcessor<ByteBuf> inbound;
+  MonoProcessor<Void> onClose;
+  Disposable stream;
+  ByteBuf frame;
+
+  @Setup
+  public void setUp() throws Exception {
+    final PayloadDecoder payloadDecoder =
+        (PayloadDecoder) PayloadDecoder.class.getField(decoder).get(null);
+
+    inbound = DirectProcessor.create();
+    onClose = MonoProcessor.create();
+    DuplexConnection connection =
+        new DuplexConnection() {
+          @Override
+          public Mono<Void> send(Publisher<ByteBuf> frames) {
+            return Flux.from(frames).doOnNext(ReferenceCountUtil::safeRelease).then();
+          }
+
+          @Override
+          public Flux<ByteBuf> receive() {
+            return inbound;
+          }
+
+          @Override
+          public ByteBufAllocator alloc() {
+            return ByteBufAllocator.DEFAULT;
+          }
+
+          @Override
+          public Mono<Void> onClose() {
+            return onClose;
+          }
+
+          @Override
+          public void dispose() {
+            onClose.onComplete();
+          }
+
+          @Override
+          public boolean isDisposed() {
+            return onClose.isTerminated();
+          }
+        };
+
+    ClientServerInputMultiplexer multiplexer =
+        new ClientServerInputMultiplexer(connection, new InitializingInterceptorRegistry(), true);
+    RSocketRequester requester =
+        new RSocketRequester(
+            multiplexer.asClientConnection(),
+            payloadDecoder,
+            StreamIdSupplier.clientSupplier(),
+            0,
+            FrameLengthCodec.FRAME_LENGTH_MASK,
+            Integer.MAX_VALUE,
+            Integer.MAX_VALUE,
+            null,
+            RequesterLeaseHandler.None,
+            Schedulers.immediate(),
+            new ConnectionOptions());
+
+    // the first stream of a client has id 1
+    stream = requester.requestStream(ByteBufPayload.create("stream")).subscribe(Payload::release);
+
+    ByteBuf next =
+        PayloadFrameCodec.encode(
+            ByteBufAllocator.DEFAULT,
+            1,
+            false,
+            false,
+            true,
+            Unpooled.copiedBuffer("metadata", StandardCharsets.UTF_8),
+            Unpooled.copiedBuffer("element", StandardCharsets.UTF_8));
+    // a contiguous frame, as it comes out of the frame decoder of a transport
+    frame = ByteBufAllocator.DEFAULT.directBuffer(next.readableBytes()).writeBytes(next);
+    next.release();
+  }
+
+  @TearDown
+  public void tearDown() {
+    stream.dispose();
+    onClose.onComplete();
+    frame.release();
+  }
+
+  @Benchmark
+  public void dispatchNext() {
+    // released by the requester once dispatched
+    inbound.onNext(frame.retain());
+  }
+}
@@ -1,7 +1,5 @@
 package io.rsocket.core;
 
-import io.netty.util.collection.IntObjectMap;
-import io.rsocket.internal.SynchronizedIntObjectHashMap;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -23,21 +21,52 @@
 public class StreamIdSupplierPerf {
   @Benchmark
   public void benchmarkStreamId(Input input) {
-    int i = input.supplier.nextStreamId(input.map);
+    int i = input.supplier.nextStreamId();
+    input.supplier.release(i);
+    input.bh.consume(i);
+  }
+
+  /**
+   * Allocates a stream id right before the id space wraps, while the 100,000 streams that were
+   * started right after the previous wrap are still running and have to be skipped.
+   */
+  @Benchmark
+  public void benchmarkStreamIdAcrossWrap(WrapInput input) {
+    input.supplier.moveTo(WrapInput.BEFORE_WRAP);
+    int i = input.supplier.nextStreamId();
+    input.supplier.release(i);
     input.bh.consume(i);
   }
 
   @State(Scope.Benchmark)
   public static class Input {
     Blackhole bh;
-    IntObjectMap map;
     StreamIdSupplier supplier;
 
     @Setup
     public void setup(Blackhole bh) {
       this.supplier = StreamIdSupplier.clientSupplier();
       this.bh = bh;
-      this.map = new SynchronizedIntObjectHashMap();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class WrapInput {
+    static final int CONCURRENT_STREAMS = 100_000;
+    // the last stream id handed out before the wrap
+    static final long BEFORE_WRAP = Integer.MAX_VALUE;
+
+    Blackhole bh;
+    StreamIdSupplier supplier;
+
+    @Setup
+    public void setup(Blackhole bh) {
+      this.supplier = StreamIdSupplier.clientSupplier();
+      this.bh = bh;
+
+      for (int i = 0; i < CONCURRENT_STREAMS; i++) {
+        supplier.nextStreamId();
+      }
     }
   }
 }
@@ -0,0 +1,81 @@
+package io.rsocket.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.PayloadFrameCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fragments a frame with a 1MB payload, consuming and releasing every fragment. {@code
+ * publisherPerFrame} is the former pipeline of {@link FragmentationDuplexConnection}, a {@link
+ * FrameFragmenter#fragmentFrame publisher} per frame concatenated into the outbound stream, {@code
+ * fragmentingFlux} the in-place fragmentation that replaced it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class FragmentationPerf {
+
+  @Param({"16384", "65536"})
+  int mtu;
+
+  Blackhole bh;
+  ByteBufAllocator allocator;
+  ByteBuf data;
+
+  @Setup
+  public void setup(Blackhole bh) {
+    this.bh = bh;
+    this.allocator = PooledByteBufAllocator.DEFAULT;
+    this.data = allocator.buffer(1 << 20).writeZero(1 << 20);
+  }
+
+  @TearDown
+  public void teardown() {
+    data.release();
+  }
+
+  @Benchmark
+  public void publisherPerFrame() {
+    Flux.just(frame())
+        .concatMap(
+            frame ->
+                FrameFragmenter.fragmentFrame(
+                    allocator, mtu, frame, FrameHeaderCodec.frameType(frame)))
+        .subscribe(this::consume);
+  }
+
+  @Benchmark
+  public void fragmentingFlux() {
+    new FragmentingFlux(Mono.just(frame()), allocator, mtu, Integer.MAX_VALUE, null)
+        .subscribe(this::consume);
+  }
+
+  ByteBuf frame() {
+    return PayloadFrameCodec.encode(allocator, 1, false, false, true, null, data.retainedSlice());
+  }
+
+  void consume(ByteBuf fragment) {
+    bh.consume(fragment.readableBytes());
+    fragment.release();
+  }
+}
@@ -0,0 +1,93 @@
+package io.rsocket.frame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encodes a payload frame and prefixes it with its length as the TCP transport does, with and
+ * without length headroom, see {@link LengthHeadroomAllocator}. {@code encodeAndWrite} additionally
+ * copies the frame into a direct buffer through its NIO buffers, which is roughly what a gathering
+ * socket write costs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class LengthPrefixedFramePerf {
+
+  @Benchmark
+  public void encode(Input input) {
+    ByteBuf frame = input.encode();
+    input.bh.consume(frame);
+    frame.release();
+  }
+
+  @Benchmark
+  public void encodeAndWrite(Input input) {
+    ByteBuf frame = input.encode();
+    ByteBuf out = input.out.clear();
+    for (ByteBuffer buffer : frame.nioBuffers()) {
+      out.writeBytes(buffer);
+    }
+    input.bh.consume(out.writerIndex());
+    frame.release();
+  }
+
+  @State(Scope.Thread)
+  public static class Input {
+    @Param({"64", "1024", "65536"})
+    int payloadSize;
+
+    @Param({"false", "true"})
+    boolean reserveLengthHeadroom;
+
+    Blackhole bh;
+    ByteBufAllocator allocator;
+    ByteBuf metadata;
+    ByteBuf data;
+    ByteBuf out;
+
+    @Setup
+    public void setup(Blackhole bh) {
+      this.bh = bh;
+      this.allocator =
+          reserveLengthHeadroom
+              ? new LengthHeadroomAllocator(PooledByteBufAllocator.DEFAULT, 1024)
+              : PooledByteBufAllocator.DEFAULT;
+      this.metadata = allocator.buffer(16).writeZero(16);
+      this.data = allocator.buffer(payloadSize).writeZero(payloadSize);
+      this.out = allocator.directBuffer(payloadSize + 64);
+    }
+
+    ByteBuf encode() {
+      ByteBuf frame =
+          PayloadFrameCodec.encode(
+              allocator, 1, false, false, true, metadata.retainedSlice(), data.retainedSlice());
+      return FrameLengthCodec.encode(allocator, frame.readableBytes(), frame);
+    }
+
+    @TearDown
+    public void teardown() {
+      metadata.release();
+      data.release();
+      out.release();
+    }
+  }
+}
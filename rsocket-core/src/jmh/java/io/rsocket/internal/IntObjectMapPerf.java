@@ -0,0 +1,109 @@
+package io.rsocket.internal;
+
+import io.netty.util.collection.IntObjectMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contended access to a stream table, mimicking one connection where the inbound event loop looks
+ * streams up while other threads register and unregister them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Group)
+public class IntObjectMapPerf {
+
+  static final int ACTIVE_STREAMS = 1024;
+  static final Object VALUE = new Object();
+
+  @Param({"synchronized", "concurrent"})
+  String mapType;
+
+  IntObjectMap<Object> map;
+
+  @Setup
+  public void setup() {
+    map =
+        "synchronized".equals(mapType)
+            ? new SynchronizedIntObjectHashMap<>()
+            : new ConcurrentIntObjectHashMap<>();
+
+    for (int i = 1; i < ACTIVE_STREAMS * 2; i += 2) {
+      map.put(i, VALUE);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class StreamIds {
+    int next = 1;
+
+    int nextLookup() {
+      int id = next;
+      next = id + 2 >= ACTIVE_STREAMS * 2 ? 1 : id + 2;
+      return id;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class WriterStreamIds {
+    // every writer thread works on its own key range past the pre-populated streams
+    static int threads;
+
+    int base;
+    int next;
+
+    @Setup
+    public void setup() {
+      synchronized (WriterStreamIds.class) {
+        base = ACTIVE_STREAMS * 2 + 1 + (threads++) * ACTIVE_STREAMS * 2;
+      }
+      next = base;
+    }
+
+    int nextStreamId() {
+      int id = next;
+      next = id + 2 >= base + ACTIVE_STREAMS * 2 ? base : id + 2;
+      return id;
+    }
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(2)
+  public Object get(StreamIds ids) {
+    return map.get(ids.nextLookup());
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(2)
+  public Object putRemove(WriterStreamIds ids) {
+    int streamId = ids.nextStreamId();
+    map.put(streamId, VALUE);
+    return map.remove(streamId);
+  }
+
+  @Benchmark
+  @Group("uncontended")
+  @GroupThreads(1)
+  public Object getPutRemove(WriterStreamIds ids) {
+    int streamId = ids.nextStreamId();
+    map.put(streamId, VALUE);
+    map.get(streamId);
+    return map.remove(streamId);
+  }
+}
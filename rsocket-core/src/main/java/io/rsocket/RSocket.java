@@ -16,9 +16,12 @@
 
 package io.rsocket;
 
+import java.util.List;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 /**
  * A contract providing different interaction models for <a
@@ -38,6 +41,23 @@ default Mono<Void> fireAndForget(Payload payload) {
     return Mono.error(new UnsupportedOperationException("Fire-and-Forget not implemented."));
   }
 
+  /**
+   * Performs a Fire-and-Forget interaction for each payload of the given {@code Publisher}, in
+   * order. Payloads are consumed no faster than they can be sent.
+   *
+   * <p>By default this subscribes to {@link #fireAndForget(Payload)} for one payload after the
+   * other. A connected {@code RSocket} instead encodes and enqueues the frames continuously,
+   * requesting more payloads as the connection keeps up.
+   *
+   * @param payloads Request payloads.
+   * @return {@code Publisher} that completes once all {@code payloads} are handled, or errors on
+   *     the first failure.
+   * @since 1.1
+   */
+  default Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+    return Flux.from(payloads).concatMap(this::fireAndForget).then();
+  }
+
   /**
    * Request-Response interaction model of {@code RSocket}.
    *
@@ -50,6 +70,43 @@ default Mono<Payload> requestResponse(Payload payload) {
     return Mono.error(new UnsupportedOperationException("Request-Response not implemented."));
   }
 
+  /**
+   * Performs a Request-Response interaction for each of the given payloads at once. Responses are
+   * emitted as they arrive, tagged with the index of their request in the list, in the same fashion
+   * as {@link Flux#index()}. A request completing without a response emits nothing for its index.
+   * The first failed request fails the batch and cancels the remaining requests.
+   *
+   * <p>By default this subscribes to {@link #requestResponse(Payload)} for every payload. A
+   * connected {@code RSocket} instead sends all requests in a single pass.
+   *
+   * @param payloads Request payloads.
+   * @return Stream of the responses paired with the index of their request.
+   * @since 1.1
+   */
+  default Flux<Tuple2<Long, Payload>> requestResponseBatch(List<Payload> payloads) {
+    if (payloads.isEmpty()) {
+      return Flux.empty();
+    }
+    return Flux.range(0, payloads.size())
+        .flatMap(
+            index ->
+                requestResponse(payloads.get(index))
+                    .map(response -> Tuples.of((long) index, response)),
+            payloads.size());
+  }
+
+  /**
+   * Variant of {@link #requestResponseBatch(List)} that collects the payloads of the given {@code
+   * Publisher} into the batch and sends it once the {@code Publisher} completes.
+   *
+   * @param payloads Request payloads.
+   * @return Stream of the responses paired with the index of their request.
+   * @since 1.1
+   */
+  default Flux<Tuple2<Long, Payload>> requestResponseBatch(Publisher<Payload> payloads) {
+    return Flux.from(payloads).collectList().flatMapMany(list -> requestResponseBatch(list));
+  }
+
   /**
    * Request-Stream interaction model of {@code RSocket}.
    *
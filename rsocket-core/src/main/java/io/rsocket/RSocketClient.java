@@ -4,6 +4,7 @@
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 import reactor.util.retry.Retry;
 
 /**
@@ -56,12 +57,34 @@ public interface RSocketClient extends Disposable {
    */
   Mono<Void> fireAndForget(Mono<Payload> payloadMono);
 
+  /**
+   * Perform a stream of Fire-and-Forget interactions via {@link
+   * RSocket#fireAndForgetMany(Publisher)}. Allows multiple subscriptions and sends the payloads of
+   * the given {@code Publisher} anew for each subscriber.
+   *
+   * @since 1.1
+   */
+  default Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+    return source().flatMap(rsocket -> rsocket.fireAndForgetMany(payloads));
+  }
+
   /**
    * Perform a Request-Response interaction via {@link RSocket#requestResponse(Payload)}. Allows
    * multiple subscriptions and performs a request per subscriber.
    */
   Mono<Payload> requestResponse(Mono<Payload> payloadMono);
 
+  /**
+   * Perform a batch of Request-Response interactions via {@link
+   * RSocket#requestResponseBatch(Publisher)}, sending all requests at once once the given {@code
+   * Publisher} completes. Allows multiple subscriptions and performs a batch per subscriber.
+   *
+   * @since 1.1
+   */
+  default Flux<Tuple2<Long, Payload>> requestResponseBatch(Publisher<Payload> payloads) {
+    return source().flatMapMany(rsocket -> rsocket.requestResponseBatch(payloads));
+  }
+
   /**
    * Perform a Request-Stream interaction via {@link RSocket#requestStream(Payload)}. Allows
    * multiple subscriptions and performs a request per subscriber.
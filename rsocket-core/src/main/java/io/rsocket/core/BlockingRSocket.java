@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.Nullable;
+
+/**
+ * {@link RSocket} that adapts plain blocking methods for request-response, fire-and-forget and
+ * request-stream interactions, so handlers that wrap blocking clients need not move their work off
+ * the transport thread themselves:
+ *
+ * <pre>{@code
+ * RSocketServer.create(
+ *         SocketAcceptor.with(
+ *             BlockingRSocket.create()
+ *                 .requestResponse(payload -> DefaultPayload.create(jdbcLookup(payload)))
+ *                 .requestStream(payload -> fileLines(payload).iterator())))
+ *     .bind(TcpServerTransport.create("localhost", 7000))
+ *     .block();
+ * }</pre>
+ *
+ * <p>Each invocation runs on its own virtual thread when the JVM supports them, i.e. on JDK 21 and
+ * later, and on a shared bounded pool of {@link Schedulers#DEFAULT_BOUNDED_ELASTIC_SIZE} threads
+ * otherwise, unless a different {@link Scheduler} is given with {@link #scheduler(Scheduler)}.
+ *
+ * <p>The request payload is released when the handler method returns, or when the interaction is
+ * cancelled before the handler is invoked, so handlers that produce their elements lazily must
+ * copy what they need from it first. Interactions without a handler
+ * are rejected like with any other {@link RSocket} that does not implement them.
+ *
+ * @since 1.1
+ */
+public final class BlockingRSocket implements RSocket {
+
+  @Nullable private BlockingRequestResponse requestResponseHandler;
+  @Nullable private BlockingFireAndForget fireAndForgetHandler;
+  @Nullable private BlockingRequestStream requestStreamHandler;
+  @Nullable private BlockingRequestStreamSink requestStreamSinkHandler;
+  @Nullable private Scheduler scheduler;
+
+  private BlockingRSocket() {}
+
+  /** Static factory method to create a {@code BlockingRSocket} without handlers. */
+  public static BlockingRSocket create() {
+    return new BlockingRSocket();
+  }
+
+  /**
+   * Returns the {@link Scheduler} that handlers run on unless another one is set, i.e. a virtual
+   * thread per task on JDK 21 and later, or a bounded pool of daemon threads otherwise.
+   */
+  public static Scheduler defaultScheduler() {
+    return DefaultSchedulerHolder.SCHEDULER;
+  }
+
+  /** Handles request-response interactions with the given blocking method. */
+  public BlockingRSocket requestResponse(BlockingRequestResponse handler) {
+    this.requestResponseHandler = Objects.requireNonNull(handler);
+    return this;
+  }
+
+  /** Handles fire-and-forget interactions with the given blocking method. */
+  public BlockingRSocket fireAndForget(BlockingFireAndForget handler) {
+    this.fireAndForgetHandler = Objects.requireNonNull(handler);
+    return this;
+  }
+
+  /**
+   * Handles request-stream interactions with the given blocking method returning an {@link
+   * Iterator}. The iterator is advanced on the scheduler as the requester grants credit, so {@link
+   * Iterator#next()} may block too.
+   */
+  public BlockingRSocket requestStream(BlockingRequestStream handler) {
+    this.requestStreamHandler = Objects.requireNonNull(handler);
+    this.requestStreamSinkHandler = null;
+    return this;
+  }
+
+  /**
+   * Handles request-stream interactions with the given blocking method that pushes elements into a
+   * {@link FluxSink}. Elements pushed beyond the credit granted by the requester are buffered, use
+   * {@link FluxSink#requestedFromDownstream()} to produce at the pace of the requester.
+   */
+  public BlockingRSocket requestStream(BlockingRequestStreamSink handler) {
+    this.requestStreamSinkHandler = Objects.requireNonNull(handler);
+    this.requestStreamHandler = null;
+    return this;
+  }
+
+  /**
+   * Runs handlers on the given {@link Scheduler} instead of {@link #defaultScheduler()}.
+   *
+   * @param scheduler the scheduler to invoke handlers on
+   * @return the same instance for method chaining
+   */
+  public BlockingRSocket scheduler(Scheduler scheduler) {
+    this.scheduler = Objects.requireNonNull(scheduler);
+    return this;
+  }
+
+  /** Shortcut for {@code SocketAcceptor.with(this)}. */
+  public SocketAcceptor toSocketAcceptor() {
+    return SocketAcceptor.with(this);
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    final BlockingFireAndForget handler = this.fireAndForgetHandler;
+    if (handler == null) {
+      return RSocket.super.fireAndForget(payload);
+    }
+    final AtomicBoolean started = new AtomicBoolean();
+    return Mono.<Void>fromCallable(
+            () -> {
+              if (!started.compareAndSet(false, true)) {
+                return null;
+              }
+              try {
+                handler.fireAndForget(payload);
+                return null;
+              } finally {
+                payload.release();
+              }
+            })
+        .subscribeOn(scheduler())
+        .doFinally(signalType -> releaseIfNotStarted(started, payload));
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Payload payload) {
+    final BlockingRequestResponse handler = this.requestResponseHandler;
+    if (handler == null) {
+      return RSocket.super.requestResponse(payload);
+    }
+    final AtomicBoolean started = new AtomicBoolean();
+    return Mono.fromCallable(
+            () -> {
+              if (!started.compareAndSet(false, true)) {
+                return null;
+              }
+              try {
+                return handler.requestResponse(payload);
+              } finally {
+                payload.release();
+              }
+            })
+        .subscribeOn(scheduler())
+        .doFinally(signalType -> releaseIfNotStarted(started, payload));
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Payload payload) {
+    final BlockingRequestStream handler = this.requestStreamHandler;
+    if (handler != null) {
+      final AtomicBoolean started = new AtomicBoolean();
+      return Flux.defer(
+              () -> {
+                if (!started.compareAndSet(false, true)) {
+                  return Flux.<Payload>empty();
+                }
+                final Iterator<Payload> iterator;
+                try {
+                  iterator = handler.requestStream(payload);
+                } catch (Exception e) {
+                  return Flux.error(e);
+                } finally {
+                  payload.release();
+                }
+                return Flux.fromIterable(() -> iterator);
+              })
+          .subscribeOn(scheduler())
+          .doFinally(signalType -> releaseIfNotStarted(started, payload));
+    }
+
+    final BlockingRequestStreamSink sinkHandler = this.requestStreamSinkHandler;
+    if (sinkHandler != null) {
+      final AtomicBoolean started = new AtomicBoolean();
+      return Flux.<Payload>create(
+              sink -> {
+                if (!started.compareAndSet(false, true)) {
+                  sink.complete();
+                  return;
+                }
+                try {
+                  sinkHandler.requestStream(payload, sink);
+                } catch (Exception e) {
+                  sink.error(e);
+                } finally {
+                  payload.release();
+                }
+              })
+          .subscribeOn(scheduler())
+          .doFinally(signalType -> releaseIfNotStarted(started, payload));
+    }
+
+    return RSocket.super.requestStream(payload);
+  }
+
+  /**
+   * Releases the payload if the handler has not been invoked, i.e. the interaction was cancelled
+   * or the task rejected before it ran, and prevents the handler from being invoked later on.
+   */
+  private static void releaseIfNotStarted(AtomicBoolean started, Payload payload) {
+    if (started.compareAndSet(false, true)) {
+      payload.release();
+    }
+  }
+
+  private Scheduler scheduler() {
+    final Scheduler scheduler = this.scheduler;
+    return scheduler != null ? scheduler : defaultScheduler();
+  }
+
+  /** Blocking request-response handler. */
+  @FunctionalInterface
+  public interface BlockingRequestResponse {
+
+    /**
+     * Handles a request.
+     *
+     * @param payload the request, released once this method returns
+     * @return the response, or {@code null} to complete without a response
+     */
+    @Nullable
+    Payload requestResponse(Payload payload) throws Exception;
+  }
+
+  /** Blocking fire-and-forget handler. */
+  @FunctionalInterface
+  public interface BlockingFireAndForget {
+
+    /**
+     * Handles a request.
+     *
+     * @param payload the request, released once this method returns
+     */
+    void fireAndForget(Payload payload) throws Exception;
+  }
+
+  /** Blocking request-stream handler producing an {@link Iterator}. */
+  @FunctionalInterface
+  public interface BlockingRequestStream {
+
+    /**
+     * Handles a request.
+     *
+     * @param payload the request, released once this method returns
+     * @return the elements of the stream
+     */
+    Iterator<Payload> requestStream(Payload payload) throws Exception;
+  }
+
+  /** Blocking request-stream handler pushing into a {@link FluxSink}. */
+  @FunctionalInterface
+  public interface BlockingRequestStreamSink {
+
+    /**
+     * Handles a request. The stream ends when the sink is completed or errored, which may happen
+     * after this method returns.
+     *
+     * @param payload the request, released once this method returns
+     * @param sink the sink to push the elements of the stream into
+     */
+    void requestStream(Payload payload, FluxSink<Payload> sink) throws Exception;
+  }
+
+  static final class DefaultSchedulerHolder {
+
+    static final Scheduler SCHEDULER = Schedulers.fromExecutorService(executorService());
+
+    static ExecutorService executorService() {
+      try {
+        // JDK 21+, looked up reflectively as the build targets Java 8
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                  int id = threadCount.incrementAndGet();
+                  Thread thread = new Thread(r, "rsocket-blocking-" + id);
+                  thread.setDaemon(true);
+                  return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+      }
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.frame.FrameType;
+import io.rsocket.metadata.CompositeMetadata;
+import io.rsocket.metadata.WellKnownMimeType;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Simple holder of the bulkheads of an {@link RSocketServer}, i.e. dedicated thread pools that
+ * invoke the responder's handlers and subscribe to their results, instead of the transport thread
+ * that received the request. A handler that blocks, e.g. on JDBC calls, then only stalls the
+ * requests of its own bulkhead rather than every connection served by the same event loop.
+ *
+ * <p>Bulkheads are assigned per interaction type, or per route from the routing metadata of the
+ * request, carried either as composite metadata or as the connection's metadata type. A route
+ * bulkhead takes precedence over the bulkhead of the interaction type. Requests that match no
+ * bulkhead are handled on the transport thread as usual.
+ *
+ * <p>Each bulkhead has a bounded number of threads and a bounded queue. When its queue is full,
+ * requests are rejected right away with a {@link RejectedException}, without invoking the handler.
+ *
+ * @since 1.1
+ */
+public final class Bulkheads implements Disposable {
+
+  static final String COMPOSITE_METADATA =
+      WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString();
+  static final String ROUTING_METADATA = WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString();
+
+  final Map<FrameType, Bulkhead> interactions = new EnumMap<>(FrameType.class);
+  final Map<String, Bulkhead> routes = new HashMap<>();
+
+  private Bulkheads() {}
+
+  /** Static factory method to create an empty {@code Bulkheads} instance. */
+  public static Bulkheads create() {
+    return new Bulkheads();
+  }
+
+  /**
+   * Handles requests of the given interaction type on a dedicated bulkhead.
+   *
+   * @param interactionType one of {@link FrameType#REQUEST_FNF}, {@link
+   *     FrameType#REQUEST_RESPONSE} or {@link FrameType#REQUEST_STREAM}
+   * @param maxThreads the maximum number of threads of the bulkhead
+   * @param maxQueuedTasks the maximum number of requests waiting for a thread
+   * @return the same instance for method chaining
+   */
+  public Bulkheads interaction(FrameType interactionType, int maxThreads, int maxQueuedTasks) {
+    if (interactionType != FrameType.REQUEST_FNF
+        && interactionType != FrameType.REQUEST_RESPONSE
+        && interactionType != FrameType.REQUEST_STREAM) {
+      throw new IllegalArgumentException(
+          "Expected REQUEST_FNF, REQUEST_RESPONSE or REQUEST_STREAM, provided: " + interactionType);
+    }
+    String name = interactionType.name().toLowerCase();
+    put(interactions, interactionType, name, maxThreads, maxQueuedTasks);
+    return this;
+  }
+
+  /**
+   * Handles requests for the given route on a dedicated bulkhead. The route is the first tag of the
+   * routing metadata of the request.
+   *
+   * @param route the route
+   * @param maxThreads the maximum number of threads of the bulkhead
+   * @param maxQueuedTasks the maximum number of requests waiting for a thread
+   * @return the same instance for method chaining
+   */
+  public Bulkheads route(String route, int maxThreads, int maxQueuedTasks) {
+    Objects.requireNonNull(route, "route must not be null");
+    put(routes, route, route, maxThreads, maxQueuedTasks);
+    return this;
+  }
+
+  private static <K> void put(
+      Map<K, Bulkhead> bulkheads, K key, String name, int maxThreads, int maxQueuedTasks) {
+    Bulkhead previous = bulkheads.put(key, new Bulkhead(name, maxThreads, maxQueuedTasks));
+    if (previous != null) {
+      previous.dispose();
+    }
+  }
+
+  /** Shuts down the threads of all bulkheads. */
+  @Override
+  public void dispose() {
+    interactions.values().forEach(Bulkhead::dispose);
+    routes.values().forEach(Bulkhead::dispose);
+  }
+
+  /**
+   * Returns the bulkhead of the given request, or {@code null} if it should be handled on the
+   * calling thread.
+   */
+  @Nullable
+  Bulkhead select(FrameType interactionType, Payload payload, @Nullable String metadataMimeType) {
+    if (!routes.isEmpty()) {
+      String route = route(payload, metadataMimeType);
+      if (route != null) {
+        Bulkhead bulkhead = routes.get(route);
+        if (bulkhead != null) {
+          return bulkhead;
+        }
+      }
+    }
+    return interactions.get(interactionType);
+  }
+
+  @Nullable
+  static String route(Payload payload, @Nullable String metadataMimeType) {
+    if (!payload.hasMetadata()) {
+      return null;
+    }
+
+    try {
+      ByteBuf metadata = payload.sliceMetadata();
+      if (ROUTING_METADATA.equals(metadataMimeType)) {
+        return firstTag(metadata);
+      }
+      if (COMPOSITE_METADATA.equals(metadataMimeType)) {
+        for (CompositeMetadata.Entry entry : new CompositeMetadata(metadata, false)) {
+          if (ROUTING_METADATA.equals(entry.getMimeType())) {
+            return firstTag(entry.getContent());
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      // malformed metadata, leave it to the handler to reject the request
+    }
+    return null;
+  }
+
+  @Nullable
+  static String firstTag(ByteBuf routingMetadata) {
+    if (!routingMetadata.isReadable()) {
+      return null;
+    }
+    int index = routingMetadata.readerIndex();
+    int length = routingMetadata.getByte(index) & 0xFF;
+    return routingMetadata.toString(index + 1, length, StandardCharsets.UTF_8);
+  }
+
+  static final class Bulkhead implements Disposable {
+
+    final ThreadPoolExecutor executor;
+    final Scheduler scheduler;
+    final RejectedException rejectedException;
+
+    Bulkhead(String name, int maxThreads, int maxQueuedTasks) {
+      if (maxThreads <= 0 || maxQueuedTasks < 0) {
+        String msg =
+            String.format(
+                "Expected maxThreads > 0 and maxQueuedTasks >= 0, provided: %d, %d",
+                maxThreads, maxQueuedTasks);
+        throw new IllegalArgumentException(msg);
+      }
+
+      final AtomicInteger threadCount = new AtomicInteger();
+      this.executor =
+          new ThreadPoolExecutor(
+              maxThreads,
+              maxThreads,
+              60,
+              TimeUnit.SECONDS,
+              maxQueuedTasks > 0
+                  ? new ArrayBlockingQueue<>(maxQueuedTasks)
+                  : new SynchronousQueue<>(),
+              r -> {
+                int id = threadCount.incrementAndGet();
+                Thread thread = new Thread(r, "rsocket-bulkhead-" + name + "-" + id);
+                thread.setDaemon(true);
+                return thread;
+              });
+      this.executor.allowCoreThreadTimeOut(true);
+      this.scheduler = Schedulers.fromExecutorService(executor);
+      this.rejectedException = new RejectedException("Bulkhead '" + name + "' is full");
+    }
+
+    /**
+     * Invokes the handler on this bulkhead once the result is subscribed to. The payload is
+     * released if the request is rejected or cancelled before the handler is invoked.
+     */
+    <T> Mono<T> schedule(Payload payload, Function<Payload, Mono<T>> handler) {
+      final AtomicBoolean started = new AtomicBoolean();
+      return Mono.defer(
+              () -> started.compareAndSet(false, true) ? handler.apply(payload) : Mono.<T>empty())
+          .subscribeOn(scheduler)
+          .onErrorMap(e -> rejectIfNotStarted(started, payload, e))
+          .doOnCancel(() -> releaseIfNotStarted(started, payload));
+    }
+
+    /** Like {@link #schedule(Payload, Function)}, for handlers that return many elements. */
+    <T> Flux<T> scheduleMany(Payload payload, Function<Payload, Flux<T>> handler) {
+      final AtomicBoolean started = new AtomicBoolean();
+      return Flux.defer(
+              () -> started.compareAndSet(false, true) ? handler.apply(payload) : Flux.<T>empty())
+          .subscribeOn(scheduler, false)
+          .onErrorMap(e -> rejectIfNotStarted(started, payload, e))
+          .doOnCancel(() -> releaseIfNotStarted(started, payload));
+    }
+
+    Throwable rejectIfNotStarted(AtomicBoolean started, Payload payload, Throwable e) {
+      if (started.compareAndSet(false, true)) {
+        // the task could not be scheduled
+        payload.release();
+        return rejectedException;
+      }
+      return e;
+    }
+
+    void releaseIfNotStarted(AtomicBoolean started, Payload payload) {
+      if (started.compareAndSet(false, true)) {
+        payload.release();
+      }
+    }
+
+    @Override
+    public void dispose() {
+      scheduler.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return scheduler.isDisposed();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+/**
+ * Exposes the number of streams the responder of a connection is serving for monitoring, see
+ * {@link ConnectionMetrics}.
+ *
+ * @see RSocketConnector#maxConcurrentStreams(int)
+ * @see RSocketServer#maxConcurrentStreams(int, int)
+ * @since 1.1
+ */
+public interface ConcurrentStreamsAware {
+
+  /**
+   * Returns the number of streams requested by the peer whose response has not terminated yet,
+   * or {@code 0} if no concurrent stream limit is configured.
+   *
+   * @return the active streams of the connection
+   */
+  int concurrentStreams();
+
+  /**
+   * Returns the number of streams requested by the peer that were rejected because the limit of
+   * the connection or of the server was reached, or {@code 0} if no limit is configured.
+   *
+   * @return the rejected streams of the connection
+   */
+  long rejectedStreams();
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import java.util.function.Consumer;
+import reactor.core.publisher.Mono;
+
+/**
+ * The monitoring view of a connection created by {@link RSocketConnector} or {@link RSocketServer}.
+ * Unlike the {@link io.rsocket.RSocket RSocket} handed to the application, which may be wrapped by
+ * interceptors, this is handed to the consumer registered with {@link
+ * RSocketConnector#connectionMetrics(Consumer)} or {@link
+ * RSocketServer#connectionMetrics(Consumer)} once per connection.
+ *
+ * @since 1.1
+ */
+public interface ConnectionMetrics
+    extends SendQueueAware, ConcurrentStreamsAware, ReassemblyAware {
+
+  /**
+   * Returns a {@code Mono} that completes when the connection is closed, after which the values
+   * of this instance no longer change.
+   *
+   * @return a {@code Mono} that completes on close
+   */
+  Mono<Void> onClose();
+}
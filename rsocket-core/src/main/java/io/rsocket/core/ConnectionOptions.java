@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.fragmentation.ReassemblyDuplexConnection;
+import io.rsocket.internal.ConcurrentStreamLimiter;
+import io.rsocket.internal.ReassemblyBudget;
+import io.rsocket.internal.RequestNCoalescer;
+import io.rsocket.internal.SendQueueWatermarks;
+import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.function.Supplier;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Settings of a connection shared by its {@link RSocketRequester} and {@link RSocketResponder},
+ * populated by {@link RSocketConnector} and {@link RSocketServer}. The defaults leave all optional
+ * features disabled.
+ */
+final class ConnectionOptions {
+
+  private SendQueueWatermarks sendQueueWatermarks = new SendQueueWatermarks();
+  private Supplier<Queue<ByteBuf>> sendQueueSupplier =
+      () -> new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+  @Nullable private RequestNCoalescer requestNCoalescer;
+  @Nullable private Bulkheads bulkheads;
+  @Nullable private ConcurrentStreamLimiter streamLimiter;
+  @Nullable private String metadataMimeType;
+  @Nullable private ReassemblyDuplexConnection streamingReassembly;
+  @Nullable private ReassemblyBudget reassemblyBudget;
+
+  /**
+   * The watermarks of the send queues, shared by both sides of the connection.
+   *
+   * @param sendQueueWatermarks the watermarks
+   * @return the same instance for method chaining
+   */
+  ConnectionOptions sendQueueWatermarks(SendQueueWatermarks sendQueueWatermarks) {
+    this.sendQueueWatermarks =
+        Objects.requireNonNull(sendQueueWatermarks, "sendQueueWatermarks must not be null");
+    return this;
+  }
+
+  /**
+   * Creates the send queue of each side of the connection.
+   *
+   * @param sendQueueSupplier the supplier of a new queue per side
+   * @return the same instance for method chaining
+   */
+  ConnectionOptions sendQueue(Supplier<Queue<ByteBuf>> sendQueueSupplier) {
+    this.sendQueueSupplier =
+        Objects.requireNonNull(sendQueueSupplier, "sendQueueSupplier must not be null");
+    return this;
+  }
+
+  ConnectionOptions requestNCoalescer(@Nullable RequestNCoalescer requestNCoalescer) {
+    this.requestNCoalescer = requestNCoalescer;
+    return this;
+  }
+
+  /**
+   * The bulkheads the responder runs its handler on, ignored by the requester.
+   *
+   * @param bulkheads the bulkheads, or {@code null} to run the handler on the connection
+   * @return the same instance for method chaining
+   */
+  ConnectionOptions bulkheads(@Nullable Bulkheads bulkheads) {
+    this.bulkheads = bulkheads;
+    return this;
+  }
+
+  ConnectionOptions streamLimiter(@Nullable ConcurrentStreamLimiter streamLimiter) {
+    this.streamLimiter = streamLimiter;
+    return this;
+  }
+
+  ConnectionOptions metadataMimeType(@Nullable String metadataMimeType) {
+    this.metadataMimeType = metadataMimeType;
+    return this;
+  }
+
+  /**
+   * The connection that hands on the data of fragmented payloads as it is received.
+   *
+   * @param streamingReassembly the streaming connection, or {@code null} if payloads are
+   *     reassembled in full
+   * @return the same instance for method chaining
+   */
+  ConnectionOptions streamingReassembly(@Nullable ReassemblyDuplexConnection streamingReassembly) {
+    this.streamingReassembly = streamingReassembly;
+    return this;
+  }
+
+  ConnectionOptions reassemblyBudget(@Nullable ReassemblyBudget reassemblyBudget) {
+    this.reassemblyBudget = reassemblyBudget;
+    return this;
+  }
+
+  SendQueueWatermarks getSendQueueWatermarks() {
+    return sendQueueWatermarks;
+  }
+
+  Queue<ByteBuf> newSendQueue() {
+    return sendQueueSupplier.get();
+  }
+
+  @Nullable
+  RequestNCoalescer getRequestNCoalescer() {
+    return requestNCoalescer;
+  }
+
+  @Nullable
+  Bulkheads getBulkheads() {
+    return bulkheads;
+  }
+
+  @Nullable
+  ConcurrentStreamLimiter getStreamLimiter() {
+    return streamLimiter;
+  }
+
+  @Nullable
+  String getMetadataMimeType() {
+    return metadataMimeType;
+  }
+
+  @Nullable
+  ReassemblyDuplexConnection getStreamingReassembly() {
+    return streamingReassembly;
+  }
+
+  @Nullable
+  ReassemblyBudget getReassemblyBudget() {
+    return reassemblyBudget;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.rsocket.DuplexConnection;
+import io.rsocket.transport.EventLoopAware;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.Exceptions;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Serial {@link Scheduler} bound to a single connection, used by {@link RSocketRequester} in place
+ * of {@code Schedulers.single(Schedulers.parallel())} when event loop affinity is enabled.
+ *
+ * <p>Tasks are queued and drained by whichever thread wins the work-in-progress counter, so there
+ * is never more than one task running at a time. If the connection exposes its {@link
+ * EventLoopAware#eventLoop() event loop}, the drain only happens inline when the caller is already
+ * on that event loop and is otherwise handed off to it, so that stream id allocation, frame
+ * emission and the transport write all happen on the same thread. Without an event loop, the
+ * caller that wins the counter drains inline.
+ */
+final class ConnectionSerialScheduler implements Scheduler, Runnable {
+
+  @Nullable final EventExecutor eventLoop;
+  final Queue<Runnable> tasks = Queues.<Runnable>unboundedMultiproducer().get();
+
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<ConnectionSerialScheduler> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(ConnectionSerialScheduler.class, "wip");
+
+  ConnectionSerialScheduler(@Nullable EventExecutor eventLoop) {
+    this.eventLoop = eventLoop;
+  }
+
+  /**
+   * Creates a serial scheduler for the given connection, bound to its event loop if the connection
+   * is {@link EventLoopAware}.
+   *
+   * @param connection the raw transport connection, before any wrapping
+   * @return the serial scheduler for the connection
+   */
+  static ConnectionSerialScheduler forConnection(DuplexConnection connection) {
+    return new ConnectionSerialScheduler(
+        connection instanceof EventLoopAware ? ((EventLoopAware) connection).eventLoop() : null);
+  }
+
+  /**
+   * Schedules the given task. The returned {@link Disposable} does not cancel the task since tasks
+   * submitted by the requester check their own state once run. Use a {@link #createWorker()
+   * worker} for cancellable tasks.
+   */
+  @Override
+  public Disposable schedule(Runnable task) {
+    this.tasks.offer(task);
+
+    if (WIP.getAndIncrement(this) == 0) {
+      final EventExecutor eventLoop = this.eventLoop;
+      if (eventLoop == null || eventLoop.inEventLoop()) {
+        run();
+      } else {
+        try {
+          eventLoop.execute(this);
+        } catch (RejectedExecutionException e) {
+          // the event loop is shutting down, drain here so termination tasks still run
+          run();
+        }
+      }
+    }
+
+    return Disposables.disposed();
+  }
+
+  /** Drains the queued tasks. Must only be called by the owner of the work-in-progress counter. */
+  @Override
+  public void run() {
+    final Queue<Runnable> tasks = this.tasks;
+    int missed = 1;
+
+    for (; ; ) {
+      for (; ; ) {
+        Runnable task = tasks.poll();
+
+        if (task == null) {
+          break;
+        }
+
+        try {
+          task.run();
+        } catch (Throwable t) {
+          Exceptions.throwIfFatal(t);
+          Schedulers.onHandleError(Thread.currentThread(), t);
+        }
+      }
+
+      missed = WIP.addAndGet(this, -missed);
+      if (missed == 0) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public Worker createWorker() {
+    return new SerialWorker(this);
+  }
+
+  static final class SerialWorker implements Worker {
+
+    final ConnectionSerialScheduler parent;
+
+    volatile boolean disposed;
+
+    SerialWorker(ConnectionSerialScheduler parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+      if (this.disposed) {
+        throw Exceptions.failWithRejected();
+      }
+
+      final WorkerTask workerTask = new WorkerTask(this, task);
+      this.parent.schedule(workerTask);
+      return workerTask;
+    }
+
+    @Override
+    public void dispose() {
+      this.disposed = true;
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return this.disposed;
+    }
+  }
+
+  static final class WorkerTask implements Runnable, Disposable {
+
+    final SerialWorker worker;
+    final Runnable task;
+
+    volatile boolean disposed;
+
+    WorkerTask(SerialWorker worker, Runnable task) {
+      this.worker = worker;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      if (!this.disposed && !this.worker.disposed) {
+        this.task.run();
+      }
+    }
+
+    @Override
+    public void dispose() {
+      this.disposed = true;
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return this.disposed;
+    }
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static io.rsocket.core.PayloadValidationUtils.INVALID_PAYLOAD_ERROR_MESSAGE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.IllegalReferenceCountException;
+import io.rsocket.Payload;
+import io.rsocket.frame.RequestFireAndForgetFrameCodec;
+import io.rsocket.lease.RequesterLeaseHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Exceptions;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+
+/**
+ * Stream of Fire-and-Forget interactions of {@link RSocketRequester} fused into a single object
+ * acting as the {@link Mono}, its {@link Subscription}, the subscriber of the payloads and the task
+ * scheduled on the requester serial scheduler.
+ *
+ * <p>Payloads are requested from upstream {@link #PREFETCH} at a time and drained on the serial
+ * scheduler, where all frames of a drain pass are encoded and enqueued in one go. More payloads
+ * are only requested as frames are enqueued, and the drain pauses while the send queue is above
+ * its high watermark, so a fast producer is slowed down to the pace of the connection instead of
+ * failing. The {@code Mono} completes once every payload was sent, or fails with the first error.
+ */
+final class FireAndForgetManyRequesterMono extends Mono<Void>
+    implements CoreSubscriber<Payload>, Subscription, Scannable, Runnable {
+
+  static final int PREFETCH = Queues.SMALL_BUFFER_SIZE;
+  static final int LIMIT = PREFETCH - (PREFETCH >> 2);
+
+  final RSocketRequester requester;
+  final Publisher<Payload> source;
+  final Queue<Payload> queue;
+
+  /** Frames of the current drain pass, only accessed on the serial scheduler. */
+  final List<ByteBuf> frames;
+
+  CoreSubscriber<? super Void> actual;
+  Subscription s;
+
+  /** The number of payloads sent since the last request to upstream. */
+  int produced;
+
+  /** Whether the drain waits for the send queue to become writable again. */
+  boolean awaitingWritability;
+
+  /** Whether the subscriber was terminated, only accessed on the serial scheduler. */
+  boolean terminated;
+
+  volatile boolean done;
+  Throwable error;
+
+  volatile boolean cancelled;
+
+  volatile int once;
+  static final AtomicIntegerFieldUpdater<FireAndForgetManyRequesterMono> ONCE =
+      AtomicIntegerFieldUpdater.newUpdater(FireAndForgetManyRequesterMono.class, "once");
+
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<FireAndForgetManyRequesterMono> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(FireAndForgetManyRequesterMono.class, "wip");
+
+  FireAndForgetManyRequesterMono(Publisher<Payload> source, RSocketRequester requester) {
+    this.source = source;
+    this.requester = requester;
+    this.queue = Queues.<Payload>get(PREFETCH).get();
+    this.frames = new ArrayList<>(PREFETCH);
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super Void> actual) {
+    if (this.once == 0 && ONCE.compareAndSet(this, 0, 1)) {
+      this.actual = actual;
+      actual.onSubscribe(this);
+      this.source.subscribe(this);
+    } else {
+      Operators.error(
+          actual,
+          new IllegalStateException("FireAndForgetManyMono allows only a single subscriber"));
+    }
+  }
+
+  @Override
+  public Context currentContext() {
+    return this.actual.currentContext();
+  }
+
+  @Override
+  public void onSubscribe(Subscription s) {
+    if (Operators.validate(this.s, s)) {
+      this.s = s;
+      if (this.cancelled) {
+        s.cancel();
+      } else {
+        s.request(PREFETCH);
+      }
+    }
+  }
+
+  @Override
+  public void onNext(Payload payload) {
+    if (this.done) {
+      payload.release();
+      return;
+    }
+
+    if (!this.queue.offer(payload)) {
+      payload.release();
+      this.s.cancel();
+      onError(Operators.onOperatorError(null, Exceptions.failWithOverflow(), currentContext()));
+      return;
+    }
+    schedule();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (this.done) {
+      Operators.onErrorDropped(t, currentContext());
+      return;
+    }
+    this.error = t;
+    this.done = true;
+    schedule();
+  }
+
+  @Override
+  public void onComplete() {
+    if (this.done) {
+      return;
+    }
+    this.done = true;
+    schedule();
+  }
+
+  @Override
+  public void request(long n) {
+    // noops, there are no elements to deliver
+  }
+
+  @Override
+  public void cancel() {
+    if (this.cancelled) {
+      return;
+    }
+    this.cancelled = true;
+    final Subscription s = this.s;
+    if (s != null) {
+      s.cancel();
+    }
+    schedule();
+  }
+
+  void schedule() {
+    if (WIP.getAndIncrement(this) == 0) {
+      this.requester.serialScheduler.schedule(this);
+    }
+  }
+
+  /** Resumes the drain once the send queue is writable again. */
+  void resume() {
+    this.awaitingWritability = false;
+    schedule();
+  }
+
+  /** Encodes and enqueues the queued payloads. Runs on the serial scheduler. */
+  @Override
+  public void run() {
+    int missed = 1;
+    for (; ; ) {
+      if (this.terminated || this.cancelled) {
+        clear();
+      } else if (!this.awaitingWritability) {
+        drain();
+      }
+
+      missed = WIP.addAndGet(this, -missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  void drain() {
+    final RSocketRequester requester = this.requester;
+    final Queue<Payload> queue = this.queue;
+    final List<ByteBuf> frames = this.frames;
+    final RequesterLeaseHandler lh = requester.leaseHandler;
+    final StreamIdSupplier streamIdSupplier = requester.streamIdSupplier;
+    final Context context = currentContext();
+
+    for (; ; ) {
+      if (this.cancelled) {
+        flush(frames, context);
+        clear();
+        return;
+      }
+
+      final Throwable terminationError = requester.terminationError;
+      if (terminationError != null) {
+        flush(frames, context);
+        fail(terminationError);
+        return;
+      }
+
+      if (!requester.sendQueueWatermarks.isWritable()) {
+        flush(frames, context);
+        this.awaitingWritability = true;
+        // disposing the requester clears the send queue, which resumes the drain as well
+        requester.sendQueueWatermarks.whenWritable(this::resume);
+        return;
+      }
+
+      final boolean d = this.done;
+      final Payload payload = queue.poll();
+      if (payload == null) {
+        flush(frames, context);
+        if (d) {
+          this.terminated = true;
+          final Throwable e = this.error;
+          if (e != null) {
+            this.actual.onError(e);
+          } else {
+            this.actual.onComplete();
+          }
+        }
+        return;
+      }
+
+      final Throwable invalid = validate(payload);
+      if (invalid != null) {
+        flush(frames, context);
+        fail(invalid);
+        return;
+      }
+
+      if (!lh.useLease()) {
+        payload.release();
+        flush(frames, context);
+        fail(lh.leaseError());
+        return;
+      }
+
+      final Payload request = requester.attachDeadline(payload, context);
+      if (request == null) {
+        flush(frames, context);
+        fail(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
+        return;
+      }
+
+      final int streamId = streamIdSupplier.nextStreamId();
+      // there is no response to wait for, so the stream is over as soon as the frame is sent
+      streamIdSupplier.release(streamId);
+
+      frames.add(
+          RequestFireAndForgetFrameCodec.encodeReleasingPayload(
+              requester.allocator, streamId, request));
+
+      if (++this.produced == LIMIT) {
+        this.produced = 0;
+        // hand the frames over before asking for more payloads
+        flush(frames, context);
+        this.s.request(LIMIT);
+      }
+    }
+  }
+
+  @Nullable
+  Throwable validate(Payload payload) {
+    if (payload.refCnt() <= 0) {
+      return new IllegalReferenceCountException();
+    }
+    final RSocketRequester requester = this.requester;
+    if (!PayloadValidationUtils.isValid(requester.mtu, payload, requester.maxFrameLength)) {
+      payload.release();
+      return new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE);
+    }
+    return null;
+  }
+
+  void flush(List<ByteBuf> frames, Context context) {
+    if (!frames.isEmpty()) {
+      this.requester.sendProcessor.onNextAll(frames, RequestPriority.priorityClass(context));
+      frames.clear();
+    }
+  }
+
+  void fail(Throwable t) {
+    this.terminated = true;
+    this.s.cancel();
+    clear();
+    this.actual.onError(t);
+  }
+
+  void clear() {
+    final Queue<Payload> queue = this.queue;
+    Payload payload;
+    while ((payload = queue.poll()) != null) {
+      if (payload.refCnt() > 0) {
+        payload.release();
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  public Object scanUnsafe(Attr key) {
+    if (key == Attr.ACTUAL) return this.actual;
+    if (key == Attr.PARENT) return this.s;
+    if (key == Attr.TERMINATED) return this.done && this.queue.isEmpty();
+    if (key == Attr.CANCELLED) return this.cancelled;
+    if (key == Attr.PREFETCH) return PREFETCH;
+    if (key == Attr.BUFFERED) return this.queue.size();
+    if (key == Attr.RUN_ON) return this.requester.serialScheduler;
+
+    return null;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static io.rsocket.core.PayloadValidationUtils.INVALID_PAYLOAD_ERROR_MESSAGE;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.frame.RequestFireAndForgetFrameCodec;
+import io.rsocket.lease.RequesterLeaseHandler;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Fire-and-Forget interaction of {@link RSocketRequester} fused into a single object acting as the
+ * {@link Mono}, its {@link Subscription} and the task scheduled on the requester serial scheduler.
+ */
+final class FireAndForgetRequesterMono extends Mono<Void>
+    implements Subscription, Scannable, Runnable {
+
+  static final int STATE_UNSUBSCRIBED = 0;
+  static final int STATE_SUBSCRIBED = 1;
+  static final int STATE_TERMINATED = 2;
+
+  final RSocketRequester requester;
+  final Payload payload;
+
+  CoreSubscriber<? super Void> actual;
+
+  volatile int state;
+  static final AtomicIntegerFieldUpdater<FireAndForgetRequesterMono> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(FireAndForgetRequesterMono.class, "state");
+
+  FireAndForgetRequesterMono(Payload payload, RSocketRequester requester) {
+    this.payload = payload;
+    this.requester = requester;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super Void> actual) {
+    if (this.state == STATE_UNSUBSCRIBED
+        && STATE.compareAndSet(this, STATE_UNSUBSCRIBED, STATE_SUBSCRIBED)) {
+      this.actual = actual;
+      actual.onSubscribe(this);
+
+      if (this.state == STATE_SUBSCRIBED) {
+        this.requester.serialScheduler.schedule(this);
+      }
+    } else {
+      Operators.error(
+          actual, new IllegalStateException("FireAndForgetMono allows only a single subscriber"));
+    }
+  }
+
+  /** Allocates the stream id and enqueues the request frame. Runs on the serial scheduler. */
+  @Override
+  public void run() {
+    if (this.state != STATE_SUBSCRIBED
+        || !STATE.compareAndSet(this, STATE_SUBSCRIBED, STATE_TERMINATED)) {
+      return;
+    }
+
+    final RSocketRequester requester = this.requester;
+    final Payload payload = this.payload;
+    final CoreSubscriber<? super Void> actual = this.actual;
+
+    final Throwable terminationError = requester.terminationError;
+    if (terminationError != null) {
+      payload.release();
+      actual.onError(terminationError);
+      return;
+    }
+
+    if (!requester.sendQueueWatermarks.isWritable()) {
+      payload.release();
+      actual.onError(RSocketRequester.SEND_QUEUE_FULL_EXCEPTION);
+      return;
+    }
+
+    final RequesterLeaseHandler lh = requester.leaseHandler;
+    if (!lh.useLease()) {
+      payload.release();
+      actual.onError(lh.leaseError());
+      return;
+    }
+
+    final Payload request = requester.attachDeadline(payload, actual.currentContext());
+    if (request == null) {
+      actual.onError(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
+      return;
+    }
+
+    final StreamIdSupplier streamIdSupplier = requester.streamIdSupplier;
+    final int streamId = streamIdSupplier.nextStreamId();
+    // there is no response to wait for, so the stream is over as soon as the frame is sent
+    streamIdSupplier.release(streamId);
+
+    final ByteBuf requestFrame =
+        RequestFireAndForgetFrameCodec.encodeReleasingPayload(
+            requester.allocator, streamId, request);
+
+    requester.sendProcessor.onNext(
+        requestFrame, RequestPriority.priorityClass(actual.currentContext()));
+
+    actual.onComplete();
+  }
+
+  @Override
+  public void request(long n) {
+    // noops, there are no elements to deliver
+  }
+
+  @Override
+  public void cancel() {
+    if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_SUBSCRIBED) {
+      this.payload.release();
+    }
+  }
+
+  @Override
+  @Nullable
+  public Object scanUnsafe(Attr key) {
+    if (key == Attr.ACTUAL) return this.actual;
+    if (key == Attr.TERMINATED || key == Attr.CANCELLED) return this.state == STATE_TERMINATED;
+    if (key == Attr.RUN_ON) return this.requester.serialScheduler;
+
+    return null;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketClient;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * {@link RSocketClient} that keeps several connections to the same target, each one a {@link
+ * DefaultRSocketClient} of its own, and sends each request over the connection with the fewest
+ * requests in flight. Spreading the requests over connections spreads their framing over several
+ * event loops and serial schedulers, which a single connection cannot do.
+ *
+ * <p>Connections are established lazily and re-established independently of each other: a lost
+ * connection is reconnected by its own member on its next request, and a member whose source failed
+ * for good is replaced by a new one. Between connections with as many requests in flight, an
+ * established one is preferred over one that still has to connect.
+ *
+ * @since 1.1
+ */
+final class LeastPendingRSocketClient implements RSocketClient {
+
+  final Supplier<Mono<RSocket>> sourceFactory;
+  final AtomicReferenceArray<DefaultRSocketClient> members;
+  final AtomicIntegerArray pending;
+
+  volatile int nextStart;
+  static final AtomicIntegerFieldUpdater<LeastPendingRSocketClient> NEXT_START =
+      AtomicIntegerFieldUpdater.newUpdater(LeastPendingRSocketClient.class, "nextStart");
+
+  volatile boolean disposed;
+
+  LeastPendingRSocketClient(Supplier<Mono<RSocket>> sourceFactory, int connections) {
+    if (connections <= 0) {
+      String msg =
+          String.format(
+              "The number of connections must be greater than 0, provided: %d", connections);
+      throw new IllegalArgumentException(msg);
+    }
+    this.sourceFactory = sourceFactory;
+    this.members = new AtomicReferenceArray<>(connections);
+    this.pending = new AtomicIntegerArray(connections);
+    for (int i = 0; i < connections; i++) {
+      members.set(i, new DefaultRSocketClient(sourceFactory.get()));
+    }
+  }
+
+  @Override
+  public Mono<RSocket> source() {
+    return Mono.defer(() -> member(select()).source());
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Mono<Payload> payloadMono) {
+    return withLeastPending(client -> client.fireAndForget(payloadMono));
+  }
+
+  @Override
+  public Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+    return withLeastPending(client -> client.fireAndForgetMany(payloads));
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Mono<Payload> payloadMono) {
+    return withLeastPending(client -> client.requestResponse(payloadMono));
+  }
+
+  @Override
+  public Flux<Tuple2<Long, Payload>> requestResponseBatch(Publisher<Payload> payloads) {
+    return withLeastPendingMany(client -> client.requestResponseBatch(payloads));
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Mono<Payload> payloadMono) {
+    return withLeastPendingMany(client -> client.requestStream(payloadMono));
+  }
+
+  @Override
+  public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    return withLeastPendingMany(client -> client.requestChannel(payloads));
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Mono<Payload> payloadMono) {
+    return withLeastPending(client -> client.metadataPush(payloadMono));
+  }
+
+  @Override
+  public void dispose() {
+    disposed = true;
+    for (int i = 0; i < members.length(); i++) {
+      members.get(i).dispose();
+    }
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return disposed;
+  }
+
+  /** Returns the number of requests in flight on each connection, for monitoring. */
+  int[] pendingRequests() {
+    final int[] result = new int[pending.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = pending.get(i);
+    }
+    return result;
+  }
+
+  <T> Mono<T> withLeastPending(Function<RSocketClient, Mono<T>> request) {
+    return Mono.defer(
+        () -> {
+          final int index = select();
+          pending.incrementAndGet(index);
+          final Mono<T> response;
+          try {
+            response = request.apply(member(index));
+          } catch (Throwable t) {
+            pending.decrementAndGet(index);
+            throw t;
+          }
+          return response.doFinally(signalType -> pending.decrementAndGet(index));
+        });
+  }
+
+  <T> Flux<T> withLeastPendingMany(Function<RSocketClient, Flux<T>> request) {
+    return Flux.defer(
+        () -> {
+          final int index = select();
+          pending.incrementAndGet(index);
+          final Flux<T> response;
+          try {
+            response = request.apply(member(index));
+          } catch (Throwable t) {
+            pending.decrementAndGet(index);
+            throw t;
+          }
+          return response.doFinally(signalType -> pending.decrementAndGet(index));
+        });
+  }
+
+  /**
+   * Returns the index of the connection with the fewest requests in flight, preferring established
+   * connections on a tie. The scan starts at a different connection each time so that the remaining
+   * ties are spread evenly.
+   */
+  int select() {
+    final AtomicReferenceArray<DefaultRSocketClient> members = this.members;
+    final AtomicIntegerArray pending = this.pending;
+    final int n = members.length();
+    final int start = (NEXT_START.getAndIncrement(this) & Integer.MAX_VALUE) % n;
+
+    int best = start;
+    long bestScore = Long.MAX_VALUE;
+    for (int k = 0; k < n; k++) {
+      final int i = start + k < n ? start + k : start + k - n;
+      long score = (long) pending.get(i) << 1;
+      if (members.get(i).valueIfResolved() == null) {
+        score |= 1;
+      }
+      if (score < bestScore) {
+        best = i;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  /** Returns the member at the given index, replacing it first if its source failed for good. */
+  DefaultRSocketClient member(int index) {
+    final DefaultRSocketClient member = members.get(index);
+    if (!member.isDisposed() || disposed) {
+      return member;
+    }
+
+    final DefaultRSocketClient replacement = new DefaultRSocketClient(sourceFactory.get());
+    if (members.compareAndSet(index, member, replacement)) {
+      if (disposed) {
+        // raced with dispose()
+        replacement.dispose();
+      }
+      return replacement;
+    }
+    return members.get(index);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.frame.MetadataPushFrameCodec;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Metadata-Push interaction of {@link RSocketRequester}. Metadata push frames go to stream 0 and
+ * need no stream id, so the frame is enqueued directly on the subscribing thread.
+ */
+final class MetadataPushRequesterMono extends Mono<Void> implements Scannable {
+
+  final RSocketRequester requester;
+  final Payload payload;
+
+  volatile int once;
+  static final AtomicIntegerFieldUpdater<MetadataPushRequesterMono> ONCE =
+      AtomicIntegerFieldUpdater.newUpdater(MetadataPushRequesterMono.class, "once");
+
+  MetadataPushRequesterMono(Payload payload, RSocketRequester requester) {
+    this.payload = payload;
+    this.requester = requester;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super Void> actual) {
+    if (this.once != 0 || !ONCE.compareAndSet(this, 0, 1)) {
+      Operators.error(
+          actual, new IllegalStateException("MetadataPushMono allows only a single subscriber"));
+      return;
+    }
+
+    final RSocketRequester requester = this.requester;
+    final Payload payload = this.payload;
+
+    final Throwable terminationError = requester.terminationError;
+    if (terminationError != null) {
+      payload.release();
+      Operators.error(actual, terminationError);
+      return;
+    }
+
+    final ByteBuf metadataPushFrame =
+        MetadataPushFrameCodec.encodeReleasingPayload(requester.allocator, payload);
+
+    requester.sendProcessor.onNextPrioritized(metadataPushFrame);
+
+    Operators.complete(actual);
+  }
+
+  @Override
+  @Nullable
+  public Object scanUnsafe(Attr key) {
+    if (key == Attr.TERMINATED) return this.once == 1;
+
+    return null;
+  }
+}
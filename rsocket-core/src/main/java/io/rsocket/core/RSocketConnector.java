@@ -26,10 +26,19 @@
 import io.rsocket.RSocketClient;
 import io.rsocket.SocketAcceptor;
 import io.rsocket.fragmentation.FragmentationDuplexConnection;
+import io.rsocket.fragmentation.FragmentationOptions;
 import io.rsocket.fragmentation.ReassemblyDuplexConnection;
+import io.rsocket.fragmentation.StreamingPayload;
 import io.rsocket.frame.SetupFrameCodec;
 import io.rsocket.frame.decoder.PayloadDecoder;
 import io.rsocket.internal.ClientServerInputMultiplexer;
+import io.rsocket.internal.ConcurrentStreamLimiter;
+import io.rsocket.internal.FairFrameQueue;
+import io.rsocket.internal.PriorityFrameQueue;
+import io.rsocket.internal.ReassemblyBudget;
+import io.rsocket.internal.RequestNCoalescer;
+import io.rsocket.internal.SendQueueWatermarks;
+import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
 import io.rsocket.keepalive.KeepAliveHandler;
 import io.rsocket.lease.LeaseStats;
 import io.rsocket.lease.Leases;
@@ -43,13 +52,16 @@
 import io.rsocket.util.EmptyPayload;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
 import reactor.util.function.Tuples;
 import reactor.util.retry.Retry;
 
@@ -95,8 +107,20 @@ public class RSocketConnector {
   private Supplier<Leases<?>> leasesSupplier;
 
   private int mtu = 0;
+  private int maxFragmentBurst;
   private int maxInboundPayloadSize = Integer.MAX_VALUE;
+  private boolean streamingReassembly;
+  private long maxReassemblyBytes;
   private PayloadDecoder payloadDecoder = PayloadDecoder.DEFAULT;
+  private boolean eventLoopAffinity;
+  private int sendQueueLowWatermark;
+  private int sendQueueHighWatermark;
+  private int fairSchedulingQuantum;
+  private int[] laneDrainQuotas;
+  private int defaultLane;
+  private int requestNMinCreditBatch;
+  private int maxConcurrentStreams;
+  @Nullable private Consumer<? super ConnectionMetrics> connectionMetrics;
 
   private RSocketConnector() {}
 
@@ -464,6 +488,217 @@ public RSocketConnector fragment(int mtu) {
     return this;
   }
 
+  /**
+   * When this is set together with {@link #fragment(int)}, the fragments of a large payload are
+   * interleaved with the frames of other streams, which the protocol allows, rather than sent back
+   * to back. At most {@code maxFragmentBurst} fragments of a payload are sent in a row before as
+   * many frames of other streams get their turn, and the fragments of payloads of different streams
+   * take turns, so that small requests and responses are not held up until the last fragment of a
+   * large payload has been sent. Frames of the same stream keep their order.
+   *
+   * <p>By default this is not set in which case all fragments of a payload are sent in a row.
+   *
+   * @param maxFragmentBurst the number of fragments sent in a row, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector interleaveFragments(int maxFragmentBurst) {
+    this.maxFragmentBurst = FragmentationDuplexConnection.assertMaxFragmentBurst(maxFragmentBurst);
+    return this;
+  }
+
+  /**
+   * When this is enabled, fragmented payloads are handed on as soon as their metadata is
+   * complete, as a {@link StreamingPayload} that emits the rest of the data as {@link
+   * StreamingPayload#chunks() chunks} while the fragments are received, rather than once the whole
+   * payload has been reassembled in memory. This applies to the requests received by the handler
+   * of the client as well as to the payloads it receives as a requester. Reading from the
+   * connection stops while the subscriber of the chunks of a payload does not keep up with them,
+   * which holds up the frames of the other streams of the connection too. {@link
+   * #maxInboundPayloadSize(int)} still limits the size of a payload.
+   *
+   * <p>By default this is not enabled in which case fragmented payloads are reassembled before
+   * they are handed on. Streaming reassembly is not applied to resumable connections.
+   *
+   * @param streamingReassembly whether to hand on fragmented payloads as they are received
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector streamingReassembly(boolean streamingReassembly) {
+    this.streamingReassembly = streamingReassembly;
+    return this;
+  }
+
+  /**
+   * When this is set, the bytes held by all payloads of the connection that are being reassembled
+   * from fragments are limited to the given budget, in addition to the size of each payload being
+   * limited by {@link #maxInboundPayloadSize(int)}. When a fragment does not fit, the partial
+   * payloads are evicted in the order their first fragment was received until it does. An evicted
+   * request of the server is answered with a {@code REJECTED} error frame, and an evicted response
+   * is cancelled and terminated locally with a {@link io.rsocket.exceptions.CanceledException}.
+   * The bytes held and the evictions are exposed through {@link ReassemblyAware}.
+   *
+   * <p>By default this is not set in which case only the size of each payload is limited. The
+   * budget is not applied to resumable connections, nor together with {@link
+   * #streamingReassembly(boolean)}.
+   *
+   * @param maxReassemblyBytes the maximum number of bytes held in reassembly, must be greater than
+   *     0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector maxReassemblyBytes(long maxReassemblyBytes) {
+    this.maxReassemblyBytes = ReassemblyBudget.assertMaxReassemblyBytes(maxReassemblyBytes);
+    return this;
+  }
+
+  /**
+   * When this is enabled, stream id allocation and frame emission for requests run on the event
+   * loop of the underlying connection, for transports that expose one (e.g. TCP and WebSocket), or
+   * inline on the calling thread under a lock-free serial guard otherwise. This avoids the thread
+   * hop to a dedicated single threaded scheduler on every request, so a connection is served by a
+   * single thread end to end.
+   *
+   * <p>By default this is not enabled in which case requests are serialized on a scheduler created
+   * with {@code Schedulers.single(Schedulers.parallel())}.
+   *
+   * @param eventLoopAffinity whether requests should run on the connection event loop
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector eventLoopAffinity(boolean eventLoopAffinity) {
+    this.eventLoopAffinity = eventLoopAffinity;
+    return this;
+  }
+
+  /**
+   * Bounds the number of bytes queued for sending on each connection, summed over the requester
+   * and responder sides. Frames only leave the queue while the transport can write, e.g. while the
+   * Netty channel is writable, so the queue fills up when the peer reads slowly.
+   *
+   * <p>Once the queued bytes exceed {@code highWatermark}, new requests fail with a {@link
+   * io.rsocket.exceptions.RejectedException RejectedException} and {@code REQUEST_N} grants from
+   * the peer are held back, so local publishers stop emitting, until the queued bytes drop to
+   * {@code lowWatermark}. The queued bytes are exposed through {@link SendQueueAware}.
+   *
+   * <p>By default this is not set in which case the send queue is unbounded.
+   *
+   * @param lowWatermark the number of queued bytes at which requests are accepted again
+   * @param highWatermark the number of queued bytes above which requests are rejected
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector sendQueueWatermarks(int lowWatermark, int highWatermark) {
+    SendQueueWatermarks.assertWatermarks(lowWatermark, highWatermark);
+    this.sendQueueLowWatermark = lowWatermark;
+    this.sendQueueHighWatermark = highWatermark;
+    return this;
+  }
+
+  /**
+   * When this is set, outbound frames are scheduled fairly across streams instead of in the order
+   * they were produced. Frames are queued per stream and streams take turns in deficit round robin
+   * order, each sending up to {@code quantum} bytes per turn, so a stream emitting a lot of data
+   * no longer delays small requests and responses behind it. Frames of the same stream keep their
+   * order, and connection level frames such as keep-alive and lease are still sent first.
+   *
+   * <p>By default this is not set in which case frames are sent in the order they are produced.
+   *
+   * @param quantum the number of bytes each stream may send per turn, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector fairStreamScheduling(int quantum) {
+    this.fairSchedulingQuantum = FairFrameQueue.assertQuantum(quantum);
+    return this;
+  }
+
+  /**
+   * When this is set, outbound frames are queued in priority lanes that take turns in weighted
+   * round robin order, each sending up to its drain quota of frames per turn. Lane {@code 0} is
+   * the control lane and carries {@code CANCEL}, {@code REQUEST_N} and {@code LEASE} frames, so
+   * that cancellation and flow control credit are no longer held up behind payload frames when
+   * the connection is saturated. Requests are queued in the lane given by their {@link
+   * RequestPriority}, or in {@code defaultLane}, together with the frames that follow them on the
+   * same stream. Connection level frames such as keep-alive are still sent first.
+   *
+   * <p>When combined with {@link #fairStreamScheduling(int)}, streams are scheduled fairly within
+   * each lane.
+   *
+   * <p>By default this is not set in which case frames are sent in the order they are produced.
+   *
+   * @param defaultLane the lane of requests without a priority class and of all other frames
+   * @param drainQuotas the number of frames each lane may send per turn, starting with the control
+   *     lane
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector priorityLanes(int defaultLane, int... drainQuotas) {
+    PriorityFrameQueue.assertLanes(drainQuotas, defaultLane);
+    this.laneDrainQuotas = drainQuotas.clone();
+    this.defaultLane = defaultLane;
+    return this;
+  }
+
+  /**
+   * When this is set, outbound {@code REQUEST_N} grants for the same stream are merged while the
+   * previous {@code REQUEST_N} frame of the stream is still queued, so each stream sends at most
+   * one {@code REQUEST_N} frame per drain of the send queue. Grants smaller than {@code
+   * minCreditBatch} are accumulated until they add up to {@code minCreditBatch}, but are sent as
+   * soon as the peer has no credit left for the stream. Use {@code 1} to merge queued grants
+   * only. The number of frames saved is exposed through {@link SendQueueAware}.
+   *
+   * <p>By default this is not set in which case every grant is sent in its own frame.
+   *
+   * @param minCreditBatch the minimum credit per {@code REQUEST_N} frame while the peer has credit
+   *     left, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector requestNCoalescing(int minCreditBatch) {
+    this.requestNMinCreditBatch = RequestNCoalescer.assertMinCreditBatch(minCreditBatch);
+    return this;
+  }
+
+  /**
+   * When this is set, the responder of the connection serves at most the given number of streams
+   * requested by the server at a time. Requests beyond that are answered right away with a {@code
+   * REJECTED} error frame, without decoding their payload or invoking the handler, and
+   * fire-and-forget requests are dropped. A stream counts until the publisher returned by the
+   * handler terminates. The current number of streams is exposed through {@link
+   * ConcurrentStreamsAware}.
+   *
+   * <p>By default this is not set in which case the number of streams is not limited.
+   *
+   * @param maxConcurrentStreams the maximum number of concurrent streams, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector maxConcurrentStreams(int maxConcurrentStreams) {
+    this.maxConcurrentStreams =
+        ConcurrentStreamLimiter.assertMaxConcurrentStreams(maxConcurrentStreams);
+    return this;
+  }
+
+  /**
+   * Registers a consumer that is handed the {@link ConnectionMetrics} of every connection the
+   * connector establishes, right after the connection is set up and before any interceptor is
+   * applied. It exposes the send queue, the concurrent streams and the reassembly of the connection
+   * regardless of how the {@link RSocket} is wrapped. Its {@link ConnectionMetrics#onClose()}
+   * completes when the connection is closed. See {@code MicrometerConnectionMetrics} in {@code
+   * rsocket-micrometer} for a consumer that publishes them as meters.
+   *
+   * <p>By default this is not set.
+   *
+   * @param consumer the consumer of the metrics of each connection
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketConnector connectionMetrics(Consumer<? super ConnectionMetrics> consumer) {
+    this.connectionMetrics = Objects.requireNonNull(consumer, "consumer must not be null");
+    return this;
+  }
+
   /**
    * Configure the {@code PayloadDecoder} used to create {@link Payload}'s from incoming raw frame
    * buffers. The following decoders are available:
@@ -474,6 +709,10 @@ public RSocketConnector fragment(int mtu) {
    *   <li>{@link PayloadDecoder#ZERO_COPY} -- the data and metadata are retained slices of the
    *       underlying {@link ByteBuf}. That's more efficient but requires careful tracking and
    *       {@link Payload#release() release} of the payload when no longer needed.
+   *   <li>{@link PayloadDecoder#POOLED} -- like {@link PayloadDecoder#ZERO_COPY}, but the payload
+   *       and its slices are taken from thread-local pools and returned to them on release, so
+   *       that high-throughput streams do not allocate an object per element. Releasing the
+   *       payload is mandatory, and it must not be used after being released.
    * </ul>
    *
    * <p>By default this is set to {@link PayloadDecoder#DEFAULT} in which case data and metadata are
@@ -519,6 +758,31 @@ public RSocketClient toRSocketClient(ClientTransport transport) {
     return new DefaultRSocketClient(source);
   }
 
+  /**
+   * Variant of {@link #toRSocketClient(ClientTransport)} that keeps up to {@code connections}
+   * connections to the target, each one established the same way as the single connection of
+   * {@link #toRSocketClient(ClientTransport)}, and sends every request over the connection with the
+   * fewest requests in flight. This spreads the framing of the requests over several event loops,
+   * where a single connection is bound to one.
+   *
+   * <p>Connections are established lazily and, with {@link #reconnect(Retry) reconnect}, each one
+   * is re-established on its own without affecting the requests on the others. Between connections
+   * with as many requests in flight, an established one is preferred.
+   *
+   * @param transport the transport of choice to connect with
+   * @param connections the number of connections, must be greater than 0
+   * @return a {@code RSocketClient} with no established connection yet
+   * @since 1.1
+   */
+  public RSocketClient toRSocketClient(ClientTransport transport, int connections) {
+    return new LeastPendingRSocketClient(
+        () -> {
+          Mono<RSocket> source = connect0(() -> transport);
+          return retrySpec != null ? source.retryWhen(retrySpec) : source;
+        },
+        connections);
+  }
+
   /**
    * Connect with the given transport and obtain a live {@link RSocket} to use for making requests.
    * Each subscriber to the returned {@code Mono} receives a new connection, if neither {@link
@@ -570,33 +834,34 @@ private Mono<RSocket> connect0(Supplier<ClientTransport> transportSupplier) {
             ct -> {
               int maxFrameLength = ct.maxFrameLength();
 
-              Mono<DuplexConnection> connectionMono =
+              Mono<DuplexConnection> rawConnectionMono =
                   Mono.fromCallable(
                           () -> {
                             assertValidateSetup(maxFrameLength, maxInboundPayloadSize, mtu);
                             return ct;
                           })
-                      .flatMap(transport -> transport.connect())
-                      .map(
-                          connection ->
-                              mtu > 0
-                                  ? new FragmentationDuplexConnection(
-                                      connection, mtu, maxInboundPayloadSize, "client")
-                                  : new ReassemblyDuplexConnection(
-                                      connection, maxInboundPayloadSize));
-
-              return connectionMono
+                      .flatMap(transport -> transport.connect());
+
+              Mono<DuplexConnection> connectionMono = rawConnectionMono.map(this::wrapConnection);
+
+              return rawConnectionMono
                   .flatMap(
-                      connection ->
-                          setupPayloadMono
-                              .defaultIfEmpty(EmptyPayload.INSTANCE)
-                              .map(setupPayload -> Tuples.of(connection, setupPayload))
-                              .doOnError(ex -> connection.dispose())
-                              .doOnCancel(connection::dispose))
+                      rawConnection -> {
+                        DuplexConnection connection = wrapConnection(rawConnection);
+                        Scheduler serialScheduler = serialScheduler(rawConnection);
+                        return setupPayloadMono
+                            .defaultIfEmpty(EmptyPayload.INSTANCE)
+                            .map(
+                                setupPayload ->
+                                    Tuples.of(connection, setupPayload, serialScheduler))
+                            .doOnError(ex -> connection.dispose())
+                            .doOnCancel(connection::dispose);
+                      })
                   .flatMap(
                       tuple -> {
                         DuplexConnection connection = tuple.getT1();
                         Payload setupPayload = tuple.getT2();
+                        Scheduler serialScheduler = tuple.getT3();
                         ByteBuf resumeToken;
                         KeepAliveHandler keepAliveHandler;
                         DuplexConnection wrappedConnection;
@@ -634,7 +899,17 @@ private Mono<RSocket> connect0(Supplier<ClientTransport> transportSupplier) {
                                 ? new RequesterLeaseHandler.Impl(CLIENT_TAG, leases.receiver())
                                 : RequesterLeaseHandler.None;
 
-                        RSocket rSocketRequester =
+                        ConnectionOptions options =
+                            new ConnectionOptions()
+                                .sendQueueWatermarks(sendQueueWatermarks())
+                                .sendQueue(this::sendQueue)
+                                .requestNCoalescer(requestNCoalescer())
+                                .streamLimiter(streamLimiter())
+                                .metadataMimeType(metadataMimeType)
+                                .streamingReassembly(streamingConnection(connection))
+                                .reassemblyBudget(reassemblyBudget(connection));
+
+                        RSocketRequester rSocketRequester =
                             new RSocketRequester(
                                 multiplexer.asClientConnection(),
                                 payloadDecoder,
@@ -645,7 +920,12 @@ private Mono<RSocket> connect0(Supplier<ClientTransport> transportSupplier) {
                                 (int) keepAliveMaxLifeTime.toMillis(),
                                 keepAliveHandler,
                                 requesterLeaseHandler,
-                                Schedulers.single(Schedulers.parallel()));
+                                serialScheduler,
+                                options);
+
+                        if (connectionMetrics != null) {
+                          connectionMetrics.accept(rSocketRequester);
+                        }
 
                         RSocket wrappedRSocketRequester =
                             interceptors.initRequester(rSocketRequester);
@@ -693,7 +973,8 @@ private Mono<RSocket> connect0(Supplier<ClientTransport> transportSupplier) {
                                           payloadDecoder,
                                           responderLeaseHandler,
                                           mtu,
-                                          maxFrameLength);
+                                          maxFrameLength,
+                                          options);
 
                                   return wrappedConnection
                                       .sendOne(setupFrame.retain())
@@ -703,4 +984,69 @@ private Mono<RSocket> connect0(Supplier<ClientTransport> transportSupplier) {
                       });
             });
   }
+
+  private DuplexConnection wrapConnection(DuplexConnection connection) {
+    boolean streaming = streamingReassembly && resume == null;
+    ReassemblyBudget budget =
+        maxReassemblyBytes > 0 && resume == null
+            ? new ReassemblyBudget(maxReassemblyBytes, null)
+            : null;
+    FragmentationOptions options =
+        new FragmentationOptions()
+            .maxFragmentBurst(maxFragmentBurst)
+            .streaming(streaming)
+            .reassemblyBudget(budget);
+    return mtu > 0
+        ? new FragmentationDuplexConnection(
+            connection, mtu, maxInboundPayloadSize, options, "client")
+        : new ReassemblyDuplexConnection(connection, maxInboundPayloadSize, options);
+  }
+
+  @Nullable
+  private static ReassemblyDuplexConnection streamingConnection(DuplexConnection connection) {
+    return connection instanceof ReassemblyDuplexConnection
+            && ((ReassemblyDuplexConnection) connection).isStreaming()
+        ? (ReassemblyDuplexConnection) connection
+        : null;
+  }
+
+  @Nullable
+  private static ReassemblyBudget reassemblyBudget(DuplexConnection connection) {
+    return connection instanceof ReassemblyDuplexConnection
+        ? ((ReassemblyDuplexConnection) connection).reassemblyBudget()
+        : null;
+  }
+
+  private Scheduler serialScheduler(DuplexConnection connection) {
+    return eventLoopAffinity
+        ? ConnectionSerialScheduler.forConnection(connection)
+        : Schedulers.single(Schedulers.parallel());
+  }
+
+  private SendQueueWatermarks sendQueueWatermarks() {
+    return sendQueueHighWatermark > 0
+        ? new SendQueueWatermarks(sendQueueLowWatermark, sendQueueHighWatermark)
+        : new SendQueueWatermarks();
+  }
+
+  private Queue<ByteBuf> sendQueue() {
+    if (laneDrainQuotas != null) {
+      return new PriorityFrameQueue(laneDrainQuotas, defaultLane, fairSchedulingQuantum);
+    }
+    return fairSchedulingQuantum > 0
+        ? new FairFrameQueue(fairSchedulingQuantum)
+        : new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+  }
+
+  @Nullable
+  private RequestNCoalescer requestNCoalescer() {
+    return requestNMinCreditBatch > 0 ? new RequestNCoalescer(requestNMinCreditBatch) : null;
+  }
+
+  @Nullable
+  private ConcurrentStreamLimiter streamLimiter() {
+    return maxConcurrentStreams > 0
+        ? new ConcurrentStreamLimiter(maxConcurrentStreams, null)
+        : null;
+  }
 }
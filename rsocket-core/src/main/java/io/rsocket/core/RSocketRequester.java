@@ -22,34 +22,41 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
-import io.netty.util.collection.IntObjectMap;
 import io.rsocket.DuplexConnection;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
 import io.rsocket.exceptions.ConnectionErrorException;
 import io.rsocket.exceptions.Exceptions;
+import io.rsocket.exceptions.RejectedException;
 import io.rsocket.frame.CancelFrameCodec;
 import io.rsocket.frame.ErrorFrameCodec;
-import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameHeader;
 import io.rsocket.frame.FrameType;
-import io.rsocket.frame.MetadataPushFrameCodec;
 import io.rsocket.frame.PayloadFrameCodec;
 import io.rsocket.frame.RequestChannelFrameCodec;
-import io.rsocket.frame.RequestFireAndForgetFrameCodec;
 import io.rsocket.frame.RequestNFrameCodec;
-import io.rsocket.frame.RequestResponseFrameCodec;
 import io.rsocket.frame.RequestStreamFrameCodec;
+import io.rsocket.fragmentation.ReassemblyDuplexConnection;
 import io.rsocket.frame.decoder.PayloadDecoder;
-import io.rsocket.internal.SynchronizedIntObjectHashMap;
+import io.rsocket.internal.ConcurrentIntObjectHashMap;
+import io.rsocket.internal.ConcurrentStreamLimiter;
+import io.rsocket.internal.ReassemblyBudget;
+import io.rsocket.internal.RequestNCoalescer;
+import io.rsocket.internal.SendQueueWatermarks;
 import io.rsocket.internal.UnboundedProcessor;
 import io.rsocket.keepalive.KeepAliveFramesAcceptor;
 import io.rsocket.keepalive.KeepAliveHandler;
 import io.rsocket.keepalive.KeepAliveSupport;
 import io.rsocket.lease.RequesterLeaseHandler;
+import io.rsocket.metadata.DeadlineMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
 import java.nio.channels.ClosedChannelException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
@@ -69,15 +76,18 @@
 import reactor.core.publisher.UnicastProcessor;
 import reactor.core.scheduler.Scheduler;
 import reactor.util.annotation.Nullable;
-import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+import reactor.util.function.Tuple2;
 
 /**
  * Requester Side of a RSocket socket. Sends {@link ByteBuf}s to a {@link RSocketResponder} of peer
  */
-class RSocketRequester implements RSocket {
+class RSocketRequester implements RSocket, ConnectionMetrics {
   private static final Logger LOGGER = LoggerFactory.getLogger(RSocketRequester.class);
 
   private static final Exception CLOSED_CHANNEL_EXCEPTION = new ClosedChannelException();
+  static final RejectedException SEND_QUEUE_FULL_EXCEPTION =
+      new RejectedException("Send queue is above its high watermark");
   private static final Consumer<ReferenceCounted> DROPPED_ELEMENTS_CONSUMER =
       referenceCounted -> {
         if (referenceCounted.refCnt() > 0) {
@@ -91,9 +101,10 @@ class RSocketRequester implements RSocket {
 
   static {
     CLOSED_CHANNEL_EXCEPTION.setStackTrace(new StackTraceElement[0]);
+    SEND_QUEUE_FULL_EXCEPTION.setStackTrace(new StackTraceElement[0]);
   }
 
-  private volatile Throwable terminationError;
+  volatile Throwable terminationError;
 
   private static final AtomicReferenceFieldUpdater<RSocketRequester, Throwable> TERMINATION_ERROR =
       AtomicReferenceFieldUpdater.newUpdater(
@@ -101,17 +112,24 @@ class RSocketRequester implements RSocket {
 
   private final DuplexConnection connection;
   private final PayloadDecoder payloadDecoder;
-  private final StreamIdSupplier streamIdSupplier;
-  private final IntObjectMap<Subscription> senders;
-  private final IntObjectMap<Processor<Payload, Payload>> receivers;
-  private final UnboundedProcessor<ByteBuf> sendProcessor;
-  private final int mtu;
-  private final int maxFrameLength;
-  private final RequesterLeaseHandler leaseHandler;
-  private final ByteBufAllocator allocator;
+  private final FrameHeader frameHeader = new FrameHeader();
+  final StreamIdSupplier streamIdSupplier;
+  private final ConcurrentIntObjectHashMap<Subscription> senders;
+  final ConcurrentIntObjectHashMap<Processor<Payload, Payload>> receivers;
+  final UnboundedProcessor<ByteBuf> sendProcessor;
+  final SendQueueWatermarks sendQueueWatermarks;
+  @Nullable final RequestNCoalescer requestNCoalescer;
+  @Nullable private final ConcurrentStreamLimiter responderStreamLimiter;
+  @Nullable private final ReassemblyDuplexConnection streamingReassembly;
+  @Nullable private final ReassemblyBudget reassemblyBudget;
+  private final boolean compositeMetadata;
+  final int mtu;
+  final int maxFrameLength;
+  final RequesterLeaseHandler leaseHandler;
+  final ByteBufAllocator allocator;
   private final KeepAliveFramesAcceptor keepAliveFramesAcceptor;
   private final MonoProcessor<Void> onClose;
-  private final Scheduler serialScheduler;
+  final Scheduler serialScheduler;
 
   RSocketRequester(
       DuplexConnection connection,
@@ -123,7 +141,8 @@ class RSocketRequester implements RSocket {
       int keepAliveAckTimeout,
       @Nullable KeepAliveHandler keepAliveHandler,
       RequesterLeaseHandler leaseHandler,
-      Scheduler serialScheduler) {
+      Scheduler serialScheduler,
+      ConnectionOptions options) {
     this.connection = connection;
     this.allocator = connection.alloc();
     this.payloadDecoder = payloadDecoder;
@@ -131,16 +150,30 @@ class RSocketRequester implements RSocket {
     this.mtu = mtu;
     this.maxFrameLength = maxFrameLength;
     this.leaseHandler = leaseHandler;
-    this.senders = new SynchronizedIntObjectHashMap<>();
-    this.receivers = new SynchronizedIntObjectHashMap<>();
+    this.senders = new ConcurrentIntObjectHashMap<>();
+    this.receivers = new ConcurrentIntObjectHashMap<>();
     this.onClose = MonoProcessor.create();
     this.serialScheduler = serialScheduler;
+    this.sendQueueWatermarks = options.getSendQueueWatermarks();
 
     // DO NOT Change the order here. The Send processor must be subscribed to before receiving
-    this.sendProcessor = new UnboundedProcessor<>();
+    this.sendProcessor = new UnboundedProcessor<>(options.newSendQueue(), sendQueueWatermarks);
+    this.requestNCoalescer = options.getRequestNCoalescer();
+    this.responderStreamLimiter = options.getStreamLimiter();
+    this.streamingReassembly = options.getStreamingReassembly();
+    this.reassemblyBudget = options.getReassemblyBudget();
+    this.compositeMetadata =
+        WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA
+            .getString()
+            .equals(options.getMetadataMimeType());
 
     connection.onClose().subscribe(null, this::tryTerminateOnConnectionError, this::tryShutdown);
-    connection.send(sendProcessor).subscribe(null, this::handleSendProcessorError);
+    connection
+        .send(
+            requestNCoalescer != null
+                ? sendProcessor.doOnNext(requestNCoalescer::onSend)
+                : sendProcessor)
+        .subscribe(null, this::handleSendProcessorError);
 
     connection.receive().subscribe(this::handleIncomingFrames, e -> {});
 
@@ -160,11 +193,26 @@ public Mono<Void> fireAndForget(Payload payload) {
     return handleFireAndForget(payload);
   }
 
+  @Override
+  public Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+    if (isDisposed()) {
+      final Throwable t = terminationError;
+      return Mono.error(t);
+    }
+
+    return new FireAndForgetManyRequesterMono(payloads, this);
+  }
+
   @Override
   public Mono<Payload> requestResponse(Payload payload) {
     return handleRequestResponse(payload);
   }
 
+  @Override
+  public Flux<Tuple2<Long, Payload>> requestResponseBatch(List<Payload> payloads) {
+    return handleRequestResponseBatch(payloads);
+  }
+
   @Override
   public Flux<Payload> requestStream(Payload payload) {
     return handleRequestStream(payload);
@@ -185,6 +233,46 @@ public double availability() {
     return Math.min(connection.availability(), leaseHandler.availability());
   }
 
+  @Override
+  public long sendQueueBytes() {
+    return sendQueueWatermarks.queuedBytes();
+  }
+
+  @Override
+  public boolean isSendQueueWritable() {
+    return sendQueueWatermarks.isWritable();
+  }
+
+  @Override
+  public long coalescedRequestNFrames() {
+    final RequestNCoalescer coalescer = this.requestNCoalescer;
+    return coalescer != null ? coalescer.coalescedFrames() : 0;
+  }
+
+  @Override
+  public int concurrentStreams() {
+    final ConcurrentStreamLimiter limiter = this.responderStreamLimiter;
+    return limiter != null ? limiter.activeStreams() : 0;
+  }
+
+  @Override
+  public long rejectedStreams() {
+    final ConcurrentStreamLimiter limiter = this.responderStreamLimiter;
+    return limiter != null ? limiter.rejectedStreams() : 0;
+  }
+
+  @Override
+  public long reassemblyBytes() {
+    final ReassemblyBudget budget = this.reassemblyBudget;
+    return budget != null ? budget.heldBytes() : 0;
+  }
+
+  @Override
+  public long reassemblyEvictions() {
+    final ReassemblyBudget budget = this.reassemblyBudget;
+    return budget != null ? budget.evictions() : 0;
+  }
+
   @Override
   public void dispose() {
     tryShutdown();
@@ -200,6 +288,40 @@ public Mono<Void> onClose() {
     return onClose;
   }
 
+  /**
+   * Appends the deadline of the request to the metadata of the payload, if the context of the
+   * request has one and the connection uses composite metadata. The given payload is released if a
+   * new one is returned. The payload was validated before the deadline was known, so with the
+   * deadline it is validated again.
+   *
+   * @return the payload to send, or {@code null} if it does not fit into a frame with the deadline
+   *     in which case it is released
+   */
+  @Nullable
+  Payload attachDeadline(Payload payload, Context context) {
+    if (!compositeMetadata) {
+      return payload;
+    }
+
+    final long remainingMillis = RequestDeadline.remainingMillis(context);
+    if (remainingMillis < 0) {
+      return payload;
+    }
+
+    final CompositeByteBuf metadata = allocator.compositeBuffer();
+    if (payload.hasMetadata()) {
+      metadata.addComponent(true, payload.metadata().retain());
+    }
+    DeadlineMetadataCodec.encodeAndAddDeadline(metadata, allocator, remainingMillis);
+    final Payload result = ByteBufPayload.create(payload.data().retain(), metadata);
+    payload.release();
+    if (!PayloadValidationUtils.isValid(mtu, result, maxFrameLength)) {
+      result.release();
+      return null;
+    }
+    return result;
+  }
+
   private Mono<Void> handleFireAndForget(Payload payload) {
     if (payload.refCnt() <= 0) {
       return Mono.error(new IllegalReferenceCountException());
@@ -216,37 +338,7 @@ private Mono<Void> handleFireAndForget(Payload payload) {
       return Mono.error(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
     }
 
-    final AtomicBoolean once = new AtomicBoolean();
-
-    return Mono.<Void>defer(
-            () -> {
-              if (once.getAndSet(true)) {
-                return Mono.error(
-                    new IllegalStateException("FireAndForgetMono allows only a single subscriber"));
-              }
-
-              if (isDisposed()) {
-                payload.release();
-                final Throwable t = terminationError;
-                return Mono.error(t);
-              }
-
-              RequesterLeaseHandler lh = leaseHandler;
-              if (!lh.useLease()) {
-                payload.release();
-                return Mono.error(lh.leaseError());
-              }
-
-              final int streamId = streamIdSupplier.nextStreamId(receivers);
-              final ByteBuf requestFrame =
-                  RequestFireAndForgetFrameCodec.encodeReleasingPayload(
-                      allocator, streamId, payload);
-
-              sendProcessor.onNext(requestFrame);
-
-              return Mono.empty();
-            })
-        .subscribeOn(serialScheduler);
+    return new FireAndForgetRequesterMono(payload, this);
   }
 
   private Mono<Payload> handleRequestResponse(final Payload payload) {
@@ -265,68 +357,49 @@ private Mono<Payload> handleRequestResponse(final Payload payload) {
       return Mono.error(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
     }
 
-    final UnboundedProcessor<ByteBuf> sendProcessor = this.sendProcessor;
-    final UnicastProcessor<Payload> receiver = UnicastProcessor.create(Queues.<Payload>one().get());
-    final AtomicBoolean once = new AtomicBoolean();
-
-    return Mono.defer(
-        () -> {
-          if (once.getAndSet(true)) {
-            return Mono.error(
-                new IllegalStateException("RequestResponseMono allows only a single subscriber"));
-          }
-
-          return receiver
-              .next()
-              .transform(
-                  Operators.<Payload, Payload>lift(
-                      (s, actual) ->
-                          new RequestOperator(actual) {
-
-                            @Override
-                            void hookOnFirstRequest(long n) {
-                              if (isDisposed()) {
-                                payload.release();
-                                final Throwable t = terminationError;
-                                receiver.onError(t);
-                                return;
-                              }
-
-                              RequesterLeaseHandler lh = leaseHandler;
-                              if (!lh.useLease()) {
-                                payload.release();
-                                receiver.onError(lh.leaseError());
-                                return;
-                              }
-
-                              int streamId = streamIdSupplier.nextStreamId(receivers);
-                              this.streamId = streamId;
+    return new RequestResponseRequesterMono(payload, this);
+  }
 
-                              ByteBuf requestResponseFrame =
-                                  RequestResponseFrameCodec.encodeReleasingPayload(
-                                      allocator, streamId, payload);
+  private Flux<Tuple2<Long, Payload>> handleRequestResponseBatch(final List<Payload> payloads) {
+    if (payloads.isEmpty()) {
+      return Flux.empty();
+    }
 
-                              receivers.put(streamId, receiver);
-                              sendProcessor.onNext(requestResponseFrame);
-                            }
+    Throwable error = null;
+    for (Payload payload : payloads) {
+      if (payload.refCnt() <= 0) {
+        error = new IllegalReferenceCountException();
+        break;
+      }
+      if (!PayloadValidationUtils.isValid(this.mtu, payload, maxFrameLength)) {
+        error = new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE);
+        break;
+      }
+    }
+    if (error == null && isDisposed()) {
+      error = terminationError;
+    }
+    if (error != null) {
+      RequestResponseBatch.releasePayloads(payloads, 0);
+      return Flux.error(error);
+    }
 
-                            @Override
-                            void hookOnCancel() {
-                              if (receivers.remove(streamId, receiver)) {
-                                sendProcessor.onNext(CancelFrameCodec.encode(allocator, streamId));
-                              } else {
-                                payload.release();
-                              }
-                            }
+    final AtomicBoolean once = new AtomicBoolean();
+    return Flux.<Tuple2<Long, Payload>>create(
+            sink -> {
+              if (once.getAndSet(true)) {
+                sink.error(
+                    new IllegalStateException(
+                        "RequestResponseBatchFlux allows only a single subscriber"));
+                return;
+              }
+              serialScheduler.schedule(new RequestResponseBatch(this, payloads, sink));
+            })
+        .doOnDiscard(Tuple2.class, RSocketRequester::releaseResponse);
+  }
 
-                            @Override
-                            public void hookOnTerminal(SignalType signalType) {
-                              receivers.remove(streamId, receiver);
-                            }
-                          }))
-              .subscribeOn(serialScheduler)
-              .doOnDiscard(ReferenceCounted.class, DROPPED_ELEMENTS_CONSUMER);
-        });
+  static void releaseResponse(Tuple2<?, ?> indexedResponse) {
+    DROPPED_ELEMENTS_CONSUMER.accept((ReferenceCounted) indexedResponse.getT2());
   }
 
   private Flux<Payload> handleRequestStream(final Payload payload) {
@@ -362,6 +435,8 @@ private Flux<Payload> handleRequestStream(final Payload payload) {
                       (s, actual) ->
                           new RequestOperator(actual) {
 
+                            RequestNCoalescer.Credit credit;
+
                             @Override
                             void hookOnFirstRequest(long n) {
                               if (isDisposed()) {
@@ -371,6 +446,12 @@ void hookOnFirstRequest(long n) {
                                 return;
                               }
 
+                              if (!sendQueueWatermarks.isWritable()) {
+                                payload.release();
+                                receiver.onError(SEND_QUEUE_FULL_EXCEPTION);
+                                return;
+                              }
+
                               RequesterLeaseHandler lh = leaseHandler;
                               if (!lh.useLease()) {
                                 payload.release();
@@ -378,16 +459,26 @@ void hookOnFirstRequest(long n) {
                                 return;
                               }
 
-                              int streamId = streamIdSupplier.nextStreamId(receivers);
+                              final Payload request = attachDeadline(payload, currentContext());
+                              if (request == null) {
+                                receiver.onError(
+                                    new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
+                                return;
+                              }
+
+                              int streamId = streamIdSupplier.nextStreamId();
                               this.streamId = streamId;
 
                               ByteBuf requestStreamFrame =
                                   RequestStreamFrameCodec.encodeReleasingPayload(
-                                      allocator, streamId, n, payload);
+                                      allocator, streamId, n, request);
 
                               receivers.put(streamId, receiver);
+                              credit = openCredit(streamId, n);
 
-                              sendProcessor.onNext(requestStreamFrame);
+                              sendProcessor.onNext(
+                                  requestStreamFrame,
+                                  RequestPriority.priorityClass(currentContext()));
                             }
 
                             @Override
@@ -396,13 +487,25 @@ void hookOnRemainingRequests(long n) {
                                 return;
                               }
 
-                              sendProcessor.onNext(
-                                  RequestNFrameCodec.encode(allocator, streamId, n));
+                              if (credit == null || credit.request(n)) {
+                                sendProcessor.onNext(
+                                    RequestNFrameCodec.encode(allocator, streamId, n));
+                              }
+                            }
+
+                            @Override
+                            public void onNext(Payload p) {
+                              if (credit != null && credit.onDelivered()) {
+                                sendProcessor.onNext(
+                                    RequestNFrameCodec.encode(allocator, streamId, 1));
+                              }
+                              super.onNext(p);
                             }
 
                             @Override
                             void hookOnCancel() {
-                              if (receivers.remove(streamId, receiver)) {
+                              closeCredit(streamId, credit);
+                              if (removeReceiver(streamId, receiver)) {
                                 sendProcessor.onNext(CancelFrameCodec.encode(allocator, streamId));
                               } else {
                                 payload.release();
@@ -411,7 +514,8 @@ void hookOnCancel() {
 
                             @Override
                             void hookOnTerminal(SignalType signalType) {
-                              receivers.remove(streamId);
+                              closeCredit(streamId, credit);
+                              removeReceiver(streamId);
                             }
                           }))
               .subscribeOn(serialScheduler, false)
@@ -460,6 +564,9 @@ private Flux<? extends Payload> handleChannel(Payload initialPayload, Flux<Paylo
                 (s, actual) ->
                     new RequestOperator(actual) {
 
+                      int priorityClass = -1;
+                      RequestNCoalescer.Credit credit;
+
                       final BaseSubscriber<Payload> upstreamSubscriber =
                           new BaseSubscriber<Payload>() {
 
@@ -496,19 +603,19 @@ protected void hookOnNext(Payload payload) {
                                   PayloadFrameCodec.encodeNextReleasingPayload(
                                       allocator, streamId, payload);
 
-                              sendProcessor.onNext(frame);
+                              sendProcessor.onNext(frame, priorityClass);
                             }
 
                             @Override
                             protected void hookOnComplete() {
                               ByteBuf frame = PayloadFrameCodec.encodeComplete(allocator, streamId);
-                              sendProcessor.onNext(frame);
+                              sendProcessor.onNext(frame, priorityClass);
                             }
 
                             @Override
                             protected void hookOnError(Throwable t) {
                               ByteBuf frame = ErrorFrameCodec.encode(allocator, streamId, t);
-                              sendProcessor.onNext(frame);
+                              sendProcessor.onNext(frame, priorityClass);
                               receiver.onError(t);
                             }
 
@@ -528,6 +635,13 @@ void hookOnFirstRequest(long n) {
                           return;
                         }
 
+                        if (!sendQueueWatermarks.isWritable()) {
+                          initialPayload.release();
+                          upstreamSubscriber.cancel();
+                          receiver.onError(SEND_QUEUE_FULL_EXCEPTION);
+                          return;
+                        }
+
                         RequesterLeaseHandler lh = leaseHandler;
                         if (!lh.useLease()) {
                           initialPayload.release();
@@ -535,21 +649,30 @@ void hookOnFirstRequest(long n) {
                           return;
                         }
 
-                        final int streamId = streamIdSupplier.nextStreamId(receivers);
+                        final Payload request = attachDeadline(initialPayload, currentContext());
+                        if (request == null) {
+                          receiver.onError(
+                              new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
+                          return;
+                        }
+
+                        final int streamId = streamIdSupplier.nextStreamId();
                         this.streamId = streamId;
+                        this.priorityClass = RequestPriority.priorityClass(currentContext());
 
                         final ByteBuf frame =
                             RequestChannelFrameCodec.encodeReleasingPayload(
-                                allocator, streamId, false, n, initialPayload);
+                                allocator, streamId, false, n, request);
 
                         senders.put(streamId, upstreamSubscriber);
                         receivers.put(streamId, receiver);
+                        credit = openCredit(streamId, n);
 
                         inboundFlux
                             .doOnDiscard(ReferenceCounted.class, DROPPED_ELEMENTS_CONSUMER)
                             .subscribe(upstreamSubscriber);
 
-                        sendProcessor.onNext(frame);
+                        sendProcessor.onNext(frame, priorityClass);
                       }
 
                       @Override
@@ -558,13 +681,24 @@ void hookOnRemainingRequests(long n) {
                           return;
                         }
 
-                        sendProcessor.onNext(RequestNFrameCodec.encode(allocator, streamId, n));
+                        if (credit == null || credit.request(n)) {
+                          sendProcessor.onNext(RequestNFrameCodec.encode(allocator, streamId, n));
+                        }
+                      }
+
+                      @Override
+                      public void onNext(Payload p) {
+                        if (credit != null && credit.onDelivered()) {
+                          sendProcessor.onNext(RequestNFrameCodec.encode(allocator, streamId, 1));
+                        }
+                        super.onNext(p);
                       }
 
                       @Override
                       void hookOnCancel() {
+                        closeCredit(streamId, credit);
                         senders.remove(streamId, upstreamSubscriber);
-                        if (receivers.remove(streamId, receiver)) {
+                        if (removeReceiver(streamId, receiver)) {
                           sendProcessor.onNext(CancelFrameCodec.encode(allocator, streamId));
                         }
                       }
@@ -574,7 +708,8 @@ void hookOnTerminal(SignalType signalType) {
                         if (signalType == SignalType.ON_ERROR) {
                           upstreamSubscriber.cancel();
                         }
-                        receivers.remove(streamId, receiver);
+                        closeCredit(streamId, credit);
+                        removeReceiver(streamId, receiver);
                       }
 
                       @Override
@@ -602,38 +737,24 @@ private Mono<Void> handleMetadataPush(Payload payload) {
       return Mono.error(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
     }
 
-    final AtomicBoolean once = new AtomicBoolean();
-
-    return Mono.defer(
-        () -> {
-          if (once.getAndSet(true)) {
-            return Mono.error(
-                new IllegalStateException("MetadataPushMono allows only a single subscriber"));
-          }
-
-          if (isDisposed()) {
-            payload.release();
-            final Throwable t = terminationError;
-            return Mono.error(t);
-          }
-
-          ByteBuf metadataPushFrame =
-              MetadataPushFrameCodec.encodeReleasingPayload(allocator, payload);
-
-          sendProcessor.onNextPrioritized(metadataPushFrame);
-
-          return Mono.empty();
-        });
+    return new MetadataPushRequesterMono(payload, this);
   }
 
   private void handleIncomingFrames(ByteBuf frame) {
     try {
-      int streamId = FrameHeaderCodec.streamId(frame);
-      FrameType type = FrameHeaderCodec.frameType(frame);
+      // parsed once for dispatching and decoding the frame
+      FrameHeader header = frameHeader.wrap(frame);
+      int streamId = header.streamId();
+      FrameType type = header.frameType();
       if (streamId == 0) {
         handleStreamZero(type, frame);
       } else {
+        boolean follows = header.hasFollows();
         handleFrame(streamId, type, frame);
+        if (follows && streamingReassembly != null) {
+          // the data that follows a payload that has not been handed on is not received
+          streamingReassembly.discardPayload(streamId);
+        }
       }
       frame.release();
     } catch (Throwable t) {
@@ -671,14 +792,14 @@ private void handleFrame(int streamId, FrameType type, ByteBuf frame) {
           handleMissingResponseProcessor(streamId, type, frame);
           return;
         }
-        receiver.onNext(payloadDecoder.apply(frame));
+        receiver.onNext(decode(streamId, frame));
         break;
       case NEXT_COMPLETE:
         if (receiver == null) {
           handleMissingResponseProcessor(streamId, type, frame);
           return;
         }
-        receiver.onNext(payloadDecoder.apply(frame));
+        receiver.onNext(decode(streamId, frame));
         receiver.onComplete();
         break;
       case COMPLETE:
@@ -687,7 +808,7 @@ private void handleFrame(int streamId, FrameType type, ByteBuf frame) {
           return;
         }
         receiver.onComplete();
-        receivers.remove(streamId);
+        removeReceiver(streamId);
         break;
       case ERROR:
         if (receiver == null) {
@@ -710,7 +831,7 @@ private void handleFrame(int streamId, FrameType type, ByteBuf frame) {
           }
         }
 
-        receivers.remove(streamId);
+        removeReceiver(streamId);
         break;
       case CANCEL:
         {
@@ -725,7 +846,7 @@ private void handleFrame(int streamId, FrameType type, ByteBuf frame) {
           Subscription sender = senders.get(streamId);
           if (sender != null) {
             long n = RequestNFrameCodec.requestN(frame);
-            sender.request(n);
+            requestWhenWritable(sender, n);
           }
           break;
         }
@@ -735,6 +856,66 @@ private void handleFrame(int streamId, FrameType type, ByteBuf frame) {
     }
   }
 
+  /**
+   * Decodes the payload of the frame, together with the data that follows it if the payload is
+   * reassembled incrementally.
+   */
+  private Payload decode(int streamId, ByteBuf frame) {
+    final Payload payload = payloadDecoder.apply(frame, frameHeader);
+    final ReassemblyDuplexConnection streamingReassembly = this.streamingReassembly;
+    if (streamingReassembly != null && frameHeader.hasFollows()) {
+      return streamingReassembly.claimPayload(streamId, payload);
+    }
+    return payload;
+  }
+
+  /**
+   * Forwards demand granted by the peer, deferring it while the send queue is above its high
+   * watermark so that the local producer stops emitting until the queue drains.
+   */
+  private void requestWhenWritable(Subscription subscription, long n) {
+    final SendQueueWatermarks watermarks = this.sendQueueWatermarks;
+    if (watermarks.isWritable()) {
+      subscription.request(n);
+    } else {
+      watermarks.whenWritable(() -> subscription.request(n));
+    }
+  }
+
+  /**
+   * Removes the given receiver of the stream and releases the stream id for reuse.
+   *
+   * @return {@code true} if the receiver was registered for the stream
+   */
+  boolean removeReceiver(int streamId, Processor<Payload, Payload> receiver) {
+    if (receivers.remove(streamId, receiver)) {
+      streamIdSupplier.release(streamId);
+      return true;
+    }
+    return false;
+  }
+
+  /** Removes any receiver of the stream and releases the stream id for reuse. */
+  void removeReceiver(int streamId) {
+    if (receivers.remove(streamId) != null) {
+      streamIdSupplier.release(streamId);
+    }
+  }
+
+  /** Starts tracking the credit of the stream if {@code REQUEST_N} coalescing is enabled. */
+  @Nullable
+  RequestNCoalescer.Credit openCredit(int streamId, long initialRequestN) {
+    final RequestNCoalescer coalescer = this.requestNCoalescer;
+    return coalescer != null ? coalescer.open(streamId, initialRequestN) : null;
+  }
+
+  void closeCredit(int streamId, @Nullable RequestNCoalescer.Credit credit) {
+    final RequestNCoalescer coalescer = this.requestNCoalescer;
+    if (coalescer != null && credit != null) {
+      coalescer.close(streamId, credit);
+    }
+  }
+
   private void handleMissingResponseProcessor(int streamId, FrameType type, ByteBuf frame) {
     if (!streamIdSupplier.isBeforeOrCurrent(streamId)) {
       if (type == FrameType.ERROR) {
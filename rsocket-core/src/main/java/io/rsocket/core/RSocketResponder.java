@@ -20,20 +20,32 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
-import io.netty.util.collection.IntObjectMap;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.rsocket.DuplexConnection;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
+import io.rsocket.exceptions.CanceledException;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.fragmentation.ReassemblyDuplexConnection;
 import io.rsocket.frame.*;
 import io.rsocket.frame.decoder.PayloadDecoder;
-import io.rsocket.internal.SynchronizedIntObjectHashMap;
+import io.rsocket.internal.ConcurrentIntObjectHashMap;
+import io.rsocket.internal.ConcurrentStreamLimiter;
+import io.rsocket.internal.RequestNCoalescer;
+import io.rsocket.internal.SendQueueWatermarks;
 import io.rsocket.internal.UnboundedProcessor;
 import io.rsocket.lease.ResponderLeaseHandler;
+import io.rsocket.metadata.DeadlineMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
 import java.nio.channels.ClosedChannelException;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
@@ -64,6 +76,10 @@ class RSocketResponder implements RSocket {
         }
       };
   private static final Exception CLOSED_CHANNEL_EXCEPTION = new ClosedChannelException();
+  private static final RejectedException STREAM_LIMIT_EXCEEDED_EXCEPTION =
+      new RejectedException("Maximum of concurrent streams exceeded");
+  private static final CanceledException DEADLINE_EXCEEDED_EXCEPTION =
+      new CanceledException("Deadline exceeded");
 
   private final DuplexConnection connection;
   private final RSocket requestHandler;
@@ -72,6 +88,7 @@ class RSocketResponder implements RSocket {
   private final io.rsocket.ResponderRSocket responderRSocket;
 
   private final PayloadDecoder payloadDecoder;
+  private final FrameHeader frameHeader = new FrameHeader();
   private final ResponderLeaseHandler leaseHandler;
   private final Disposable leaseHandlerDisposable;
 
@@ -83,10 +100,24 @@ class RSocketResponder implements RSocket {
   private final int mtu;
   private final int maxFrameLength;
 
-  private final IntObjectMap<Subscription> sendingSubscriptions;
-  private final IntObjectMap<Processor<Payload, Payload>> channelProcessors;
+  private final ConcurrentIntObjectHashMap<Subscription> sendingSubscriptions;
+  private final ConcurrentIntObjectHashMap<Processor<Payload, Payload>> channelProcessors;
 
   private final UnboundedProcessor<ByteBuf> sendProcessor;
+  private final SendQueueWatermarks sendQueueWatermarks;
+  @Nullable private final RequestNCoalescer requestNCoalescer;
+  @Nullable private final Bulkheads bulkheads;
+  @Nullable private final String metadataMimeType;
+  @Nullable private final ConcurrentStreamLimiter streamLimiter;
+  @Nullable private final ReassemblyDuplexConnection streamingReassembly;
+  @Nullable private final Consumer<SignalType> releaseStream;
+  private final boolean compositeMetadata;
+  /** Streams cancelled by their deadline whose outbound frames other than the ERROR are dropped. */
+  @Nullable private final ConcurrentIntObjectHashMap<ExpiredStream> expiredStreams;
+
+  private volatile int expiredStreamCount;
+  private static final AtomicIntegerFieldUpdater<RSocketResponder> EXPIRED_STREAM_COUNT =
+      AtomicIntegerFieldUpdater.newUpdater(RSocketResponder.class, "expiredStreamCount");
   private final ByteBufAllocator allocator;
 
   RSocketResponder(
@@ -95,7 +126,8 @@ class RSocketResponder implements RSocket {
       PayloadDecoder payloadDecoder,
       ResponderLeaseHandler leaseHandler,
       int mtu,
-      int maxFrameLength) {
+      int maxFrameLength,
+      ConnectionOptions options) {
     this.connection = connection;
     this.allocator = connection.alloc();
     this.mtu = mtu;
@@ -109,14 +141,32 @@ class RSocketResponder implements RSocket {
 
     this.payloadDecoder = payloadDecoder;
     this.leaseHandler = leaseHandler;
-    this.sendingSubscriptions = new SynchronizedIntObjectHashMap<>();
-    this.channelProcessors = new SynchronizedIntObjectHashMap<>();
+    this.bulkheads = options.getBulkheads();
+    this.metadataMimeType = options.getMetadataMimeType();
+    final ConcurrentStreamLimiter streamLimiter = options.getStreamLimiter();
+    this.streamLimiter = streamLimiter;
+    this.streamingReassembly = options.getStreamingReassembly();
+    this.releaseStream = streamLimiter != null ? signalType -> streamLimiter.release() : null;
+    this.compositeMetadata =
+        WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString().equals(metadataMimeType);
+    this.expiredStreams = compositeMetadata ? new ConcurrentIntObjectHashMap<>() : null;
+    this.sendingSubscriptions = new ConcurrentIntObjectHashMap<>();
+    this.channelProcessors = new ConcurrentIntObjectHashMap<>();
 
     // DO NOT Change the order here. The Send processor must be subscribed to before receiving
     // connections
-    this.sendProcessor = new UnboundedProcessor<>();
+    this.sendQueueWatermarks = options.getSendQueueWatermarks();
+    this.sendProcessor = new UnboundedProcessor<>(options.newSendQueue(), sendQueueWatermarks);
+    this.requestNCoalescer = options.getRequestNCoalescer();
 
-    connection.send(sendProcessor).subscribe(null, this::handleSendProcessorError);
+    Flux<ByteBuf> outbound = sendProcessor;
+    if (requestNCoalescer != null) {
+      outbound = outbound.doOnNext(requestNCoalescer::onSend);
+    }
+    if (expiredStreams != null) {
+      outbound = outbound.filter(this::isSendable);
+    }
+    connection.send(outbound).subscribe(null, this::handleSendProcessorError);
 
     connection.receive().subscribe(this::handleFrame, e -> {});
     leaseHandlerDisposable = leaseHandler.send(sendProcessor::onNextPrioritized);
@@ -293,16 +343,61 @@ private synchronized void cleanUpChannelProcessors(Throwable e) {
   }
 
   private void handleFrame(ByteBuf frame) {
+    // whether the frame holds a stream slot that is not yet released by the response
+    boolean holdsStream = false;
     try {
-      int streamId = FrameHeaderCodec.streamId(frame);
+      // parsed once for dispatching and decoding the frame
+      FrameHeader header = frameHeader.wrap(frame);
+      int streamId = header.streamId();
+      boolean follows = header.hasFollows();
       Subscriber<Payload> receiver;
-      FrameType frameType = FrameHeaderCodec.frameType(frame);
+      FrameType frameType = header.frameType();
+      if (streamLimiter != null && frameType.isRequestType()) {
+        if (!streamLimiter.tryAcquire()) {
+          // rejected before the payload is decoded
+          if (frameType != FrameType.REQUEST_FNF) {
+            handleError(streamId, STREAM_LIMIT_EXCEEDED_EXCEPTION);
+          }
+          if (follows && streamingReassembly != null) {
+            streamingReassembly.discardPayload(streamId);
+          }
+          ReferenceCountUtil.safeRelease(frame);
+          return;
+        }
+        holdsStream = true;
+      }
       switch (frameType) {
         case REQUEST_FNF:
-          handleFireAndForget(streamId, fireAndForget(payloadDecoder.apply(frame)));
+          Payload fnfPayload = decode(streamId, frame, header);
+          long fnfDeadline = deadline(fnfPayload);
+          Bulkheads.Bulkhead fnfBulkhead = bulkhead(frameType, fnfPayload);
+          holdsStream = false;
+          handleFireAndForget(
+              streamId,
+              limitStream(
+                  withDeadline(
+                      streamId,
+                      fnfDeadline,
+                      true,
+                      fnfBulkhead == null
+                          ? fireAndForget(fnfPayload)
+                          : fnfBulkhead.schedule(fnfPayload, this::fireAndForget))));
           break;
         case REQUEST_RESPONSE:
-          handleRequestResponse(streamId, requestResponse(payloadDecoder.apply(frame)));
+          Payload responsePayload = decode(streamId, frame, header);
+          long responseDeadline = deadline(responsePayload);
+          Bulkheads.Bulkhead responseBulkhead = bulkhead(frameType, responsePayload);
+          holdsStream = false;
+          handleRequestResponse(
+              streamId,
+              limitStream(
+                  withDeadline(
+                      streamId,
+                      responseDeadline,
+                      false,
+                      responseBulkhead == null
+                          ? requestResponse(responsePayload)
+                          : responseBulkhead.schedule(responsePayload, this::requestResponse))));
           break;
         case CANCEL:
           handleCancelFrame(streamId);
@@ -312,16 +407,30 @@ private void handleFrame(ByteBuf frame) {
           break;
         case REQUEST_STREAM:
           long streamInitialRequestN = RequestStreamFrameCodec.initialRequestN(frame);
-          Payload streamPayload = payloadDecoder.apply(frame);
-          handleStream(streamId, requestStream(streamPayload), streamInitialRequestN, null);
+          Payload streamPayload = decode(streamId, frame, header);
+          long streamDeadline = deadline(streamPayload);
+          Bulkheads.Bulkhead streamBulkhead = bulkhead(frameType, streamPayload);
+          holdsStream = false;
+          handleStream(
+              streamId,
+              limitStream(
+                  withDeadline(
+                      streamId,
+                      streamDeadline,
+                      streamBulkhead == null
+                          ? requestStream(streamPayload)
+                          : streamBulkhead.scheduleMany(streamPayload, this::requestStream))),
+              streamInitialRequestN,
+              null);
           break;
         case REQUEST_CHANNEL:
           long channelInitialRequestN = RequestChannelFrameCodec.initialRequestN(frame);
-          Payload channelPayload = payloadDecoder.apply(frame);
+          Payload channelPayload = decode(streamId, frame, header);
+          holdsStream = false;
           handleChannel(streamId, channelPayload, channelInitialRequestN);
           break;
         case METADATA_PUSH:
-          handleMetadataPush(metadataPush(payloadDecoder.apply(frame)));
+          handleMetadataPush(metadataPush(decode(streamId, frame, header)));
           break;
         case PAYLOAD:
           // TODO: Hook in receiving socket.
@@ -329,7 +438,7 @@ private void handleFrame(ByteBuf frame) {
         case NEXT:
           receiver = channelProcessors.get(streamId);
           if (receiver != null) {
-            receiver.onNext(payloadDecoder.apply(frame));
+            receiver.onNext(decode(streamId, frame, header));
           }
           break;
         case COMPLETE:
@@ -360,7 +469,7 @@ private void handleFrame(ByteBuf frame) {
         case NEXT_COMPLETE:
           receiver = channelProcessors.get(streamId);
           if (receiver != null) {
-            receiver.onNext(payloadDecoder.apply(frame));
+            receiver.onNext(decode(streamId, frame, header));
             receiver.onComplete();
           }
           break;
@@ -374,13 +483,191 @@ private void handleFrame(ByteBuf frame) {
               new IllegalStateException("ServerRSocket: Unexpected frame type: " + frameType));
           break;
       }
+      if (follows && streamingReassembly != null) {
+        // the data that follows a payload that has not been handed on is not received
+        streamingReassembly.discardPayload(streamId);
+      }
       ReferenceCountUtil.safeRelease(frame);
     } catch (Throwable t) {
+      if (holdsStream) {
+        // the request could not be decoded, e.g. its metadata length exceeds the frame
+        streamLimiter.release();
+        if (frameHeader.hasFollows() && streamingReassembly != null) {
+          streamingReassembly.discardPayload(frameHeader.streamId());
+        }
+      }
       ReferenceCountUtil.safeRelease(frame);
       throw Exceptions.propagate(t);
     }
   }
 
+  /**
+   * Decodes the payload of the frame, together with the data that follows it if the payload is
+   * reassembled incrementally.
+   */
+  private Payload decode(int streamId, ByteBuf frame, FrameHeader header) {
+    final Payload payload = payloadDecoder.apply(frame, header);
+    final ReassemblyDuplexConnection streamingReassembly = this.streamingReassembly;
+    if (streamingReassembly != null && header.hasFollows()) {
+      return streamingReassembly.claimPayload(streamId, payload);
+    }
+    return payload;
+  }
+
+  @Nullable
+  private Bulkheads.Bulkhead bulkhead(FrameType interactionType, Payload payload) {
+    final Bulkheads bulkheads = this.bulkheads;
+    return bulkheads != null ? bulkheads.select(interactionType, payload, metadataMimeType) : null;
+  }
+
+  /** Releases the stream from the concurrent stream limits once the response terminates. */
+  private <T> Mono<T> limitStream(Mono<T> response) {
+    final Consumer<SignalType> releaseStream = this.releaseStream;
+    return releaseStream != null ? response.doFinally(releaseStream) : response;
+  }
+
+  private <T> Flux<T> limitStream(Flux<T> response) {
+    final Consumer<SignalType> releaseStream = this.releaseStream;
+    return releaseStream != null ? response.doFinally(releaseStream) : response;
+  }
+
+  /**
+   * Returns the time left until the deadline of the request in milliseconds, or {@code -1} if it
+   * has none.
+   */
+  private long deadline(Payload payload) {
+    return compositeMetadata && payload.hasMetadata()
+        ? DeadlineMetadataCodec.findDeadline(payload.sliceMetadata())
+        : -1;
+  }
+
+  /** Cancels the response once the deadline of the request has passed. */
+  private <T> Mono<T> withDeadline(
+      int streamId, long deadline, boolean fireAndForget, Mono<T> response) {
+    if (deadline < 0) {
+      return response;
+    }
+    final Timeout timeout =
+        DeadlineTimer.TIMER.newTimeout(
+            t -> expireStream(streamId, fireAndForget), deadline, TimeUnit.MILLISECONDS);
+    return response.doFinally(signalType -> timeout.cancel());
+  }
+
+  private <T> Flux<T> withDeadline(int streamId, long deadline, Flux<T> response) {
+    if (deadline < 0) {
+      return response;
+    }
+    final Timeout timeout =
+        DeadlineTimer.TIMER.newTimeout(
+            t -> expireStream(streamId, false), deadline, TimeUnit.MILLISECONDS);
+    return response.doFinally(signalType -> timeout.cancel());
+  }
+
+  private void expireStream(int streamId, boolean fireAndForget) {
+    ExpiredStream expired = null;
+    if (!fireAndForget) {
+      // drop what the handler queued or still emits, except the ERROR frame that closes the stream
+      expired = new ExpiredStream();
+      expiredStreams.put(streamId, expired);
+      EXPIRED_STREAM_COUNT.incrementAndGet(this);
+    }
+
+    final Subscription subscription = sendingSubscriptions.remove(streamId);
+    final Processor<Payload, Payload> processor = channelProcessors.remove(streamId);
+    if (expired != null
+        && (subscription == null
+            || (subscription instanceof Disposable && ((Disposable) subscription).isDisposed()))) {
+      // the response has already terminated, so it will not emit anything else
+      forgetExpiredStream(streamId, expired, ExpiredStream.PENDING_ALL);
+    }
+    if (subscription == null && processor == null) {
+      // terminated in the meantime
+      return;
+    }
+
+    if (processor != null) {
+      try {
+        processor.onError(DEADLINE_EXCEEDED_EXCEPTION);
+      } catch (Exception e) {
+        // ignore
+      }
+    }
+
+    if (subscription != null) {
+      subscription.cancel();
+    }
+
+    if (!fireAndForget) {
+      handleError(streamId, DEADLINE_EXCEEDED_EXCEPTION);
+    }
+  }
+
+  private boolean isSendable(ByteBuf frame) {
+    if (expiredStreamCount == 0) {
+      return true;
+    }
+
+    final int streamId = FrameHeaderCodec.streamId(frame);
+    final ExpiredStream expired = expiredStreams.get(streamId);
+    if (expired == null) {
+      return true;
+    }
+
+    if (!expired.errorSent && FrameHeaderCodec.frameType(frame) == FrameType.ERROR) {
+      expired.errorSent = true;
+      forgetExpiredStream(streamId, expired, ExpiredStream.PENDING_ERROR);
+      return true;
+    }
+
+    ReferenceCountUtil.safeRelease(frame);
+    return false;
+  }
+
+  /** Called once the response of the given stream has terminated. */
+  private void onResponseTerminated(int streamId) {
+    if (expiredStreamCount == 0) {
+      return;
+    }
+
+    final ExpiredStream expired = expiredStreams.get(streamId);
+    if (expired != null) {
+      forgetExpiredStream(streamId, expired, ExpiredStream.PENDING_RESPONSE);
+    }
+  }
+
+  /**
+   * Clears the given pending bits of an expired stream and forgets the stream once its ERROR frame
+   * has been sent and its response has terminated.
+   */
+  private void forgetExpiredStream(int streamId, ExpiredStream expired, int done) {
+    for (; ; ) {
+      final int pending = expired.pending;
+      if ((pending & done) == 0) {
+        return;
+      }
+
+      if (ExpiredStream.PENDING.compareAndSet(expired, pending, pending & ~done)) {
+        if ((pending & ~done) == 0) {
+          expiredStreams.remove(streamId);
+          EXPIRED_STREAM_COUNT.decrementAndGet(this);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Sends a frame emitted by the response unless the response has been cancelled, e.g. once its
+   * deadline passed, while the frame was produced on another thread.
+   */
+  private void sendNext(Disposable response, ByteBuf frame) {
+    if (response.isDisposed()) {
+      ReferenceCountUtil.safeRelease(frame);
+      return;
+    }
+    sendProcessor.onNext(frame);
+  }
+
   private void handleFireAndForget(int streamId, Mono<Void> result) {
     result.subscribe(
         new BaseSubscriber<Void>() {
@@ -422,7 +709,7 @@ protected void hookOnNext(Payload payload) {
 
             ByteBuf byteBuf =
                 PayloadFrameCodec.encodeNextCompleteReleasingPayload(allocator, streamId, payload);
-            sendProcessor.onNext(byteBuf);
+            sendNext(this, byteBuf);
           }
 
           @Override
@@ -440,6 +727,11 @@ protected void hookOnComplete() {
               }
             }
           }
+
+          @Override
+          protected void hookFinally(SignalType type) {
+            onResponseTerminated(streamId);
+          }
         };
 
     sendingSubscriptions.put(streamId, subscriber);
@@ -456,7 +748,7 @@ private void handleStream(
 
           @Override
           protected void hookOnSubscribe(Subscription s) {
-            s.request(initialRequestN);
+            requestWhenWritable(s, initialRequestN);
           }
 
           @Override
@@ -473,7 +765,7 @@ protected void hookOnNext(Payload payload) {
 
               ByteBuf byteBuf =
                   PayloadFrameCodec.encodeNextReleasingPayload(allocator, streamId, payload);
-              sendProcessor.onNext(byteBuf);
+              sendNext(this, byteBuf);
             } catch (Throwable e) {
               cancelStream(e);
             }
@@ -530,6 +822,11 @@ protected void hookOnError(Throwable throwable) {
               handleError(streamId, throwable);
             }
           }
+
+          @Override
+          protected void hookFinally(SignalType type) {
+            onResponseTerminated(streamId);
+          }
         };
 
     sendingSubscriptions.put(streamId, subscriber);
@@ -540,8 +837,18 @@ private void handleChannel(int streamId, Payload payload, long initialRequestN)
     UnicastProcessor<Payload> frames = UnicastProcessor.create();
     channelProcessors.put(streamId, frames);
 
+    // the first payload came with the request frame
+    final RequestNCoalescer.Credit credit =
+        requestNCoalescer != null ? requestNCoalescer.open(streamId, 1) : null;
+
     Flux<Payload> payloads =
         frames
+            .doOnNext(
+                p -> {
+                  if (credit != null && credit.onDelivered()) {
+                    sendProcessor.onNext(RequestNFrameCodec.encode(allocator, streamId, 1));
+                  }
+                })
             .doOnRequest(
                 new LongConsumer() {
                   boolean first = true;
@@ -555,13 +862,16 @@ public void accept(long l) {
                     } else {
                       n = l;
                     }
-                    if (n > 0) {
+                    if (n > 0 && (credit == null || credit.request(n))) {
                       sendProcessor.onNext(RequestNFrameCodec.encode(allocator, streamId, n));
                     }
                   }
                 })
             .doFinally(
                 signalType -> {
+                  if (credit != null) {
+                    requestNCoalescer.close(streamId, credit);
+                  }
                   if (channelProcessors.remove(streamId, frames)) {
                     if (signalType == SignalType.CANCEL) {
                       sendProcessor.onNext(CancelFrameCodec.encode(allocator, streamId));
@@ -578,12 +888,21 @@ public void accept(long l) {
     // not chained, as the payload should be enqueued in the Unicast processor before this method
     // returns
     // and any later payload can be processed
+    final long deadline = deadline(payload);
     frames.onNext(payload);
 
     if (responderRSocket != null) {
-      handleStream(streamId, requestChannel(payload, payloads), initialRequestN, frames);
+      handleStream(
+          streamId,
+          limitStream(withDeadline(streamId, deadline, requestChannel(payload, payloads))),
+          initialRequestN,
+          frames);
     } else {
-      handleStream(streamId, requestChannel(payloads), initialRequestN, frames);
+      handleStream(
+          streamId,
+          limitStream(withDeadline(streamId, deadline, requestChannel(payloads))),
+          initialRequestN,
+          frames);
     }
   }
 
@@ -626,7 +945,41 @@ private void handleRequestN(int streamId, ByteBuf frame) {
 
     if (subscription != null) {
       long n = RequestNFrameCodec.requestN(frame);
+      requestWhenWritable(subscription, n);
+    }
+  }
+
+  /**
+   * Forwards demand granted by the peer, deferring it while the send queue is above its high
+   * watermark so that the responder stops emitting until the queue drains.
+   */
+  private void requestWhenWritable(Subscription subscription, long n) {
+    final SendQueueWatermarks watermarks = this.sendQueueWatermarks;
+    if (watermarks.isWritable()) {
       subscription.request(n);
+    } else {
+      watermarks.whenWritable(() -> subscription.request(n));
     }
   }
+
+  /** A stream cancelled by its deadline, remembered until nothing else can be sent on it. */
+  static final class ExpiredStream {
+    static final int PENDING_ERROR = 0b01;
+    static final int PENDING_RESPONSE = 0b10;
+    static final int PENDING_ALL = PENDING_ERROR | PENDING_RESPONSE;
+
+    volatile int pending = PENDING_ALL;
+    static final AtomicIntegerFieldUpdater<ExpiredStream> PENDING =
+        AtomicIntegerFieldUpdater.newUpdater(ExpiredStream.class, "pending");
+
+    /** Only accessed by the outbound flux. */
+    boolean errorSent;
+  }
+
+  /** Timer wheel shared by all responders to expire requests at their deadline. */
+  static final class DeadlineTimer {
+    static final HashedWheelTimer TIMER =
+        new HashedWheelTimer(
+            new DefaultThreadFactory("rsocket-deadline", true), 10, TimeUnit.MILLISECONDS);
+  }
 }
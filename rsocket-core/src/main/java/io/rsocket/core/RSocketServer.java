@@ -29,11 +29,20 @@
 import io.rsocket.exceptions.InvalidSetupException;
 import io.rsocket.exceptions.RejectedSetupException;
 import io.rsocket.fragmentation.FragmentationDuplexConnection;
+import io.rsocket.fragmentation.FragmentationOptions;
 import io.rsocket.fragmentation.ReassemblyDuplexConnection;
+import io.rsocket.fragmentation.StreamingPayload;
 import io.rsocket.frame.FrameHeaderCodec;
 import io.rsocket.frame.SetupFrameCodec;
 import io.rsocket.frame.decoder.PayloadDecoder;
 import io.rsocket.internal.ClientServerInputMultiplexer;
+import io.rsocket.internal.ConcurrentStreamLimiter;
+import io.rsocket.internal.FairFrameQueue;
+import io.rsocket.internal.PriorityFrameQueue;
+import io.rsocket.internal.ReassemblyBudget;
+import io.rsocket.internal.RequestNCoalescer;
+import io.rsocket.internal.SendQueueWatermarks;
+import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
 import io.rsocket.lease.Leases;
 import io.rsocket.lease.RequesterLeaseHandler;
 import io.rsocket.lease.ResponderLeaseHandler;
@@ -42,10 +51,14 @@
 import io.rsocket.resume.SessionManager;
 import io.rsocket.transport.ServerTransport;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
 
 /**
  * The main class for starting an RSocket server.
@@ -69,8 +82,23 @@ public final class RSocketServer {
   private Supplier<Leases<?>> leasesSupplier = null;
 
   private int mtu = 0;
+  private int maxFragmentBurst;
   private int maxInboundPayloadSize = Integer.MAX_VALUE;
+  private boolean streamingReassembly;
+  private long maxReassemblyBytesPerConnection;
+  @Nullable private ReassemblyBudget serverReassemblyBudget;
   private PayloadDecoder payloadDecoder = PayloadDecoder.DEFAULT;
+  private boolean eventLoopAffinity;
+  private int sendQueueLowWatermark;
+  private int sendQueueHighWatermark;
+  private int fairSchedulingQuantum;
+  private int[] laneDrainQuotas;
+  private int defaultLane;
+  private int requestNMinCreditBatch;
+  @Nullable private Bulkheads bulkheads;
+  private int maxConcurrentStreamsPerConnection;
+  @Nullable private ConcurrentStreamLimiter serverStreamLimiter;
+  @Nullable private Consumer<? super ConnectionMetrics> connectionMetrics;
 
   private RSocketServer() {}
 
@@ -241,6 +269,261 @@ public RSocketServer fragment(int mtu) {
     return this;
   }
 
+  /**
+   * When this is set together with {@link #fragment(int)}, the fragments of a large payload are
+   * interleaved with the frames of other streams, which the protocol allows, rather than sent back
+   * to back. At most {@code maxFragmentBurst} fragments of a payload are sent in a row before as
+   * many frames of other streams get their turn, and the fragments of payloads of different streams
+   * take turns, so that small requests and responses are not held up until the last fragment of a
+   * large payload has been sent. Frames of the same stream keep their order.
+   *
+   * <p>By default this is not set in which case all fragments of a payload are sent in a row.
+   *
+   * @param maxFragmentBurst the number of fragments sent in a row, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer interleaveFragments(int maxFragmentBurst) {
+    this.maxFragmentBurst = FragmentationDuplexConnection.assertMaxFragmentBurst(maxFragmentBurst);
+    return this;
+  }
+
+  /**
+   * When this is enabled, fragmented payloads are handed on as soon as their metadata is
+   * complete, as a {@link StreamingPayload} that emits the rest of the data as {@link
+   * StreamingPayload#chunks() chunks} while the fragments are received, rather than once the whole
+   * payload has been reassembled in memory. This applies to the requests received by the handler
+   * of the server as well as to the payloads it receives as a requester. Reading from the
+   * connection stops while the subscriber of the chunks of a payload does not keep up with them,
+   * which holds up the frames of the other streams of the connection too. {@link
+   * #maxInboundPayloadSize(int)} still limits the size of a payload.
+   *
+   * <p>By default this is not enabled in which case fragmented payloads are reassembled before
+   * they are handed on. Streaming reassembly is not applied to resumable connections.
+   *
+   * @param streamingReassembly whether to hand on fragmented payloads as they are received
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer streamingReassembly(boolean streamingReassembly) {
+    this.streamingReassembly = streamingReassembly;
+    return this;
+  }
+
+  /**
+   * When this is set, the bytes held by the payloads of a single connection that are being
+   * reassembled from fragments are limited to {@code perConnection}, and those of all connections
+   * of this server to {@code perServer}, in addition to the size of each payload being limited by
+   * {@link #maxInboundPayloadSize(int)}. When a fragment does not fit, the partial payloads of its
+   * connection are evicted in the order their first fragment was received until it does. This is
+   * also the case when the fragment does not fit into the budget of the server: the partial
+   * payloads of other connections are not evicted, so {@code perConnection} is what bounds the
+   * share of the server budget a single connection can hold. An evicted request of a client is
+   * answered with a {@code REJECTED} error frame, and an evicted response is cancelled and
+   * terminated locally with a {@link io.rsocket.exceptions.CanceledException}. The bytes held and
+   * the evictions of a connection are exposed through {@link ReassemblyAware}. Use {@link
+   * Long#MAX_VALUE} for a budget that should not apply.
+   *
+   * <p>By default this is not set in which case only the size of each payload is limited. The
+   * budget is not applied to resumable connections, nor together with {@link
+   * #streamingReassembly(boolean)}.
+   *
+   * @param perConnection the maximum number of bytes held in reassembly by a connection
+   * @param perServer the maximum number of bytes held in reassembly by all connections
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer maxReassemblyBytes(long perConnection, long perServer) {
+    this.maxReassemblyBytesPerConnection = ReassemblyBudget.assertMaxReassemblyBytes(perConnection);
+    this.serverReassemblyBudget =
+        perServer != Long.MAX_VALUE
+            ? new ReassemblyBudget(ReassemblyBudget.assertMaxReassemblyBytes(perServer), null)
+            : null;
+    return this;
+  }
+
+  /**
+   * When this is enabled, stream id allocation and frame emission for requests sent to clients run
+   * on the event loop of the accepted connection, for transports that expose one (e.g. TCP and
+   * WebSocket), or inline on the calling thread under a lock-free serial guard otherwise. This
+   * avoids the thread hop to a dedicated single threaded scheduler on every request.
+   *
+   * <p>By default this is not enabled in which case requests are serialized on a scheduler created
+   * with {@code Schedulers.single(Schedulers.parallel())}.
+   *
+   * @param eventLoopAffinity whether requests should run on the connection event loop
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer eventLoopAffinity(boolean eventLoopAffinity) {
+    this.eventLoopAffinity = eventLoopAffinity;
+    return this;
+  }
+
+  /**
+   * Bounds the number of bytes queued for sending on each connection, summed over the requester
+   * and responder sides. Frames only leave the queue while the transport can write, e.g. while the
+   * Netty channel is writable, so the queue fills up when the peer reads slowly.
+   *
+   * <p>Once the queued bytes exceed {@code highWatermark}, new requests fail with a {@link
+   * io.rsocket.exceptions.RejectedException RejectedException} and {@code REQUEST_N} grants from
+   * the peer are held back, so local publishers stop emitting, until the queued bytes drop to
+   * {@code lowWatermark}. The queued bytes are exposed through {@link SendQueueAware}.
+   *
+   * <p>By default this is not set in which case the send queue is unbounded.
+   *
+   * @param lowWatermark the number of queued bytes at which requests are accepted again
+   * @param highWatermark the number of queued bytes above which requests are rejected
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer sendQueueWatermarks(int lowWatermark, int highWatermark) {
+    SendQueueWatermarks.assertWatermarks(lowWatermark, highWatermark);
+    this.sendQueueLowWatermark = lowWatermark;
+    this.sendQueueHighWatermark = highWatermark;
+    return this;
+  }
+
+  /**
+   * When this is set, outbound frames are scheduled fairly across streams instead of in the order
+   * they were produced. Frames are queued per stream and streams take turns in deficit round robin
+   * order, each sending up to {@code quantum} bytes per turn, so a stream emitting a lot of data
+   * no longer delays small requests and responses behind it. Frames of the same stream keep their
+   * order, and connection level frames such as keep-alive and lease are still sent first.
+   *
+   * <p>By default this is not set in which case frames are sent in the order they are produced.
+   *
+   * @param quantum the number of bytes each stream may send per turn, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer fairStreamScheduling(int quantum) {
+    this.fairSchedulingQuantum = FairFrameQueue.assertQuantum(quantum);
+    return this;
+  }
+
+  /**
+   * When this is set, outbound frames are queued in priority lanes that take turns in weighted
+   * round robin order, each sending up to its drain quota of frames per turn. Lane {@code 0} is
+   * the control lane and carries {@code CANCEL}, {@code REQUEST_N} and {@code LEASE} frames, so
+   * that cancellation and flow control credit are no longer held up behind payload frames when
+   * the connection is saturated. Requests are queued in the lane given by their {@link
+   * RequestPriority}, or in {@code defaultLane}, together with the frames that follow them on the
+   * same stream. Connection level frames such as keep-alive are still sent first.
+   *
+   * <p>When combined with {@link #fairStreamScheduling(int)}, streams are scheduled fairly within
+   * each lane.
+   *
+   * <p>By default this is not set in which case frames are sent in the order they are produced.
+   *
+   * @param defaultLane the lane of requests without a priority class and of all other frames
+   * @param drainQuotas the number of frames each lane may send per turn, starting with the control
+   *     lane
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer priorityLanes(int defaultLane, int... drainQuotas) {
+    PriorityFrameQueue.assertLanes(drainQuotas, defaultLane);
+    this.laneDrainQuotas = drainQuotas.clone();
+    this.defaultLane = defaultLane;
+    return this;
+  }
+
+  /**
+   * When this is set, outbound {@code REQUEST_N} grants for the same stream are merged while the
+   * previous {@code REQUEST_N} frame of the stream is still queued, so each stream sends at most
+   * one {@code REQUEST_N} frame per drain of the send queue. Grants smaller than {@code
+   * minCreditBatch} are accumulated until they add up to {@code minCreditBatch}, but are sent as
+   * soon as the peer has no credit left for the stream. Use {@code 1} to merge queued grants
+   * only. The number of frames saved is exposed through {@link SendQueueAware}.
+   *
+   * <p>By default this is not set in which case every grant is sent in its own frame.
+   *
+   * @param minCreditBatch the minimum credit per {@code REQUEST_N} frame while the peer has credit
+   *     left, must be greater than 0
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer requestNCoalescing(int minCreditBatch) {
+    this.requestNMinCreditBatch = RequestNCoalescer.assertMinCreditBatch(minCreditBatch);
+    return this;
+  }
+
+  /**
+   * When this is set, requests are handled on the dedicated thread pools of the given {@link
+   * Bulkheads}, selected by interaction type or by route, rather than on the transport thread that
+   * received them. This keeps handlers that block from stalling other connections of the same event
+   * loop. A request whose bulkhead is full is rejected right away with a {@link
+   * io.rsocket.exceptions.RejectedException}. Request-channel is always handled on the transport
+   * thread.
+   *
+   * <p>By default this is not set in which case all requests are handled on the transport thread.
+   *
+   * <pre>{@code
+   * RSocketServer.create(acceptor)
+   *     .bulkheads(
+   *         Bulkheads.create()
+   *             .interaction(FrameType.REQUEST_RESPONSE, 16, 256)
+   *             .route("reports", 4, 32))
+   *     .bind(TcpServerTransport.create("localhost", 7000))
+   *     .block();
+   * }</pre>
+   *
+   * @param bulkheads the bulkheads to use, shared by all connections of the server
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer bulkheads(Bulkheads bulkheads) {
+    this.bulkheads = Objects.requireNonNull(bulkheads);
+    return this;
+  }
+
+  /**
+   * When this is set, the responders of the server serve at most {@code perConnection} streams
+   * requested by a single client, and at most {@code perServer} streams across all connections of
+   * this server, at a time. Requests beyond either limit are answered right away with a {@code
+   * REJECTED} error frame, without decoding their payload or invoking the handler, and
+   * fire-and-forget requests are dropped. A stream counts until the publisher returned by the
+   * handler terminates. The current number of streams of a connection is exposed through {@link
+   * ConcurrentStreamsAware}. Use {@link Integer#MAX_VALUE} for a limit that should not apply.
+   *
+   * <p>By default this is not set in which case the number of streams is not limited.
+   *
+   * @param perConnection the maximum number of concurrent streams of a connection
+   * @param perServer the maximum number of concurrent streams of all connections
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer maxConcurrentStreams(int perConnection, int perServer) {
+    this.maxConcurrentStreamsPerConnection =
+        ConcurrentStreamLimiter.assertMaxConcurrentStreams(perConnection);
+    this.serverStreamLimiter =
+        perServer != Integer.MAX_VALUE
+            ? new ConcurrentStreamLimiter(
+                ConcurrentStreamLimiter.assertMaxConcurrentStreams(perServer), null)
+            : null;
+    return this;
+  }
+
+  /**
+   * Registers a consumer that is handed the {@link ConnectionMetrics} of every connection the
+   * server accepts, right after the connection is set up and before any interceptor is applied. It
+   * exposes the send queue, the concurrent streams and the reassembly of the connection regardless
+   * of how the {@link RSocket} is wrapped. Its {@link ConnectionMetrics#onClose()} completes when
+   * the connection is closed. See {@code MicrometerConnectionMetrics} in {@code rsocket-micrometer}
+   * for a consumer that publishes them as meters.
+   *
+   * <p>By default this is not set.
+   *
+   * @param consumer the consumer of the metrics of each connection
+   * @return the same instance for method chaining
+   * @since 1.1
+   */
+  public RSocketServer connectionMetrics(Consumer<? super ConnectionMetrics> consumer) {
+    this.connectionMetrics = Objects.requireNonNull(consumer, "consumer must not be null");
+    return this;
+  }
+
   /**
    * Configure the {@code PayloadDecoder} used to create {@link Payload}'s from incoming raw frame
    * buffers. The following decoders are available:
@@ -251,6 +534,10 @@ public RSocketServer fragment(int mtu) {
    *   <li>{@link PayloadDecoder#ZERO_COPY} -- the data and metadata are retained slices of the
    *       underlying {@link ByteBuf}. That's more efficient but requires careful tracking and
    *       {@link Payload#release() release} of the payload when no longer needed.
+   *   <li>{@link PayloadDecoder#POOLED} -- like {@link PayloadDecoder#ZERO_COPY}, but the payload
+   *       and its slices are taken from thread-local pools and returned to them on release, so
+   *       that high-throughput streams do not allocate an object per element. Releasing the
+   *       payload is mandatory, and it must not be used after being released.
    * </ul>
    *
    * <p>By default this is set to {@link PayloadDecoder#DEFAULT} in which case data and metadata are
@@ -337,19 +624,43 @@ public Mono<Void> apply(DuplexConnection connection) {
 
   private Mono<Void> acceptor(
       ServerSetup serverSetup, DuplexConnection connection, int maxFrameLength) {
-    connection =
+    Scheduler serialScheduler =
+        eventLoopAffinity
+            ? ConnectionSerialScheduler.forConnection(connection)
+            : Schedulers.single(Schedulers.parallel());
+
+    boolean streaming = streamingReassembly && resume == null;
+    ReassemblyBudget reassemblyBudget = streaming ? null : reassemblyBudget();
+    FragmentationOptions fragmentationOptions =
+        new FragmentationOptions()
+            .maxFragmentBurst(maxFragmentBurst)
+            .streaming(streaming)
+            .reassemblyBudget(reassemblyBudget);
+    ReassemblyDuplexConnection reassemblyConnection =
         mtu > 0
-            ? new FragmentationDuplexConnection(connection, mtu, maxInboundPayloadSize, "server")
-            : new ReassemblyDuplexConnection(connection, maxInboundPayloadSize);
+            ? new FragmentationDuplexConnection(
+                connection, mtu, maxInboundPayloadSize, fragmentationOptions, "server")
+            : new ReassemblyDuplexConnection(
+                connection, maxInboundPayloadSize, fragmentationOptions);
+    ReassemblyDuplexConnection streamingConnection = streaming ? reassemblyConnection : null;
 
     ClientServerInputMultiplexer multiplexer =
-        new ClientServerInputMultiplexer(connection, interceptors, false);
+        new ClientServerInputMultiplexer(reassemblyConnection, interceptors, false);
 
     return multiplexer
         .asSetupConnection()
         .receive()
         .next()
-        .flatMap(startFrame -> accept(serverSetup, startFrame, multiplexer, maxFrameLength));
+        .flatMap(
+            startFrame ->
+                accept(
+                    serverSetup,
+                    startFrame,
+                    multiplexer,
+                    maxFrameLength,
+                    serialScheduler,
+                    streamingConnection,
+                    reassemblyBudget));
   }
 
   private Mono<Void> acceptResume(
@@ -361,10 +672,20 @@ private Mono<Void> accept(
       ServerSetup serverSetup,
       ByteBuf startFrame,
       ClientServerInputMultiplexer multiplexer,
-      int maxFrameLength) {
+      int maxFrameLength,
+      Scheduler serialScheduler,
+      @Nullable ReassemblyDuplexConnection streamingConnection,
+      @Nullable ReassemblyBudget reassemblyBudget) {
     switch (FrameHeaderCodec.frameType(startFrame)) {
       case SETUP:
-        return acceptSetup(serverSetup, startFrame, multiplexer, maxFrameLength);
+        return acceptSetup(
+            serverSetup,
+            startFrame,
+            multiplexer,
+            maxFrameLength,
+            serialScheduler,
+            streamingConnection,
+            reassemblyBudget);
       case RESUME:
         return acceptResume(serverSetup, startFrame, multiplexer);
       default:
@@ -385,7 +706,10 @@ private Mono<Void> acceptSetup(
       ServerSetup serverSetup,
       ByteBuf setupFrame,
       ClientServerInputMultiplexer multiplexer,
-      int maxFrameLength) {
+      int maxFrameLength,
+      Scheduler serialScheduler,
+      @Nullable ReassemblyDuplexConnection streamingConnection,
+      @Nullable ReassemblyBudget reassemblyBudget) {
 
     if (!SetupFrameCodec.isSupportedVersion(setupFrame)) {
       return serverSetup
@@ -423,7 +747,18 @@ private Mono<Void> acceptSetup(
                   ? new RequesterLeaseHandler.Impl(SERVER_TAG, leases.receiver())
                   : RequesterLeaseHandler.None;
 
-          RSocket rSocketRequester =
+          ConnectionOptions options =
+              new ConnectionOptions()
+                  .sendQueueWatermarks(sendQueueWatermarks())
+                  .sendQueue(this::sendQueue)
+                  .requestNCoalescer(requestNCoalescer())
+                  .bulkheads(bulkheads)
+                  .streamLimiter(streamLimiter())
+                  .metadataMimeType(setupPayload.metadataMimeType())
+                  .streamingReassembly(streamingConnection)
+                  .reassemblyBudget(reassemblyBudget);
+
+          RSocketRequester rSocketRequester =
               new RSocketRequester(
                   wrappedMultiplexer.asServerConnection(),
                   payloadDecoder,
@@ -434,7 +769,12 @@ private Mono<Void> acceptSetup(
                   setupPayload.keepAliveMaxLifetime(),
                   keepAliveHandler,
                   requesterLeaseHandler,
-                  Schedulers.single(Schedulers.parallel()));
+                  serialScheduler,
+                  options);
+
+          if (connectionMetrics != null) {
+            connectionMetrics.accept(rSocketRequester);
+          }
 
           RSocket wrappedRSocketRequester = interceptors.initRequester(rSocketRequester);
 
@@ -464,7 +804,8 @@ private Mono<Void> acceptSetup(
                             payloadDecoder,
                             responderLeaseHandler,
                             mtu,
-                            maxFrameLength);
+                            maxFrameLength,
+                            options);
                   })
               .doFinally(signalType -> setupPayload.release())
               .then();
@@ -488,4 +829,38 @@ private Exception rejectedSetupError(Throwable err) {
     String msg = err.getMessage();
     return new RejectedSetupException(msg == null ? "rejected by server acceptor" : msg);
   }
+
+  private SendQueueWatermarks sendQueueWatermarks() {
+    return sendQueueHighWatermark > 0
+        ? new SendQueueWatermarks(sendQueueLowWatermark, sendQueueHighWatermark)
+        : new SendQueueWatermarks();
+  }
+
+  private Queue<ByteBuf> sendQueue() {
+    if (laneDrainQuotas != null) {
+      return new PriorityFrameQueue(laneDrainQuotas, defaultLane, fairSchedulingQuantum);
+    }
+    return fairSchedulingQuantum > 0
+        ? new FairFrameQueue(fairSchedulingQuantum)
+        : new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+  }
+
+  @Nullable
+  private RequestNCoalescer requestNCoalescer() {
+    return requestNMinCreditBatch > 0 ? new RequestNCoalescer(requestNMinCreditBatch) : null;
+  }
+
+  @Nullable
+  private ConcurrentStreamLimiter streamLimiter() {
+    return maxConcurrentStreamsPerConnection > 0
+        ? new ConcurrentStreamLimiter(maxConcurrentStreamsPerConnection, serverStreamLimiter)
+        : null;
+  }
+
+  @Nullable
+  private ReassemblyBudget reassemblyBudget() {
+    return maxReassemblyBytesPerConnection > 0 && resume == null
+        ? new ReassemblyBudget(maxReassemblyBytesPerConnection, serverReassemblyBudget)
+        : null;
+  }
 }
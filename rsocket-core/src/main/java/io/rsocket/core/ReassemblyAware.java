@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+/**
+ * Exposes the bytes held by payloads of a connection that are being reassembled from fragments for
+ * monitoring, see {@link ConnectionMetrics}.
+ *
+ * @see RSocketConnector#maxReassemblyBytes(long)
+ * @see RSocketServer#maxReassemblyBytes(long, long)
+ * @since 1.1
+ */
+public interface ReassemblyAware {
+
+  /**
+   * Returns the number of bytes held by partially received payloads of the connection, or {@code
+   * 0} if no reassembly budget is configured.
+   *
+   * @return the bytes held in reassembly
+   */
+  long reassemblyBytes();
+
+  /**
+   * Returns the number of partially received payloads that were evicted because the budget of the
+   * connection or of the server was exhausted, or {@code 0} if no budget is configured.
+   *
+   * @return the evicted payloads of the connection
+   */
+  long reassemblyEvictions();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import io.rsocket.metadata.DeadlineMetadataCodec;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import reactor.util.context.Context;
+
+/**
+ * Tags requests with a deadline that is propagated to the responder, which cancels its handler
+ * once the deadline has passed rather than waiting for a {@code CANCEL} frame that may never
+ * arrive. The deadline is read from the Reactor {@link Context} of the request, typically next to
+ * a matching {@code timeout}:
+ *
+ * <pre>{@code
+ * rsocket
+ *     .requestResponse(payload)
+ *     .timeout(Duration.ofSeconds(2))
+ *     .subscriberContext(RequestDeadline.of(Duration.ofSeconds(2)))
+ * }</pre>
+ *
+ * <p>The deadline is sent as an entry of the composite metadata of the request, see {@link
+ * DeadlineMetadataCodec}, and is therefore only propagated on connections whose metadata mime type
+ * is {@code message/x.rsocket.composite-metadata.v0}. It only bounds the time the responder spends
+ * on the request, the requester still has to time out on its own.
+ *
+ * @since 1.1
+ */
+public final class RequestDeadline {
+
+  static final String KEY = RequestDeadline.class.getName();
+
+  private RequestDeadline() {}
+
+  /**
+   * Returns a {@link Context} that tags requests with a deadline the given time from now.
+   *
+   * @param timeout the time the request may take
+   * @return a context to pass to {@code subscriberContext}
+   */
+  public static Context of(Duration timeout) {
+    if (timeout.isNegative()) {
+      throw new IllegalArgumentException("The timeout must not be negative, provided: " + timeout);
+    }
+    return Context.of(KEY, System.nanoTime() + timeout.toNanos());
+  }
+
+  /**
+   * Returns the time left until the deadline of the given context in milliseconds, rounded up, or
+   * {@code -1} if there is none.
+   */
+  static long remainingMillis(Context context) {
+    final Long deadline = context.getOrDefault(KEY, null);
+    if (deadline == null) {
+      return -1;
+    }
+    final long remainingNanos = deadline - System.nanoTime();
+    return remainingNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999_999) : 0;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import reactor.util.context.Context;
+
+/**
+ * Tags requests with a priority class, i.e. the lane of the send queue their frames are queued in
+ * when priority lanes are enabled with {@link RSocketConnector#priorityLanes(int, int...)} or
+ * {@link RSocketServer#priorityLanes(int, int...)}. The priority class is read from the Reactor
+ * {@link Context} of the request:
+ *
+ * <pre>{@code
+ * rsocket.requestStream(payload).subscriberContext(RequestPriority.of(2))
+ * }</pre>
+ *
+ * <p>The request frame and, for request-channel, the payloads that follow it are queued in that
+ * lane. Requests without a priority class, or with a priority class for which no lane is
+ * configured, use the default lane. The priority class is local to the sender and is not
+ * transmitted to the peer.
+ *
+ * @since 1.1
+ */
+public final class RequestPriority {
+
+  static final String KEY = RequestPriority.class.getName();
+
+  private RequestPriority() {}
+
+  /**
+   * Returns a {@link Context} that tags requests with the given priority class.
+   *
+   * @param priorityClass the lane to queue the frames of the request in, lane {@code 0} is
+   *     reserved for control frames
+   * @return a context to pass to {@code subscriberContext}
+   */
+  public static Context of(int priorityClass) {
+    if (priorityClass <= 0) {
+      String msg =
+          String.format("The priority class must be greater than 0, provided: %d", priorityClass);
+      throw new IllegalArgumentException(msg);
+    }
+    return Context.of(KEY, priorityClass);
+  }
+
+  /** Returns the priority class of the given context, or {@code -1} if there is none. */
+  static int priorityClass(Context context) {
+    return context.getOrDefault(KEY, -1);
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static io.rsocket.core.PayloadValidationUtils.INVALID_PAYLOAD_ERROR_MESSAGE;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.frame.CancelFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.lease.RequesterLeaseHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * Batch of Request-Response interactions of {@link RSocketRequester} started together. The stream
+ * ids of all requests are allocated and their frames enqueued in a single pass on the serial
+ * scheduler, and the responses are pushed into a single {@link FluxSink}, tagged with the index of
+ * their request, as they arrive.
+ */
+final class RequestResponseBatch implements Runnable {
+
+  final RSocketRequester requester;
+  final List<Payload> payloads;
+  final FluxSink<Tuple2<Long, Payload>> sink;
+  final Receiver[] receivers;
+
+  /** Whether {@link #run()} got to the requests, written before {@link #wip} is released. */
+  boolean started;
+
+  /** The number of request frames enqueued, written before {@link #wip} is released. */
+  int sent;
+
+  volatile int remaining;
+  static final AtomicIntegerFieldUpdater<RequestResponseBatch> REMAINING =
+      AtomicIntegerFieldUpdater.newUpdater(RequestResponseBatch.class, "remaining");
+
+  /**
+   * Guards the request frames emission against a concurrent cancellation, in the same fashion as
+   * {@link RequestResponseRequesterMono}.
+   */
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<RequestResponseBatch> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(RequestResponseBatch.class, "wip");
+
+  RequestResponseBatch(
+      RSocketRequester requester, List<Payload> payloads, FluxSink<Tuple2<Long, Payload>> sink) {
+    this.requester = requester;
+    this.payloads = payloads;
+    this.sink = sink;
+    this.receivers = new Receiver[payloads.size()];
+    this.remaining = payloads.size();
+    sink.onDispose(this::cancel);
+  }
+
+  /** Allocates the stream ids and enqueues the request frames. Runs on the serial scheduler. */
+  @Override
+  public void run() {
+    if (WIP.getAndIncrement(this) != 0) {
+      // cancelled before the frames were sent, the payloads have been released by cancel()
+      return;
+    }
+
+    final RSocketRequester requester = this.requester;
+    final List<Payload> payloads = this.payloads;
+    this.started = true;
+
+    final Throwable terminationError = requester.terminationError;
+    if (terminationError != null) {
+      releasePayloads(payloads, 0);
+      sink.error(terminationError);
+    } else if (!requester.sendQueueWatermarks.isWritable()) {
+      releasePayloads(payloads, 0);
+      sink.error(RSocketRequester.SEND_QUEUE_FULL_EXCEPTION);
+    } else {
+      sendRequests();
+    }
+
+    if (WIP.decrementAndGet(this) != 0) {
+      // cancel() raced with the frames emission and left the clean up to us
+      cancelSent();
+    }
+  }
+
+  void sendRequests() {
+    final RSocketRequester requester = this.requester;
+    final List<Payload> payloads = this.payloads;
+    final Receiver[] receivers = this.receivers;
+    final RequesterLeaseHandler lh = requester.leaseHandler;
+    final Context context = sink.currentContext();
+    final int size = payloads.size();
+    final List<ByteBuf> frames = new ArrayList<>(size);
+
+    Throwable error = null;
+    // the index of the first payload that is neither sent nor released yet
+    int unsent = size;
+    for (int i = 0; i < size; i++) {
+      if (!lh.useLease()) {
+        error = lh.leaseError();
+        unsent = i;
+        break;
+      }
+
+      final Payload request = requester.attachDeadline(payloads.get(i), context);
+      if (request == null) {
+        error = new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE);
+        unsent = i + 1;
+        break;
+      }
+
+      final int streamId = requester.streamIdSupplier.nextStreamId();
+      final Receiver receiver = new Receiver(this, i, streamId);
+      receivers[i] = receiver;
+
+      frames.add(
+          RequestResponseFrameCodec.encodeReleasingPayload(requester.allocator, streamId, request));
+      requester.receivers.put(streamId, receiver);
+    }
+
+    this.sent = frames.size();
+    requester.sendProcessor.onNextAll(frames, RequestPriority.priorityClass(context));
+
+    if (error != null) {
+      releasePayloads(payloads, unsent);
+      sink.error(error);
+    }
+  }
+
+  void cancel() {
+    if (WIP.getAndIncrement(this) != 0) {
+      // the request frames are being sent, run() picks the cancellation up once done
+      return;
+    }
+
+    if (started) {
+      cancelSent();
+    } else {
+      releasePayloads(this.payloads, 0);
+    }
+  }
+
+  void cancelSent() {
+    final RSocketRequester requester = this.requester;
+    final Receiver[] receivers = this.receivers;
+    final int sent = this.sent;
+    for (int i = 0; i < sent; i++) {
+      final Receiver receiver = receivers[i];
+      if (requester.removeReceiver(receiver.streamId, receiver)) {
+        requester.sendProcessor.onNext(
+            CancelFrameCodec.encode(requester.allocator, receiver.streamId));
+      }
+    }
+  }
+
+  void onResponse(int index, Payload response) {
+    if (sink.isCancelled()) {
+      response.release();
+    } else {
+      sink.next(Tuples.of((long) index, response));
+    }
+    onDone();
+  }
+
+  void onDone() {
+    if (REMAINING.decrementAndGet(this) == 0) {
+      sink.complete();
+    }
+  }
+
+  static void releasePayloads(List<Payload> payloads, int from) {
+    for (int i = from; i < payloads.size(); i++) {
+      final Payload payload = payloads.get(i);
+      if (payload.refCnt() > 0) {
+        payload.release();
+      }
+    }
+  }
+
+  /** Receiver registered for the stream id of a single request of the batch. */
+  static final class Receiver implements Processor<Payload, Payload> {
+
+    static final int STATE_ACTIVE = 0;
+    static final int STATE_TERMINATED = 1;
+
+    final RequestResponseBatch parent;
+    final int index;
+    final int streamId;
+
+    volatile int state;
+    static final AtomicIntegerFieldUpdater<Receiver> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Receiver.class, "state");
+
+    Receiver(RequestResponseBatch parent, int index, int streamId) {
+      this.parent = parent;
+      this.index = index;
+      this.streamId = streamId;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Payload> s) {
+      Operators.error(
+          s, new IllegalStateException("RequestResponseBatch receivers allow no subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      // the receiver side is fed directly by the requester, there is no upstream to subscribe to
+      s.cancel();
+    }
+
+    @Override
+    public void onNext(Payload p) {
+      if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+        p.release();
+        return;
+      }
+
+      final RequestResponseBatch parent = this.parent;
+      parent.requester.removeReceiver(this.streamId, this);
+      parent.onResponse(this.index, p);
+    }
+
+    @Override
+    public void onComplete() {
+      if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+        return;
+      }
+
+      final RequestResponseBatch parent = this.parent;
+      parent.requester.removeReceiver(this.streamId, this);
+      parent.onDone();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+        Operators.onErrorDropped(t, this.parent.sink.currentContext());
+        return;
+      }
+
+      final RequestResponseBatch parent = this.parent;
+      parent.requester.removeReceiver(this.streamId, this);
+      parent.sink.error(t);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static io.rsocket.core.PayloadValidationUtils.INVALID_PAYLOAD_ERROR_MESSAGE;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.frame.CancelFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.lease.RequesterLeaseHandler;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Request-Response interaction of {@link RSocketRequester} fused into a single object. It is at the
+ * same time the {@link Mono} handed to the caller, the {@link Subscription} given to the subscriber
+ * and the receiver registered for the stream id, which replaces the processor, defer, next, lift
+ * and subscribeOn chain formerly allocated per request.
+ */
+final class RequestResponseRequesterMono extends Mono<Payload>
+    implements Processor<Payload, Payload>, Subscription, Scannable, Runnable {
+
+  static final int STATE_UNSUBSCRIBED = 0;
+  static final int STATE_SUBSCRIBED = 1;
+  static final int STATE_REQUESTED = 2;
+  static final int STATE_TERMINATED = 3;
+
+  final RSocketRequester requester;
+  final Payload payload;
+
+  CoreSubscriber<? super Payload> actual;
+
+  /** Assigned on the serial scheduler before the request frame is enqueued. */
+  int streamId;
+
+  volatile int state;
+  static final AtomicIntegerFieldUpdater<RequestResponseRequesterMono> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(RequestResponseRequesterMono.class, "state");
+
+  /**
+   * Guards the request frame emission against a concurrent cancellation, in the same fashion as
+   * {@link RequestOperator}. Whoever increments it first owns the stream setup; the other party
+   * leaves its work to the owner.
+   */
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<RequestResponseRequesterMono> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(RequestResponseRequesterMono.class, "wip");
+
+  RequestResponseRequesterMono(Payload payload, RSocketRequester requester) {
+    this.payload = payload;
+    this.requester = requester;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super Payload> actual) {
+    if (this.state == STATE_UNSUBSCRIBED
+        && STATE.compareAndSet(this, STATE_UNSUBSCRIBED, STATE_SUBSCRIBED)) {
+      this.actual = actual;
+      actual.onSubscribe(this);
+    } else {
+      Operators.error(
+          actual, new IllegalStateException("RequestResponseMono allows only a single subscriber"));
+    }
+  }
+
+  @Override
+  public void request(long n) {
+    if (Operators.validate(n)
+        && this.state == STATE_SUBSCRIBED
+        && STATE.compareAndSet(this, STATE_SUBSCRIBED, STATE_REQUESTED)) {
+      this.requester.serialScheduler.schedule(this);
+    }
+  }
+
+  /** Allocates the stream id and enqueues the request frame. Runs on the serial scheduler. */
+  @Override
+  public void run() {
+    if (WIP.getAndIncrement(this) != 0) {
+      // cancelled before the frame was sent, the payload has been released by cancel()
+      return;
+    }
+
+    final RSocketRequester requester = this.requester;
+    final Payload payload = this.payload;
+
+    final Throwable terminationError = requester.terminationError;
+    if (terminationError != null) {
+      payload.release();
+      terminate(terminationError);
+      return;
+    }
+
+    if (!requester.sendQueueWatermarks.isWritable()) {
+      payload.release();
+      terminate(RSocketRequester.SEND_QUEUE_FULL_EXCEPTION);
+      return;
+    }
+
+    final RequesterLeaseHandler lh = requester.leaseHandler;
+    if (!lh.useLease()) {
+      payload.release();
+      terminate(lh.leaseError());
+      return;
+    }
+
+    final Payload request = requester.attachDeadline(payload, actual.currentContext());
+    if (request == null) {
+      terminate(new IllegalArgumentException(INVALID_PAYLOAD_ERROR_MESSAGE));
+      return;
+    }
+
+    final int streamId = requester.streamIdSupplier.nextStreamId();
+    this.streamId = streamId;
+
+    final ByteBuf requestFrame =
+        RequestResponseFrameCodec.encodeReleasingPayload(requester.allocator, streamId, request);
+
+    requester.receivers.put(streamId, this);
+    requester.sendProcessor.onNext(
+        requestFrame, RequestPriority.priorityClass(actual.currentContext()));
+
+    if (WIP.decrementAndGet(this) != 0) {
+      // cancel() raced with the frame emission and left the clean up to us
+      sendCancel(streamId);
+    }
+  }
+
+  @Override
+  public void cancel() {
+    final int previousState = STATE.getAndSet(this, STATE_TERMINATED);
+    if (previousState == STATE_TERMINATED) {
+      return;
+    }
+
+    if (WIP.getAndIncrement(this) != 0) {
+      // the request frame is being sent, run() picks the cancellation up once done
+      return;
+    }
+
+    final int streamId = this.streamId;
+    if (streamId != 0) {
+      sendCancel(streamId);
+    } else {
+      this.payload.release();
+    }
+  }
+
+  void sendCancel(int streamId) {
+    final RSocketRequester requester = this.requester;
+    if (requester.removeReceiver(streamId, this)) {
+      requester.sendProcessor.onNext(CancelFrameCodec.encode(requester.allocator, streamId));
+    }
+  }
+
+  void terminate(Throwable t) {
+    if (STATE.getAndSet(this, STATE_TERMINATED) != STATE_TERMINATED) {
+      this.actual.onError(t);
+    }
+  }
+
+  @Override
+  public void onSubscribe(Subscription s) {
+    // the receiver side is fed directly by the requester, there is no upstream to subscribe to
+    s.cancel();
+  }
+
+  @Override
+  public void onNext(Payload p) {
+    if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+      p.release();
+      return;
+    }
+
+    this.requester.removeReceiver(this.streamId, this);
+
+    final CoreSubscriber<? super Payload> a = this.actual;
+    a.onNext(p);
+    a.onComplete();
+  }
+
+  @Override
+  public void onComplete() {
+    if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+      return;
+    }
+
+    this.requester.removeReceiver(this.streamId, this);
+    this.actual.onComplete();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (STATE.getAndSet(this, STATE_TERMINATED) == STATE_TERMINATED) {
+      Operators.onErrorDropped(t, this.actual.currentContext());
+      return;
+    }
+
+    this.requester.removeReceiver(this.streamId, this);
+    this.actual.onError(t);
+  }
+
+  @Override
+  @Nullable
+  public Object scanUnsafe(Attr key) {
+    if (key == Attr.ACTUAL) return this.actual;
+    if (key == Attr.TERMINATED || key == Attr.CANCELLED) return this.state == STATE_TERMINATED;
+    if (key == Attr.PREFETCH) return 1;
+
+    return null;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+/**
+ * Exposes the send queue of a connection for monitoring, see {@link ConnectionMetrics}.
+ *
+ * @see RSocketConnector#sendQueueWatermarks(int, int)
+ * @see RSocketServer#sendQueueWatermarks(int, int)
+ * @since 1.1
+ */
+public interface SendQueueAware {
+
+  /**
+   * Returns the number of bytes currently queued for sending on the connection, by both the
+   * requester and the responder side.
+   *
+   * @return the queued bytes
+   */
+  long sendQueueBytes();
+
+  /**
+   * Returns {@code false} while the queued bytes are above the configured high watermark, and
+   * until they drop to the low watermark. New requests are rejected while the queue is not
+   * writable.
+   *
+   * @return whether the send queue is writable
+   */
+  boolean isSendQueueWritable();
+
+  /**
+   * Returns the number of {@code REQUEST_N} frames that were not sent by the requester and the
+   * responder because their grant was merged into another {@code REQUEST_N} frame of the same
+   * stream, or {@code 0} if coalescing is not enabled.
+   *
+   * @return the number of {@code REQUEST_N} frames saved
+   * @see RSocketConnector#requestNCoalescing(int)
+   * @see RSocketServer#requestNCoalescing(int)
+   */
+  long coalescedRequestNFrames();
+}
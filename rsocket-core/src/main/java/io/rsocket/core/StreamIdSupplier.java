@@ -15,17 +15,49 @@
  */
 package io.rsocket.core;
 
-import io.netty.util.collection.IntObjectMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-/** This API is not thread-safe and must be strictly used in serialized fashion */
+/**
+ * Allocates stream ids and tracks the ones in use in a sparse bitmap, so allocation skips over
+ * running streams in constant time even once the id space has wrapped around.
+ *
+ * <p>All ids of one side share the same parity, so each id maps to one of 2^30 slots. Slots are
+ * grouped into pages of 4096 bits, which in turn are grouped into directories of 512 pages. Pages
+ * and directories are only allocated while they hold running streams. Each page keeps a summary of
+ * its full 64-bit words, which lets allocation skip a run of 4096 running streams in a few steps.
+ *
+ * <p>{@link #nextStreamId()} is not thread-safe and must be strictly used in serialized fashion,
+ * whereas {@link #release(int)} may be called concurrently from any thread.
+ */
 final class StreamIdSupplier {
   private static final int MASK = 0x7FFFFFFF;
 
+  private static final int WORD_SHIFT = 6;
+  private static final int PAGE_SHIFT = 12;
+  private static final int DIRECTORY_SHIFT = 21;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int WORDS_PER_PAGE = 1 << (PAGE_SHIFT - WORD_SHIFT);
+  private static final int PAGES_PER_DIRECTORY = 1 << (DIRECTORY_SHIFT - PAGE_SHIFT);
+  private static final int DIRECTORIES = 1 << (30 - DIRECTORY_SHIFT);
+
+  private final AtomicReferenceArray<Directory> directories =
+      new AtomicReferenceArray<>(DIRECTORIES);
+  /**
+   * Sentinel of the pages left behind by the allocation cursor that still hold running streams,
+   * linked through the pages in the order they were left.
+   */
+  private final Page retainedPages = new Page(-1);
+
   private long streamId;
+  private Page currentPage;
 
   // Visible for testing
   StreamIdSupplier(int streamId) {
     this.streamId = streamId;
+    this.retainedPages.previous = this.retainedPages;
+    this.retainedPages.next = this.retainedPages;
   }
 
   static StreamIdSupplier clientSupplier() {
@@ -37,22 +69,263 @@ static StreamIdSupplier serverSupplier() {
   }
 
   /**
-   * This methods provides new stream id and ensures there is no intersections with already running
-   * streams. This methods is not thread-safe.
+   * This methods provides new stream id, skipping ids of streams that are still running, and marks
+   * it as in use until {@link #release(int) released}. This methods is not thread-safe.
    *
-   * @param streamIds currently running streams store
    * @return next stream id
    */
-  int nextStreamId(IntObjectMap<?> streamIds) {
-    int streamId;
-    do {
-      this.streamId += 2;
-      streamId = (int) (this.streamId & MASK);
-    } while (streamId == 0 || streamIds.containsKey(streamId));
-    return streamId;
+  int nextStreamId() {
+    long next = this.streamId + 2;
+    for (; ; ) {
+      final int streamId = (int) (next & MASK);
+      if (streamId == 0) {
+        next += 2;
+        continue;
+      }
+
+      final int slot = streamId >>> 1;
+      final int bit = slot & 63;
+      final int wordIndex = (slot >>> WORD_SHIFT) & (WORDS_PER_PAGE - 1);
+      final Page page = page(slot >>> PAGE_SHIFT);
+
+      final long candidateWords = ~page.fullWords & (-1L << wordIndex);
+      if (candidateWords == 0) {
+        // the rest of the page is in use
+        next += 2L * (PAGE_SIZE - (slot & (PAGE_SIZE - 1)));
+        continue;
+      }
+
+      final int candidateWordIndex = Long.numberOfTrailingZeros(candidateWords);
+      if (candidateWordIndex != wordIndex) {
+        next += 2L * (((candidateWordIndex - wordIndex) << WORD_SHIFT) - bit);
+        continue;
+      }
+
+      final long word = page.words.get(wordIndex);
+      final long freeBits = ~word & (-1L << bit);
+      if (freeBits == 0) {
+        page.markFull(wordIndex);
+        next += 2L * (64 - bit);
+        continue;
+      }
+
+      final int freeBit = Long.numberOfTrailingZeros(freeBits);
+      if (freeBit != bit) {
+        next += 2L * (freeBit - bit);
+        continue;
+      }
+
+      final long newWord = word | (1L << bit);
+      if (page.words.compareAndSet(wordIndex, word, newWord)) {
+        if (newWord == -1L) {
+          page.markFull(wordIndex);
+        }
+        this.streamId = next;
+        return streamId;
+      }
+      // a concurrent release changed the word, try the same id again
+    }
+  }
+
+  /**
+   * Marks the given stream id as no longer in use, so that it can be handed out again once the id
+   * space wraps around. This method is thread-safe.
+   *
+   * @param streamId the id of a stream that has terminated
+   */
+  void release(int streamId) {
+    final int slot = (streamId & MASK) >>> 1;
+    final Directory directory = this.directories.get(slot >>> DIRECTORY_SHIFT);
+    if (directory == null) {
+      return;
+    }
+
+    final Page page = directory.pages.get((slot >>> PAGE_SHIFT) & (PAGES_PER_DIRECTORY - 1));
+    if (page == null) {
+      return;
+    }
+
+    final int wordIndex = (slot >>> WORD_SHIFT) & (WORDS_PER_PAGE - 1);
+    final long mask = 1L << (slot & 63);
+    for (; ; ) {
+      final long word = page.words.get(wordIndex);
+      if ((word & mask) == 0) {
+        return;
+      }
+
+      if (page.words.compareAndSet(wordIndex, word, word & ~mask)) {
+        if (word == -1L) {
+          page.clearFull(wordIndex);
+        }
+        return;
+      }
+    }
+  }
+
+  // Visible for testing
+  boolean isInUse(int streamId) {
+    final int slot = (streamId & MASK) >>> 1;
+    final Directory directory = this.directories.get(slot >>> DIRECTORY_SHIFT);
+    if (directory == null) {
+      return false;
+    }
+
+    final Page page = directory.pages.get((slot >>> PAGE_SHIFT) & (PAGES_PER_DIRECTORY - 1));
+    return page != null
+        && (page.words.get((slot >>> WORD_SHIFT) & (WORDS_PER_PAGE - 1)) & (1L << (slot & 63)))
+            != 0;
+  }
+
+  // Visible for testing
+  void moveTo(long streamId) {
+    this.streamId = streamId;
   }
 
   boolean isBeforeOrCurrent(int streamId) {
     return this.streamId >= streamId && streamId > 0;
   }
+
+  private Page page(int pageIndex) {
+    final Page currentPage = this.currentPage;
+    if (currentPage != null) {
+      if (currentPage.index == pageIndex) {
+        return currentPage;
+      }
+      leave(currentPage);
+    }
+
+    final int directoryIndex = pageIndex >>> (DIRECTORY_SHIFT - PAGE_SHIFT);
+    Directory directory = this.directories.get(directoryIndex);
+    if (directory == null) {
+      directory = new Directory();
+      this.directories.set(directoryIndex, directory);
+    }
+
+    final int index = pageIndex & (PAGES_PER_DIRECTORY - 1);
+    Page page = directory.pages.get(index);
+    if (page == null) {
+      page = new Page(pageIndex);
+      directory.pages.set(index, page);
+      directory.pageCount++;
+    } else {
+      // the page was retained from the previous round, it becomes current again
+      unlink(page);
+    }
+
+    this.currentPage = page;
+    return page;
+  }
+
+  /**
+   * Called when the allocation cursor moves to another page. Pages without running streams are
+   * dropped, the others are retained and checked again in turn, one per page move.
+   */
+  private void leave(Page page) {
+    final Page retainedPage = this.retainedPages.next;
+    if (retainedPage != this.retainedPages) {
+      unlink(retainedPage);
+      if (retainedPage.isEmpty()) {
+        drop(retainedPage);
+      } else {
+        retain(retainedPage);
+      }
+    }
+
+    if (page.isEmpty()) {
+      drop(page);
+    } else {
+      retain(page);
+    }
+  }
+
+  private void retain(Page page) {
+    final Page last = this.retainedPages.previous;
+    page.previous = last;
+    page.next = this.retainedPages;
+    last.next = page;
+    this.retainedPages.previous = page;
+  }
+
+  private static void unlink(Page page) {
+    page.previous.next = page.next;
+    page.next.previous = page.previous;
+    page.previous = null;
+    page.next = null;
+  }
+
+  private void drop(Page page) {
+    // no stream of the page is running, so there can't be a concurrent release referencing it
+    final int directoryIndex = page.index >>> (DIRECTORY_SHIFT - PAGE_SHIFT);
+    final Directory directory = this.directories.get(directoryIndex);
+    directory.pages.set(page.index & (PAGES_PER_DIRECTORY - 1), null);
+    if (--directory.pageCount == 0) {
+      this.directories.set(directoryIndex, null);
+    }
+  }
+
+  static final class Directory {
+    final AtomicReferenceArray<Page> pages = new AtomicReferenceArray<>(PAGES_PER_DIRECTORY);
+
+    /** Number of allocated pages. Only accessed by the allocating thread. */
+    int pageCount;
+  }
+
+  static final class Page {
+    final int index;
+    final AtomicLongArray words = new AtomicLongArray(WORDS_PER_PAGE);
+
+    /**
+     * One bit per word that is known to be full. It is only a hint for skipping words, a bit may
+     * be briefly stale but words are always checked before an id is handed out.
+     */
+    volatile long fullWords;
+
+    static final AtomicLongFieldUpdater<Page> FULL_WORDS =
+        AtomicLongFieldUpdater.newUpdater(Page.class, "fullWords");
+
+    /** Links of the retained pages. Only accessed by the allocating thread. */
+    Page previous;
+
+    Page next;
+
+    Page(int index) {
+      this.index = index;
+    }
+
+    void markFull(int wordIndex) {
+      final long mask = 1L << wordIndex;
+      for (; ; ) {
+        final long fullWords = this.fullWords;
+        if ((fullWords & mask) != 0
+            || FULL_WORDS.compareAndSet(this, fullWords, fullWords | mask)) {
+          break;
+        }
+      }
+
+      // a concurrent release may have cleared a bit before the word was marked as full
+      if (this.words.get(wordIndex) != -1L) {
+        clearFull(wordIndex);
+      }
+    }
+
+    void clearFull(int wordIndex) {
+      final long mask = 1L << wordIndex;
+      for (; ; ) {
+        final long fullWords = this.fullWords;
+        if ((fullWords & mask) == 0
+            || FULL_WORDS.compareAndSet(this, fullWords, fullWords & ~mask)) {
+          return;
+        }
+      }
+    }
+
+    boolean isEmpty() {
+      for (int i = 0; i < WORDS_PER_PAGE; i++) {
+        if (this.words.get(i) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
@@ -16,23 +16,26 @@
 
 package io.rsocket.fragmentation;
 
-import static io.rsocket.fragmentation.FrameFragmenter.fragmentFrame;
-
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.rsocket.DuplexConnection;
 import io.rsocket.frame.FrameHeaderCodec;
-import io.rsocket.frame.FrameType;
 import java.util.Objects;
+import java.util.function.Consumer;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.annotation.Nullable;
 
 /**
  * A {@link DuplexConnection} implementation that fragments and reassembles {@link ByteBuf}s.
  *
+ * <p>Outbound frames larger than the mtu are replaced by their fragments as the delegate consumes
+ * them, see {@link FragmentingFlux}. With a fragment burst budget, the fragments of a frame are
+ * interleaved with the frames of other streams so that those are not held up until the last
+ * fragment of a large payload has been sent.
+ *
  * @see <a
  *     href="https://github.com/rsocket/rsocket/blob/master/Protocol.md#fragmentation-and-reassembly">Fragmentation
  *     and Reassembly</a>
@@ -46,6 +49,7 @@ public final class FragmentationDuplexConnection extends ReassemblyDuplexConnect
 
   final DuplexConnection delegate;
   final int mtu;
+  final int maxFragmentBurst;
   final String type;
 
   /**
@@ -59,16 +63,38 @@ public final class FragmentationDuplexConnection extends ReassemblyDuplexConnect
    */
   public FragmentationDuplexConnection(
       DuplexConnection delegate, int mtu, int maxInboundPayloadSize, String type) {
-    super(delegate, maxInboundPayloadSize);
+    this(delegate, mtu, maxInboundPayloadSize, new FragmentationOptions(), type);
+  }
+
+  /**
+   * Class constructor.
+   *
+   * @param delegate the underlying connection
+   * @param mtu the fragment size, greater than {@link #MIN_MTU_SIZE}
+   * @param maxInboundPayloadSize the maximum payload size, which can be reassembled from multiple
+   *     fragments
+   * @param options the optional fragmentation and reassembly settings
+   * @param type a label to use for logging purposes
+   * @since 1.1
+   */
+  public FragmentationDuplexConnection(
+      DuplexConnection delegate,
+      int mtu,
+      int maxInboundPayloadSize,
+      FragmentationOptions options,
+      String type) {
+    super(delegate, maxInboundPayloadSize, options);
 
     Objects.requireNonNull(delegate, "delegate must not be null");
     this.delegate = delegate;
     this.mtu = assertMtu(mtu);
+    this.maxFragmentBurst =
+        options.maxFragmentBurst == 0 ? Integer.MAX_VALUE : options.maxFragmentBurst;
     this.type = type;
   }
 
-  private boolean shouldFragment(FrameType frameType, int readableBytes) {
-    return frameType.isFragmentable() && readableBytes > mtu;
+  private boolean shouldFragment(ByteBuf frame) {
+    return frame.readableBytes() > mtu && FrameHeaderCodec.frameType(frame).isFragmentable();
   }
 
   public static int assertMtu(int mtu) {
@@ -82,31 +108,43 @@ public static int assertMtu(int mtu) {
     }
   }
 
+  public static int assertMaxFragmentBurst(int maxFragmentBurst) {
+    if (maxFragmentBurst <= 0) {
+      String msg =
+          String.format(
+              "The fragment burst must be greater than 0, provided: %d", maxFragmentBurst);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return maxFragmentBurst;
+    }
+  }
+
   @Override
   public Mono<Void> send(Publisher<ByteBuf> frames) {
-    return Flux.from(frames).concatMap(this::sendOne).then();
+    return delegate.send(
+        new FragmentingFlux(frames, alloc(), mtu, maxFragmentBurst, fragmentLogger()));
   }
 
   @Override
   public Mono<Void> sendOne(ByteBuf frame) {
-    FrameType frameType = FrameHeaderCodec.frameType(frame);
-    int readableBytes = frame.readableBytes();
-    if (!shouldFragment(frameType, readableBytes)) {
+    if (!shouldFragment(frame)) {
       return delegate.sendOne(frame);
     }
-    Flux<ByteBuf> fragments = Flux.from(fragmentFrame(alloc(), mtu, frame, frameType));
-    if (logger.isDebugEnabled()) {
-      fragments =
-          fragments.doOnNext(
-              byteBuf -> {
-                logger.debug(
-                    "{} - stream id {} - frame type {} - \n {}",
-                    type,
-                    FrameHeaderCodec.streamId(byteBuf),
-                    FrameHeaderCodec.frameType(byteBuf),
-                    ByteBufUtil.prettyHexDump(byteBuf));
-              });
+    return delegate.send(
+        new FragmentingFlux(Mono.just(frame), alloc(), mtu, maxFragmentBurst, fragmentLogger()));
+  }
+
+  @Nullable
+  private Consumer<ByteBuf> fragmentLogger() {
+    if (!logger.isDebugEnabled()) {
+      return null;
     }
-    return delegate.send(fragments);
+    return byteBuf ->
+        logger.debug(
+            "{} - stream id {} - frame type {} - \n {}",
+            type,
+            FrameHeaderCodec.streamId(byteBuf),
+            FrameHeaderCodec.frameType(byteBuf),
+            ByteBufUtil.prettyHexDump(byteBuf));
   }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import io.rsocket.internal.ReassemblyBudget;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Optional settings of a {@link FragmentationDuplexConnection} or {@link
+ * ReassemblyDuplexConnection}. The defaults send all fragments of a frame in a row and reassemble
+ * payloads in full without a budget.
+ *
+ * @since 1.1
+ */
+public final class FragmentationOptions {
+
+  int maxFragmentBurst;
+  boolean streaming;
+  @Nullable ReassemblyBudget reassemblyBudget;
+
+  public FragmentationOptions() {}
+
+  /**
+   * The number of fragments of a frame sent in a row before frames of other streams are let
+   * through. Only applies to a {@link FragmentationDuplexConnection}.
+   *
+   * <p>By default this is set to {@code 0} which sends all fragments of a frame in a row.
+   *
+   * @param maxFragmentBurst the number of fragments, greater than 0, or {@code 0}
+   * @return the same instance for method chaining
+   */
+  public FragmentationOptions maxFragmentBurst(int maxFragmentBurst) {
+    this.maxFragmentBurst =
+        maxFragmentBurst == 0
+            ? 0
+            : FragmentationDuplexConnection.assertMaxFragmentBurst(maxFragmentBurst);
+    return this;
+  }
+
+  /**
+   * Whether the data of fragmented payloads is handed on as it is received, see {@link
+   * StreamingPayload}, rather than once the payload is complete.
+   *
+   * @param streaming whether to stream the data of fragmented payloads
+   * @return the same instance for method chaining
+   */
+  public FragmentationOptions streaming(boolean streaming) {
+    this.streaming = streaming;
+    return this;
+  }
+
+  /**
+   * The budget of the bytes held by payloads being reassembled, the oldest of which are evicted
+   * when it is exhausted. Not applied if {@link #streaming(boolean) streaming} is set.
+   *
+   * @param reassemblyBudget the budget, or {@code null} for none
+   * @return the same instance for method chaining
+   */
+  public FragmentationOptions reassemblyBudget(@Nullable ReassemblyBudget reassemblyBudget) {
+    this.reassemblyBudget = reassemblyBudget;
+    return this;
+  }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Exceptions;
+import reactor.core.Fuseable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+
+/**
+ * Fragments outbound frames that exceed the mtu in place of the frames themselves. Fragments are
+ * generated lazily by a {@link FrameFragmenter}, one per downstream request, so that fragmenting a
+ * frame does not subscribe a publisher of its own and the fragments of a large payload are not
+ * produced any faster than the transport consumes them. Frames that do not need fragmentation are
+ * passed through as they are.
+ *
+ * <p>With a fragment burst budget, the fragments of a frame are interleaved with the frames of
+ * other streams: after {@code maxFragmentBurst} fragments in a row, the frames waiting in the
+ * queue get as many turns, and fragmented frames of different streams take turns in round robin
+ * order. The protocol allows fragments to be interleaved with the frames of other streams only,
+ * so frames that follow a fragmented frame on the same stream wait for its last fragment.
+ *
+ * <p>If the source is an {@link io.rsocket.internal.UnboundedProcessor UnboundedProcessor}, or any
+ * other {@link Fuseable} source, its queue is drained directly.
+ */
+final class FragmentingFlux extends Flux<ByteBuf> {
+
+  final Publisher<? extends ByteBuf> source;
+  final ByteBufAllocator allocator;
+  final int mtu;
+  final int maxFragmentBurst;
+  @Nullable final Consumer<ByteBuf> onFragment;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param source the frames to fragment
+   * @param allocator the allocator to encode the fragment headers with
+   * @param mtu the maximum size of a fragment
+   * @param maxFragmentBurst the number of fragments sent in a row before frames of other streams
+   *     are let through, {@link Integer#MAX_VALUE} to send all fragments of a frame in a row
+   * @param onFragment notified of each fragment before it is emitted, e.g. for logging, or {@code
+   *     null}
+   */
+  FragmentingFlux(
+      Publisher<? extends ByteBuf> source,
+      ByteBufAllocator allocator,
+      int mtu,
+      int maxFragmentBurst,
+      @Nullable Consumer<ByteBuf> onFragment) {
+    this.source = source;
+    this.allocator = allocator;
+    this.mtu = mtu;
+    this.maxFragmentBurst = maxFragmentBurst;
+    this.onFragment = onFragment;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super ByteBuf> actual) {
+    source.subscribe(
+        new FragmentingSubscriber(actual, allocator, mtu, maxFragmentBurst, onFragment));
+  }
+
+  static final class FragmentingSubscriber implements CoreSubscriber<ByteBuf>, Subscription {
+
+    final CoreSubscriber<? super ByteBuf> actual;
+    final ByteBufAllocator allocator;
+    final int mtu;
+    final int maxFragmentBurst;
+    @Nullable final Consumer<ByteBuf> onFragment;
+    final int prefetch;
+    final int limit;
+
+    Subscription s;
+    Queue<ByteBuf> queue;
+    int sourceMode;
+    int consumed;
+
+    /** The frames being fragmented in round robin order, the current one first. */
+    final ArrayDeque<FrameFragmenter> fragmenters = new ArrayDeque<>();
+
+    /** Frames that followed a fragmented frame on its stream, to be sent before any other. */
+    final ArrayDeque<ByteBuf> ready = new ArrayDeque<>();
+
+    /** The number of frames held by fragmenters, including the frames that follow them. */
+    int parked;
+
+    /** Whether fragments or queued frames have the current turn. */
+    boolean fragmentTurn;
+
+    /** The number of fragments or frames left in the current turn. */
+    int budget;
+
+    volatile boolean done;
+    Throwable error;
+
+    volatile boolean cancelled;
+
+    volatile int wip;
+    static final AtomicIntegerFieldUpdater<FragmentingSubscriber> WIP =
+        AtomicIntegerFieldUpdater.newUpdater(FragmentingSubscriber.class, "wip");
+
+    volatile long requested;
+    static final AtomicLongFieldUpdater<FragmentingSubscriber> REQUESTED =
+        AtomicLongFieldUpdater.newUpdater(FragmentingSubscriber.class, "requested");
+
+    FragmentingSubscriber(
+        CoreSubscriber<? super ByteBuf> actual,
+        ByteBufAllocator allocator,
+        int mtu,
+        int maxFragmentBurst,
+        @Nullable Consumer<ByteBuf> onFragment) {
+      this.actual = actual;
+      this.allocator = allocator;
+      this.mtu = mtu;
+      this.maxFragmentBurst = maxFragmentBurst;
+      this.onFragment = onFragment;
+      this.prefetch = Queues.SMALL_BUFFER_SIZE;
+      this.limit = Operators.unboundedOrLimit(prefetch);
+    }
+
+    @Override
+    public Context currentContext() {
+      return actual.currentContext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onSubscribe(Subscription s) {
+      if (Operators.validate(this.s, s)) {
+        this.s = s;
+
+        if (s instanceof Fuseable.QueueSubscription) {
+          Fuseable.QueueSubscription<ByteBuf> qs = (Fuseable.QueueSubscription<ByteBuf>) s;
+
+          int m = qs.requestFusion(Fuseable.ANY);
+
+          if (m == Fuseable.SYNC) {
+            sourceMode = m;
+            queue = qs;
+            done = true;
+
+            actual.onSubscribe(this);
+            return;
+          }
+
+          if (m == Fuseable.ASYNC) {
+            sourceMode = m;
+            queue = qs;
+
+            actual.onSubscribe(this);
+
+            s.request(prefetch);
+            return;
+          }
+        }
+
+        queue = Queues.<ByteBuf>get(prefetch).get();
+
+        actual.onSubscribe(this);
+
+        s.request(prefetch);
+      }
+    }
+
+    @Override
+    public void onNext(ByteBuf frame) {
+      if (sourceMode == Fuseable.ASYNC) {
+        drain();
+        return;
+      }
+
+      if (done) {
+        ReferenceCountUtil.safeRelease(frame);
+        Operators.onNextDropped(frame, actual.currentContext());
+        return;
+      }
+
+      if (!queue.offer(frame)) {
+        ReferenceCountUtil.safeRelease(frame);
+        error =
+            Operators.onOperatorError(
+                s,
+                Exceptions.failWithOverflow(Exceptions.BACKPRESSURE_ERROR_QUEUE_FULL),
+                frame,
+                actual.currentContext());
+        done = true;
+      }
+
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (done) {
+        Operators.onErrorDropped(t, actual.currentContext());
+        return;
+      }
+
+      error = t;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (Operators.validate(n)) {
+        Operators.addCap(REQUESTED, this, n);
+        drain();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (cancelled) {
+        return;
+      }
+
+      cancelled = true;
+      s.cancel();
+      drain();
+    }
+
+    void drain() {
+      if (WIP.getAndIncrement(this) != 0) {
+        return;
+      }
+
+      final CoreSubscriber<? super ByteBuf> a = actual;
+      final Queue<ByteBuf> q = queue;
+      int missed = 1;
+
+      for (; ; ) {
+        if (cancelled) {
+          // keeps clearing until the counter is released, so that frames queued by an onNext
+          // racing with cancel are released too
+          clear(q);
+        } else {
+          long r = requested;
+          long e = 0L;
+
+          while (e != r && !cancelled) {
+            boolean d = done;
+            ByteBuf frame;
+
+            try {
+              frame = pollFrame(q);
+            } catch (Throwable t) {
+              Exceptions.throwIfFatal(t);
+              s.cancel();
+              clear(q);
+              a.onError(Operators.onOperatorError(t, a.currentContext()));
+              return;
+            }
+
+            boolean empty = frame == null;
+
+            if (checkTerminated(d, empty, a)) {
+              if (frame != null) {
+                frame.release();
+              }
+              return;
+            }
+
+            if (empty) {
+              break;
+            }
+
+            a.onNext(frame);
+
+            e++;
+          }
+
+          if (e == r && !cancelled && checkTerminated(done, isEmpty(q), a)) {
+            return;
+          }
+
+          if (e != 0L && r != Long.MAX_VALUE) {
+            REQUESTED.addAndGet(this, -e);
+          }
+        }
+
+        missed = WIP.addAndGet(this, -missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    /**
+     * Returns the next fragment or frame to send, or {@code null} if the queue is empty and no
+     * frame is being fragmented.
+     */
+    @Nullable
+    ByteBuf pollFrame(Queue<ByteBuf> q) {
+      final ArrayDeque<FrameFragmenter> fragmenters = this.fragmenters;
+
+      final ByteBuf follower = ready.poll();
+      if (follower != null) {
+        return follower;
+      }
+
+      if (!fragmentTurn || fragmenters.isEmpty()) {
+        final ByteBuf frame = pollQueue(q);
+        if (frame != null) {
+          if (!fragmenters.isEmpty() && --budget <= 0) {
+            turn(true);
+          }
+          return frame;
+        }
+        if (fragmenters.isEmpty()) {
+          return null;
+        }
+        turn(true);
+      }
+
+      final FrameFragmenter fragmenter = fragmenters.peek();
+      final ByteBuf fragment = fragmenter.next();
+      if (!fragmenter.hasNext()) {
+        fragmenters.poll();
+        finish(fragmenter);
+        turn(false);
+      } else if (--budget <= 0) {
+        // yields to the queued frames and to the other fragmented frames
+        fragmenters.offer(fragmenters.poll());
+        turn(false);
+      }
+
+      final Consumer<ByteBuf> onFragment = this.onFragment;
+      if (onFragment != null) {
+        onFragment.accept(fragment);
+      }
+      return fragment;
+    }
+
+    void turn(boolean fragmentTurn) {
+      this.fragmentTurn = fragmentTurn;
+      this.budget = maxFragmentBurst;
+    }
+
+    /**
+     * Returns the next frame of the queue that can be sent as it is, parking the frames to
+     * fragment and the frames that follow them on the way, or {@code null} if there is none. Stops
+     * taking frames from the queue once as many frames are parked as the queue can hold, which
+     * keeps the parked frames bounded while a fragmented stream keeps sending.
+     */
+    @Nullable
+    ByteBuf pollQueue(Queue<ByteBuf> q) {
+      while (parked < prefetch) {
+        final ByteBuf frame = q.poll();
+        if (frame == null) {
+          return null;
+        }
+        consumed();
+
+        if (!park(frame)) {
+          return frame;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Parks the given frame behind a fragmented frame of its stream, or as a frame to fragment.
+     *
+     * @return {@code true} if the frame has been parked, {@code false} if it can be sent as it is
+     */
+    boolean park(ByteBuf frame) {
+      try {
+        final ArrayDeque<FrameFragmenter> fragmenters = this.fragmenters;
+        if (!fragmenters.isEmpty()) {
+          final int streamId = FrameHeaderCodec.streamId(frame);
+          for (FrameFragmenter fragmenter : fragmenters) {
+            if (fragmenter.streamId == streamId) {
+              fragmenter.follow(frame);
+              parked++;
+              return true;
+            }
+          }
+        }
+
+        final FrameFragmenter fragmenter = fragmenter(frame);
+        if (fragmenter == null) {
+          return false;
+        }
+        fragmenters.offer(fragmenter);
+        parked++;
+        return true;
+      } catch (Throwable t) {
+        ReferenceCountUtil.safeRelease(frame);
+        throw t;
+      }
+    }
+
+    /** Returns a fragmenter for the given frame, or {@code null} if it fits into the mtu. */
+    @Nullable
+    FrameFragmenter fragmenter(ByteBuf frame) {
+      if (frame.readableBytes() <= mtu) {
+        return null;
+      }
+      final FrameType frameType = FrameHeaderCodec.frameType(frame);
+      if (!frameType.isFragmentable()) {
+        return null;
+      }
+      return new FrameFragmenter(allocator, mtu, frame, frameType);
+    }
+
+    /**
+     * Releases a fragmented frame after its last fragment and lets the frames that followed it go,
+     * up to the next frame of the stream that needs fragmentation.
+     */
+    void finish(FrameFragmenter fragmenter) {
+      fragmenter.release();
+      parked--;
+
+      final ArrayDeque<ByteBuf> followers = fragmenter.followers;
+      if (followers == null) {
+        return;
+      }
+
+      ByteBuf frame;
+      while ((frame = followers.poll()) != null) {
+        final FrameFragmenter next;
+        try {
+          next = fragmenter(frame);
+        } catch (Throwable t) {
+          ReferenceCountUtil.safeRelease(frame);
+          throw t;
+        }
+
+        if (next != null) {
+          next.followers = followers;
+          fragmenters.offer(next);
+          return;
+        }
+
+        parked--;
+        ready.offer(frame);
+      }
+    }
+
+    boolean isEmpty(Queue<ByteBuf> q) {
+      return fragmenters.isEmpty() && ready.isEmpty() && q.isEmpty();
+    }
+
+    /** Replenishes the upstream demand, unless the source is synchronously fused. */
+    void consumed() {
+      if (sourceMode != Fuseable.SYNC && ++consumed == limit) {
+        consumed = 0;
+        s.request(limit);
+      }
+    }
+
+    boolean checkTerminated(boolean d, boolean empty, CoreSubscriber<? super ByteBuf> a) {
+      if (d && empty) {
+        Throwable e = error;
+        if (e != null) {
+          a.onError(e);
+        } else {
+          a.onComplete();
+        }
+        return true;
+      }
+
+      return false;
+    }
+
+    void clear(Queue<ByteBuf> q) {
+      FrameFragmenter fragmenter;
+      while ((fragmenter = fragmenters.poll()) != null) {
+        fragmenter.release();
+        final ArrayDeque<ByteBuf> followers = fragmenter.followers;
+        if (followers != null) {
+          releaseAll(followers);
+        }
+      }
+      releaseAll(ready);
+      parked = 0;
+
+      if (sourceMode == Fuseable.ASYNC) {
+        // the fused source owns its queue and releases what is left on clear
+        q.clear();
+        return;
+      }
+
+      releaseAll(q);
+    }
+
+    static void releaseAll(Queue<ByteBuf> q) {
+      ByteBuf frame;
+      while ((frame = q.poll()) != null) {
+        ReferenceCountUtil.safeRelease(frame);
+      }
+    }
+  }
+}
@@ -27,47 +27,93 @@
 import io.rsocket.frame.RequestFireAndForgetFrameCodec;
 import io.rsocket.frame.RequestResponseFrameCodec;
 import io.rsocket.frame.RequestStreamFrameCodec;
-import java.util.function.Consumer;
+import java.util.ArrayDeque;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.SynchronousSink;
+import reactor.util.annotation.Nullable;
 
 /**
  * The implementation of the RSocket fragmentation behavior.
  *
+ * <p>An instance is a cursor over the fragments of a single frame, generated one at a time by
+ * {@link #next()}. Fragments are made of a newly encoded header and retained slices of the
+ * metadata and data of the frame, so that no payload bytes are copied and the transport can send
+ * a fragment with a gathering write.
+ *
  * @see <a
  *     href="https://github.com/rsocket/rsocket/blob/master/Protocol.md#fragmentation-and-reassembly">Fragmentation
  *     and Reassembly</a>
  */
 final class FrameFragmenter {
+
+  final ByteBufAllocator allocator;
+  final int mtu;
+  final ByteBuf frame;
+  final FrameType frameType;
+  final int streamId;
+  final ByteBuf metadata;
+  final ByteBuf data;
+
+  boolean first = true;
+
+  /** Frames of the same stream that were sent after the fragmented frame, in order. */
+  @Nullable ArrayDeque<ByteBuf> followers;
+
+  /**
+   * Creates a cursor over the fragments of the given frame. Ownership of the frame is transferred,
+   * it is released by {@link #release()}.
+   */
+  FrameFragmenter(ByteBufAllocator allocator, int mtu, ByteBuf frame, FrameType frameType) {
+    this.allocator = allocator;
+    this.mtu = mtu;
+    this.frame = frame;
+    this.frameType = frameType;
+    this.streamId = FrameHeaderCodec.streamId(frame);
+    this.metadata = getMetadata(frame, frameType);
+    this.data = getData(frame, frameType);
+  }
+
   static Publisher<ByteBuf> fragmentFrame(
       ByteBufAllocator allocator, int mtu, final ByteBuf frame, FrameType frameType) {
-    ByteBuf metadata = getMetadata(frame, frameType);
-    ByteBuf data = getData(frame, frameType);
-    int streamId = FrameHeaderCodec.streamId(frame);
     return Flux.generate(
-            new Consumer<SynchronousSink<ByteBuf>>() {
-              boolean first = true;
-
-              @Override
-              public void accept(SynchronousSink<ByteBuf> sink) {
-                ByteBuf byteBuf;
-                if (first) {
-                  first = false;
-                  byteBuf =
-                      encodeFirstFragment(
-                          allocator, mtu, frame, frameType, streamId, metadata, data);
-                } else {
-                  byteBuf = encodeFollowsFragment(allocator, mtu, streamId, metadata, data);
-                }
-
-                sink.next(byteBuf);
-                if (!metadata.isReadable() && !data.isReadable()) {
-                  sink.complete();
-                }
-              }
-            })
-        .doFinally(signalType -> ReferenceCountUtil.safeRelease(frame));
+        () -> new FrameFragmenter(allocator, mtu, frame, frameType),
+        (fragmenter, sink) -> {
+          sink.next(fragmenter.next());
+          if (!fragmenter.hasNext()) {
+            sink.complete();
+          }
+          return fragmenter;
+        },
+        FrameFragmenter::release);
+  }
+
+  /** Returns whether there are fragments left to generate. */
+  boolean hasNext() {
+    return first || metadata.isReadable() || data.isReadable();
+  }
+
+  /** Generates the next fragment, which must exist according to {@link #hasNext()}. */
+  ByteBuf next() {
+    if (first) {
+      first = false;
+      return encodeFirstFragment(allocator, mtu, frame, frameType, streamId, metadata, data);
+    }
+    return encodeFollowsFragment(allocator, mtu, streamId, metadata, data);
+  }
+
+  /** Queues a frame of the same stream to be sent once the last fragment has been generated. */
+  void follow(ByteBuf frame) {
+    ArrayDeque<ByteBuf> followers = this.followers;
+    if (followers == null) {
+      followers = new ArrayDeque<>();
+      this.followers = followers;
+    }
+    followers.offer(frame);
+  }
+
+  /** Releases the fragmented frame. Generated fragments hold their own references. */
+  void release() {
+    ReferenceCountUtil.safeRelease(frame);
   }
 
   static ByteBuf encodeFirstFragment(
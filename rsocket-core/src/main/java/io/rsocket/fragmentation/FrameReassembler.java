@@ -23,17 +23,34 @@
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.collection.IntObjectHashMap;
 import io.netty.util.collection.IntObjectMap;
+import io.rsocket.DuplexConnection;
+import io.rsocket.exceptions.CanceledException;
+import io.rsocket.exceptions.RejectedException;
 import io.rsocket.frame.*;
+import io.rsocket.internal.ReassemblyBudget;
+import io.rsocket.internal.UnboundedProcessor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.SynchronousSink;
 import reactor.util.annotation.Nullable;
 
 /**
  * The implementation of the RSocket reassembly behavior.
  *
+ * <p>With a {@link ReassemblyBudget} the bytes of all payloads being reassembled are accounted for,
+ * and the oldest partial payloads are evicted when a fragment does not fit into the budget. An
+ * evicted request is rejected with an {@code ERROR} frame to the peer. Any other evicted payload is
+ * cancelled with a {@code CANCEL} frame to the peer and terminated locally with an {@code ERROR}
+ * frame, handed on among the received frames. The remaining fragments of an evicted payload are
+ * dropped, for as long as the stream is among the last {@link #MAX_EVICTED_STREAMS} evicted ones.
+ *
+ * <p>Only the partial payloads of this reassembler are evicted, including when it is the parent of
+ * the budget, shared with other connections, that is exhausted. The parent never evicts the
+ * payloads of another connection, it only rejects the bytes that do not fit into it.
+ *
  * @see <a
  *     href="https://github.com/rsocket/rsocket/blob/master/Protocol.md#fragmentation-and-reassembly">Fragmentation
  *     and Reassembly</a>
@@ -44,25 +61,93 @@ final class FrameReassembler extends AtomicBoolean implements Disposable {
 
   private static final Logger logger = LoggerFactory.getLogger(FrameReassembler.class);
 
+  static final String EVICTED_MESSAGE =
+      "Partially reassembled payload evicted, the reassembly budget is exhausted";
+
+  /**
+   * The number of evicted streams whose remaining fragments are dropped. Older ones are forgotten,
+   * as the peer may stop sending their fragments without a terminal frame.
+   */
+  static final int MAX_EVICTED_STREAMS = 1024;
+
   final IntObjectMap<ByteBuf> headers;
   final IntObjectMap<CompositeByteBuf> metadata;
   final IntObjectMap<CompositeByteBuf> data;
 
+  /** Streams with a partial payload in the order of their first fragment, kept with a budget. */
+  final StreamIdSet partialStreams;
+  /** Streams with an evicted payload whose remaining fragments are dropped. */
+  final StreamIdSet evictedStreams;
+
   final ByteBufAllocator allocator;
   final int maxInboundPayloadSize;
+  final FrameHeader frameHeader = new FrameHeader();
+
+  @Nullable final ReassemblyBudget budget;
+  @Nullable final DuplexConnection connection;
+  @Nullable final UnboundedProcessor<ByteBuf> evictionFrames;
 
   public FrameReassembler(ByteBufAllocator allocator, int maxInboundPayloadSize) {
+    this(allocator, maxInboundPayloadSize, null, null);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param allocator the allocator of reassembled frames
+   * @param maxInboundPayloadSize the maximum size of a reassembled payload
+   * @param budget the budget of the bytes held in reassembly, or {@code null}
+   * @param connection the connection to notify the peer of evicted payloads on, required with a
+   *     budget
+   */
+  FrameReassembler(
+      ByteBufAllocator allocator,
+      int maxInboundPayloadSize,
+      @Nullable ReassemblyBudget budget,
+      @Nullable DuplexConnection connection) {
     this.allocator = allocator;
     this.maxInboundPayloadSize = maxInboundPayloadSize;
     this.headers = new IntObjectHashMap<>();
     this.metadata = new IntObjectHashMap<>();
     this.data = new IntObjectHashMap<>();
+    this.partialStreams = new StreamIdSet();
+    this.evictedStreams = new StreamIdSet();
+    this.budget = budget;
+    this.connection = connection;
+    this.evictionFrames = budget != null ? new UnboundedProcessor<>() : null;
+  }
+
+  /**
+   * Reassembles the given frames, merging in the frames that terminate evicted payloads locally.
+   */
+  Flux<ByteBuf> reassemble(Flux<ByteBuf> frames) {
+    final UnboundedProcessor<ByteBuf> evictionFrames = this.evictionFrames;
+    if (evictionFrames == null) {
+      return frames.handle(this::reassembleFrame);
+    }
+    return Flux.merge(
+        frames.<ByteBuf>handle(this::reassembleFrame).doOnComplete(evictionFrames::onComplete),
+        evictionFrames);
   }
 
   @Override
   public void dispose() {
     if (compareAndSet(false, true)) {
       synchronized (FrameReassembler.this) {
+        final ReassemblyBudget budget = this.budget;
+        if (budget != null) {
+          long heldBytes = 0;
+          for (ByteBuf byteBuf : metadata.values()) {
+            heldBytes += byteBuf.readableBytes();
+          }
+          for (ByteBuf byteBuf : data.values()) {
+            heldBytes += byteBuf.readableBytes();
+          }
+          budget.release(heldBytes);
+          partialStreams.clear();
+          evictedStreams.clear();
+        }
+
         for (ByteBuf byteBuf : headers.values()) {
           ReferenceCountUtil.safeRelease(byteBuf);
         }
@@ -152,7 +237,100 @@ synchronized void putHeader(int streamId, ByteBuf header) {
     headers.put(streamId, header);
   }
 
+  synchronized void addPartialStream(int streamId) {
+    partialStreams.add(streamId);
+  }
+
+  synchronized int oldestPartialStream() {
+    return partialStreams.oldest();
+  }
+
+  synchronized void removePartialStream(int streamId) {
+    partialStreams.remove(streamId);
+  }
+
+  synchronized boolean isEvicted(int streamId) {
+    return !evictedStreams.isEmpty() && evictedStreams.contains(streamId);
+  }
+
+  synchronized void addEvictedStream(int streamId) {
+    evictedStreams.add(streamId);
+    if (evictedStreams.size() > MAX_EVICTED_STREAMS) {
+      evictedStreams.remove(evictedStreams.oldest());
+    }
+  }
+
+  synchronized void removeEvictedStream(int streamId) {
+    evictedStreams.remove(streamId);
+  }
+
+  /** Returns the bytes of the payload reassembled so far accounted for by the budget. */
+  int getPayloadSize(int streamId) {
+    return getMetadataSize(streamId) + getDataSize(streamId);
+  }
+
+  /** Releases the bytes of a partial payload that is about to be removed from the budget. */
+  void releaseBudget(int streamId) {
+    final ReassemblyBudget budget = this.budget;
+    if (budget != null) {
+      removePartialStream(streamId);
+      budget.release(getPayloadSize(streamId));
+    }
+  }
+
+  /**
+   * Accounts for the bytes just added to the payload of the given stream, evicting partial payloads
+   * in the order they were started until the bytes fit into the budget, up to the payload of the
+   * given stream itself.
+   */
+  void acquireBudget(ReassemblyBudget budget, int streamId, int bytes) {
+    while (!budget.tryAcquire(bytes)) {
+      int oldestStreamId = oldestPartialStream();
+      if (oldestStreamId == streamId || oldestStreamId == 0) {
+        evict(budget, streamId, bytes);
+        return;
+      }
+      evict(budget, oldestStreamId, 0);
+    }
+  }
+
+  private void evict(ReassemblyBudget budget, int streamId, int unaccountedBytes) {
+    ByteBuf header = getHeader(streamId);
+    FrameType frameType = header != null ? FrameHeaderCodec.frameType(header) : FrameType.PAYLOAD;
+
+    removePartialStream(streamId);
+    budget.release(getPayloadSize(streamId) - unaccountedBytes);
+    budget.evicted();
+    discardAssemble(streamId);
+    addEvictedStream(streamId);
+
+    final DuplexConnection connection = this.connection;
+    if (frameType.isRequestType()) {
+      send(
+          connection,
+          ErrorFrameCodec.encode(allocator, streamId, new RejectedException(EVICTED_MESSAGE)));
+    } else {
+      send(connection, CancelFrameCodec.encode(allocator, streamId));
+      evictionFrames.onNext(
+          ErrorFrameCodec.encode(allocator, streamId, new CanceledException(EVICTED_MESSAGE)));
+    }
+  }
+
+  private static void send(DuplexConnection connection, ByteBuf frame) {
+    connection
+        .sendOne(frame)
+        .subscribe(null, t -> logger.debug("failed to send frame of an evicted payload", t));
+  }
+
   void cancelAssemble(int streamId) {
+    if (budget != null) {
+      releaseBudget(streamId);
+      removeEvictedStream(streamId);
+    }
+    discardAssemble(streamId);
+  }
+
+  void discardAssemble(int streamId) {
     ByteBuf header = removeHeader(streamId);
     CompositeByteBuf metadata = removeMetadata(streamId);
     CompositeByteBuf data = removeData(streamId);
@@ -184,6 +362,8 @@ void handleNoFollowsFlag(ByteBuf frame, SynchronousSink<ByteBuf> sink, int strea
         }
       }
 
+      releaseBudget(streamId);
+
       if (FrameHeaderCodec.hasMetadata(header)) {
         ByteBuf assembledFrame = assembleFrameWithMetadata(frame, streamId, header);
         sink.next(assembledFrame);
@@ -200,9 +380,9 @@ void handleNoFollowsFlag(ByteBuf frame, SynchronousSink<ByteBuf> sink, int strea
 
   void handleFollowsFlag(ByteBuf frame, int streamId, FrameType frameType) {
 
+    int currentPayloadSize = getPayloadSize(streamId);
     int maxReassemblySize = this.maxInboundPayloadSize;
     if (maxReassemblySize != Integer.MAX_VALUE) {
-      int currentPayloadSize = getMetadataSize(streamId) + getDataSize(streamId);
       if (currentPayloadSize + frame.readableBytes() - FrameHeaderCodec.size()
           > maxReassemblySize) {
         frame.release();
@@ -219,6 +399,9 @@ void handleFollowsFlag(ByteBuf frame, int streamId, FrameType frameType) {
         header.writeInt(i > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) i);
       }
       putHeader(streamId, header);
+      if (budget != null) {
+        addPartialStream(streamId);
+      }
     }
 
     if (FrameHeaderCodec.hasMetadata(frame)) {
@@ -276,12 +459,18 @@ void handleFollowsFlag(ByteBuf frame, int streamId, FrameType frameType) {
 
     getData(streamId).addComponents(true, data);
     frame.release();
+
+    final ReassemblyBudget budget = this.budget;
+    if (budget != null) {
+      acquireBudget(budget, streamId, getPayloadSize(streamId) - currentPayloadSize);
+    }
   }
 
   void reassembleFrame(ByteBuf frame, SynchronousSink<ByteBuf> sink) {
     try {
-      FrameType frameType = FrameHeaderCodec.frameType(frame);
-      int streamId = FrameHeaderCodec.streamId(frame);
+      FrameHeader header = frameHeader.wrap(frame);
+      FrameType frameType = header.frameType();
+      int streamId = header.streamId();
       switch (frameType) {
         case CANCEL:
         case ERROR:
@@ -293,9 +482,15 @@ void reassembleFrame(ByteBuf frame, SynchronousSink<ByteBuf> sink) {
         return;
       }
 
-      boolean hasFollows = FrameHeaderCodec.hasFollows(frame);
+      if (budget != null && isEvicted(streamId)) {
+        if (!header.hasFollows()) {
+          removeEvictedStream(streamId);
+        }
+        frame.release();
+        return;
+      }
 
-      if (hasFollows) {
+      if (header.hasFollows()) {
         handleFollowsFlag(frame, streamId, frameType);
       } else {
         handleNoFollowsFlag(frame, sink, streamId);
@@ -339,4 +534,73 @@ private ByteBuf assembleData(ByteBuf frame, int streamId) {
 
     return data;
   }
+
+  /**
+   * Stream ids in the order they were added, with constant time lookup, removal and access to the
+   * oldest one, and without boxing the ids.
+   */
+  static final class StreamIdSet {
+
+    final IntObjectMap<Node> nodes = new IntObjectHashMap<>();
+    /** The sentinel of the list, followed by the oldest node and preceded by the newest one. */
+    final Node head = new Node(0);
+
+    StreamIdSet() {
+      head.previous = head;
+      head.next = head;
+    }
+
+    void add(int streamId) {
+      if (nodes.containsKey(streamId)) {
+        return;
+      }
+      final Node node = new Node(streamId);
+      node.previous = head.previous;
+      node.next = head;
+      head.previous.next = node;
+      head.previous = node;
+      nodes.put(streamId, node);
+    }
+
+    void remove(int streamId) {
+      final Node node = nodes.remove(streamId);
+      if (node != null) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+      }
+    }
+
+    boolean contains(int streamId) {
+      return nodes.containsKey(streamId);
+    }
+
+    /** Returns the stream id added first, or {@code 0} if there is none. */
+    int oldest() {
+      return head.next.streamId;
+    }
+
+    int size() {
+      return nodes.size();
+    }
+
+    boolean isEmpty() {
+      return nodes.isEmpty();
+    }
+
+    void clear() {
+      nodes.clear();
+      head.previous = head;
+      head.next = head;
+    }
+
+    static final class Node {
+      final int streamId;
+      Node previous;
+      Node next;
+
+      Node(int streamId) {
+        this.streamId = streamId;
+      }
+    }
+  }
 }
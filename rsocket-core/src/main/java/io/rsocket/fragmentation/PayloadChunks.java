@@ -0,0 +1,299 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+/**
+ * The data fragments of a payload that is reassembled incrementally, see {@link
+ * StreamingFrameReassembler}. Chunks are queued as they are received and handed to the single
+ * subscriber as it requests them. Once the payload has been claimed by a handler, a queue that
+ * grows beyond {@link #HIGH_WATERMARK} chunks pauses reading from the connection until the
+ * subscriber has caught up to {@link #LOW_WATERMARK} chunks. If the subscriber does not catch up
+ * within the maximum pause of the reassembler, it is failed and the chunks are dropped, so that the
+ * other streams of the connection are not held up any longer.
+ */
+final class PayloadChunks extends Flux<ByteBuf> implements Subscription {
+
+  static final int HIGH_WATERMARK = Queues.XS_BUFFER_SIZE;
+  static final int LOW_WATERMARK = HIGH_WATERMARK >> 2;
+
+  final StreamingFrameReassembler parent;
+  final Queue<ByteBuf> queue = Queues.<ByteBuf>unbounded(Queues.XS_BUFFER_SIZE).get();
+
+  CoreSubscriber<? super ByteBuf> actual;
+  volatile boolean done;
+  Throwable error;
+
+  volatile boolean cancelled;
+  volatile boolean claimed;
+
+  volatile int once;
+  static final AtomicIntegerFieldUpdater<PayloadChunks> ONCE =
+      AtomicIntegerFieldUpdater.newUpdater(PayloadChunks.class, "once");
+
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<PayloadChunks> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(PayloadChunks.class, "wip");
+
+  volatile long requested;
+  static final AtomicLongFieldUpdater<PayloadChunks> REQUESTED =
+      AtomicLongFieldUpdater.newUpdater(PayloadChunks.class, "requested");
+
+  volatile int size;
+  static final AtomicIntegerFieldUpdater<PayloadChunks> SIZE =
+      AtomicIntegerFieldUpdater.newUpdater(PayloadChunks.class, "size");
+
+  volatile int paused;
+  static final AtomicIntegerFieldUpdater<PayloadChunks> PAUSED =
+      AtomicIntegerFieldUpdater.newUpdater(PayloadChunks.class, "paused");
+
+  /** When reading was last paused, and the timer that fails the subscriber if it stays paused. */
+  volatile long pausedAt;
+
+  final Disposable.Swap pauseTimeout = Disposables.swap();
+
+  /** Whether the subscriber is failed right away, without handing it the queued chunks. */
+  volatile boolean failed;
+
+  PayloadChunks(StreamingFrameReassembler parent) {
+    this.parent = parent;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super ByteBuf> actual) {
+    if (once == 0 && ONCE.compareAndSet(this, 0, 1)) {
+      actual.onSubscribe(this);
+      this.actual = actual;
+      drain();
+    } else {
+      Operators.error(
+          actual,
+          new IllegalStateException(
+              "PayloadChunks allows only a single Subscriber, before the payload is released"));
+    }
+  }
+
+  /** Marks the chunks as handed to a handler, from which point a full queue pauses reading. */
+  void claim() {
+    claimed = true;
+    if (size >= HIGH_WATERMARK) {
+      pause();
+    }
+  }
+
+  /** Discards the chunks unless they have been subscribed to already. */
+  void discard() {
+    if (once == 0 && ONCE.compareAndSet(this, 0, 1)) {
+      cancel();
+    }
+  }
+
+  void onNext(ByteBuf chunk) {
+    if (cancelled || done) {
+      ReferenceCountUtil.safeRelease(chunk);
+      return;
+    }
+
+    queue.offer(chunk);
+    if (SIZE.incrementAndGet(this) >= HIGH_WATERMARK && claimed) {
+      pause();
+    }
+    drain();
+  }
+
+  void onError(Throwable t) {
+    if (done) {
+      return;
+    }
+    error = t;
+    done = true;
+    drain();
+  }
+
+  void onComplete() {
+    if (done) {
+      return;
+    }
+    done = true;
+    drain();
+  }
+
+  /**
+   * Fails the subscriber right away, dropping the chunks it has not consumed yet. An error that
+   * the chunks have been terminated with already takes precedence over the given one.
+   */
+  void fail(Throwable t) {
+    if (cancelled || failed) {
+      return;
+    }
+    if (error == null) {
+      error = t;
+    }
+    failed = true;
+    done = true;
+    drain();
+  }
+
+  @Override
+  public void request(long n) {
+    if (Operators.validate(n)) {
+      Operators.addCap(REQUESTED, this, n);
+      drain();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    drain();
+  }
+
+  void pause() {
+    if (paused != 0) {
+      return;
+    }
+    // paused before the flag is set and resumed after it is cleared, so that the count of the
+    // parent never drops below the number of paused chunks
+    parent.pauseReceive();
+    if (!PAUSED.compareAndSet(this, 0, 1)) {
+      parent.resumeReceive();
+      return;
+    }
+    pausedAt = System.nanoTime();
+    schedulePauseTimeout(parent.maxPauseNanos);
+    // the subscriber may have caught up in the meantime
+    if (size <= LOW_WATERMARK) {
+      resume();
+    }
+  }
+
+  void resume() {
+    if (PAUSED.compareAndSet(this, 1, 0)) {
+      pauseTimeout.update(Disposables.disposed());
+      parent.resumeReceive();
+      // more chunks may have been queued in the meantime
+      if (size >= HIGH_WATERMARK && !cancelled) {
+        pause();
+      }
+    }
+  }
+
+  void schedulePauseTimeout(long delayNanos) {
+    pauseTimeout.update(
+        Schedulers.parallel().schedule(this::checkPause, delayNanos, TimeUnit.NANOSECONDS));
+  }
+
+  /** Fails the subscriber if reading has been paused on its account for too long. */
+  void checkPause() {
+    if (paused == 0 || cancelled) {
+      return;
+    }
+    final long remainingNanos = parent.maxPauseNanos - (System.nanoTime() - pausedAt);
+    if (remainingNanos > 0) {
+      // paused again since this timer was scheduled
+      schedulePauseTimeout(remainingNanos);
+      return;
+    }
+    fail(
+        new IllegalStateException(
+            "Payload data not consumed within "
+                + TimeUnit.NANOSECONDS.toMillis(parent.maxPauseNanos)
+                + "ms"));
+  }
+
+  void drain() {
+    if (WIP.getAndIncrement(this) != 0) {
+      return;
+    }
+
+    final Queue<ByteBuf> q = queue;
+    int missed = 1;
+    for (; ; ) {
+      if (cancelled) {
+        clear();
+      } else if (failed) {
+        clear();
+        final CoreSubscriber<? super ByteBuf> a = actual;
+        if (a != null) {
+          cancelled = true;
+          a.onError(error);
+        }
+      } else {
+        final CoreSubscriber<? super ByteBuf> a = actual;
+        if (a != null) {
+          long r = requested;
+          long e = 0L;
+          while (e != r) {
+            final ByteBuf chunk = q.poll();
+            if (chunk == null) {
+              break;
+            }
+            if (SIZE.decrementAndGet(this) <= LOW_WATERMARK) {
+              resume();
+            }
+            a.onNext(chunk);
+            e++;
+            if (cancelled) {
+              break;
+            }
+          }
+          if (e != 0 && r != Long.MAX_VALUE) {
+            REQUESTED.addAndGet(this, -e);
+          }
+
+          if (done && !cancelled && q.isEmpty()) {
+            cancelled = true;
+            final Throwable t = error;
+            if (t != null) {
+              a.onError(t);
+            } else {
+              a.onComplete();
+            }
+          }
+        }
+      }
+
+      missed = WIP.addAndGet(this, -missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  void clear() {
+    ByteBuf chunk;
+    while ((chunk = queue.poll()) != null) {
+      SIZE.decrementAndGet(this);
+      ReferenceCountUtil.safeRelease(chunk);
+    }
+    resume();
+  }
+}
@@ -19,11 +19,14 @@
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.rsocket.DuplexConnection;
+import io.rsocket.Payload;
 import io.rsocket.frame.FrameLengthCodec;
+import io.rsocket.internal.ReassemblyBudget;
 import java.util.Objects;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.annotation.Nullable;
 
 /**
  * A {@link DuplexConnection} implementation that reassembles {@link ByteBuf}s.
@@ -34,15 +37,43 @@
  */
 public class ReassemblyDuplexConnection implements DuplexConnection {
   private final DuplexConnection delegate;
-  private final FrameReassembler frameReassembler;
+  @Nullable private final FrameReassembler frameReassembler;
+  @Nullable private final StreamingFrameReassembler streamingReassembler;
+  @Nullable private final ReassemblyBudget budget;
 
   /** Constructor with the underlying delegate to receive frames from. */
   public ReassemblyDuplexConnection(DuplexConnection delegate, int maxInboundPayloadSize) {
+    this(delegate, maxInboundPayloadSize, new FragmentationOptions());
+  }
+
+  /**
+   * Constructor with the underlying delegate to receive frames from.
+   *
+   * @param delegate the underlying connection
+   * @param maxInboundPayloadSize the maximum size of a reassembled payload
+   * @param options the optional reassembly settings
+   * @since 1.1
+   */
+  public ReassemblyDuplexConnection(
+      DuplexConnection delegate, int maxInboundPayloadSize, FragmentationOptions options) {
     Objects.requireNonNull(delegate, "delegate must not be null");
     this.delegate = delegate;
-    this.frameReassembler = new FrameReassembler(delegate.alloc(), maxInboundPayloadSize);
-
-    delegate.onClose().doFinally(s -> frameReassembler.dispose()).subscribe();
+    final ReassemblyBudget budget = options.reassemblyBudget;
+    if (options.streaming) {
+      StreamingFrameReassembler reassembler =
+          new StreamingFrameReassembler(delegate.alloc(), maxInboundPayloadSize);
+      this.frameReassembler = null;
+      this.streamingReassembler = reassembler;
+      this.budget = null;
+      delegate.onClose().doFinally(s -> reassembler.dispose()).subscribe();
+    } else {
+      FrameReassembler reassembler =
+          new FrameReassembler(delegate.alloc(), maxInboundPayloadSize, budget, delegate);
+      this.frameReassembler = reassembler;
+      this.streamingReassembler = null;
+      this.budget = budget;
+      delegate.onClose().doFinally(s -> reassembler.dispose()).subscribe();
+    }
   }
 
   public static int assertInboundPayloadSize(int inboundPayloadSize) {
@@ -57,6 +88,55 @@ public static int assertInboundPayloadSize(int inboundPayloadSize) {
     }
   }
 
+  /**
+   * Returns whether the data of fragmented payloads is handed on as it is received.
+   *
+   * @since 1.1
+   */
+  public boolean isStreaming() {
+    return streamingReassembler != null;
+  }
+
+  /**
+   * Returns the budget of the bytes held by payloads being reassembled, if one is applied.
+   *
+   * @since 1.1
+   */
+  @Nullable
+  public ReassemblyBudget reassemblyBudget() {
+    return budget;
+  }
+
+  /**
+   * Returns the given payload, decoded from a frame received with its follows flag set, as a {@link
+   * StreamingPayload} together with the data that follows it if the frame is the head of a payload
+   * that is reassembled incrementally, or the payload as it is otherwise. The head of a payload can
+   * be claimed once.
+   *
+   * @param streamId the stream id of the frame
+   * @param payload the decoded payload of the frame
+   * @return the payload to hand on
+   * @since 1.1
+   */
+  public Payload claimPayload(int streamId, Payload payload) {
+    final StreamingFrameReassembler reassembler = this.streamingReassembler;
+    return reassembler != null ? reassembler.claimPayload(streamId, payload) : payload;
+  }
+
+  /**
+   * Discards the data that follows a frame received with its follows flag set if the frame has not
+   * been claimed with {@link #claimPayload(int, Payload)}, e.g. because the frame was dropped.
+   *
+   * @param streamId the stream id of the frame
+   * @since 1.1
+   */
+  public void discardPayload(int streamId) {
+    final StreamingFrameReassembler reassembler = this.streamingReassembler;
+    if (reassembler != null) {
+      reassembler.discardPayload(streamId);
+    }
+  }
+
   @Override
   public Mono<Void> send(Publisher<ByteBuf> frames) {
     return delegate.send(frames);
@@ -69,7 +149,11 @@ public Mono<Void> sendOne(ByteBuf frame) {
 
   @Override
   public Flux<ByteBuf> receive() {
-    return delegate.receive().handle(frameReassembler::reassembleFrame);
+    final StreamingFrameReassembler streamingReassembler = this.streamingReassembler;
+    if (streamingReassembler != null) {
+      return streamingReassembler.reassemble(delegate.receive());
+    }
+    return frameReassembler.reassemble(delegate.receive());
   }
 
   @Override
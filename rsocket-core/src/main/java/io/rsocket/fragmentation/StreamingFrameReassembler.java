@@ -0,0 +1,506 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.rsocket.Payload;
+import io.rsocket.exceptions.Exceptions;
+import io.rsocket.frame.FragmentationCodec;
+import io.rsocket.frame.FrameHeader;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.RequestChannelFrameCodec;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.CoreSubscriber;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.SynchronousSink;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+
+/**
+ * The implementation of the RSocket reassembly behavior that does not hold the data of fragmented
+ * payloads. The fragments of a payload are collected until its metadata is complete, which is the
+ * case with the first fragment that carries data. That fragment is then emitted as the head frame
+ * of the payload, with the complete metadata and the first part of the data and with the follows
+ * flag still set, and the data of the fragments that follow is handed to the {@link PayloadChunks}
+ * of the payload as it is received. The chunks are claimed for the head frame by whoever decodes
+ * it, see {@link #claimPayload(int, Payload)}.
+ *
+ * <p>Frames are requested from the connection in batches. While the chunks of a claimed payload
+ * are not consumed fast enough, no more frames are requested, so that reading from the connection
+ * stops until the subscriber of the chunks catches up. This holds up the frames of all streams of
+ * the connection, including {@code KEEPALIVE} frames, as the frames of a connection are read in
+ * order. Reading is therefore paused on account of a payload for at most {@link
+ * #DEFAULT_MAX_PAUSE}, after which its chunks are failed and its remaining data is dropped.
+ *
+ * <p>Payloads that are complete before any data is received, and payloads that are not fragmented,
+ * are passed on reassembled as they are by {@link FrameReassembler}.
+ *
+ * @see <a
+ *     href="https://github.com/rsocket/rsocket/blob/master/Protocol.md#fragmentation-and-reassembly">Fragmentation
+ *     and Reassembly</a>
+ */
+final class StreamingFrameReassembler extends AtomicBoolean implements Disposable {
+
+  private static final long serialVersionUID = 4911583536541297235L;
+
+  private static final Logger logger = LoggerFactory.getLogger(StreamingFrameReassembler.class);
+
+  /** The longest time reading from the connection is paused for the chunks of one payload. */
+  static final Duration DEFAULT_MAX_PAUSE = Duration.ofSeconds(10);
+
+  final IntObjectMap<PartialPayload> payloads;
+  final IntObjectMap<PayloadChunks> unclaimed;
+
+  final ByteBufAllocator allocator;
+  final int maxInboundPayloadSize;
+  final long maxPauseNanos;
+  final FrameHeader frameHeader = new FrameHeader();
+
+  volatile int paused;
+  static final AtomicIntegerFieldUpdater<StreamingFrameReassembler> PAUSED =
+      AtomicIntegerFieldUpdater.newUpdater(StreamingFrameReassembler.class, "paused");
+
+  @Nullable volatile ReceiveSubscriber receiver;
+
+  StreamingFrameReassembler(ByteBufAllocator allocator, int maxInboundPayloadSize) {
+    this(allocator, maxInboundPayloadSize, DEFAULT_MAX_PAUSE);
+  }
+
+  StreamingFrameReassembler(
+      ByteBufAllocator allocator, int maxInboundPayloadSize, Duration maxPause) {
+    this.allocator = allocator;
+    this.maxInboundPayloadSize = maxInboundPayloadSize;
+    this.maxPauseNanos = maxPause.toNanos();
+    this.payloads = new IntObjectHashMap<>();
+    this.unclaimed = new IntObjectHashMap<>();
+  }
+
+  /** Returns the frames of the given source reassembled, requested from it in batches. */
+  Flux<ByteBuf> reassemble(Publisher<ByteBuf> source) {
+    return new ReceiveFlux(source, this).handle(this::reassembleFrame);
+  }
+
+  @Override
+  public void dispose() {
+    if (compareAndSet(false, true)) {
+      final Throwable closed = new ClosedChannelException();
+      synchronized (this) {
+        for (PartialPayload payload : payloads.values()) {
+          payload.cancel(closed);
+        }
+        payloads.clear();
+
+        for (PayloadChunks chunks : unclaimed.values()) {
+          chunks.discard();
+        }
+        unclaimed.clear();
+      }
+    }
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return get();
+  }
+
+  /**
+   * Returns the given payload, decoded from a head frame emitted by this reassembler, together with
+   * the chunks of data that follow it, or the payload as it is if the frame was not a head frame.
+   */
+  Payload claimPayload(int streamId, Payload head) {
+    final PayloadChunks chunks;
+    synchronized (this) {
+      chunks = unclaimed.remove(streamId);
+    }
+    if (chunks == null) {
+      return head;
+    }
+    chunks.claim();
+    return new StreamingPayload(head, chunks);
+  }
+
+  /** Discards the chunks of a head frame that has been dropped without decoding it. */
+  void discardPayload(int streamId) {
+    final PayloadChunks chunks;
+    synchronized (this) {
+      chunks = unclaimed.remove(streamId);
+    }
+    if (chunks != null) {
+      chunks.discard();
+    }
+  }
+
+  void pauseReceive() {
+    PAUSED.incrementAndGet(this);
+  }
+
+  void resumeReceive() {
+    if (PAUSED.decrementAndGet(this) == 0) {
+      final ReceiveSubscriber receiver = this.receiver;
+      if (receiver != null) {
+        receiver.drainRequests();
+      }
+    }
+  }
+
+  @Nullable
+  synchronized PartialPayload getPayload(int streamId) {
+    return payloads.get(streamId);
+  }
+
+  @Nullable
+  synchronized PartialPayload removePayload(int streamId) {
+    return payloads.remove(streamId);
+  }
+
+  void cancelAssemble(int streamId, ByteBuf frame, FrameType frameType) {
+    PartialPayload payload = removePayload(streamId);
+    if (payload != null) {
+      payload.cancel(
+          frameType == FrameType.ERROR
+              ? Exceptions.from(streamId, frame)
+              : new CancellationException("Stream cancelled while receiving the payload"));
+    }
+  }
+
+  void reassembleFrame(ByteBuf frame, SynchronousSink<ByteBuf> sink) {
+    try {
+      FrameHeader header = frameHeader.wrap(frame);
+      FrameType frameType = header.frameType();
+      int streamId = header.streamId();
+      switch (frameType) {
+        case CANCEL:
+        case ERROR:
+          cancelAssemble(streamId, frame, frameType);
+      }
+
+      if (!frameType.isFragmentable()
+          || !header.hasPayload()
+          || (!header.hasFollows() && getPayload(streamId) == null)) {
+        sink.next(frame);
+        return;
+      }
+
+      final PayloadChunks chunks;
+      final ByteBuf headFrame;
+      try {
+        // the partial payloads are only ever added on this thread, but dispose() may cancel them
+        synchronized (this) {
+          if (isDisposed()) {
+            return;
+          }
+
+          PartialPayload payload = payloads.get(streamId);
+          if (payload == null) {
+            payload = new PartialPayload(copyHeader(frame, frameType));
+            payloads.put(streamId, payload);
+          }
+
+          checkPayloadSize(payload, header);
+          chunks = payload.chunks;
+          if (chunks == null) {
+            headFrame = handleMetadataFragment(frame, header, streamId, payload);
+          } else {
+            headFrame = null;
+            checkDataFragment(header, streamId, payload);
+          }
+        }
+
+        if (headFrame != null) {
+          sink.next(headFrame);
+        } else if (chunks != null) {
+          handleDataFragment(frame, header, chunks);
+        }
+      } finally {
+        frame.release();
+      }
+    } catch (Throwable t) {
+      logger.error("error reassemble frame", t);
+      sink.error(t);
+    }
+  }
+
+  void checkPayloadSize(PartialPayload payload, FrameHeader header) {
+    payload.size += header.metadataLength() + header.dataLength();
+    if (payload.size > maxInboundPayloadSize) {
+      IllegalStateException e =
+          new IllegalStateException("Reassembled payload went out of allowed size");
+      payloads.remove(header.streamId());
+      payload.cancel(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Collects the metadata of the payload until the first fragment with data, which is returned as
+   * the head frame of the payload. Runs under the lock of this reassembler.
+   */
+  @Nullable
+  ByteBuf handleMetadataFragment(
+      ByteBuf frame, FrameHeader header, int streamId, PartialPayload payload) {
+    if (header.hasMetadata()) {
+      if (!FrameHeaderCodec.hasMetadata(payload.header)) {
+        throw unexpectedMetadata(streamId, payload);
+      }
+      payload.addMetadata(
+          allocator, frame.retainedSlice(header.metadataOffset(), header.metadataLength()));
+    }
+
+    ByteBuf data = frame.retainedSlice(header.dataOffset(), header.dataLength());
+    if (header.hasFollows()) {
+      if (!data.isReadable()) {
+        data.release();
+        return null;
+      }
+      PayloadChunks chunks = new PayloadChunks(this);
+      payload.chunks = chunks;
+      unclaimed.put(streamId, chunks);
+    } else {
+      payloads.remove(streamId);
+    }
+
+    ByteBuf headFrame =
+        FragmentationCodec.encode(allocator, payload.header, payload.metadata(), data);
+    payload.header = null;
+    payload.metadata = null;
+    return headFrame;
+  }
+
+  /**
+   * Checks a fragment that follows the head frame and forgets the payload once it is complete.
+   * Runs under the lock of this reassembler.
+   */
+  void checkDataFragment(FrameHeader header, int streamId, PartialPayload payload) {
+    if (header.hasMetadata()) {
+      throw unexpectedMetadata(streamId, payload);
+    }
+    if (!header.hasFollows()) {
+      payloads.remove(streamId);
+    }
+  }
+
+  /** Hands the data of a fragment that follows the head frame to the chunks of the payload. */
+  void handleDataFragment(ByteBuf frame, FrameHeader header, PayloadChunks chunks) {
+    if (header.dataLength() > 0) {
+      chunks.onNext(frame.retainedSlice(header.dataOffset(), header.dataLength()));
+    }
+    if (!header.hasFollows()) {
+      chunks.onComplete();
+    }
+  }
+
+  IllegalStateException unexpectedMetadata(int streamId, PartialPayload payload) {
+    IllegalStateException e =
+        new IllegalStateException("Fragment with metadata received after the payload data");
+    payloads.remove(streamId);
+    payload.cancel(e);
+    return e;
+  }
+
+  static ByteBuf copyHeader(ByteBuf frame, FrameType frameType) {
+    ByteBuf header = frame.copy(frame.readerIndex(), FrameHeaderCodec.size());
+    if (frameType == FrameType.REQUEST_CHANNEL || frameType == FrameType.REQUEST_STREAM) {
+      long i = RequestChannelFrameCodec.initialRequestN(frame);
+      header.writeInt(i > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) i);
+    }
+    return header;
+  }
+
+  /**
+   * Requests the frames of the connection in batches, no more than requested downstream, and
+   * withholds further requests while receiving is paused.
+   */
+  static final class ReceiveFlux extends Flux<ByteBuf> {
+
+    final Publisher<ByteBuf> source;
+    final StreamingFrameReassembler parent;
+
+    ReceiveFlux(Publisher<ByteBuf> source, StreamingFrameReassembler parent) {
+      this.source = source;
+      this.parent = parent;
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super ByteBuf> actual) {
+      source.subscribe(new ReceiveSubscriber(actual, parent));
+    }
+  }
+
+  static final class ReceiveSubscriber implements CoreSubscriber<ByteBuf>, Subscription {
+
+    static final int PREFETCH = Queues.SMALL_BUFFER_SIZE;
+    static final int LIMIT = PREFETCH >> 2;
+
+    final CoreSubscriber<? super ByteBuf> actual;
+    final StreamingFrameReassembler parent;
+
+    Subscription s;
+
+    volatile long requested;
+    static final AtomicLongFieldUpdater<ReceiveSubscriber> REQUESTED =
+        AtomicLongFieldUpdater.newUpdater(ReceiveSubscriber.class, "requested");
+
+    /** Frames requested from the connection but not received yet. */
+    volatile long outstanding;
+    static final AtomicLongFieldUpdater<ReceiveSubscriber> OUTSTANDING =
+        AtomicLongFieldUpdater.newUpdater(ReceiveSubscriber.class, "outstanding");
+
+    volatile int wip;
+    static final AtomicIntegerFieldUpdater<ReceiveSubscriber> WIP =
+        AtomicIntegerFieldUpdater.newUpdater(ReceiveSubscriber.class, "wip");
+
+    ReceiveSubscriber(CoreSubscriber<? super ByteBuf> actual, StreamingFrameReassembler parent) {
+      this.actual = actual;
+      this.parent = parent;
+    }
+
+    @Override
+    public Context currentContext() {
+      return actual.currentContext();
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      if (Operators.validate(this.s, s)) {
+        this.s = s;
+        parent.receiver = this;
+        actual.onSubscribe(this);
+      }
+    }
+
+    @Override
+    public void onNext(ByteBuf frame) {
+      if (requested != Long.MAX_VALUE) {
+        REQUESTED.decrementAndGet(this);
+      }
+      long o = OUTSTANDING.decrementAndGet(this);
+      actual.onNext(frame);
+      if (o <= LIMIT) {
+        drainRequests();
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      actual.onError(t);
+    }
+
+    @Override
+    public void onComplete() {
+      actual.onComplete();
+    }
+
+    @Override
+    public void request(long n) {
+      if (Operators.validate(n)) {
+        Operators.addCap(REQUESTED, this, n);
+        drainRequests();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      s.cancel();
+    }
+
+    /** Tops the frames requested from the connection up to a batch, unless receiving is paused. */
+    void drainRequests() {
+      if (WIP.getAndIncrement(this) != 0) {
+        return;
+      }
+
+      int missed = 1;
+      for (; ; ) {
+        if (parent.paused == 0) {
+          long o = outstanding;
+          long n = Math.min(requested, PREFETCH) - o;
+          if (n > 0 && o <= LIMIT) {
+            OUTSTANDING.addAndGet(this, n);
+            s.request(n);
+          }
+        }
+
+        missed = WIP.addAndGet(this, -missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+  }
+
+  /** A payload of which not all fragments have been received yet. */
+  static final class PartialPayload {
+    @Nullable ByteBuf header;
+    @Nullable CompositeByteBuf metadata;
+    @Nullable PayloadChunks chunks;
+    long size;
+
+    PartialPayload(ByteBuf header) {
+      this.header = header;
+    }
+
+    void addMetadata(ByteBufAllocator allocator, ByteBuf fragment) {
+      CompositeByteBuf metadata = this.metadata;
+      if (metadata == null) {
+        metadata = allocator.compositeBuffer();
+        this.metadata = metadata;
+      }
+      metadata.addComponents(true, fragment);
+    }
+
+    @Nullable
+    ByteBuf metadata() {
+      if (!FrameHeaderCodec.hasMetadata(header)) {
+        return null;
+      }
+      return metadata != null ? metadata : Unpooled.EMPTY_BUFFER;
+    }
+
+    void cancel(Throwable cause) {
+      if (header != null) {
+        ReferenceCountUtil.safeRelease(header);
+        header = null;
+      }
+      if (metadata != null) {
+        ReferenceCountUtil.safeRelease(metadata);
+        metadata = null;
+      }
+      if (chunks != null) {
+        chunks.onError(cause);
+      }
+    }
+  }
+}
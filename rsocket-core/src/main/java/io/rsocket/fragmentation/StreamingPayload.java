@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import reactor.core.publisher.Flux;
+
+/**
+ * A fragmented payload that is received with streaming reassembly, see {@link
+ * io.rsocket.core.RSocketServer#streamingReassembly(boolean)} and {@link
+ * io.rsocket.core.RSocketConnector#streamingReassembly(boolean)}. The payload is handed on as soon
+ * as its metadata is complete: {@link #metadata()} is the complete metadata, {@link #data()} the
+ * data received so far, and the rest of the data is emitted by {@link #chunks()} as it is
+ * received.
+ *
+ * <p>The chunks must be subscribed to before the payload is released, after which they are
+ * discarded, and each chunk must be released by the subscriber. Receiving frames from the
+ * connection stops while the subscriber does not keep up with the chunks.
+ *
+ * @since 1.1
+ */
+public final class StreamingPayload implements Payload {
+
+  private final Payload head;
+  private final PayloadChunks chunks;
+
+  StreamingPayload(Payload head, PayloadChunks chunks) {
+    this.head = head;
+    this.chunks = chunks;
+  }
+
+  /**
+   * Returns the data of the payload that follows {@link #data()}, in the order it is received. The
+   * returned {@code Flux} completes once the last fragment has been received, or fails if the
+   * stream is cancelled or the connection is closed before that, and can be subscribed to once.
+   *
+   * @return the remaining data of the payload
+   */
+  public Flux<ByteBuf> chunks() {
+    return chunks;
+  }
+
+  @Override
+  public boolean hasMetadata() {
+    return head.hasMetadata();
+  }
+
+  @Override
+  public ByteBuf sliceMetadata() {
+    return head.sliceMetadata();
+  }
+
+  @Override
+  public ByteBuf sliceData() {
+    return head.sliceData();
+  }
+
+  @Override
+  public ByteBuf data() {
+    return head.data();
+  }
+
+  @Override
+  public ByteBuf metadata() {
+    return head.metadata();
+  }
+
+  @Override
+  public int refCnt() {
+    return head.refCnt();
+  }
+
+  @Override
+  public StreamingPayload retain() {
+    head.retain();
+    return this;
+  }
+
+  @Override
+  public StreamingPayload retain(int increment) {
+    head.retain(increment);
+    return this;
+  }
+
+  @Override
+  public StreamingPayload touch() {
+    head.touch();
+    return this;
+  }
+
+  @Override
+  public StreamingPayload touch(Object hint) {
+    head.touch(hint);
+    return this;
+  }
+
+  @Override
+  public boolean release() {
+    return discardChunksIfReleased(head.release());
+  }
+
+  @Override
+  public boolean release(int decrement) {
+    return discardChunksIfReleased(head.release(decrement));
+  }
+
+  private boolean discardChunksIfReleased(boolean released) {
+    if (released) {
+      chunks.discard();
+    }
+    return released;
+  }
+}
@@ -2,7 +2,9 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.rsocket.internal.FileRegionByteBuf;
 import reactor.util.annotation.Nullable;
 
 class FrameBodyCodec {
@@ -72,6 +74,22 @@ static ByteBuf encode(
       encodeLength(header, length);
     }
 
+    if (addData && data instanceof FileRegionByteBuf) {
+      // keeps the file bytes out of memory so that the transport can send them as a file region
+      final ByteBuf prefix =
+          addMetadata ? allocator.compositeBuffer(2).addComponents(true, header, metadata) : header;
+      return ((FileRegionByteBuf) data).prepend(allocator, prefix);
+    }
+
+    if (allocator instanceof LengthHeadroomAllocator
+        && header.readerIndex() >= FrameLengthCodec.FRAME_LENGTH_SIZE) {
+      return encodeWithHeadroom(
+          (LengthHeadroomAllocator) allocator,
+          header,
+          addMetadata ? metadata : null,
+          addData ? data : null);
+    }
+
     if (addMetadata && addData) {
       return allocator.compositeBuffer(3).addComponents(true, header, metadata, data);
     } else if (addMetadata) {
@@ -83,6 +101,53 @@ static ByteBuf encode(
     }
   }
 
+  /**
+   * Encodes a frame with its length in the headroom of the header in front of it. Payloads up to
+   * the copy threshold are copied behind the header, larger ones are composed with the header and
+   * the headroom exposed as the discardable bytes of the composite.
+   */
+  private static ByteBuf encodeWithHeadroom(
+      LengthHeadroomAllocator allocator,
+      final ByteBuf header,
+      @Nullable ByteBuf metadata,
+      @Nullable ByteBuf data) {
+    final int metadataLength = metadata != null ? metadata.readableBytes() : 0;
+    final int dataLength = data != null ? data.readableBytes() : 0;
+
+    if (metadataLength + dataLength <= allocator.copyThreshold()) {
+      try {
+        header.ensureWritable(metadataLength + dataLength);
+        if (metadata != null) {
+          header.writeBytes(metadata);
+        }
+        if (data != null) {
+          header.writeBytes(data);
+        }
+      } finally {
+        if (metadata != null) {
+          metadata.release();
+        }
+        if (data != null) {
+          data.release();
+        }
+      }
+      return FrameLengthCodec.encodeInHeadroom(header);
+    }
+
+    final int headroom = FrameLengthCodec.FRAME_LENGTH_SIZE;
+    header.readerIndex(header.readerIndex() - headroom);
+    final CompositeByteBuf frame =
+        allocator.compositeBuffer(metadata != null && data != null ? 3 : 2);
+    frame.addComponent(true, header);
+    if (metadata != null) {
+      frame.addComponent(true, metadata);
+    }
+    if (data != null) {
+      frame.addComponent(true, data);
+    }
+    return FrameLengthCodec.encodeInHeadroom(frame.skipBytes(headroom));
+  }
+
   static ByteBuf metadataWithoutMarking(ByteBuf byteBuf) {
     int length = decodeLength(byteBuf);
     return byteBuf.readSlice(length);
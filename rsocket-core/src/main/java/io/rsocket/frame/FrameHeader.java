@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reusable view of the header of an inbound frame, parsed in a single pass with absolute reads: the
+ * stream id, the frame type and flags and, for frames that carry a payload, the bounds of its
+ * metadata and data. An instance is meant to be kept per connection and {@link #wrap(ByteBuf)
+ * re-wrapped} for each frame, so that dispatching a frame and decoding its payload do not read the
+ * header again.
+ *
+ * <p>Not thread-safe. The values are those of the last wrapped frame, so they must be consumed
+ * before the frame is handed on to code that may receive another frame.
+ *
+ * @since 1.1
+ */
+public final class FrameHeader {
+
+  static final int METADATA_LENGTH_SIZE = 3;
+
+  int streamId;
+  FrameType frameType;
+  int flags;
+  boolean hasPayload;
+  int metadataOffset;
+  int metadataLength;
+  int dataOffset;
+  int dataLength;
+
+  /**
+   * Parses the header of the given frame, without moving its reader index.
+   *
+   * @param frame the frame to parse
+   * @return this instance, holding the values of the given frame
+   * @throws IllegalArgumentException if the frame is a {@code PAYLOAD} frame with neither the next
+   *     nor the complete flag set
+   */
+  public FrameHeader wrap(ByteBuf frame) {
+    final int start = frame.readerIndex();
+    final int end = frame.writerIndex();
+    final int typeAndFlags = frame.getUnsignedShort(start + Integer.BYTES);
+    final int flags = typeAndFlags & FrameHeaderCodec.FRAME_FLAGS_MASK;
+
+    FrameType frameType =
+        FrameType.fromEncodedType(typeAndFlags >> FrameHeaderCodec.FRAME_TYPE_SHIFT);
+    if (frameType == FrameType.PAYLOAD) {
+      frameType = payloadFrameType(flags);
+    }
+
+    this.streamId = frame.getInt(start);
+    this.frameType = frameType;
+    this.flags = flags;
+
+    int index = start + FrameHeaderCodec.size();
+    switch (frameType) {
+      case REQUEST_FNF:
+      case REQUEST_RESPONSE:
+      case NEXT:
+      case NEXT_COMPLETE:
+        break;
+      case REQUEST_STREAM:
+      case REQUEST_CHANNEL:
+        // skips the initial requestN
+        index += Integer.BYTES;
+        break;
+      case METADATA_PUSH:
+        hasPayload = true;
+        metadataOffset = index;
+        metadataLength = end - index;
+        dataOffset = end;
+        dataLength = 0;
+        return this;
+      default:
+        hasPayload = false;
+        metadataOffset = -1;
+        metadataLength = 0;
+        dataOffset = -1;
+        dataLength = 0;
+        return this;
+    }
+
+    hasPayload = true;
+    if ((flags & FrameHeaderCodec.FLAGS_M) == FrameHeaderCodec.FLAGS_M) {
+      final int metadataLength = frame.getUnsignedMedium(index);
+      index += METADATA_LENGTH_SIZE;
+      this.metadataOffset = index;
+      this.metadataLength = metadataLength;
+      index += metadataLength;
+    } else {
+      this.metadataOffset = -1;
+      this.metadataLength = 0;
+    }
+    this.dataOffset = index;
+    this.dataLength = end - index;
+    return this;
+  }
+
+  static FrameType payloadFrameType(int flags) {
+    final boolean complete = (flags & FrameHeaderCodec.FLAGS_C) == FrameHeaderCodec.FLAGS_C;
+    final boolean next = (flags & FrameHeaderCodec.FLAGS_N) == FrameHeaderCodec.FLAGS_N;
+    if (next) {
+      return complete ? FrameType.NEXT_COMPLETE : FrameType.NEXT;
+    } else if (complete) {
+      return FrameType.COMPLETE;
+    }
+    throw new IllegalArgumentException("Payload must set either or both of NEXT and COMPLETE.");
+  }
+
+  /** Returns the stream id of the frame. */
+  public int streamId() {
+    return streamId;
+  }
+
+  /**
+   * Returns the type of the frame, with {@code PAYLOAD} frames resolved to {@code NEXT}, {@code
+   * NEXT_COMPLETE} or {@code COMPLETE} like {@link FrameHeaderCodec#frameType(ByteBuf)} does.
+   */
+  public FrameType frameType() {
+    return frameType;
+  }
+
+  /** Returns the flags of the frame. */
+  public int flags() {
+    return flags;
+  }
+
+  /** Returns whether the fragment is followed by more fragments. */
+  public boolean hasFollows() {
+    return (flags & FrameHeaderCodec.FLAGS_F) == FrameHeaderCodec.FLAGS_F;
+  }
+
+  /**
+   * Returns whether the frame carries a payload that can be decoded with the bounds of this header,
+   * i.e. whether it is a request, {@code NEXT}, {@code NEXT_COMPLETE} or {@code METADATA_PUSH}
+   * frame.
+   */
+  public boolean hasPayload() {
+    return hasPayload;
+  }
+
+  /** Returns whether the payload of the frame has metadata. */
+  public boolean hasMetadata() {
+    return metadataOffset >= 0;
+  }
+
+  /** Returns the index of the metadata in the frame, or {@code -1} if there is none. */
+  public int metadataOffset() {
+    return metadataOffset;
+  }
+
+  /** Returns the length of the metadata, {@code 0} if there is none. */
+  public int metadataLength() {
+    return metadataLength;
+  }
+
+  /** Returns the index of the data in the frame, or {@code -1} if there is no payload. */
+  public int dataOffset() {
+    return dataOffset;
+  }
+
+  /** Returns the length of the data. */
+  public int dataLength() {
+    return dataLength;
+  }
+}
@@ -28,9 +28,9 @@ public final class FrameHeaderCodec {
   public static final int FLAGS_N = 0b00_0010_0000;
 
   public static final String DISABLE_FRAME_TYPE_CHECK = "io.rsocket.frames.disableFrameTypeCheck";
-  private static final int FRAME_FLAGS_MASK = 0b0000_0011_1111_1111;
+  static final int FRAME_FLAGS_MASK = 0b0000_0011_1111_1111;
   private static final int FRAME_TYPE_BITS = 6;
-  private static final int FRAME_TYPE_SHIFT = 16 - FRAME_TYPE_BITS;
+  static final int FRAME_TYPE_SHIFT = 16 - FRAME_TYPE_BITS;
   private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
   private static boolean disableFrameTypeCheck;
 
@@ -53,7 +53,14 @@ public static ByteBuf encode(
 
     short typeAndFlags = (short) (frameType.getEncodedType() << FRAME_TYPE_SHIFT | (short) flags);
 
-    return allocator.buffer().writeInt(streamId).writeShort(typeAndFlags);
+    final ByteBuf header = allocator.buffer();
+    if (allocator instanceof LengthHeadroomAllocator) {
+      final int headroom = FrameLengthCodec.FRAME_LENGTH_SIZE;
+      header.writerIndex(headroom).readerIndex(headroom);
+      header.writeInt(streamId).writeShort(typeAndFlags);
+      return FrameLengthCodec.encodeInHeadroom(header);
+    }
+    return header.writeInt(streamId).writeShort(typeAndFlags);
   }
 
   public static boolean hasFollows(ByteBuf byteBuf) {
@@ -2,10 +2,14 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import reactor.util.annotation.Nullable;
 
 /**
  * Some transports like TCP aren't framed, and require a length. This is used by DuplexConnections
  * for transports that need to send length
+ *
+ * <p>Frames encoded with a {@link LengthHeadroomAllocator} already hold their length in the {@link
+ * #FRAME_LENGTH_SIZE} bytes in front of them, see {@link #prefixed(ByteBuf)}.
  */
 public class FrameLengthCodec {
   public static final int FRAME_LENGTH_MASK = 0xFFFFFF;
@@ -13,7 +17,15 @@ public class FrameLengthCodec {
 
   private FrameLengthCodec() {}
 
-  private static void encodeLength(final ByteBuf byteBuf, final int length) {
+  /**
+   * Writes the 3 byte length prefix of a frame with the given length into the given buffer.
+   *
+   * @param byteBuf the buffer to write the length prefix to
+   * @param length the length of the frame that follows
+   * @throws IllegalArgumentException if the length does not fit in 24 bits
+   * @since 1.1
+   */
+  public static void encodeLength(final ByteBuf byteBuf, final int length) {
     if ((length & ~FRAME_LENGTH_MASK) != 0) {
       throw new IllegalArgumentException("Length is larger than 24 bits");
     }
@@ -31,7 +43,54 @@ private static int decodeLength(final ByteBuf byteBuf) {
     return length;
   }
 
+  /**
+   * Writes the length of a frame just encoded by a frame codec into the headroom the codec reserved
+   * in front of it, if any.
+   */
+  static ByteBuf encodeInHeadroom(ByteBuf frame) {
+    final int readerIndex = frame.readerIndex();
+    final int length = frame.readableBytes();
+    if (readerIndex >= FRAME_LENGTH_SIZE && (length & ~FRAME_LENGTH_MASK) == 0) {
+      frame.setMedium(readerIndex - FRAME_LENGTH_SIZE, length);
+    }
+    return frame;
+  }
+
+  /**
+   * Returns the given frame preceded by its length, if the frame was encoded with its length in
+   * front of it, see {@link LengthHeadroomAllocator}. The bytes in front of the frame are only
+   * read, and only used if they hold the exact length of the frame.
+   *
+   * @param frame the frame to prefix with its length
+   * @return the frame preceded by its length, or {@code null} if the bytes in front of the frame do
+   *     not hold its length. Ownership of the frame is transferred to the returned buffer, if any.
+   * @since 1.1
+   */
+  @Nullable
+  public static ByteBuf prefixed(ByteBuf frame) {
+    final int readerIndex = frame.readerIndex();
+    if (readerIndex < FRAME_LENGTH_SIZE) {
+      return null;
+    }
+    final int length = frame.readableBytes();
+    final int index = readerIndex - FRAME_LENGTH_SIZE;
+    if (frame.getUnsignedMedium(index) != length) {
+      return null;
+    }
+    // a slice rather than moving the reader index, since the frame may be retained elsewhere, e.g.
+    // for resumption
+    final ByteBuf prefixed = frame.retainedSlice(index, FRAME_LENGTH_SIZE + length);
+    frame.release();
+    return prefixed;
+  }
+
   public static ByteBuf encode(ByteBufAllocator allocator, int length, ByteBuf frame) {
+    if (length == frame.readableBytes()) {
+      final ByteBuf prefixed = prefixed(frame);
+      if (prefixed != null) {
+        return prefixed;
+      }
+    }
     ByteBuf buffer = allocator.buffer();
     encodeLength(buffer, length);
     return allocator.compositeBuffer(2).addComponents(true, buffer, frame);
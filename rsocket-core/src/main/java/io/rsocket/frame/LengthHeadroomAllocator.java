@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import java.util.Objects;
+
+/**
+ * {@link ByteBufAllocator} of a connection whose frames are encoded with headroom for their length
+ * prefix. Transports that prefix frames with their length, such as TCP, expose it from {@link
+ * io.rsocket.DuplexConnection#alloc()} to enable the mode for that connection only.
+ *
+ * <p>Frame codecs given this allocator allocate headers with {@link
+ * FrameLengthCodec#FRAME_LENGTH_SIZE} bytes of headroom and write the length of the frame into it.
+ * Frames whose metadata and data together do not exceed the {@link #copyThreshold() copy threshold}
+ * are encoded into a single contiguous buffer, larger ones remain composite buffers of header,
+ * metadata and data. {@link FrameLengthCodec#prefixed(ByteBuf)} then returns the frame preceded by
+ * its length as a slice of the frame rather than a composite wrapping a composite.
+ *
+ * <p>All allocations are delegated to the given allocator.
+ *
+ * @since 1.1
+ */
+public final class LengthHeadroomAllocator implements ByteBufAllocator {
+
+  private final ByteBufAllocator delegate;
+  private final int copyThreshold;
+
+  /**
+   * Creates a new instance
+   *
+   * @param delegate the allocator to allocate buffers with
+   * @param copyThreshold the maximum number of metadata and data bytes copied behind the frame
+   *     header
+   * @throws IllegalArgumentException if the copy threshold is negative
+   */
+  public LengthHeadroomAllocator(ByteBufAllocator delegate, int copyThreshold) {
+    this.delegate = Objects.requireNonNull(delegate, "delegate must not be null");
+    this.copyThreshold = assertCopyThreshold(copyThreshold);
+  }
+
+  public static int assertCopyThreshold(int copyThreshold) {
+    if (copyThreshold < 0) {
+      String msg =
+          String.format("The copyThreshold must not be negative, provided: %d", copyThreshold);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return copyThreshold;
+    }
+  }
+
+  /** Returns the maximum number of metadata and data bytes copied behind the frame header. */
+  public int copyThreshold() {
+    return copyThreshold;
+  }
+
+  /** Returns the allocator buffers are allocated with. */
+  public ByteBufAllocator delegate() {
+    return delegate;
+  }
+
+  @Override
+  public ByteBuf buffer() {
+    return delegate.buffer();
+  }
+
+  @Override
+  public ByteBuf buffer(int initialCapacity) {
+    return delegate.buffer(initialCapacity);
+  }
+
+  @Override
+  public ByteBuf buffer(int initialCapacity, int maxCapacity) {
+    return delegate.buffer(initialCapacity, maxCapacity);
+  }
+
+  @Override
+  public ByteBuf ioBuffer() {
+    return delegate.ioBuffer();
+  }
+
+  @Override
+  public ByteBuf ioBuffer(int initialCapacity) {
+    return delegate.ioBuffer(initialCapacity);
+  }
+
+  @Override
+  public ByteBuf ioBuffer(int initialCapacity, int maxCapacity) {
+    return delegate.ioBuffer(initialCapacity, maxCapacity);
+  }
+
+  @Override
+  public ByteBuf heapBuffer() {
+    return delegate.heapBuffer();
+  }
+
+  @Override
+  public ByteBuf heapBuffer(int initialCapacity) {
+    return delegate.heapBuffer(initialCapacity);
+  }
+
+  @Override
+  public ByteBuf heapBuffer(int initialCapacity, int maxCapacity) {
+    return delegate.heapBuffer(initialCapacity, maxCapacity);
+  }
+
+  @Override
+  public ByteBuf directBuffer() {
+    return delegate.directBuffer();
+  }
+
+  @Override
+  public ByteBuf directBuffer(int initialCapacity) {
+    return delegate.directBuffer(initialCapacity);
+  }
+
+  @Override
+  public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+    return delegate.directBuffer(initialCapacity, maxCapacity);
+  }
+
+  @Override
+  public CompositeByteBuf compositeBuffer() {
+    return delegate.compositeBuffer();
+  }
+
+  @Override
+  public CompositeByteBuf compositeBuffer(int maxNumComponents) {
+    return delegate.compositeBuffer(maxNumComponents);
+  }
+
+  @Override
+  public CompositeByteBuf compositeHeapBuffer() {
+    return delegate.compositeHeapBuffer();
+  }
+
+  @Override
+  public CompositeByteBuf compositeHeapBuffer(int maxNumComponents) {
+    return delegate.compositeHeapBuffer(maxNumComponents);
+  }
+
+  @Override
+  public CompositeByteBuf compositeDirectBuffer() {
+    return delegate.compositeDirectBuffer();
+  }
+
+  @Override
+  public CompositeByteBuf compositeDirectBuffer(int maxNumComponents) {
+    return delegate.compositeDirectBuffer(maxNumComponents);
+  }
+
+  @Override
+  public boolean isDirectBufferPooled() {
+    return delegate.isDirectBufferPooled();
+  }
+
+  @Override
+  public int calculateNewCapacity(int minNewCapacity, int maxCapacity) {
+    return delegate.calculateNewCapacity(minNewCapacity, maxCapacity);
+  }
+}
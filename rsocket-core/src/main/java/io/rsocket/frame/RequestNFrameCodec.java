@@ -16,7 +16,25 @@ public static ByteBuf encode(
     int reqN = requestN > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) requestN;
 
     ByteBuf header = FrameHeaderCodec.encode(allocator, streamId, FrameType.REQUEST_N, 0);
-    return header.writeInt(reqN);
+    return FrameLengthCodec.encodeInHeadroom(header.writeInt(reqN));
+  }
+
+  /**
+   * Overwrites the {@code requestN} of the given {@code REQUEST_N} frame in place, e.g. to merge
+   * grants for the same stream while the frame is still queued.
+   *
+   * @param byteBuf the {@code REQUEST_N} frame
+   * @param requestN the new {@code requestN}, capped at {@link Integer#MAX_VALUE}
+   * @since 1.1
+   */
+  public static void setRequestN(ByteBuf byteBuf, long requestN) {
+    if (requestN < 1) {
+      throw new IllegalArgumentException("request n is less than 1");
+    }
+
+    int reqN = requestN > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) requestN;
+
+    byteBuf.setInt(byteBuf.readerIndex() + FrameHeaderCodec.size(), reqN);
   }
 
   public static long requestN(ByteBuf byteBuf) {
@@ -3,6 +3,7 @@
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeader;
 import io.rsocket.frame.FrameHeaderCodec;
 import io.rsocket.frame.FrameType;
 import io.rsocket.frame.MetadataPushFrameCodec;
@@ -66,4 +67,23 @@ public Payload apply(ByteBuf byteBuf) {
 
     return DefaultPayload.create(data);
   }
+
+  @Override
+  public Payload apply(ByteBuf byteBuf, FrameHeader header) {
+    ByteBuffer data = copy(byteBuf, header.dataOffset(), header.dataLength());
+
+    if (header.hasMetadata()) {
+      ByteBuffer metadata = copy(byteBuf, header.metadataOffset(), header.metadataLength());
+      return DefaultPayload.create(data, metadata);
+    }
+
+    return DefaultPayload.create(data);
+  }
+
+  static ByteBuffer copy(ByteBuf byteBuf, int index, int length) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    buffer.put(byteBuf.nioBuffer(index, length));
+    buffer.flip();
+    return buffer;
+  }
 }
@@ -2,9 +2,25 @@
 
 import io.netty.buffer.ByteBuf;
 import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeader;
 import java.util.function.Function;
 
 public interface PayloadDecoder extends Function<ByteBuf, Payload> {
   PayloadDecoder DEFAULT = new DefaultPayloadDecoder();
   PayloadDecoder ZERO_COPY = new ZeroCopyPayloadDecoder();
+  PayloadDecoder POOLED = new PooledPayloadDecoder();
+
+  /**
+   * Decodes the payload of a frame whose header was already parsed, so that decoders can use the
+   * bounds of metadata and data instead of reading the header again. Decodes the frame with {@link
+   * #apply(Object)} by default.
+   *
+   * @param frame the frame to decode
+   * @param header the header of the frame, {@link FrameHeader#hasPayload() with a payload}
+   * @return the payload of the frame
+   * @since 1.1
+   */
+  default Payload apply(ByteBuf frame, FrameHeader header) {
+    return apply(frame);
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame.decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeader;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.util.ByteBufPayload;
+
+/**
+ * Frame decoder that, like {@link ZeroCopyPayloadDecoder}, shares the frame contents instead of
+ * copying them, but allocates no objects per frame in the common case: the payload comes from the
+ * thread-local pool of {@link ByteBufPayload} and is returned to it on {@link Payload#release()
+ * release}, and data and metadata are taken with {@link ByteBuf#retainedSlice(int, int)}, which
+ * recycles its derived buffers too when the frame is a pooled buffer, as it is for the Netty
+ * transports. Their bounds are read from the frame in a single pass, without the intermediate
+ * slices of the frame codecs, or taken from the {@link FrameHeader} if it was parsed already.
+ */
+final class PooledPayloadDecoder implements PayloadDecoder {
+
+  static final int METADATA_LENGTH_SIZE = 3;
+
+  @Override
+  public Payload apply(ByteBuf byteBuf) {
+    final FrameType type = FrameHeaderCodec.frameType(byteBuf);
+    int index = byteBuf.readerIndex() + FrameHeaderCodec.size();
+    final int end = byteBuf.writerIndex();
+
+    switch (type) {
+      case REQUEST_FNF:
+      case REQUEST_RESPONSE:
+      case NEXT:
+      case NEXT_COMPLETE:
+        break;
+      case REQUEST_STREAM:
+      case REQUEST_CHANNEL:
+        // skips the initial requestN
+        index += Integer.BYTES;
+        break;
+      case METADATA_PUSH:
+        return ByteBufPayload.create(
+            Unpooled.EMPTY_BUFFER, byteBuf.retainedSlice(index, end - index));
+      default:
+        throw new IllegalArgumentException("unsupported frame type: " + type);
+    }
+
+    ByteBuf metadata = null;
+    if (FrameHeaderCodec.hasMetadata(byteBuf)) {
+      final int metadataLength = byteBuf.getUnsignedMedium(index);
+      index += METADATA_LENGTH_SIZE;
+      metadata = byteBuf.retainedSlice(index, metadataLength);
+      index += metadataLength;
+    }
+
+    final ByteBuf data =
+        index < end ? byteBuf.retainedSlice(index, end - index) : Unpooled.EMPTY_BUFFER;
+    return ByteBufPayload.create(data, metadata);
+  }
+
+  @Override
+  public Payload apply(ByteBuf byteBuf, FrameHeader header) {
+    final ByteBuf metadata =
+        header.hasMetadata()
+            ? byteBuf.retainedSlice(header.metadataOffset(), header.metadataLength())
+            : null;
+    final int dataLength = header.dataLength();
+    final ByteBuf data =
+        dataLength > 0
+            ? byteBuf.retainedSlice(header.dataOffset(), dataLength)
+            : Unpooled.EMPTY_BUFFER;
+    return ByteBufPayload.create(data, metadata);
+  }
+}
@@ -3,6 +3,7 @@
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeader;
 import io.rsocket.frame.FrameHeaderCodec;
 import io.rsocket.frame.FrameType;
 import io.rsocket.frame.MetadataPushFrameCodec;
@@ -55,4 +56,17 @@ public Payload apply(ByteBuf byteBuf) {
 
     return ByteBufPayload.create(d.retain(), m != null ? m.retain() : null);
   }
+
+  @Override
+  public Payload apply(ByteBuf byteBuf, FrameHeader header) {
+    ByteBuf m =
+        header.hasMetadata()
+            ? byteBuf.slice(header.metadataOffset(), header.metadataLength()).retain()
+            : null;
+    ByteBuf d =
+        header.dataLength() > 0
+            ? byteBuf.slice(header.dataOffset(), header.dataLength()).retain()
+            : Unpooled.EMPTY_BUFFER;
+    return ByteBufPayload.create(d, m);
+  }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Counts units held against a maximum. An instance per connection may have a parent shared by all
+ * connections of a server, in which case units must fit into both counters to be acquired. The
+ * parent only rejects units that do not fit, it never takes units away from another child.
+ *
+ * @param <T> the type of the counter and its parent
+ */
+public abstract class BoundedCounter<T extends BoundedCounter<T>> {
+
+  final long max;
+  @Nullable final T parent;
+
+  volatile long count;
+  static final AtomicLongFieldUpdater<BoundedCounter> COUNT =
+      AtomicLongFieldUpdater.newUpdater(BoundedCounter.class, "count");
+
+  volatile long rejections;
+  static final AtomicLongFieldUpdater<BoundedCounter> REJECTIONS =
+      AtomicLongFieldUpdater.newUpdater(BoundedCounter.class, "rejections");
+
+  /**
+   * Creates a new instance.
+   *
+   * @param max the maximum number of units, greater than 0
+   * @param parent the counter shared with other connections, or {@code null}
+   */
+  protected BoundedCounter(long max, @Nullable T parent) {
+    this.max = max;
+    this.parent = parent;
+  }
+
+  /**
+   * Accounts for the given units if this counter and its parent have room for them.
+   *
+   * @param units the number of units to hold
+   * @return {@code true} if the units are accounted for and must later be {@link #release(long)
+   *     released}
+   */
+  public boolean tryAcquire(long units) {
+    for (; ; ) {
+      final long held = count;
+      if (held + units > max) {
+        REJECTIONS.incrementAndGet(this);
+        return false;
+      }
+      if (COUNT.compareAndSet(this, held, held + units)) {
+        break;
+      }
+    }
+
+    final T parent = this.parent;
+    if (parent != null && !parent.tryAcquire(units)) {
+      COUNT.addAndGet(this, -units);
+      REJECTIONS.incrementAndGet(this);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Accounts for the release of units acquired by {@link #tryAcquire(long)}.
+   *
+   * @param units the number of units no longer held
+   */
+  public void release(long units) {
+    COUNT.addAndGet(this, -units);
+    final T parent = this.parent;
+    if (parent != null) {
+      parent.release(units);
+    }
+  }
+
+  /**
+   * Returns the number of units currently held.
+   *
+   * @return the held units
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Returns the number of times units were rejected so far because this counter or its parent was
+   * full.
+   *
+   * @return the rejections
+   */
+  public long rejections() {
+    return rejections;
+  }
+
+  /**
+   * Returns the maximum number of units of this counter, not considering the parent.
+   *
+   * @return the maximum
+   */
+  public long max() {
+    return max;
+  }
+}
@@ -18,18 +18,25 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import io.rsocket.Closeable;
 import io.rsocket.DuplexConnection;
 import io.rsocket.frame.FrameHeaderCodec;
 import io.rsocket.frame.FrameUtil;
 import io.rsocket.plugins.DuplexConnectionInterceptor.Type;
 import io.rsocket.plugins.InitializingInterceptorRegistry;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.CoreSubscriber;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.Operators;
+import reactor.util.concurrent.Queues;
 
 /**
  * {@link DuplexConnection#receive()} is a single stream on which the following type of frames
@@ -43,6 +50,10 @@
  * <p>The only way to differentiate these two frames is determining whether the stream Id is odd or
  * even. Even IDs are for the streams initiated by server and odds are for streams initiated by the
  * client.
+ *
+ * <p>Frames are handed to the subscriber of the matching connection straight from the receive
+ * callback of the source. They are only queued while that connection has no subscriber yet, or no
+ * demand.
  */
 public class ClientServerInputMultiplexer implements Closeable {
   private static final Logger LOGGER = LoggerFactory.getLogger("io.rsocket.FrameLogger");
@@ -55,6 +66,11 @@ public class ClientServerInputMultiplexer implements Closeable {
   private final DuplexConnection source;
   private final DuplexConnection clientServerConnection;
 
+  private final boolean isClient;
+  private final InboundFrames setupFrames;
+  private final InboundFrames serverFrames;
+  private final InboundFrames clientFrames;
+
   public ClientServerInputMultiplexer(DuplexConnection source) {
     this(source, emptyInterceptorRegistry, false);
   }
@@ -62,64 +78,60 @@ public ClientServerInputMultiplexer(DuplexConnection source) {
   public ClientServerInputMultiplexer(
       DuplexConnection source, InitializingInterceptorRegistry registry, boolean isClient) {
     this.source = source;
-    final MonoProcessor<Flux<ByteBuf>> setup = MonoProcessor.create();
-    final MonoProcessor<Flux<ByteBuf>> server = MonoProcessor.create();
-    final MonoProcessor<Flux<ByteBuf>> client = MonoProcessor.create();
+    this.isClient = isClient;
+    this.setupFrames = new InboundFrames();
+    this.serverFrames = new InboundFrames();
+    this.clientFrames = new InboundFrames();
 
     source = registry.initConnection(Type.SOURCE, source);
     setupConnection =
-        registry.initConnection(Type.SETUP, new InternalDuplexConnection(source, setup));
+        registry.initConnection(Type.SETUP, new InternalDuplexConnection(source, setupFrames));
     serverConnection =
-        registry.initConnection(Type.SERVER, new InternalDuplexConnection(source, server));
+        registry.initConnection(Type.SERVER, new InternalDuplexConnection(source, serverFrames));
     clientConnection =
-        registry.initConnection(Type.CLIENT, new InternalDuplexConnection(source, client));
-    clientServerConnection = new InternalDuplexConnection(source, client, server);
-
-    source
-        .receive()
-        .groupBy(
-            frame -> {
-              int streamId = FrameHeaderCodec.streamId(frame);
-              final Type type;
-              if (streamId == 0) {
-                switch (FrameHeaderCodec.frameType(frame)) {
-                  case SETUP:
-                  case RESUME:
-                  case RESUME_OK:
-                    type = Type.SETUP;
-                    break;
-                  case LEASE:
-                  case KEEPALIVE:
-                  case ERROR:
-                    type = isClient ? Type.CLIENT : Type.SERVER;
-                    break;
-                  default:
-                    type = isClient ? Type.SERVER : Type.CLIENT;
-                }
-              } else if ((streamId & 0b1) == 0) {
-                type = Type.SERVER;
-              } else {
-                type = Type.CLIENT;
-              }
-              return type;
-            })
-        .subscribe(
-            group -> {
-              switch (group.key()) {
-                case SETUP:
-                  setup.onNext(group);
-                  break;
-
-                case SERVER:
-                  server.onNext(group);
-                  break;
-
-                case CLIENT:
-                  client.onNext(group);
-                  break;
-              }
-            },
-            t -> {});
+        registry.initConnection(Type.CLIENT, new InternalDuplexConnection(source, clientFrames));
+    clientServerConnection =
+        new InternalDuplexConnection(source, Flux.merge(clientFrames, serverFrames));
+
+    source.receive().subscribe(this::dispatch, this::onError, this::onComplete);
+  }
+
+  private void dispatch(ByteBuf frame) {
+    int streamId = FrameHeaderCodec.streamId(frame);
+    final InboundFrames target;
+    if (streamId == 0) {
+      switch (FrameHeaderCodec.frameType(frame)) {
+        case SETUP:
+        case RESUME:
+        case RESUME_OK:
+          target = setupFrames;
+          break;
+        case LEASE:
+        case KEEPALIVE:
+        case ERROR:
+          target = isClient ? clientFrames : serverFrames;
+          break;
+        default:
+          target = isClient ? serverFrames : clientFrames;
+      }
+    } else if ((streamId & 0b1) == 0) {
+      target = serverFrames;
+    } else {
+      target = clientFrames;
+    }
+    target.onNext(frame);
+  }
+
+  private void onError(Throwable t) {
+    setupFrames.onError(t);
+    serverFrames.onError(t);
+    clientFrames.onError(t);
+  }
+
+  private void onComplete() {
+    setupFrames.onComplete();
+    serverFrames.onComplete();
+    clientFrames.onComplete();
   }
 
   public DuplexConnection asClientServerConnection() {
@@ -155,14 +167,12 @@ public Mono<Void> onClose() {
 
   private static class InternalDuplexConnection implements DuplexConnection {
     private final DuplexConnection source;
-    private final MonoProcessor<Flux<ByteBuf>>[] processors;
+    private final Flux<ByteBuf> frames;
     private final boolean debugEnabled;
 
-    @SafeVarargs
-    public InternalDuplexConnection(
-        DuplexConnection source, MonoProcessor<Flux<ByteBuf>>... processors) {
+    public InternalDuplexConnection(DuplexConnection source, Flux<ByteBuf> frames) {
       this.source = source;
-      this.processors = processors;
+      this.frames = frames;
       this.debugEnabled = LOGGER.isDebugEnabled();
     }
 
@@ -186,18 +196,11 @@ public Mono<Void> sendOne(ByteBuf frame) {
 
     @Override
     public Flux<ByteBuf> receive() {
-      return Flux.fromArray(processors)
-          .flatMap(
-              p ->
-                  p.flatMapMany(
-                      f -> {
-                        if (debugEnabled) {
-                          return f.doOnNext(
-                              frame -> LOGGER.debug("receiving -> " + FrameUtil.toString(frame)));
-                        } else {
-                          return f;
-                        }
-                      }));
+      if (debugEnabled) {
+        return frames.doOnNext(frame -> LOGGER.debug("receiving -> " + FrameUtil.toString(frame)));
+      } else {
+        return frames;
+      }
     }
 
     @Override
@@ -225,4 +228,164 @@ public double availability() {
       return source.availability();
     }
   }
+
+  /**
+   * The frames of one of the connections. Frames are passed on directly while the single subscriber
+   * has demand and nothing is queued, and queued otherwise, e.g. until the requester or responder
+   * subscribes after the setup.
+   */
+  static final class InboundFrames extends Flux<ByteBuf> implements Subscription {
+
+    final Queue<ByteBuf> queue = Queues.<ByteBuf>unbounded(Queues.SMALL_BUFFER_SIZE).get();
+
+    CoreSubscriber<? super ByteBuf> actual;
+    volatile boolean done;
+    Throwable error;
+
+    volatile boolean cancelled;
+
+    volatile int once;
+    static final AtomicIntegerFieldUpdater<InboundFrames> ONCE =
+        AtomicIntegerFieldUpdater.newUpdater(InboundFrames.class, "once");
+
+    volatile int wip;
+    static final AtomicIntegerFieldUpdater<InboundFrames> WIP =
+        AtomicIntegerFieldUpdater.newUpdater(InboundFrames.class, "wip");
+
+    volatile long requested;
+    static final AtomicLongFieldUpdater<InboundFrames> REQUESTED =
+        AtomicLongFieldUpdater.newUpdater(InboundFrames.class, "requested");
+
+    @Override
+    public void subscribe(CoreSubscriber<? super ByteBuf> actual) {
+      if (once == 0 && ONCE.compareAndSet(this, 0, 1)) {
+        actual.onSubscribe(this);
+        this.actual = actual;
+        drain();
+      } else {
+        Operators.error(
+            actual, new IllegalStateException("InboundFrames allows only a single Subscriber"));
+      }
+    }
+
+    void onNext(ByteBuf frame) {
+      if (cancelled || done) {
+        ReferenceCountUtil.safeRelease(frame);
+        return;
+      }
+
+      if (wip == 0 && WIP.compareAndSet(this, 0, 1)) {
+        final CoreSubscriber<? super ByteBuf> a = actual;
+        final long r = requested;
+        if (a != null && r != 0 && queue.isEmpty()) {
+          // fast path, the frame goes straight to the subscriber
+          a.onNext(frame);
+          if (r != Long.MAX_VALUE) {
+            REQUESTED.decrementAndGet(this);
+          }
+          if (WIP.decrementAndGet(this) == 0) {
+            return;
+          }
+        } else {
+          queue.offer(frame);
+        }
+      } else {
+        queue.offer(frame);
+        if (WIP.getAndIncrement(this) != 0) {
+          return;
+        }
+      }
+      drainLoop();
+    }
+
+    void onError(Throwable t) {
+      if (done) {
+        return;
+      }
+      error = t;
+      done = true;
+      drain();
+    }
+
+    void onComplete() {
+      if (done) {
+        return;
+      }
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (Operators.validate(n)) {
+        Operators.addCap(REQUESTED, this, n);
+        drain();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    void drain() {
+      if (WIP.getAndIncrement(this) != 0) {
+        return;
+      }
+      drainLoop();
+    }
+
+    void drainLoop() {
+      final Queue<ByteBuf> q = queue;
+      int missed = 1;
+      for (; ; ) {
+        if (cancelled) {
+          clear();
+        } else {
+          final CoreSubscriber<? super ByteBuf> a = actual;
+          if (a != null) {
+            long r = requested;
+            long e = 0L;
+            while (e != r) {
+              final ByteBuf frame = q.poll();
+              if (frame == null) {
+                break;
+              }
+              a.onNext(frame);
+              e++;
+              if (cancelled) {
+                break;
+              }
+            }
+            if (e != 0 && r != Long.MAX_VALUE) {
+              REQUESTED.addAndGet(this, -e);
+            }
+
+            if (done && !cancelled && q.isEmpty()) {
+              cancelled = true;
+              final Throwable t = error;
+              if (t != null) {
+                a.onError(t);
+              } else {
+                a.onComplete();
+              }
+            }
+          }
+        }
+
+        missed = WIP.addAndGet(this, -missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    void clear() {
+      ByteBuf frame;
+      while ((frame = queue.poll()) != null) {
+        ReferenceCountUtil.safeRelease(frame);
+      }
+    }
+  }
 }
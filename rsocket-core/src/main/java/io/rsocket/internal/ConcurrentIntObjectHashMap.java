@@ -0,0 +1,603 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static io.netty.util.internal.MathUtil.safeFindNextPositivePowerOfTwo;
+
+import io.netty.util.collection.IntObjectMap;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import reactor.util.annotation.Nullable;
+
+/**
+ * A concurrent {@link IntObjectMap} designed for the per-connection stream tables. Keys are kept as
+ * primitive {@code int}s so no {@link Integer} boxing happens on the hot path.
+ *
+ * <p>The map is split into a fixed number of segments, each one being a small open addressing
+ * table guarded by its own {@link StampedLock}. Lookups run under an optimistic read stamp and only
+ * fall back to a read lock if a writer raced with them, so the event loop reading inbound frames
+ * and the threads issuing new requests never block each other on a single monitor. Writers only
+ * contend with other writers targeting the same segment.
+ *
+ * <p>Bulk views ({@link #values()}, {@link #keySet()}, {@link #entrySet()}, {@link #entries()}) are
+ * weakly consistent snapshots, which is what the termination paths iterating over active streams
+ * need.
+ *
+ * @param <V> The value type stored in the map.
+ */
+public final class ConcurrentIntObjectHashMap<V> implements IntObjectMap<V> {
+
+  /** Default number of segments. Used if not specified in the constructor */
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+  /** Default initial capacity of a single segment. */
+  public static final int DEFAULT_SEGMENT_CAPACITY = 8;
+
+  /** Load factor of each segment. */
+  static final float LOAD_FACTOR = 0.5f;
+
+  /**
+   * Placeholder for null values, so we can use the actual null to mean available. (Better than
+   * using a placeholder for available: less references for GC processing.)
+   */
+  private static final Object NULL_VALUE = new Object();
+
+  private final Segment[] segments;
+  private final int segmentShift;
+
+  public ConcurrentIntObjectHashMap() {
+    this(DEFAULT_CONCURRENCY_LEVEL, DEFAULT_SEGMENT_CAPACITY);
+  }
+
+  public ConcurrentIntObjectHashMap(int concurrencyLevel) {
+    this(concurrencyLevel, DEFAULT_SEGMENT_CAPACITY);
+  }
+
+  public ConcurrentIntObjectHashMap(int concurrencyLevel, int segmentCapacity) {
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("concurrencyLevel must be > 0");
+    }
+    if (segmentCapacity <= 0) {
+      throw new IllegalArgumentException("segmentCapacity must be > 0");
+    }
+
+    int segmentsCount = safeFindNextPositivePowerOfTwo(concurrencyLevel);
+    int capacity = safeFindNextPositivePowerOfTwo(Math.max(2, segmentCapacity));
+
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentsCount);
+    this.segments = new Segment[segmentsCount];
+    for (int i = 0; i < segmentsCount; i++) {
+      segments[i] = new Segment(capacity);
+    }
+  }
+
+  /**
+   * Spreads stream ids across the table. Stream ids grow by two and have a fixed parity, so the
+   * raw value would only ever hit every other bucket of a segment.
+   */
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private Segment segmentFor(int hash) {
+    // segments are picked with the high bits, buckets with the low bits of the same hash
+    return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T toExternal(Object value) {
+    return value == NULL_VALUE ? null : (T) value;
+  }
+
+  private static Object toInternal(@Nullable Object value) {
+    return value == null ? NULL_VALUE : value;
+  }
+
+  @Override
+  @Nullable
+  public V get(int key) {
+    int hash = hash(key);
+    return toExternal(segmentFor(hash).get(key, hash));
+  }
+
+  @Override
+  @Nullable
+  public V put(int key, V value) {
+    int hash = hash(key);
+    return toExternal(segmentFor(hash).put(key, hash, toInternal(value)));
+  }
+
+  @Override
+  @Nullable
+  public V remove(int key) {
+    int hash = hash(key);
+    return toExternal(segmentFor(hash).remove(key, hash, null));
+  }
+
+  /**
+   * Primitive version of {@link Map#remove(Object, Object)}. Removes the entry for the given key
+   * only if it is currently mapped to the given value (compared by identity).
+   *
+   * @param key the key of the entry to remove
+   * @param value the value expected to be associated with the key
+   * @return {@code true} if the entry was removed
+   */
+  public boolean remove(int key, Object value) {
+    int hash = hash(key);
+    return segmentFor(hash).remove(key, hash, toInternal(value)) != null;
+  }
+
+  @Override
+  public boolean containsKey(int key) {
+    int hash = hash(key);
+    return segmentFor(hash).get(key, hash) != null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Segment segment : segments) {
+      if (segment.size() != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    Object v = toInternal(value);
+    for (Segment segment : segments) {
+      if (segment.containsValue(v)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Collection<V> values() {
+    List<V> values = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.collectValues(values);
+    }
+    return Collections.unmodifiableList(values);
+  }
+
+  @Override
+  public Iterable<PrimitiveEntry<V>> entries() {
+    List<PrimitiveEntry<V>> entries = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.collectEntries(entries);
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  @Override
+  public Set<Integer> keySet() {
+    Set<Integer> keys = new LinkedHashSet<>();
+    for (PrimitiveEntry<V> entry : entries()) {
+      keys.add(entry.key());
+    }
+    return Collections.unmodifiableSet(keys);
+  }
+
+  @Override
+  public Set<Entry<Integer, V>> entrySet() {
+    Set<Entry<Integer, V>> entrySet = new LinkedHashSet<>();
+    for (PrimitiveEntry<V> entry : entries()) {
+      entrySet.add(new AbstractMap.SimpleImmutableEntry<>(entry.key(), entry.value()));
+    }
+    return Collections.unmodifiableSet(entrySet);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return containsKey(objectToKey(key));
+  }
+
+  @Override
+  public V get(Object key) {
+    return get(objectToKey(key));
+  }
+
+  @Override
+  public V put(Integer key, V value) {
+    return put(objectToKey(key), value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return remove(objectToKey(key));
+  }
+
+  @Override
+  public void putAll(Map<? extends Integer, ? extends V> sourceMap) {
+    for (Entry<? extends Integer, ? extends V> entry : sourceMap.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private int objectToKey(Object key) {
+    return ((Integer) key).intValue();
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (PrimitiveEntry<V> entry : entries()) {
+      hash ^= entry.key();
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof IntObjectMap)) {
+      return false;
+    }
+    @SuppressWarnings("rawtypes")
+    IntObjectMap other = (IntObjectMap) obj;
+    if (size() != other.size()) {
+      return false;
+    }
+    for (PrimitiveEntry<V> entry : entries()) {
+      V value = entry.value();
+      Object otherValue = other.get(entry.key());
+      if (value == null ? otherValue != null : !value.equals(otherValue)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append('{');
+    boolean first = true;
+    for (PrimitiveEntry<V> entry : entries()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      V value = entry.value();
+      sb.append(entry.key()).append('=').append(value == this ? "(this Map)" : value);
+      first = false;
+    }
+    return sb.append('}').toString();
+  }
+
+  /** Immutable entry handed out by the snapshot views. */
+  private static final class SnapshotEntry<V> implements PrimitiveEntry<V> {
+    final int key;
+    final V value;
+
+    SnapshotEntry(int key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public int key() {
+      return key;
+    }
+
+    @Override
+    public V value() {
+      return value;
+    }
+
+    @Override
+    public void setValue(V value) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A single open addressing table with linear probing. Removal uses backward shift compaction
+   * (Knuth Section 6.4 Algorithm R) so no tombstones ever accumulate, even on connections which
+   * create and complete millions of streams.
+   */
+  @SuppressWarnings("serial")
+  private static final class Segment extends StampedLock {
+    int[] keys;
+    Object[] values;
+    int size;
+    int maxSize;
+
+    Segment(int capacity) {
+      this.keys = new int[capacity];
+      this.values = new Object[capacity];
+      this.maxSize = calcMaxSize(capacity);
+    }
+
+    int size() {
+      long stamp = tryOptimisticRead();
+      int size = this.size;
+      if (!validate(stamp)) {
+        stamp = readLock();
+        try {
+          size = this.size;
+        } finally {
+          unlockRead(stamp);
+        }
+      }
+      return size;
+    }
+
+    @Nullable
+    Object get(int key, int hash) {
+      long stamp = tryOptimisticRead();
+      if (stamp != 0L) {
+        Object value = lookup(key, hash);
+        if (validate(stamp)) {
+          return value;
+        }
+      }
+
+      stamp = readLock();
+      try {
+        return lookup(key, hash);
+      } finally {
+        unlockRead(stamp);
+      }
+    }
+
+    /**
+     * Probes the table for the given key. May run concurrently with a writer when used under an
+     * optimistic stamp, in which case the result is discarded by the caller, so it must only make
+     * sure it neither loops forever nor goes out of the arrays bounds.
+     */
+    @Nullable
+    private Object lookup(int key, int hash) {
+      final int[] keys = this.keys;
+      final Object[] values = this.values;
+      final int length = values.length;
+      if (keys.length != length) {
+        // torn read of a concurrent rehash, the stamp is not going to validate
+        return null;
+      }
+
+      final int mask = length - 1;
+      int index = hash & mask;
+      for (int i = 0; i < length; i++) {
+        Object value = values[index];
+        if (value == null) {
+          return null;
+        }
+        if (keys[index] == key) {
+          return value;
+        }
+        index = (index + 1) & mask;
+      }
+      return null;
+    }
+
+    @Nullable
+    Object put(int key, int hash, Object value) {
+      long stamp = writeLock();
+      try {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = values.length - 1;
+
+        int index = hash & mask;
+        for (; ; ) {
+          Object current = values[index];
+          if (current == null) {
+            keys[index] = key;
+            values[index] = value;
+            growSize();
+            return null;
+          }
+          if (keys[index] == key) {
+            values[index] = value;
+            return current;
+          }
+          index = (index + 1) & mask;
+        }
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Removes the entry for the given key. If {@code expected} is not {@code null} the entry is
+     * removed only if it is mapped to that exact value.
+     */
+    @Nullable
+    Object remove(int key, int hash, @Nullable Object expected) {
+      long stamp = writeLock();
+      try {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = values.length - 1;
+
+        int index = hash & mask;
+        for (; ; ) {
+          Object current = values[index];
+          if (current == null) {
+            return null;
+          }
+          if (keys[index] == key) {
+            if (expected != null && expected != current) {
+              return null;
+            }
+            removeAt(index);
+            return current;
+          }
+          index = (index + 1) & mask;
+        }
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    void clear() {
+      long stamp = writeLock();
+      try {
+        int capacity = values.length;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        size = 0;
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    boolean containsValue(Object value) {
+      long stamp = readLock();
+      try {
+        for (Object v : values) {
+          if (v != null && v.equals(value)) {
+            return true;
+          }
+        }
+        return false;
+      } finally {
+        unlockRead(stamp);
+      }
+    }
+
+    <V> void collectValues(List<V> target) {
+      long stamp = readLock();
+      try {
+        for (Object v : values) {
+          if (v != null) {
+            target.add(toExternal(v));
+          }
+        }
+      } finally {
+        unlockRead(stamp);
+      }
+    }
+
+    <V> void collectEntries(List<PrimitiveEntry<V>> target) {
+      long stamp = readLock();
+      try {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int i = 0; i < values.length; i++) {
+          Object v = values[i];
+          if (v != null) {
+            target.add(new SnapshotEntry<>(keys[i], toExternal(v)));
+          }
+        }
+      } finally {
+        unlockRead(stamp);
+      }
+    }
+
+    private void removeAt(final int index) {
+      final int[] keys = this.keys;
+      final Object[] values = this.values;
+      final int mask = values.length - 1;
+
+      --size;
+      keys[index] = 0;
+      values[index] = null;
+
+      // In the interval from index to the next available entry, the arrays may have entries
+      // that are displaced from their base position due to prior conflicts. Iterate these
+      // entries and move them back if possible.
+      int nextFree = index;
+      int i = (index + 1) & mask;
+      for (Object value = values[i]; value != null; value = values[i = (i + 1) & mask]) {
+        int key = keys[i];
+        int bucket = hash(key) & mask;
+        if (i < bucket && (bucket <= nextFree || nextFree <= i)
+            || bucket <= nextFree && nextFree <= i) {
+          keys[nextFree] = key;
+          values[nextFree] = value;
+          keys[i] = 0;
+          values[i] = null;
+          nextFree = i;
+        }
+      }
+    }
+
+    private void growSize() {
+      size++;
+
+      if (size > maxSize) {
+        if (keys.length == Integer.MAX_VALUE) {
+          throw new IllegalStateException("Max capacity reached at size=" + size);
+        }
+
+        rehash(keys.length << 1);
+      }
+    }
+
+    private void rehash(int newCapacity) {
+      final int[] oldKeys = keys;
+      final Object[] oldValues = values;
+
+      final int[] newKeys = new int[newCapacity];
+      final Object[] newValues = new Object[newCapacity];
+      final int mask = newCapacity - 1;
+
+      for (int i = 0; i < oldValues.length; i++) {
+        Object oldValue = oldValues[i];
+        if (oldValue != null) {
+          int oldKey = oldKeys[i];
+          int index = hash(oldKey) & mask;
+          while (newValues[index] != null) {
+            index = (index + 1) & mask;
+          }
+          newKeys[index] = oldKey;
+          newValues[index] = oldValue;
+        }
+      }
+
+      keys = newKeys;
+      values = newValues;
+      maxSize = calcMaxSize(newCapacity);
+    }
+
+    private static int calcMaxSize(int capacity) {
+      // Clip the upper bound so that there will always be at least one available slot.
+      int upperBound = capacity - 1;
+      return Math.min(upperBound, (int) (capacity * LOAD_FACTOR));
+    }
+  }
+}
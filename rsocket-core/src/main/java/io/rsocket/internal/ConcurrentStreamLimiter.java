@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import reactor.util.annotation.Nullable;
+
+/**
+ * Counts the streams a responder is serving against a maximum. An instance per connection may have
+ * a parent shared by all connections of a server, in which case a stream must fit into both limits
+ * to be accepted.
+ */
+public final class ConcurrentStreamLimiter extends BoundedCounter<ConcurrentStreamLimiter> {
+
+  /**
+   * Creates a new instance.
+   *
+   * @param maxConcurrentStreams the maximum number of streams, {@link Integer#MAX_VALUE} to only
+   *     count streams against the parent
+   * @param parent the limiter shared with other connections, or {@code null}
+   */
+  public ConcurrentStreamLimiter(
+      int maxConcurrentStreams, @Nullable ConcurrentStreamLimiter parent) {
+    super(assertMaxConcurrentStreams(maxConcurrentStreams), parent);
+  }
+
+  public static int assertMaxConcurrentStreams(int maxConcurrentStreams) {
+    if (maxConcurrentStreams <= 0) {
+      String msg =
+          String.format(
+              "The maximum of concurrent streams must be greater than 0, provided: %d",
+              maxConcurrentStreams);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return maxConcurrentStreams;
+    }
+  }
+
+  /**
+   * Accounts for a new stream if this limiter and its parent have room for it.
+   *
+   * @return {@code true} if the stream is accepted and must later be {@link #release() released}
+   */
+  public boolean tryAcquire() {
+    return tryAcquire(1);
+  }
+
+  /** Accounts for the end of a stream accepted by {@link #tryAcquire()}. */
+  public void release() {
+    release(1);
+  }
+
+  /**
+   * Returns the number of streams currently being served.
+   *
+   * @return the active streams
+   */
+  public int activeStreams() {
+    return (int) count();
+  }
+
+  /**
+   * Returns the number of streams rejected so far because a limit was reached.
+   *
+   * @return the rejected streams
+   */
+  public long rejectedStreams() {
+    return rejections();
+  }
+
+  /**
+   * Returns the maximum number of streams of this limiter, not considering the parent.
+   *
+   * @return the maximum of concurrent streams
+   */
+  public int maxConcurrentStreams() {
+    return (int) max();
+  }
+}
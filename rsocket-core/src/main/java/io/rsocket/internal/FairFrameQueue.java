@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.collection.IntObjectHashMap;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Multi-producer, single-consumer queue of outbound frames that serves streams in deficit round
+ * robin order, so that a stream emitting a lot of data cannot delay the frames of other streams by
+ * more than one quantum per round. Frames of the same stream keep their order.
+ *
+ * <p>Producers only append to a shared intake queue. On {@link #poll()}, the consumer moves the
+ * frames from the intake queue to a queue per stream id and then picks the next frame from the
+ * stream at the head of the round. Each stream may send {@code quantum} bytes per round. A frame
+ * is never held back once its stream has a positive deficit, so a stream may overdraw its quantum
+ * by one frame, which it pays back in the next round.
+ *
+ * <p>Like the queues of {@link UnboundedProcessor}, all methods except {@link #offer(ByteBuf)}
+ * must be called by the single consumer.
+ */
+public final class FairFrameQueue extends AbstractQueue<ByteBuf> {
+
+  static final int MAX_RECYCLED_STREAM_QUEUES = 64;
+
+  final int quantum;
+  final Queue<ByteBuf> intake = new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+
+  final IntObjectHashMap<StreamQueue> streams = new IntObjectHashMap<>();
+  final ArrayDeque<StreamQueue> round = new ArrayDeque<>();
+  final ArrayDeque<StreamQueue> recycled = new ArrayDeque<>();
+
+  int pending;
+
+  /**
+   * Creates a new queue.
+   *
+   * @param quantum the number of bytes each stream may send per round, must be greater than 0
+   */
+  public FairFrameQueue(int quantum) {
+    this.quantum = assertQuantum(quantum);
+  }
+
+  public static int assertQuantum(int quantum) {
+    if (quantum <= 0) {
+      String msg = String.format("The quantum must be greater than 0, provided: %d", quantum);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return quantum;
+    }
+  }
+
+  @Override
+  public boolean offer(ByteBuf frame) {
+    return intake.offer(frame);
+  }
+
+  @Override
+  @Nullable
+  public ByteBuf poll() {
+    final StreamQueue streamQueue = head();
+    if (streamQueue == null) {
+      return null;
+    }
+
+    final ByteBuf frame = streamQueue.frames.poll();
+    pending--;
+    streamQueue.deficit -= frame.readableBytes();
+
+    if (streamQueue.frames.isEmpty()) {
+      round.pollFirst();
+      streams.remove(streamQueue.streamId);
+      recycle(streamQueue);
+    }
+
+    return frame;
+  }
+
+  @Override
+  @Nullable
+  public ByteBuf peek() {
+    final StreamQueue streamQueue = head();
+    return streamQueue != null ? streamQueue.frames.peek() : null;
+  }
+
+  /**
+   * Returns the stream whose frame is served next, moving streams that used up their quantum to the
+   * end of the round.
+   */
+  @Nullable
+  StreamQueue head() {
+    transfer();
+
+    final ArrayDeque<StreamQueue> round = this.round;
+    for (; ; ) {
+      final StreamQueue streamQueue = round.peekFirst();
+      if (streamQueue == null || streamQueue.deficit > 0) {
+        return streamQueue;
+      }
+
+      // quantum used up, move on to the next stream
+      round.pollFirst();
+      streamQueue.deficit += quantum;
+      round.addLast(streamQueue);
+    }
+  }
+
+  /** Moves the frames queued by producers to the queues of their streams. */
+  void transfer() {
+    final Queue<ByteBuf> intake = this.intake;
+    final IntObjectHashMap<StreamQueue> streams = this.streams;
+
+    ByteBuf frame;
+    while ((frame = intake.poll()) != null) {
+      final int streamId = FrameHeaderCodec.streamId(frame);
+
+      StreamQueue streamQueue = streams.get(streamId);
+      if (streamQueue == null) {
+        streamQueue = newStreamQueue(streamId);
+        streams.put(streamId, streamQueue);
+        round.addLast(streamQueue);
+      }
+
+      streamQueue.frames.offer(frame);
+      pending++;
+    }
+  }
+
+  StreamQueue newStreamQueue(int streamId) {
+    StreamQueue streamQueue = recycled.pollFirst();
+    if (streamQueue == null) {
+      streamQueue = new StreamQueue();
+    }
+    streamQueue.streamId = streamId;
+    streamQueue.deficit = quantum;
+    return streamQueue;
+  }
+
+  void recycle(StreamQueue streamQueue) {
+    if (recycled.size() < MAX_RECYCLED_STREAM_QUEUES) {
+      recycled.offerFirst(streamQueue);
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return pending == 0 && intake.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return pending + intake.size();
+  }
+
+  /**
+   * Returns an iterator over the queued frames, stream by stream in the order of the round. Removal
+   * is not supported.
+   */
+  @Override
+  public Iterator<ByteBuf> iterator() {
+    transfer();
+
+    final Iterator<StreamQueue> streamQueues = round.iterator();
+    return new Iterator<ByteBuf>() {
+      Iterator<ByteBuf> frames = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!frames.hasNext() && streamQueues.hasNext()) {
+          frames = streamQueues.next().frames.iterator();
+        }
+        return frames.hasNext();
+      }
+
+      @Override
+      public ByteBuf next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return frames.next();
+      }
+    };
+  }
+
+  static final class StreamQueue {
+
+    final ArrayDeque<ByteBuf> frames = new ArrayDeque<>();
+
+    int streamId;
+    long deficit;
+  }
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import io.netty.buffer.AbstractReferenceCountedByteBuf;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Read-only {@link ByteBuf} made of an optional in-memory header followed by a region of a {@link
+ * FileChannel}. The file bytes are not loaded into memory: transports that can write files
+ * directly, such as TCP through Netty's {@code FileRegion}, send the header and then the file
+ * region with {@code sendfile}. Any other reader gets the file bytes through positional reads of
+ * the channel, so the buffer can be used wherever a {@code ByteBuf} is expected.
+ *
+ * <p>Frame encoding keeps the type intact: a frame whose data is a {@code FileRegionByteBuf} is
+ * itself a {@code FileRegionByteBuf} with the frame header and metadata as its header, see {@link
+ * #prepend(ByteBufAllocator, ByteBuf)}.
+ *
+ * <p>The file channel is not closed by this buffer. An optional owner is released once the buffer
+ * is deallocated, which allows several buffers to share one channel that is closed with the last.
+ *
+ * @since 1.1
+ */
+public final class FileRegionByteBuf extends AbstractReferenceCountedByteBuf {
+
+  @Nullable final ByteBuf header;
+  final int headerIndex;
+  final int headerLength;
+  final FileChannel channel;
+  final long position;
+  final int length;
+  @Nullable final ReferenceCounted owner;
+
+  /**
+   * Creates a buffer made of the readable bytes of the given header followed by the given region of
+   * the file.
+   *
+   * @param header the bytes preceding the file region, or {@code null}. Ownership is transferred to
+   *     the new buffer.
+   * @param channel the channel to read the file region from
+   * @param position the position of the region in the file
+   * @param length the length of the region
+   * @param owner released once the new buffer is deallocated, or {@code null}. Ownership is
+   *     transferred to the new buffer.
+   */
+  public FileRegionByteBuf(
+      @Nullable ByteBuf header,
+      FileChannel channel,
+      long position,
+      int length,
+      @Nullable ReferenceCounted owner) {
+    super(capacity(header, length));
+    if (position < 0 || length < 0) {
+      String msg =
+          String.format(
+              "Expected position >= 0 and length >= 0, provided: %d, %d", position, length);
+      throw new IllegalArgumentException(msg);
+    }
+    this.header = header;
+    this.headerIndex = header != null ? header.readerIndex() : 0;
+    this.headerLength = header != null ? header.readableBytes() : 0;
+    this.channel = channel;
+    this.position = position;
+    this.length = length;
+    this.owner = owner;
+    writerIndex(headerLength + length);
+  }
+
+  static int capacity(@Nullable ByteBuf header, int length) {
+    return (header != null ? header.readableBytes() : 0) + length;
+  }
+
+  /**
+   * Returns a new buffer made of the given prefix followed by the readable bytes of this buffer,
+   * keeping the file region out of memory. Ownership of this buffer and of the prefix is
+   * transferred to the new buffer.
+   *
+   * @param allocator the allocator to combine the prefix with the header of this buffer
+   * @param prefix the bytes to put in front
+   * @return the new buffer
+   */
+  public FileRegionByteBuf prepend(ByteBufAllocator allocator, ByteBuf prefix) {
+    final ByteBuf readableHeader = retainedReadableHeader();
+    final ByteBuf newHeader =
+        readableHeader == null
+            ? prefix
+            : allocator.compositeBuffer(2).addComponents(true, prefix, readableHeader);
+    final ReferenceCounted owner = this.owner;
+    if (owner != null) {
+      owner.retain();
+    }
+    final FileRegionByteBuf result =
+        new FileRegionByteBuf(
+            newHeader, channel, readableRegionPosition(), readableRegionLength(), owner);
+    release();
+    return result;
+  }
+
+  /**
+   * Returns the readable bytes of this buffer that precede the file region, retained, or {@code
+   * null} if there are none.
+   */
+  @Nullable
+  public ByteBuf retainedReadableHeader() {
+    final ByteBuf header = this.header;
+    final int r = readerIndex();
+    if (header == null || r >= headerLength) {
+      return null;
+    }
+    final int end = Math.min(writerIndex(), headerLength);
+    return header.retainedSlice(headerIndex + r, end - r);
+  }
+
+  /** Returns the channel the file region is read from. */
+  public FileChannel channel() {
+    return channel;
+  }
+
+  /** Returns the position in the file of the readable part of the file region. */
+  public long readableRegionPosition() {
+    return position + Math.max(readerIndex() - headerLength, 0);
+  }
+
+  /** Returns the length of the readable part of the file region. */
+  public int readableRegionLength() {
+    final int start = Math.max(readerIndex(), headerLength);
+    final int end = Math.max(writerIndex(), headerLength);
+    return end - start;
+  }
+
+  @Override
+  protected void deallocate() {
+    if (header != null) {
+      header.release();
+    }
+    if (owner != null) {
+      owner.release();
+    }
+  }
+
+  @Override
+  public int capacity() {
+    return headerLength + length;
+  }
+
+  @Override
+  public ByteBuf capacity(int newCapacity) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public ByteBufAllocator alloc() {
+    return header != null ? header.alloc() : ByteBufAllocator.DEFAULT;
+  }
+
+  @Override
+  @Deprecated
+  public ByteOrder order() {
+    return ByteOrder.BIG_ENDIAN;
+  }
+
+  @Override
+  public ByteBuf unwrap() {
+    return null;
+  }
+
+  @Override
+  public boolean isDirect() {
+    return false;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public ByteBuf asReadOnly() {
+    return this;
+  }
+
+  @Override
+  public boolean hasArray() {
+    return false;
+  }
+
+  @Override
+  public byte[] array() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int arrayOffset() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasMemoryAddress() {
+    return false;
+  }
+
+  @Override
+  public long memoryAddress() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int nioBufferCount() {
+    return 1;
+  }
+
+  @Override
+  public ByteBuffer nioBuffer(int index, int length) {
+    checkIndex(index, length);
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    getBytes(index, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Override
+  public ByteBuffer internalNioBuffer(int index, int length) {
+    return nioBuffer(index, length);
+  }
+
+  @Override
+  public ByteBuffer[] nioBuffers(int index, int length) {
+    return new ByteBuffer[] {nioBuffer(index, length)};
+  }
+
+  @Override
+  public ByteBuf copy(int index, int length) {
+    checkIndex(index, length);
+    final ByteBuf copy = alloc().heapBuffer(length);
+    try {
+      getBytes(index, copy, 0, length);
+      copy.writerIndex(length);
+      return copy;
+    } catch (Throwable t) {
+      copy.release();
+      throw t;
+    }
+  }
+
+  @Override
+  protected byte _getByte(int index) {
+    if (index < headerLength) {
+      return header.getByte(headerIndex + index);
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate(1);
+    readRegion(buffer, index - headerLength);
+    return buffer.get(0);
+  }
+
+  @Override
+  protected short _getShort(int index) {
+    return (short) ((_getByte(index) & 0xff) << 8 | _getByte(index + 1) & 0xff);
+  }
+
+  @Override
+  protected short _getShortLE(int index) {
+    return Short.reverseBytes(_getShort(index));
+  }
+
+  @Override
+  protected int _getUnsignedMedium(int index) {
+    return (_getByte(index) & 0xff) << 16
+        | (_getByte(index + 1) & 0xff) << 8
+        | _getByte(index + 2) & 0xff;
+  }
+
+  @Override
+  protected int _getUnsignedMediumLE(int index) {
+    return _getByte(index) & 0xff
+        | (_getByte(index + 1) & 0xff) << 8
+        | (_getByte(index + 2) & 0xff) << 16;
+  }
+
+  @Override
+  protected int _getInt(int index) {
+    return (_getShort(index) & 0xffff) << 16 | _getShort(index + 2) & 0xffff;
+  }
+
+  @Override
+  protected int _getIntLE(int index) {
+    return Integer.reverseBytes(_getInt(index));
+  }
+
+  @Override
+  protected long _getLong(int index) {
+    return (_getInt(index) & 0xffffffffL) << 32 | _getInt(index + 4) & 0xffffffffL;
+  }
+
+  @Override
+  protected long _getLongLE(int index) {
+    return Long.reverseBytes(_getLong(index));
+  }
+
+  @Override
+  public ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+    checkDstIndex(index, length, dstIndex, dst.capacity());
+    final int fromHeader = fromHeader(index, length);
+    if (fromHeader > 0) {
+      header.getBytes(headerIndex + index, dst, dstIndex, fromHeader);
+    }
+
+    final int fromRegion = length - fromHeader;
+    if (fromRegion > 0) {
+      long regionIndex = index + fromHeader - headerLength;
+      for (ByteBuffer buffer : dst.nioBuffers(dstIndex + fromHeader, fromRegion)) {
+        final int remaining = buffer.remaining();
+        readRegion(buffer, regionIndex);
+        regionIndex += remaining;
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+    checkDstIndex(index, length, dstIndex, dst.length);
+    final int fromHeader = fromHeader(index, length);
+    if (fromHeader > 0) {
+      header.getBytes(headerIndex + index, dst, dstIndex, fromHeader);
+    }
+
+    final int fromRegion = length - fromHeader;
+    if (fromRegion > 0) {
+      readRegion(
+          ByteBuffer.wrap(dst, dstIndex + fromHeader, fromRegion),
+          index + fromHeader - headerLength);
+    }
+    return this;
+  }
+
+  @Override
+  public ByteBuf getBytes(int index, ByteBuffer dst) {
+    final int length = dst.remaining();
+    checkIndex(index, length);
+    final int fromHeader = fromHeader(index, length);
+    if (fromHeader > 0) {
+      final int limit = dst.limit();
+      dst.limit(dst.position() + fromHeader);
+      header.getBytes(headerIndex + index, dst);
+      dst.limit(limit);
+    }
+
+    if (length - fromHeader > 0) {
+      readRegion(dst, index + fromHeader - headerLength);
+    }
+    return this;
+  }
+
+  @Override
+  public ByteBuf getBytes(int index, OutputStream out, int length) throws IOException {
+    checkIndex(index, length);
+    if (length == 0) {
+      return this;
+    }
+    final byte[] bytes = new byte[length];
+    getBytes(index, bytes, 0, length);
+    out.write(bytes);
+    return this;
+  }
+
+  @Override
+  public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+    checkIndex(index, length);
+    final int fromHeader = fromHeader(index, length);
+    if (fromHeader > 0) {
+      final int written = header.getBytes(headerIndex + index, out, fromHeader);
+      if (written < fromHeader) {
+        return written;
+      }
+    }
+
+    final int fromRegion = length - fromHeader;
+    if (fromRegion > 0) {
+      final long regionPosition = position + index + fromHeader - headerLength;
+      return fromHeader + (int) channel.transferTo(regionPosition, fromRegion, out);
+    }
+    return fromHeader;
+  }
+
+  @Override
+  public int getBytes(int index, FileChannel out, long position, int length) throws IOException {
+    checkIndex(index, length);
+    final ByteBuffer buffer = nioBuffer(index, length);
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += out.write(buffer, position + written);
+    }
+    return written;
+  }
+
+  /** Returns how many of the given bytes starting at the given index are part of the header. */
+  int fromHeader(int index, int length) {
+    return index < headerLength ? Math.min(length, headerLength - index) : 0;
+  }
+
+  /** Fills the given buffer with the file region bytes starting at the given region index. */
+  void readRegion(ByteBuffer dst, long regionIndex) {
+    long filePosition = position + regionIndex;
+    try {
+      while (dst.hasRemaining()) {
+        final int read = channel.read(dst, filePosition);
+        if (read < 0) {
+          throw new IOException("Unexpected end of file at position " + filePosition);
+        }
+        filePosition += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected void _setByte(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setShort(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setShortLE(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setMedium(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setMediumLE(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setInt(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setIntLE(int index, int value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setLong(int index, long value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  protected void _setLongLE(int index, long value) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public ByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public ByteBuf setBytes(int index, ByteBuffer src) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public int setBytes(int index, InputStream in, int length) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public int setBytes(int index, ScatteringByteChannel in, int length) {
+    throw new ReadOnlyBufferException();
+  }
+
+  @Override
+  public int setBytes(int index, FileChannel in, long position, int length) {
+    throw new ReadOnlyBufferException();
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Multi-producer, single-consumer queue of outbound frames split into priority lanes. Lane {@link
+ * #CONTROL_LANE} carries {@code CANCEL}, {@code REQUEST_N} and {@code LEASE} frames, so that
+ * cancellation and flow control credit do not wait behind payload frames. The other lanes carry
+ * everything else; frames go to the default lane unless they are offered to a specific lane with
+ * {@link #offer(ByteBuf, int)}.
+ *
+ * <p>Lanes are served in weighted round robin order: the consumer takes up to the drain quota of a
+ * lane, in frames, before it moves on to the next lane, and lanes without frames are skipped. With
+ * quotas {@code {8, 4, 1}}, for example, the control lane may send 8 frames for every 4 frames of
+ * lane 1 and every single frame of lane 2 while all of them are busy.
+ *
+ * <p>A control frame never overtakes the request frame that opens its stream, otherwise the peer
+ * would drop a {@code REQUEST_N} or {@code CANCEL} for a stream it does not know yet. Until that
+ * request frame is polled, control frames of the stream are queued behind it in its lane. {@code
+ * ERROR} frames are not control frames as they must stay in order with the payloads of their
+ * stream.
+ *
+ * <p>Like the queues of {@link UnboundedProcessor}, all methods except {@link #offer(ByteBuf)} and
+ * {@link #offer(ByteBuf, int)} must be called by the single consumer.
+ */
+public final class PriorityFrameQueue extends AbstractQueue<ByteBuf> {
+
+  /** The lane of {@code CANCEL}, {@code REQUEST_N} and {@code LEASE} frames. */
+  public static final int CONTROL_LANE = 0;
+
+  final Queue<ByteBuf>[] lanes;
+  final int[] drainQuotas;
+  final int defaultLane;
+
+  /** Lanes of the streams whose request frame has been offered but not yet polled. */
+  final ConcurrentIntObjectHashMap<Integer> openingStreams = new ConcurrentIntObjectHashMap<>();
+
+  int lane;
+  int remaining;
+
+  /**
+   * Creates a new queue with frames of the same lane sent in the order they are offered.
+   *
+   * @param drainQuotas the number of frames each lane may send per turn, starting with the control
+   *     lane
+   * @param defaultLane the lane of frames that are not control frames and not offered to a specific
+   *     lane
+   */
+  public PriorityFrameQueue(int[] drainQuotas, int defaultLane) {
+    this(drainQuotas, defaultLane, 0);
+  }
+
+  /**
+   * Creates a new queue.
+   *
+   * @param drainQuotas the number of frames each lane may send per turn, starting with the control
+   *     lane
+   * @param defaultLane the lane of frames that are not control frames and not offered to a specific
+   *     lane
+   * @param fairSchedulingQuantum if greater than 0, the frames of each lane other than the control
+   *     lane are scheduled across streams with a {@link FairFrameQueue} of that quantum
+   */
+  @SuppressWarnings("unchecked")
+  public PriorityFrameQueue(int[] drainQuotas, int defaultLane, int fairSchedulingQuantum) {
+    assertLanes(drainQuotas, defaultLane);
+    this.drainQuotas = drainQuotas.clone();
+    this.defaultLane = defaultLane;
+    this.lanes = new Queue[drainQuotas.length];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] =
+          i != CONTROL_LANE && fairSchedulingQuantum > 0
+              ? new FairFrameQueue(fairSchedulingQuantum)
+              : new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+    }
+    this.remaining = drainQuotas[CONTROL_LANE];
+  }
+
+  public static void assertLanes(int[] drainQuotas, int defaultLane) {
+    if (drainQuotas.length < 2) {
+      String msg =
+          String.format(
+              "Expected the control lane and at least one more lane, provided: %d",
+              drainQuotas.length);
+      throw new IllegalArgumentException(msg);
+    }
+    for (int drainQuota : drainQuotas) {
+      if (drainQuota <= 0) {
+        String msg =
+            String.format("Drain quotas must be greater than 0, provided: %d", drainQuota);
+        throw new IllegalArgumentException(msg);
+      }
+    }
+    if (defaultLane <= CONTROL_LANE || defaultLane >= drainQuotas.length) {
+      String msg =
+          String.format(
+              "The default lane must be between 1 and %d, provided: %d",
+              drainQuotas.length - 1, defaultLane);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+  /**
+   * Queues control frames in the control lane and all other frames in the default lane.
+   *
+   * @param frame the frame to queue
+   * @return {@code true}
+   */
+  @Override
+  public boolean offer(ByteBuf frame) {
+    if (isControlFrame(frame)) {
+      final Integer openingLane = openingStreams.get(FrameHeaderCodec.streamId(frame));
+      return lanes[openingLane != null ? openingLane : CONTROL_LANE].offer(frame);
+    }
+    return offer(frame, defaultLane);
+  }
+
+  /**
+   * Queues the given frame in the given lane. Frames of the same stream must always be offered to
+   * the same lane to keep their order. Control frames and lanes that do not exist fall back to
+   * {@link #offer(ByteBuf)}.
+   *
+   * @param frame the frame to queue
+   * @param lane the lane to queue the frame in
+   * @return {@code true}
+   */
+  public boolean offer(ByteBuf frame, int lane) {
+    if (lane <= CONTROL_LANE || lane >= lanes.length || isControlFrame(frame)) {
+      return offer(frame);
+    }
+
+    if (opensStream(frame)) {
+      openingStreams.put(FrameHeaderCodec.streamId(frame), lane);
+    }
+    return lanes[lane].offer(frame);
+  }
+
+  @Override
+  @Nullable
+  public ByteBuf poll() {
+    final Queue<ByteBuf>[] lanes = this.lanes;
+    int lane = this.lane;
+    int remaining = this.remaining;
+
+    // visit every lane once, and the current one a second time with a fresh quota
+    for (int i = 0; i <= lanes.length; i++) {
+      if (remaining > 0) {
+        final ByteBuf frame = lanes[lane].poll();
+        if (frame != null) {
+          this.lane = lane;
+          this.remaining = remaining - 1;
+          if (lane != CONTROL_LANE && opensStream(frame)) {
+            openingStreams.remove(FrameHeaderCodec.streamId(frame));
+          }
+          return frame;
+        }
+      }
+
+      lane = lane + 1 == lanes.length ? CONTROL_LANE : lane + 1;
+      remaining = drainQuotas[lane];
+    }
+
+    this.lane = lane;
+    this.remaining = remaining;
+    return null;
+  }
+
+  /** Whether the frame opens a stream that may be followed by control frames. */
+  static boolean opensStream(ByteBuf frame) {
+    final FrameType frameType = FrameHeaderCodec.frameType(frame);
+    return frameType.isRequestType() && frameType != FrameType.REQUEST_FNF;
+  }
+
+  static boolean isControlFrame(ByteBuf frame) {
+    final FrameType frameType = FrameHeaderCodec.frameType(frame);
+    return frameType == FrameType.CANCEL
+        || frameType == FrameType.REQUEST_N
+        || frameType == FrameType.LEASE;
+  }
+
+  @Override
+  @Nullable
+  public ByteBuf peek() {
+    final Queue<ByteBuf>[] lanes = this.lanes;
+    int lane = this.lane;
+    int remaining = this.remaining;
+
+    // the same visit as poll, without moving on to the lane that is found
+    for (int i = 0; i <= lanes.length; i++) {
+      if (remaining > 0) {
+        final ByteBuf frame = lanes[lane].peek();
+        if (frame != null) {
+          return frame;
+        }
+      }
+
+      lane = lane + 1 == lanes.length ? CONTROL_LANE : lane + 1;
+      remaining = drainQuotas[lane];
+    }
+
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Queue<ByteBuf> lane : lanes) {
+      if (!lane.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Queue<ByteBuf> lane : lanes) {
+      size += lane.size();
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    openingStreams.clear();
+  }
+
+  /**
+   * Returns an iterator over the queued frames, lane by lane starting with the control lane.
+   * Removal is not supported.
+   */
+  @Override
+  public Iterator<ByteBuf> iterator() {
+    final Queue<ByteBuf>[] lanes = this.lanes;
+    return new Iterator<ByteBuf>() {
+      int lane;
+      Iterator<ByteBuf> frames = lanes[CONTROL_LANE].iterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!frames.hasNext() && lane + 1 < lanes.length) {
+          frames = lanes[++lane].iterator();
+        }
+        return frames.hasNext();
+      }
+
+      @Override
+      public ByteBuf next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return frames.next();
+      }
+    };
+  }
+}
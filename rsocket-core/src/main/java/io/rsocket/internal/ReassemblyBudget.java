@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Counts the bytes of payloads held while their fragments are being reassembled against a maximum.
+ * An instance per connection may have a parent shared by all connections of a server, in which
+ * case the bytes must fit into both budgets. The parent only rejects bytes that do not fit, it is
+ * up to the connection that acquires them to evict its own partial payloads in that case.
+ */
+public final class ReassemblyBudget extends BoundedCounter<ReassemblyBudget> {
+
+  volatile long evictions;
+  static final AtomicLongFieldUpdater<ReassemblyBudget> EVICTIONS =
+      AtomicLongFieldUpdater.newUpdater(ReassemblyBudget.class, "evictions");
+
+  /**
+   * Creates a new instance.
+   *
+   * @param maxBytes the maximum number of bytes, {@link Long#MAX_VALUE} to only count bytes
+   *     against the parent
+   * @param parent the budget shared with other connections, or {@code null}
+   */
+  public ReassemblyBudget(long maxBytes, @Nullable ReassemblyBudget parent) {
+    super(assertMaxReassemblyBytes(maxBytes), parent);
+  }
+
+  public static long assertMaxReassemblyBytes(long maxReassemblyBytes) {
+    if (maxReassemblyBytes <= 0) {
+      String msg =
+          String.format(
+              "The maximum of reassembly bytes must be greater than 0, provided: %d",
+              maxReassemblyBytes);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return maxReassemblyBytes;
+    }
+  }
+
+  /** Accounts for a partially reassembled payload dropped to stay within the budget. */
+  public void evicted() {
+    EVICTIONS.incrementAndGet(this);
+    final ReassemblyBudget parent = this.parent;
+    if (parent != null) {
+      parent.evicted();
+    }
+  }
+
+  /**
+   * Returns the number of bytes currently held in reassembly.
+   *
+   * @return the held bytes
+   */
+  public long heldBytes() {
+    return count();
+  }
+
+  /**
+   * Returns the number of partially reassembled payloads evicted so far because the budget was
+   * exhausted.
+   *
+   * @return the evictions
+   */
+  public long evictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns the maximum number of bytes of this budget, not considering the parent.
+   *
+   * @return the maximum of reassembly bytes
+   */
+  public long maxBytes() {
+    return max();
+  }
+}
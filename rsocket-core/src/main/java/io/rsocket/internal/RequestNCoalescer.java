@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import io.netty.buffer.ByteBuf;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.RequestNFrameCodec;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import reactor.core.publisher.Operators;
+
+/**
+ * Merges the outbound {@code REQUEST_N} grants of a stream while its {@code REQUEST_N} frame waits
+ * in the send queue, so that a subscriber calling {@code request(1)} for every element does not
+ * produce a frame per element. The requester and responder of a connection share one instance, as
+ * stream ids are unique per connection.
+ *
+ * <p>Each stream keeps at most one {@code REQUEST_N} frame in the send queue. Grants made while
+ * that frame is queued are added to a pending amount which {@link #onSend(ByteBuf)} writes into the
+ * frame as it leaves the queue. Grants smaller than {@code minCreditBatch} are held back until
+ * they add up to at least {@code minCreditBatch}, unless the peer has no credit left for the
+ * stream, i.e. all elements granted so far have been delivered, in which case they are sent right
+ * away.
+ */
+public final class RequestNCoalescer {
+
+  final int minCreditBatch;
+  final ConcurrentIntObjectHashMap<Credit> credits = new ConcurrentIntObjectHashMap<>();
+
+  volatile long coalescedFrames;
+  static final AtomicLongFieldUpdater<RequestNCoalescer> COALESCED_FRAMES =
+      AtomicLongFieldUpdater.newUpdater(RequestNCoalescer.class, "coalescedFrames");
+
+  /**
+   * Creates a new instance.
+   *
+   * @param minCreditBatch the minimum amount of credit per {@code REQUEST_N} frame, as long as the
+   *     peer has credit left, {@code 1} to only merge grants of frames that are already queued
+   */
+  public RequestNCoalescer(int minCreditBatch) {
+    this.minCreditBatch = assertMinCreditBatch(minCreditBatch);
+  }
+
+  public static int assertMinCreditBatch(int minCreditBatch) {
+    if (minCreditBatch <= 0) {
+      String msg =
+          String.format(
+              "The minimum credit batch must be greater than 0, provided: %d", minCreditBatch);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return minCreditBatch;
+    }
+  }
+
+  /**
+   * Starts tracking the credit of a stream.
+   *
+   * @param streamId the id of the stream
+   * @param initialCredit the credit granted to the peer when the stream was opened, including the
+   *     elements that came with the request frame
+   * @return the credit of the stream
+   */
+  public Credit open(int streamId, long initialCredit) {
+    final Credit credit = new Credit(this, initialCredit);
+    credits.put(streamId, credit);
+    return credit;
+  }
+
+  /**
+   * Stops tracking the credit of a stream. A {@code REQUEST_N} frame that is still queued is sent
+   * with the amount it was created with.
+   *
+   * @param streamId the id of the stream
+   * @param credit the credit returned by {@link #open(int, long)}
+   */
+  public void close(int streamId, Credit credit) {
+    credits.remove(streamId, credit);
+  }
+
+  /**
+   * Writes the pending credit of the stream into a {@code REQUEST_N} frame that leaves the send
+   * queue. Other frames are left untouched. Must be called once per frame, by the consumer of the
+   * send queue.
+   *
+   * @param frame the frame taken from the send queue
+   */
+  public void onSend(ByteBuf frame) {
+    if (FrameHeaderCodec.frameType(frame) != FrameType.REQUEST_N) {
+      return;
+    }
+
+    final Credit credit = credits.get(FrameHeaderCodec.streamId(frame));
+    if (credit != null) {
+      final long n = credit.take();
+      if (n > 0) {
+        RequestNFrameCodec.setRequestN(frame, n);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of {@code REQUEST_N} frames that were not sent because their grant was
+   * merged into another frame or held back.
+   *
+   * @return the number of frames saved
+   */
+  public long coalescedFrames() {
+    return coalescedFrames;
+  }
+
+  /**
+   * The credit of a single stream, as seen by the side that receives the elements. Methods return
+   * {@code true} when the caller has to queue a new {@code REQUEST_N} frame for the stream.
+   */
+  public static final class Credit {
+
+    final RequestNCoalescer parent;
+
+    /** Granted by the subscriber but not yet written into a frame. */
+    long pending;
+    /** Sent to the peer but not yet delivered, {@link Long#MAX_VALUE} once unbounded. */
+    long outstanding;
+
+    boolean queued;
+
+    Credit(RequestNCoalescer parent, long initialCredit) {
+      this.parent = parent;
+      this.outstanding = initialCredit >= Integer.MAX_VALUE ? Long.MAX_VALUE : initialCredit;
+    }
+
+    /**
+     * Adds credit granted by the subscriber.
+     *
+     * @param n the number of elements requested
+     * @return whether a {@code REQUEST_N} frame has to be queued
+     */
+    public synchronized boolean request(long n) {
+      if (outstanding == Long.MAX_VALUE) {
+        // the peer may already send without bounds
+        COALESCED_FRAMES.incrementAndGet(parent);
+        return false;
+      }
+
+      pending = Operators.addCap(pending, n);
+
+      if (!queued && (pending >= parent.minCreditBatch || outstanding == 0)) {
+        queued = true;
+        return true;
+      }
+
+      COALESCED_FRAMES.incrementAndGet(parent);
+      return false;
+    }
+
+    /**
+     * Records an element that was delivered to the subscriber.
+     *
+     * @return whether a {@code REQUEST_N} frame has to be queued because the peer has no credit
+     *     left
+     */
+    public synchronized boolean onDelivered() {
+      if (outstanding == Long.MAX_VALUE) {
+        return false;
+      }
+
+      if (outstanding > 0) {
+        outstanding--;
+      }
+
+      if (outstanding == 0 && pending > 0 && !queued) {
+        // the grants held back so far end up in a frame after all
+        COALESCED_FRAMES.decrementAndGet(parent);
+        queued = true;
+        return true;
+      }
+
+      return false;
+    }
+
+    synchronized long take() {
+      final long n = pending;
+      pending = 0;
+      queued = false;
+
+      outstanding = n >= Integer.MAX_VALUE ? Long.MAX_VALUE : Operators.addCap(outstanding, n);
+      return n;
+    }
+  }
+}
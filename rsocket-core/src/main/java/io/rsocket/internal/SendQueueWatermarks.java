@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Operators;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+
+/**
+ * Tracks the number of bytes queued for sending on a connection against a low and a high
+ * watermark. The outbound {@link UnboundedProcessor}s of a connection share one instance, so the
+ * requester and responder are accounted together.
+ *
+ * <p>Frames are only taken from the send queue while the transport is able to write, e.g. while
+ * the Netty channel is writable, so the queued bytes grow when the channel stops being writable.
+ * Once they exceed the high watermark the queue is no longer {@link #isWritable() writable}, and
+ * it becomes writable again once the queued bytes drop to the low watermark. Tasks deferred with
+ * {@link #whenWritable(Runnable)} run on that transition, on the thread that drains the queue.
+ *
+ * <p>Writability is tracked with plain counters rather than a lock so, under contention, a
+ * transition may be observed slightly after the queued bytes cross a watermark.
+ */
+public final class SendQueueWatermarks {
+
+  final long lowWatermark;
+  final long highWatermark;
+
+  final Queue<Runnable> waiters = Queues.<Runnable>unboundedMultiproducer().get();
+
+  volatile long queuedBytes;
+  static final AtomicLongFieldUpdater<SendQueueWatermarks> QUEUED_BYTES =
+      AtomicLongFieldUpdater.newUpdater(SendQueueWatermarks.class, "queuedBytes");
+
+  volatile int writable = 1;
+  static final AtomicIntegerFieldUpdater<SendQueueWatermarks> WRITABLE =
+      AtomicIntegerFieldUpdater.newUpdater(SendQueueWatermarks.class, "writable");
+
+  volatile int wip;
+  static final AtomicIntegerFieldUpdater<SendQueueWatermarks> WIP =
+      AtomicIntegerFieldUpdater.newUpdater(SendQueueWatermarks.class, "wip");
+
+  /** Creates an instance that only counts queued bytes and is always writable. */
+  public SendQueueWatermarks() {
+    this.lowWatermark = Long.MAX_VALUE;
+    this.highWatermark = Long.MAX_VALUE;
+  }
+
+  /**
+   * Creates an instance with the given watermarks.
+   *
+   * @param lowWatermark the number of queued bytes at which the queue becomes writable again
+   * @param highWatermark the number of queued bytes above which the queue is no longer writable
+   * @throws IllegalArgumentException if the watermarks are negative or {@code lowWatermark} is
+   *     greater than {@code highWatermark}
+   */
+  public SendQueueWatermarks(int lowWatermark, int highWatermark) {
+    assertWatermarks(lowWatermark, highWatermark);
+    this.lowWatermark = lowWatermark;
+    this.highWatermark = highWatermark;
+  }
+
+  public static void assertWatermarks(int lowWatermark, int highWatermark) {
+    if (lowWatermark < 0 || highWatermark <= 0 || lowWatermark > highWatermark) {
+      String msg =
+          String.format(
+              "Expected 0 <= lowWatermark <= highWatermark and highWatermark > 0, provided: %d, %d",
+              lowWatermark, highWatermark);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+  /**
+   * Returns the number of bytes currently queued for sending.
+   *
+   * @return the queued bytes
+   */
+  public long queuedBytes() {
+    return queuedBytes;
+  }
+
+  /**
+   * Returns {@code true} unless the queued bytes went above the high watermark and have not yet
+   * dropped to the low watermark.
+   *
+   * @return whether more frames should be produced
+   */
+  public boolean isWritable() {
+    return writable == 1;
+  }
+
+  /**
+   * Runs the given task immediately if the queue is writable, or otherwise once it becomes
+   * writable again.
+   *
+   * @param task the task to run
+   */
+  public void whenWritable(Runnable task) {
+    if (writable == 1 && waiters.isEmpty()) {
+      task.run();
+      return;
+    }
+
+    waiters.offer(task);
+
+    if (writable == 1) {
+      drainWaiters();
+    }
+  }
+
+  void onEnqueued(int bytes) {
+    long queued = QUEUED_BYTES.addAndGet(this, bytes);
+    if (queued > highWatermark && writable == 1 && WRITABLE.compareAndSet(this, 1, 0)) {
+      // the queue may have been drained while we were flipping the state
+      if (queuedBytes <= lowWatermark) {
+        becomeWritable();
+      }
+    }
+  }
+
+  void onDequeued(int bytes) {
+    long queued = QUEUED_BYTES.addAndGet(this, -bytes);
+    if (queued <= lowWatermark && writable == 0) {
+      becomeWritable();
+    }
+  }
+
+  void becomeWritable() {
+    if (WRITABLE.compareAndSet(this, 0, 1)) {
+      if (queuedBytes > highWatermark && WRITABLE.compareAndSet(this, 1, 0)) {
+        // refilled while we were flipping the state
+        return;
+      }
+      drainWaiters();
+    }
+  }
+
+  void drainWaiters() {
+    if (WIP.getAndIncrement(this) != 0) {
+      return;
+    }
+
+    final Queue<Runnable> waiters = this.waiters;
+    int missed = 1;
+
+    for (; ; ) {
+      while (writable == 1) {
+        Runnable task = waiters.poll();
+        if (task == null) {
+          break;
+        }
+
+        try {
+          task.run();
+        } catch (Throwable t) {
+          Exceptions.throwIfFatal(t);
+          Operators.onErrorDropped(t, Context.empty());
+        }
+      }
+
+      missed = WIP.addAndGet(this, -missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+}
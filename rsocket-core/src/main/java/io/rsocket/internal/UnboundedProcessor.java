@@ -16,8 +16,10 @@
 
 package io.rsocket.internal;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.util.ReferenceCounted;
 import io.rsocket.internal.jctools.queues.MpscUnboundedArrayQueue;
+import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
@@ -45,6 +47,7 @@
 
   final Queue<T> queue;
   final Queue<T> priorityQueue;
+  @Nullable final SendQueueWatermarks watermarks;
 
   volatile boolean done;
   Throwable error;
@@ -82,8 +85,35 @@
   boolean outputFused;
 
   public UnboundedProcessor() {
-    this.queue = new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+    this(null);
+  }
+
+  /**
+   * Creates a processor that reports the bytes of the queued {@link ByteBuf}s to the given {@link
+   * SendQueueWatermarks}.
+   *
+   * @param watermarks the watermarks to account queued bytes against, or {@code null} to disable
+   *     accounting
+   * @since 1.1
+   */
+  public UnboundedProcessor(@Nullable SendQueueWatermarks watermarks) {
+    this(new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE), watermarks);
+  }
+
+  /**
+   * Creates a processor that emits the elements of the given queue, e.g. a {@link FairFrameQueue}
+   * or a {@link PriorityFrameQueue}. Elements passed to {@link #onNextPrioritized(Object)} are
+   * still emitted first.
+   *
+   * @param queue an unbounded queue that supports multiple producers and a single consumer
+   * @param watermarks the watermarks to account queued bytes against, or {@code null} to disable
+   *     accounting
+   * @since 1.1
+   */
+  public UnboundedProcessor(Queue<T> queue, @Nullable SendQueueWatermarks watermarks) {
+    this.queue = Objects.requireNonNull(queue, "queue must not be null");
     this.priorityQueue = new MpscUnboundedArrayQueue<>(Queues.SMALL_BUFFER_SIZE);
+    this.watermarks = watermarks;
   }
 
   @Override
@@ -123,6 +153,10 @@ void drainRegular(Subscriber<? super T> a) {
           empty = t == null;
         }
 
+        if (!empty) {
+          dequeued(t);
+        }
+
         if (checkTerminated(d, empty, a)) {
           return;
         }
@@ -263,7 +297,10 @@ public void onNextPrioritized(T t) {
       return;
     }
 
+    enqueued(t);
+
     if (!priorityQueue.offer(t)) {
+      dequeued(t);
       Throwable ex =
           Operators.onOperatorError(null, Exceptions.failWithOverflow(), t, currentContext());
       onError(Operators.onOperatorError(null, ex, t, currentContext()));
@@ -275,13 +312,29 @@ public void onNextPrioritized(T t) {
 
   @Override
   public void onNext(T t) {
+    onNext(t, -1);
+  }
+
+  /**
+   * Enqueues the given element in the given lane if this processor was created with a {@link
+   * PriorityFrameQueue}, or like {@link #onNext(Object)} otherwise.
+   *
+   * @param t the element to enqueue
+   * @param lane the lane of the {@link PriorityFrameQueue}, or a negative value for the lane the
+   *     queue picks by default
+   * @since 1.1
+   */
+  public void onNext(T t, int lane) {
     if (done || cancelled) {
       Operators.onNextDropped(t, currentContext());
       release(t);
       return;
     }
 
-    if (!queue.offer(t)) {
+    enqueued(t);
+
+    if (!offer(t, lane)) {
+      dequeued(t);
       Throwable ex =
           Operators.onOperatorError(null, Exceptions.failWithOverflow(), t, currentContext());
       onError(Operators.onOperatorError(null, ex, t, currentContext()));
@@ -291,6 +344,39 @@ public void onNext(T t) {
     drain();
   }
 
+  /**
+   * Enqueues the given elements in order, each one like {@link #onNext(Object, int)} would, but
+   * drains the queue only once after the last one, so the subscriber is woken up once per batch
+   * rather than once per element.
+   *
+   * @param elements the elements to enqueue
+   * @param lane the lane of the {@link PriorityFrameQueue}, or a negative value for the lane the
+   *     queue picks by default
+   * @since 1.1
+   */
+  public void onNextAll(List<? extends T> elements, int lane) {
+    final int size = elements.size();
+    for (int i = 0; i < size; i++) {
+      final T t = elements.get(i);
+      if (done || cancelled) {
+        Operators.onNextDropped(t, currentContext());
+        release(t);
+        continue;
+      }
+
+      enqueued(t);
+
+      if (!offer(t, lane)) {
+        dequeued(t);
+        Throwable ex =
+            Operators.onOperatorError(null, Exceptions.failWithOverflow(), t, currentContext());
+        onError(Operators.onOperatorError(null, ex, t, currentContext()));
+        release(t);
+      }
+    }
+    drain();
+  }
+
   @Override
   public void onError(Throwable t) {
     if (done || cancelled) {
@@ -359,10 +445,11 @@ public void cancel() {
   @Nullable
   public T poll() {
     Queue<T> pq = this.priorityQueue;
-    if (!pq.isEmpty()) {
-      return pq.poll();
+    T t = !pq.isEmpty() ? pq.poll() : queue.poll();
+    if (t != null) {
+      dequeued(t);
     }
-    return queue.poll();
+    return t;
   }
 
   @Override
@@ -387,12 +474,14 @@ public void clear() {
       while (!queue.isEmpty()) {
         T t = queue.poll();
         if (t != null) {
+          dequeued(t);
           release(t);
         }
       }
       while (!priorityQueue.isEmpty()) {
         T t = priorityQueue.poll();
         if (t != null) {
+          dequeued(t);
           release(t);
         }
       }
@@ -444,6 +533,41 @@ public boolean hasDownstreams() {
     return hasDownstream;
   }
 
+  /**
+   * Returns the number of bytes currently queued, or {@code 0} if this processor was not created
+   * with {@link SendQueueWatermarks}.
+   *
+   * @return the queued bytes
+   * @since 1.1
+   */
+  public long queuedBytes() {
+    final SendQueueWatermarks watermarks = this.watermarks;
+    return watermarks != null ? watermarks.queuedBytes() : 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  boolean offer(T t, int lane) {
+    final Queue<T> queue = this.queue;
+    if (lane >= 0 && queue instanceof PriorityFrameQueue) {
+      return ((PriorityFrameQueue) queue).offer((ByteBuf) t, lane);
+    }
+    return queue.offer(t);
+  }
+
+  void enqueued(T t) {
+    final SendQueueWatermarks watermarks = this.watermarks;
+    if (watermarks != null && t instanceof ByteBuf) {
+      watermarks.onEnqueued(((ByteBuf) t).readableBytes());
+    }
+  }
+
+  void dequeued(T t) {
+    final SendQueueWatermarks watermarks = this.watermarks;
+    if (watermarks != null && t instanceof ByteBuf) {
+      watermarks.onDequeued(((ByteBuf) t).readableBytes());
+    }
+  }
+
   void release(T t) {
     if (t instanceof ReferenceCounted) {
       ReferenceCounted refCounted = (ReferenceCounted) t;
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.metadata;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Codec for deadline metadata, i.e. the time a requester is still willing to wait for a request to
+ * complete. The deadline is encoded as the remaining time in milliseconds, an unsigned 64-bit
+ * integer, rather than as a point in time so that it does not depend on the clocks of requester and
+ * responder being in sync. It is carried as an entry of composite metadata with the {@link
+ * #DEADLINE_MIME_TYPE} mime type.
+ *
+ * @since 1.1
+ */
+public final class DeadlineMetadataCodec {
+
+  /** The mime type of deadline metadata entries. */
+  public static final String DEADLINE_MIME_TYPE = "message/x.rsocket.deadline.v0";
+
+  static final byte[] DEADLINE_MIME_TYPE_BYTES =
+      DEADLINE_MIME_TYPE.getBytes(CharsetUtil.US_ASCII);
+
+  private DeadlineMetadataCodec() {}
+
+  /**
+   * Encodes the remaining time of a deadline.
+   *
+   * @param allocator the allocator to create the buffer with
+   * @param remainingMillis the time left until the deadline, in milliseconds
+   * @return the encoded deadline
+   */
+  public static ByteBuf encode(ByteBufAllocator allocator, long remainingMillis) {
+    if (remainingMillis < 0) {
+      String msg =
+          String.format("The remaining time must not be negative, provided: %d", remainingMillis);
+      throw new IllegalArgumentException(msg);
+    }
+    return allocator.buffer(Long.BYTES, Long.BYTES).writeLong(remainingMillis);
+  }
+
+  /**
+   * Decodes the remaining time of a deadline.
+   *
+   * @param deadline the encoded deadline
+   * @return the time left until the deadline, in milliseconds
+   */
+  public static long decode(ByteBuf deadline) {
+    if (deadline.readableBytes() != Long.BYTES) {
+      throw new IllegalStateException("deadline metadata is malformed");
+    }
+    return deadline.getLong(deadline.readerIndex());
+  }
+
+  /**
+   * Appends a deadline entry to composite metadata.
+   *
+   * @param compositeMetadata the composite metadata to append to
+   * @param allocator the allocator to create the entry with
+   * @param remainingMillis the time left until the deadline, in milliseconds
+   */
+  public static void encodeAndAddDeadline(
+      CompositeByteBuf compositeMetadata, ByteBufAllocator allocator, long remainingMillis) {
+    CompositeMetadataCodec.encodeAndAddMetadata(
+        compositeMetadata, allocator, DEADLINE_MIME_TYPE, encode(allocator, remainingMillis));
+  }
+
+  /**
+   * Looks up the first deadline entry of composite metadata without allocating or moving the
+   * reader index of the buffer.
+   *
+   * @param compositeMetadata the composite metadata to search
+   * @return the time left until the deadline in milliseconds, or {@code -1} if there is no
+   *     deadline entry or the metadata is malformed
+   */
+  public static long findDeadline(ByteBuf compositeMetadata) {
+    int index = compositeMetadata.readerIndex();
+    final int end = compositeMetadata.writerIndex();
+
+    while (index < end) {
+      final byte mimeIdOrLength = compositeMetadata.getByte(index++);
+      boolean deadline = false;
+      if ((mimeIdOrLength & CompositeMetadataCodec.STREAM_METADATA_KNOWN_MASK) == 0) {
+        final int mimeLength = Byte.toUnsignedInt(mimeIdOrLength) + 1;
+        if (index + mimeLength > end) {
+          return -1;
+        }
+        deadline = isDeadlineMimeType(compositeMetadata, index, mimeLength);
+        index += mimeLength;
+      }
+
+      if (index + 3 > end) {
+        return -1;
+      }
+      final int contentLength = compositeMetadata.getUnsignedMedium(index);
+      index += 3;
+      if (index + contentLength > end) {
+        return -1;
+      }
+
+      if (deadline) {
+        return contentLength == Long.BYTES ? compositeMetadata.getLong(index) : -1;
+      }
+      index += contentLength;
+    }
+
+    return -1;
+  }
+
+  static boolean isDeadlineMimeType(ByteBuf buffer, int index, int length) {
+    final byte[] expected = DEADLINE_MIME_TYPE_BYTES;
+    if (length != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.getByte(index + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
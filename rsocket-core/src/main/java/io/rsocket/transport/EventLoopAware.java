@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.transport;
+
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Extension interface for {@link io.rsocket.DuplexConnection DuplexConnection} implementations that
+ * are served by a single threaded event loop, e.g. a Netty channel. When exposed, the RSocket
+ * requester may allocate stream ids and emit frames directly on that event loop.
+ *
+ * @since 1.1
+ */
+public interface EventLoopAware {
+
+  /**
+   * Returns the event loop that performs the I/O of this connection.
+   *
+   * @return the event loop of this connection
+   */
+  EventExecutor eventLoop();
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.rsocket.Payload;
+import io.rsocket.internal.FileRegionByteBuf;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import reactor.core.publisher.Flux;
+import reactor.util.annotation.Nullable;
+
+/**
+ * Payloads whose data is a region of a file. The file bytes are not read into memory: over TCP
+ * they are written to the socket with {@code sendfile} right after the frame header, other
+ * transports read them from the file when the frame is written. Use {@link #stream(Path, int)} to
+ * respond to a request-stream with the content of a file:
+ *
+ * <pre>{@code
+ * RSocketServer.create(
+ *         SocketAcceptor.forRequestStream(
+ *             payload -> {
+ *               Path file = resolve(payload.getDataUtf8());
+ *               payload.release();
+ *               return FileRegionPayload.stream(file, 64 * 1024);
+ *             }))
+ *     .bind(TcpServerTransport.create("localhost", 7000))
+ *     .block();
+ * }</pre>
+ *
+ * <p>The chunk size should not exceed the MTU of the connection if fragmentation is enabled, since
+ * fragments are cut out of the frame in memory.
+ *
+ * @since 1.1
+ */
+public final class FileRegionPayload {
+
+  private FileRegionPayload() {}
+
+  /**
+   * Creates a payload with the given region of a file as data. The channel is not closed when the
+   * payload is released and must stay open until the payload was sent.
+   *
+   * @param channel the channel to read the region from
+   * @param position the position of the region in the file
+   * @param length the length of the region
+   * @return a payload
+   */
+  public static Payload create(FileChannel channel, long position, int length) {
+    return create(channel, position, length, null);
+  }
+
+  /**
+   * Creates a payload with the given region of a file as data. The channel is not closed when the
+   * payload is released and must stay open until the payload was sent.
+   *
+   * @param channel the channel to read the region from
+   * @param position the position of the region in the file
+   * @param length the length of the region
+   * @param metadata the metadata for the payload
+   * @return a payload
+   */
+  public static Payload create(
+      FileChannel channel, long position, int length, @Nullable ByteBuf metadata) {
+    return ByteBufPayload.create(
+        new FileRegionByteBuf(null, channel, position, length, null), metadata);
+  }
+
+  /**
+   * Returns the content of the given file as a stream of payloads of {@code chunkSize} bytes, the
+   * last one possibly shorter. The file is opened on subscription and closed once the stream is
+   * over and every emitted payload was released.
+   *
+   * @param file the file to stream
+   * @param chunkSize the maximum number of bytes per payload
+   * @return the payloads of the file
+   */
+  public static Flux<Payload> stream(Path file, int chunkSize) {
+    if (chunkSize <= 0) {
+      String msg = String.format("The chunkSize must be greater than 0, provided: %d", chunkSize);
+      throw new IllegalArgumentException(msg);
+    }
+
+    return Flux.using(
+        () -> new SharedFileChannel(FileChannel.open(file, StandardOpenOption.READ)),
+        shared ->
+            Flux.<Payload, Long>generate(
+                () -> 0L,
+                (position, sink) -> {
+                  if (position >= shared.size) {
+                    sink.complete();
+                    return position;
+                  }
+                  final int length = (int) Math.min(chunkSize, shared.size - position);
+                  shared.retain();
+                  sink.next(
+                      ByteBufPayload.create(
+                          new FileRegionByteBuf(null, shared.channel, position, length, shared)));
+                  return position + length;
+                }),
+        SharedFileChannel::release);
+  }
+
+  /** File channel shared by the payloads of a stream, closed once the last one is released. */
+  static final class SharedFileChannel extends AbstractReferenceCounted {
+
+    final FileChannel channel;
+    final long size;
+
+    SharedFileChannel(FileChannel channel) throws IOException {
+      this.channel = channel;
+      try {
+        this.size = channel.size();
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    @Override
+    public SharedFileChannel touch(Object hint) {
+      return this;
+    }
+
+    @Override
+    protected void deallocate() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignored, the file was only read
+      }
+    }
+  }
+}
@@ -18,9 +18,11 @@
 
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
+import java.util.List;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
 /** Wrapper/Proxy for a RSocket. This is useful when we want to override a specific method. */
 public class RSocketProxy implements RSocket {
@@ -35,6 +37,11 @@ public Mono<Void> fireAndForget(Payload payload) {
     return source.fireAndForget(payload);
   }
 
+  @Override
+  public Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+    return source.fireAndForgetMany(payloads);
+  }
+
   @Override
   public Mono<Payload> requestResponse(Payload payload) {
     return source.requestResponse(payload);
@@ -50,6 +57,16 @@ public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
     return source.requestChannel(payloads);
   }
 
+  @Override
+  public Flux<Tuple2<Long, Payload>> requestResponseBatch(List<Payload> payloads) {
+    return source.requestResponseBatch(payloads);
+  }
+
+  @Override
+  public Flux<Tuple2<Long, Payload>> requestResponseBatch(Publisher<Payload> payloads) {
+    return source.requestResponseBatch(payloads);
+  }
+
   @Override
   public Mono<Void> metadataPush(Payload payload) {
     return source.metadataPush(payload);
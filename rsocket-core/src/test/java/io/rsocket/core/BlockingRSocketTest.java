@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import io.rsocket.Payload;
+import io.rsocket.buffer.LeaksTrackingByteBufAllocator;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.DefaultPayload;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+public class BlockingRSocketTest {
+
+  @Test
+  public void requestResponseRunsOffTheCallingThreadAndReleasesPayload() {
+    AtomicReference<Thread> handlerThread = new AtomicReference<>();
+    BlockingRSocket rsocket =
+        BlockingRSocket.create()
+            .requestResponse(
+                p -> {
+                  handlerThread.set(Thread.currentThread());
+                  return DefaultPayload.create(p.getDataUtf8() + "-response");
+                });
+    Payload request = ByteBufPayload.create("request");
+
+    StepVerifier.create(rsocket.requestResponse(request))
+        .assertNext(p -> assertThat(p.getDataUtf8()).isEqualTo("request-response"))
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(handlerThread.get()).isNotNull().isNotSameAs(Thread.currentThread());
+    assertThat(request.refCnt()).isZero();
+  }
+
+  @Test
+  public void fireAndForgetPropagatesCheckedExceptions() {
+    BlockingRSocket rsocket =
+        BlockingRSocket.create()
+            .fireAndForget(
+                p -> {
+                  throw new IOException("boom");
+                });
+    Payload request = ByteBufPayload.create("request");
+
+    StepVerifier.create(rsocket.fireAndForget(request))
+        .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(IOException.class).hasMessage("boom"))
+        .verify(Duration.ofSeconds(5));
+    assertThat(request.refCnt()).isZero();
+  }
+
+  @Test
+  public void requestStreamFromIteratorHonorsDemand() {
+    BlockingRSocket rsocket =
+        BlockingRSocket.create()
+            .requestStream(
+                p ->
+                    Arrays.asList(
+                            DefaultPayload.create("a"),
+                            DefaultPayload.create("b"),
+                            DefaultPayload.create("c"))
+                        .iterator());
+
+    StepVerifier.create(rsocket.requestStream(DefaultPayload.create("request")), 2)
+        .expectNextCount(2)
+        .thenRequest(1)
+        .expectNextCount(1)
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  public void requestStreamFromSink() {
+    BlockingRSocket rsocket =
+        BlockingRSocket.create()
+            .requestStream(
+                (p, sink) -> {
+                  sink.next(DefaultPayload.create(p.getDataUtf8()));
+                  sink.complete();
+                });
+
+    StepVerifier.create(rsocket.requestStream(DefaultPayload.create("request")))
+        .assertNext(p -> assertThat(p.getDataUtf8()).isEqualTo("request"))
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  public void interactionsWithoutHandlerAreRejected() {
+    StepVerifier.create(BlockingRSocket.create().requestResponse(DefaultPayload.create("request")))
+        .expectError(UnsupportedOperationException.class)
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  public void releasesPayloadWhenCancelledBeforeHandlerRuns() throws InterruptedException {
+    LeaksTrackingByteBufAllocator allocator =
+        LeaksTrackingByteBufAllocator.instrument(ByteBufAllocator.DEFAULT);
+    Scheduler scheduler = Schedulers.newSingle("blocking-rsocket-test");
+    AtomicBoolean invoked = new AtomicBoolean();
+    BlockingRSocket rsocket =
+        BlockingRSocket.create()
+            .requestResponse(
+                p -> {
+                  invoked.set(true);
+                  return null;
+                })
+            .scheduler(scheduler);
+    try {
+      // occupy the only thread so the handler task stays queued
+      CountDownLatch blocked = new CountDownLatch(1);
+      scheduler.schedule(
+          () -> {
+            try {
+              blocked.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+
+      ByteBuf data = allocator.buffer();
+      data.writeCharSequence("request", CharsetUtil.UTF_8);
+      Payload request = ByteBufPayload.create(data);
+      rsocket.requestResponse(request).subscribe().dispose();
+      assertThat(request.refCnt()).isZero();
+
+      blocked.countDown();
+      CountDownLatch drained = new CountDownLatch(1);
+      scheduler.schedule(drained::countDown);
+      assertThat(drained.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(invoked).isFalse();
+      allocator.assertHasNoLeaks();
+    } finally {
+      scheduler.dispose();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.frame.FrameType;
+import io.rsocket.metadata.CompositeMetadataCodec;
+import io.rsocket.metadata.TaggingMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.DefaultPayload;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class BulkheadsTest {
+
+  final Bulkheads bulkheads =
+      Bulkheads.create()
+          .interaction(FrameType.REQUEST_RESPONSE, 1, 1)
+          .interaction(FrameType.REQUEST_STREAM, 2, 8)
+          .route("reports", 1, 1);
+
+  @AfterEach
+  public void tearDown() {
+    bulkheads.dispose();
+  }
+
+  @Test
+  public void selectsBulkheadByInteractionType() {
+    Payload payload = DefaultPayload.create("data");
+
+    assertThat(bulkheads.select(FrameType.REQUEST_RESPONSE, payload, null))
+        .isSameAs(bulkheads.interactions.get(FrameType.REQUEST_RESPONSE));
+    assertThat(bulkheads.select(FrameType.REQUEST_STREAM, payload, null))
+        .isSameAs(bulkheads.interactions.get(FrameType.REQUEST_STREAM));
+    assertThat(bulkheads.select(FrameType.REQUEST_FNF, payload, null)).isNull();
+  }
+
+  @Test
+  public void routeTakesPrecedenceOverInteractionType() {
+    CompositeByteBuf metadata = ByteBufAllocator.DEFAULT.compositeBuffer();
+    CompositeMetadataCodec.encodeAndAddMetadata(
+        metadata,
+        ByteBufAllocator.DEFAULT,
+        WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+        TaggingMetadataCodec.createRoutingMetadata(
+                ByteBufAllocator.DEFAULT, Collections.singletonList("reports"))
+            .getContent());
+    Payload payload = ByteBufPayload.create(Unpooled.EMPTY_BUFFER, metadata);
+
+    assertThat(bulkheads.select(FrameType.REQUEST_RESPONSE, payload, Bulkheads.COMPOSITE_METADATA))
+        .isSameAs(bulkheads.routes.get("reports"));
+    assertThat(bulkheads.select(FrameType.REQUEST_RESPONSE, payload, "application/json"))
+        .isSameAs(bulkheads.interactions.get(FrameType.REQUEST_RESPONSE));
+    payload.release();
+  }
+
+  @Test
+  public void selectsRouteFromRoutingMetadata() {
+    Payload payload =
+        ByteBufPayload.create(
+            Unpooled.EMPTY_BUFFER,
+            TaggingMetadataCodec.createRoutingMetadata(
+                    ByteBufAllocator.DEFAULT, Collections.singletonList("reports"))
+                .getContent());
+
+    assertThat(Bulkheads.route(payload, Bulkheads.ROUTING_METADATA)).isEqualTo("reports");
+    assertThat(bulkheads.select(FrameType.REQUEST_FNF, payload, Bulkheads.ROUTING_METADATA))
+        .isSameAs(bulkheads.routes.get("reports"));
+    payload.release();
+  }
+
+  @Test
+  public void invokesHandlerOnBulkheadThread() {
+    Bulkheads.Bulkhead bulkhead = bulkheads.interactions.get(FrameType.REQUEST_STREAM);
+
+    StepVerifier.create(
+            bulkhead.scheduleMany(
+                DefaultPayload.create("data"),
+                p -> Flux.just(Thread.currentThread().getName(), p.getDataUtf8())))
+        .assertNext(name -> assertThat(name).startsWith("rsocket-bulkhead-request_stream-"))
+        .expectNext("data")
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  public void rejectsRequestsWhenQueueIsFull() throws InterruptedException {
+    Bulkheads.Bulkhead bulkhead = bulkheads.interactions.get(FrameType.REQUEST_RESPONSE);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    AtomicInteger invocations = new AtomicInteger();
+
+    Mono<String> blocking =
+        bulkhead.schedule(
+            DefaultPayload.create("blocking"),
+            p -> {
+              invocations.incrementAndGet();
+              running.countDown();
+              try {
+                unblock.await();
+              } catch (InterruptedException e) {
+                return Mono.error(e);
+              }
+              return Mono.just(p.getDataUtf8());
+            });
+    Mono<String> queued =
+        bulkhead.schedule(
+            DefaultPayload.create("queued"),
+            p -> {
+              invocations.incrementAndGet();
+              return Mono.just(p.getDataUtf8());
+            });
+    Payload rejectedPayload = ByteBufPayload.create("rejected");
+    Mono<String> rejected =
+        bulkhead.schedule(
+            rejectedPayload,
+            p -> {
+              invocations.incrementAndGet();
+              return Mono.just(p.getDataUtf8());
+            });
+
+    StepVerifier blockingVerifier =
+        StepVerifier.create(blocking).expectNext("blocking").verifyLater();
+    assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+    StepVerifier queuedVerifier = StepVerifier.create(queued).expectNext("queued").verifyLater();
+
+    StepVerifier.create(rejected)
+        .expectErrorSatisfies(
+            e -> assertThat(e).isInstanceOf(RejectedException.class).hasMessageContaining("full"))
+        .verify(Duration.ofSeconds(5));
+    assertThat(rejectedPayload.refCnt()).isZero();
+
+    unblock.countDown();
+    blockingVerifier.verify(Duration.ofSeconds(5));
+    queuedVerifier.verify(Duration.ofSeconds(5));
+    assertThat(invocations).hasValue(2);
+  }
+
+  @Test
+  public void rejectsUnsupportedInteractionTypes() {
+    assertThatThrownBy(() -> Bulkheads.create().interaction(FrameType.REQUEST_CHANNEL, 1, 1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
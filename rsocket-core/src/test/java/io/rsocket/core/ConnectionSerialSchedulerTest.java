@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.StepVerifier;
+import reactor.test.util.RaceTestUtils;
+
+public class ConnectionSerialSchedulerTest {
+
+  final EventExecutor eventLoop = new DefaultEventExecutor();
+
+  @AfterEach
+  public void tearDown() {
+    eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void runsInlineWithoutEventLoop() {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(null);
+    AtomicReference<Thread> thread = new AtomicReference<>();
+
+    scheduler.schedule(() -> thread.set(Thread.currentThread()));
+
+    assertThat(thread.get()).isSameAs(Thread.currentThread());
+  }
+
+  @Test
+  public void trampolinesNestedTasks() {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(null);
+    StringBuilder order = new StringBuilder();
+
+    scheduler.schedule(
+        () -> {
+          scheduler.schedule(() -> order.append("2"));
+          order.append("1");
+        });
+
+    assertThat(order.toString()).isEqualTo("12");
+  }
+
+  @Test
+  public void hopsToEventLoopWhenCalledFromElsewhere() throws InterruptedException {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(eventLoop);
+    AtomicReference<Boolean> inEventLoop = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(1);
+
+    scheduler.schedule(
+        () -> {
+          inEventLoop.set(eventLoop.inEventLoop());
+          latch.countDown();
+        });
+
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(inEventLoop.get()).isTrue();
+  }
+
+  @Test
+  public void runsInlineWhenAlreadyOnEventLoop() throws Exception {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(eventLoop);
+
+    Boolean ranInline =
+        eventLoop
+            .submit(
+                () -> {
+                  AtomicReference<Boolean> ran = new AtomicReference<>(false);
+                  scheduler.schedule(() -> ran.set(true));
+                  return ran.get();
+                })
+            .get(5, TimeUnit.SECONDS);
+
+    assertThat(ranInline).isTrue();
+  }
+
+  @Test
+  public void neverRunsTasksConcurrently() {
+    for (int round = 0; round < 100; round++) {
+      ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(null);
+      AtomicInteger active = new AtomicInteger();
+      AtomicInteger overlaps = new AtomicInteger();
+      AtomicInteger executed = new AtomicInteger();
+      Runnable task =
+          () -> {
+            if (active.incrementAndGet() != 1) {
+              overlaps.incrementAndGet();
+            }
+            executed.incrementAndGet();
+            active.decrementAndGet();
+          };
+
+      RaceTestUtils.race(
+          () -> {
+            for (int i = 0; i < 1_000; i++) {
+              scheduler.schedule(task);
+            }
+          },
+          () -> {
+            for (int i = 0; i < 1_000; i++) {
+              scheduler.schedule(task);
+            }
+          });
+
+      assertThat(overlaps.get()).isZero();
+      assertThat(executed.get()).isEqualTo(2_000);
+    }
+  }
+
+  @Test
+  public void disposedWorkerSkipsPendingTasks() {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(null);
+    Scheduler.Worker worker = scheduler.createWorker();
+    AtomicInteger executed = new AtomicInteger();
+
+    scheduler.schedule(
+        () -> {
+          worker.schedule(executed::incrementAndGet);
+          worker.dispose();
+        });
+
+    assertThat(executed.get()).isZero();
+    assertThat(worker.isDisposed()).isTrue();
+  }
+
+  @Test
+  public void supportsSubscribeOn() {
+    ConnectionSerialScheduler scheduler = new ConnectionSerialScheduler(eventLoop);
+
+    StepVerifier.create(Mono.fromCallable(eventLoop::inEventLoop).subscribeOn(scheduler))
+        .expectNext(true)
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
+}
@@ -511,7 +511,8 @@ protected RSocketRequester newRSocket() {
           Integer.MAX_VALUE,
           null,
           RequesterLeaseHandler.None,
-          TestScheduler.INSTANCE);
+          TestScheduler.INSTANCE,
+          new ConnectionOptions());
     }
 
     public int getStreamIdForRequestType(FrameType expectedFrameType) {
@@ -78,7 +78,8 @@ static RSocketState requester(int tickPeriod, int timeout) {
             timeout,
             new DefaultKeepAliveHandler(connection),
             RequesterLeaseHandler.None,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
     return new RSocketState(rSocket, allocator, connection);
   }
 
@@ -105,7 +106,8 @@ static ResumableRSocketState resumableRequester(int tickPeriod, int timeout) {
             timeout,
             new ResumableKeepAliveHandler(resumableConnection),
             RequesterLeaseHandler.None,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
     return new ResumableRSocketState(rSocket, connection, resumableConnection, allocator);
   }
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.EmptyPayload;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+public class LeastPendingRSocketClientTest {
+
+  static final Mono<Payload> PAYLOAD_MONO = Mono.fromCallable(() -> EmptyPayload.INSTANCE);
+
+  final List<PendingRSocket> connections = new ArrayList<>();
+  final AtomicInteger connects = new AtomicInteger();
+
+  LeastPendingRSocketClient client(int size) {
+    return new LeastPendingRSocketClient(
+        () ->
+            Mono.fromCallable(
+                () -> {
+                  connects.incrementAndGet();
+                  PendingRSocket rsocket = new PendingRSocket();
+                  connections.add(rsocket);
+                  return rsocket;
+                }),
+        size);
+  }
+
+  @Test
+  public void spreadsRequestsOverConnections() {
+    LeastPendingRSocketClient client = client(3);
+    List<Disposable> requests = new ArrayList<>();
+
+    for (int i = 0; i < 6; i++) {
+      requests.add(client.requestResponse(PAYLOAD_MONO).subscribe());
+    }
+
+    assertThat(connects).hasValue(3);
+    assertThat(client.pendingRequests()).containsExactly(2, 2, 2);
+
+    requests.forEach(Disposable::dispose);
+    assertThat(client.pendingRequests()).containsExactly(0, 0, 0);
+  }
+
+  @Test
+  public void prefersConnectionWithFewestPendingRequests() {
+    LeastPendingRSocketClient client = client(2);
+    for (int i = 0; i < 4; i++) {
+      client.requestResponse(PAYLOAD_MONO).subscribe();
+    }
+    assertThat(client.pendingRequests()).containsExactly(2, 2);
+
+    connections.get(0).responses.forEach(r -> r.onNext(EmptyPayload.INSTANCE));
+    assertThat(client.pendingRequests()).containsExactly(0, 2);
+
+    client.requestResponse(PAYLOAD_MONO).subscribe();
+    client.requestResponse(PAYLOAD_MONO).subscribe();
+
+    assertThat(client.pendingRequests()).containsExactly(2, 2);
+    assertThat(connects).hasValue(2);
+  }
+
+  @Test
+  public void reconnectsLostConnectionIndependently() {
+    LeastPendingRSocketClient client = client(2);
+    client.requestResponse(PAYLOAD_MONO).subscribe();
+    client.requestResponse(PAYLOAD_MONO).subscribe();
+    assertThat(connects).hasValue(2);
+
+    connections.forEach(c -> c.responses.forEach(r -> r.onNext(EmptyPayload.INSTANCE)));
+    connections.get(0).dispose();
+
+    // the established connection is preferred, the lost one reconnects once it is needed
+    client.requestResponse(PAYLOAD_MONO).subscribe();
+    assertThat(connects).hasValue(2);
+    StepVerifier.create(client.requestResponse(PAYLOAD_MONO))
+        .then(() -> connections.get(2).responses.forEach(r -> r.onNext(EmptyPayload.INSTANCE)))
+        .expectNext(EmptyPayload.INSTANCE)
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(connects).hasValue(3);
+    assertThat(connections.get(1).isDisposed()).isFalse();
+    assertThat(connections.get(1).responses).hasSize(2);
+  }
+
+  @Test
+  public void releasesPendingRequestWhenRequestCannotBeCreated() {
+    LeastPendingRSocketClient client = client(2);
+
+    StepVerifier.create(
+            client.withLeastPending(
+                member -> {
+                  throw new IllegalStateException("boom");
+                }))
+        .expectErrorMessage("boom")
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(client.pendingRequests()).containsExactly(0, 0);
+  }
+
+    @Test
+  public void rejectsInvalidNumberOfConnections() {
+    assertThatThrownBy(() -> client(0))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("provided: 0");
+  }
+
+  static class PendingRSocket implements RSocket {
+    final MonoProcessor<Void> onClose = MonoProcessor.create();
+    final List<MonoProcessor<Payload>> responses = new ArrayList<>();
+
+    @Override
+    public Mono<Payload> requestResponse(Payload payload) {
+      MonoProcessor<Payload> response = MonoProcessor.create();
+      responses.add(response);
+      return response;
+    }
+
+    @Override
+    public void dispose() {
+      onClose.onComplete();
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return onClose.isTerminated();
+    }
+
+    @Override
+    public Mono<Void> onClose() {
+      return onClose;
+    }
+  }
+}
@@ -8,11 +8,13 @@
 import io.rsocket.ConnectionSetupPayload;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
+import io.rsocket.plugins.LimitRateInterceptor;
 import io.rsocket.test.util.TestClientTransport;
 import io.rsocket.util.ByteBufPayload;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Mono;
@@ -184,4 +186,34 @@ public void ensuresMaxFrameLengthCanNotBeGreaterThenMaxPossibleFrameLength() {
                 + FRAME_LENGTH_MASK)
         .verify();
   }
+
+  @Test
+  public void exposesConnectionMetricsOfInterceptedRequester() {
+    List<ConnectionMetrics> metrics = new CopyOnWriteArrayList<>();
+    TestClientTransport transport = new TestClientTransport();
+
+    RSocket rSocket =
+        RSocketConnector.create()
+            .maxConcurrentStreams(16)
+            .interceptors(registry -> registry.forRequester(LimitRateInterceptor.forRequester(64)))
+            .connectionMetrics(metrics::add)
+            .connect(transport)
+            .block();
+
+    Assertions.assertThat(rSocket).isNotInstanceOf(ConnectionMetrics.class);
+    Assertions.assertThat(metrics).hasSize(1);
+
+    ConnectionMetrics connectionMetrics = metrics.get(0);
+    Assertions.assertThat(connectionMetrics.isSendQueueWritable()).isTrue();
+    Assertions.assertThat(connectionMetrics.concurrentStreams()).isZero();
+    Assertions.assertThat(connectionMetrics.rejectedStreams()).isZero();
+
+    rSocket.dispose();
+
+    connectionMetrics
+        .onClose()
+        .as(StepVerifier::create)
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
 }
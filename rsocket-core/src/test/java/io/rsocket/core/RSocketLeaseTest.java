@@ -108,7 +108,8 @@ void setUp() {
             0,
             null,
             requesterLeaseHandler,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
 
     mockRSocketHandler = mock(RSocket.class);
     when(mockRSocketHandler.metadataPush(any()))
@@ -155,7 +156,8 @@ void setUp() {
             payloadDecoder,
             responderLeaseHandler,
             0,
-            FRAME_LENGTH_MASK);
+            FRAME_LENGTH_MASK,
+            new ConnectionOptions());
   }
 
   @Test
@@ -75,7 +75,8 @@ void setUp() {
             0,
             null,
             RequesterLeaseHandler.None,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
   }
 
   @ParameterizedTest
@@ -55,6 +55,8 @@
 import io.rsocket.frame.decoder.PayloadDecoder;
 import io.rsocket.internal.subscriber.AssertSubscriber;
 import io.rsocket.lease.RequesterLeaseHandler;
+import io.rsocket.metadata.DeadlineMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
 import io.rsocket.test.util.TestSubscriber;
 import io.rsocket.util.ByteBufPayload;
 import io.rsocket.util.DefaultPayload;
@@ -95,6 +97,7 @@
 import reactor.test.StepVerifier;
 import reactor.test.publisher.TestPublisher;
 import reactor.test.util.RaceTestUtils;
+import reactor.util.function.Tuple2;
 
 public class RSocketRequesterTest {
 
@@ -226,6 +229,138 @@ public void testRequestReplyWithCancel() {
     rule.assertHasNoLeaks();
   }
 
+  @Test
+  @Timeout(2_000)
+  public void testRequestReplyCancelBeforeRequestReleasesPayload() {
+    ByteBuf data = rule.alloc().buffer().writeBytes("data".getBytes(CharsetUtil.UTF_8));
+    Payload payload = ByteBufPayload.create(data);
+    AssertSubscriber<Payload> assertSubscriber = AssertSubscriber.create(0);
+
+    rule.socket.requestResponse(payload).subscribe(assertSubscriber);
+    assertSubscriber.cancel();
+
+    Assertions.assertThat(payload.refCnt()).isZero();
+    Assertions.assertThat(rule.connection.getSent()).isEmpty();
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void testRequestReplyAllowsOnlySingleSubscriber() {
+    Mono<Payload> response = rule.socket.requestResponse(EmptyPayload.INSTANCE);
+
+    response.subscribe();
+
+    StepVerifier.create(response)
+        .expectErrorMessage("RequestResponseMono allows only a single subscriber")
+        .verify(Duration.ofSeconds(1));
+
+    Assertions.assertThat(rule.connection.getSent()).hasSize(1).allMatch(ReferenceCounted::release);
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void testRequestResponseBatchTagsResponsesWithRequestIndex() {
+    List<Payload> payloads = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      payloads.add(ByteBufPayload.create("request" + i));
+    }
+
+    AssertSubscriber<Tuple2<Long, Payload>> assertSubscriber = AssertSubscriber.create();
+    rule.socket.requestResponseBatch(payloads).subscribe(assertSubscriber);
+
+    List<ByteBuf> sent = new ArrayList<>(rule.connection.getSent());
+    Assertions.assertThat(sent).hasSize(3).allMatch(f -> frameType(f) == REQUEST_RESPONSE);
+    Assertions.assertThat(payloads).allMatch(p -> p.refCnt() == 0);
+
+    // answer in reverse order
+    for (int i = 2; i >= 0; i--) {
+      int streamId = FrameHeaderCodec.streamId(sent.get(i));
+      rule.connection.addToReceivedBuffer(
+          PayloadFrameCodec.encodeNextReleasingPayload(
+              rule.alloc(), streamId, ByteBufPayload.create("response" + i)));
+    }
+
+    assertSubscriber.assertTerminated().assertNoError();
+    Assertions.assertThat(assertSubscriber.values())
+        .extracting(Tuple2::getT1)
+        .containsExactly(2L, 1L, 0L);
+    Assertions.assertThat(assertSubscriber.values())
+        .allMatch(t -> t.getT2().getDataUtf8().equals("response" + t.getT1()))
+        .allMatch(t -> t.getT2().release());
+    Assertions.assertThat(sent).allMatch(ReferenceCounted::release);
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void testRequestResponseBatchCancelsOutstandingRequests() {
+    List<Payload> payloads = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      payloads.add(ByteBufPayload.create("request" + i));
+    }
+
+    AssertSubscriber<Tuple2<Long, Payload>> assertSubscriber = AssertSubscriber.create();
+    rule.socket.requestResponseBatch(payloads).subscribe(assertSubscriber);
+
+    int firstStreamId = rule.getStreamIdForRequestType(REQUEST_RESPONSE);
+    rule.connection.addToReceivedBuffer(
+        PayloadFrameCodec.encodeNextReleasingPayload(
+            rule.alloc(), firstStreamId, EmptyPayload.INSTANCE));
+    assertSubscriber.assertValueCount(1).cancel();
+
+    List<ByteBuf> sent = new ArrayList<>(rule.connection.getSent());
+    Assertions.assertThat(sent)
+        .extracting(FrameHeaderCodec::frameType)
+        .containsExactly(REQUEST_RESPONSE, REQUEST_RESPONSE, REQUEST_RESPONSE, CANCEL, CANCEL);
+    Assertions.assertThat(sent.subList(3, 5))
+        .extracting(FrameHeaderCodec::streamId)
+        .doesNotContain(firstStreamId);
+    Assertions.assertThat(sent).allMatch(ReferenceCounted::release);
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void testFireAndForgetManySendsAllPayloadsInOrder() {
+    Flux<Payload> payloads = Flux.range(0, 1000).map(i -> ByteBufPayload.create("fnf" + i));
+
+    StepVerifier.create(rule.socket.fireAndForgetMany(payloads))
+        .expectComplete()
+        .verify(Duration.ofSeconds(1));
+
+    List<ByteBuf> sent = new ArrayList<>(rule.connection.getSent());
+    Assertions.assertThat(sent).hasSize(1000).allMatch(f -> frameType(f) == REQUEST_FNF);
+    for (int i = 0; i < sent.size(); i++) {
+      ByteBuf data = RequestFireAndForgetFrameCodec.data(sent.get(i));
+      Assertions.assertThat(data.toString(CharsetUtil.UTF_8)).isEqualTo("fnf" + i);
+    }
+    Assertions.assertThat(sent).allMatch(ReferenceCounted::release);
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void testFireAndForgetManyFailsOnInvalidPayload() {
+    TestPublisher<Payload> publisher = TestPublisher.createCold();
+    Payload valid = ByteBufPayload.create("valid");
+    Payload released = ByteBufPayload.create("released");
+    released.release();
+
+    StepVerifier.create(rule.socket.fireAndForgetMany(publisher))
+        .then(() -> publisher.next(valid, released))
+        .expectError(IllegalReferenceCountException.class)
+        .verify(Duration.ofSeconds(1));
+
+    publisher.assertCancelled();
+    Assertions.assertThat(rule.connection.getSent())
+        .hasSize(1)
+        .allMatch(f -> frameType(f) == REQUEST_FNF)
+        .allMatch(ReferenceCounted::release);
+    rule.assertHasNoLeaks();
+  }
+
   @Test
   @Disabled("invalid")
   @Timeout(2_000)
@@ -1108,7 +1243,59 @@ public void testWorkaround858() {
     rule.assertHasNoLeaks();
   }
 
+  @Test
+  public void attachesDeadlineFromContextToRequest() {
+    rule.setMetadataMimeType(WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString());
+
+    rule.socket
+        .requestResponse(EmptyPayload.INSTANCE)
+        .subscriberContext(RequestDeadline.of(Duration.ofSeconds(10)))
+        .subscribe();
+
+    Assertions.assertThat(rule.connection.getSent()).hasSize(1);
+    ByteBuf request = rule.connection.getSent().iterator().next();
+    Assertions.assertThat(frameType(request)).isEqualTo(REQUEST_RESPONSE);
+    Assertions.assertThat(
+            DeadlineMetadataCodec.findDeadline(RequestResponseFrameCodec.metadata(request)))
+        .isBetween(9_000L, 10_000L);
+    request.release();
+
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  public void rejectsRequestThatDoesNotFitIntoFrameWithDeadline() {
+    rule.setMaxFrameLength(64);
+    rule.setMetadataMimeType(WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString());
+
+    // fits into a frame on its own but not once the deadline is added to its metadata
+    ByteBuf data = rule.alloc().buffer();
+    data.writeZero(50);
+
+    StepVerifier.create(
+            rule.socket
+                .requestResponse(ByteBufPayload.create(data))
+                .subscriberContext(RequestDeadline.of(Duration.ofSeconds(10))))
+        .expectErrorSatisfies(
+            t ->
+                Assertions.assertThat(t)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage(INVALID_PAYLOAD_ERROR_MESSAGE))
+        .verify();
+
+    Assertions.assertThat(rule.connection.getSent()).isEmpty();
+    rule.assertHasNoLeaks();
+  }
+
   public static class ClientSocketRule extends AbstractSocketRule<RSocketRequester> {
+
+    private String metadataMimeType;
+
+    public void setMetadataMimeType(String metadataMimeType) {
+      this.metadataMimeType = metadataMimeType;
+      init();
+    }
+
     @Override
     protected RSocketRequester newRSocket() {
       return new RSocketRequester(
@@ -1121,7 +1308,8 @@ protected RSocketRequester newRSocket() {
           Integer.MAX_VALUE,
           null,
           RequesterLeaseHandler.None,
-          TestScheduler.INSTANCE);
+          TestScheduler.INSTANCE,
+          new ConnectionOptions().metadataMimeType(metadataMimeType));
     }
 
     public int getStreamIdForRequestType(FrameType expectedFrameType) {
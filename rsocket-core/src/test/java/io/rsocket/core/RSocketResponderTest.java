@@ -33,6 +33,7 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.CharsetUtil;
 import io.netty.util.ReferenceCountUtil;
@@ -51,8 +52,11 @@
 import io.rsocket.frame.RequestResponseFrameCodec;
 import io.rsocket.frame.RequestStreamFrameCodec;
 import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.internal.ConcurrentStreamLimiter;
 import io.rsocket.internal.subscriber.AssertSubscriber;
 import io.rsocket.lease.ResponderLeaseHandler;
+import io.rsocket.metadata.DeadlineMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
 import io.rsocket.test.util.TestDuplexConnection;
 import io.rsocket.test.util.TestSubscriber;
 import io.rsocket.util.ByteBufPayload;
@@ -60,8 +64,11 @@
 import io.rsocket.util.EmptyPayload;
 import java.util.Collection;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
@@ -74,6 +81,8 @@
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.junit.runners.model.Statement;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
@@ -818,10 +827,134 @@ public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
     rule.assertHasNoLeaks();
   }
 
+  @Test
+  @Timeout(2_000)
+  public void cancelsHandlerAndSendsCanceledErrorOnceDeadlinePasses() throws Exception {
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    rule.setAcceptingSocket(
+        new RSocket() {
+          @Override
+          public Mono<Payload> requestResponse(Payload payload) {
+            payload.release();
+            return Mono.<Payload>never().doOnCancel(cancelled::countDown);
+          }
+        },
+        WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString(),
+        Integer.MAX_VALUE);
+
+    rule.sendRequest(1, REQUEST_RESPONSE, deadlinePayload(50));
+
+    ByteBuf error = rule.connection.awaitSend();
+    Assertions.assertThat(frameType(error)).isEqualTo(ERROR);
+    Assertions.assertThat(FrameHeaderCodec.streamId(error)).isEqualTo(1);
+    Assertions.assertThat(ErrorFrameCodec.errorCode(error)).isEqualTo(ErrorFrameCodec.CANCELED);
+    Assertions.assertThat(cancelled.await(1, TimeUnit.SECONDS)).isTrue();
+    error.release();
+
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  public void releasesStreamSlotOfRequestWithBadMetadataLength() {
+    ConcurrentStreamLimiter server = new ConcurrentStreamLimiter(Integer.MAX_VALUE, null);
+    ConcurrentStreamLimiter limiter = new ConcurrentStreamLimiter(1, server);
+    rule.setStreamLimiter(limiter);
+
+    ByteBuf request =
+        RequestResponseFrameCodec.encodeReleasingPayload(
+            rule.alloc(), 1, ByteBufPayload.create("data", "metadata"));
+    // the metadata length exceeds the frame
+    request.setMedium(request.readerIndex() + FrameHeaderCodec.size(), 0xFFFFFF);
+    rule.connection.addToReceivedBuffer(request);
+
+    Assertions.assertThat(limiter.activeStreams()).isZero();
+    Assertions.assertThat(server.activeStreams()).isZero();
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void dropsFramesQueuedForStreamOnceDeadlinePasses() throws Exception {
+    final TestPublisher<Payload> testPublisher = TestPublisher.create();
+    rule.setAcceptingSocket(
+        new RSocket() {
+          @Override
+          public Flux<Payload> requestStream(Payload payload) {
+            payload.release();
+            return testPublisher.flux();
+          }
+        },
+        WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString(),
+        0);
+
+    rule.sendRequest(1, REQUEST_STREAM, deadlinePayload(50));
+    // the connection has not requested any frames yet, so these stay in the send queue
+    testPublisher.next(ByteBufPayload.create("a"), ByteBufPayload.create("b"));
+
+    while (!testPublisher.wasCancelled()) {
+      Thread.sleep(10);
+    }
+
+    Subscriber<ByteBuf> sendSubscriber = rule.connection.getSendSubscribers().iterator().next();
+    ArgumentCaptor<Subscription> subscription = ArgumentCaptor.forClass(Subscription.class);
+    Mockito.verify(sendSubscriber).onSubscribe(subscription.capture());
+    subscription.getValue().request(Long.MAX_VALUE);
+
+    ByteBuf error = rule.connection.awaitSend();
+    Assertions.assertThat(frameType(error)).isEqualTo(ERROR);
+    Assertions.assertThat(FrameHeaderCodec.streamId(error)).isEqualTo(1);
+    Assertions.assertThat(ErrorFrameCodec.errorCode(error)).isEqualTo(ErrorFrameCodec.CANCELED);
+    Assertions.assertThat(rule.connection.getSent()).isEmpty();
+    error.release();
+
+    rule.assertHasNoLeaks();
+  }
+
+  @Test
+  @Timeout(2_000)
+  public void dropsFramesEmittedAfterCancellationOnceDeadlinePasses() {
+    final AtomicReference<Subscriber<? super Payload>> handler = new AtomicReference<>();
+    rule.setAcceptingSocket(
+        new RSocket() {
+          @Override
+          public Flux<Payload> requestStream(Payload payload) {
+            payload.release();
+            // ignores cancellation, like a handler still emitting on another thread
+            return Flux.from(
+                s -> {
+                  s.onSubscribe(Operators.emptySubscription());
+                  handler.set(s);
+                });
+          }
+        },
+        WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString(),
+        Integer.MAX_VALUE);
+
+    rule.sendRequest(1, REQUEST_STREAM, deadlinePayload(50));
+
+    ByteBuf error = rule.connection.awaitSend();
+    Assertions.assertThat(frameType(error)).isEqualTo(ERROR);
+    Assertions.assertThat(ErrorFrameCodec.errorCode(error)).isEqualTo(ErrorFrameCodec.CANCELED);
+    error.release();
+
+    handler.get().onNext(ByteBufPayload.create("late"));
+
+    Assertions.assertThat(rule.connection.getSent()).isEmpty();
+    rule.assertHasNoLeaks();
+  }
+
+  private Payload deadlinePayload(long remainingMillis) {
+    CompositeByteBuf metadata = rule.alloc().compositeBuffer();
+    DeadlineMetadataCodec.encodeAndAddDeadline(metadata, rule.alloc(), remainingMillis);
+    return ByteBufPayload.create(Unpooled.EMPTY_BUFFER, metadata);
+  }
+
   public static class ServerSocketRule extends AbstractSocketRule<RSocketResponder> {
 
     private RSocket acceptingSocket;
     private volatile int prefetch;
+    private String metadataMimeType;
+    private ConcurrentStreamLimiter streamLimiter;
 
     @Override
     protected void init() {
@@ -851,6 +984,25 @@ public void setAcceptingSocket(RSocket acceptingSocket, int prefetch) {
       super.init();
     }
 
+    public void setAcceptingSocket(
+        RSocket acceptingSocket, String metadataMimeType, int initialSendRequestN) {
+      this.acceptingSocket = acceptingSocket;
+      this.metadataMimeType = metadataMimeType;
+      connection = new TestDuplexConnection(alloc());
+      connection.setInitialSendRequestN(initialSendRequestN);
+      connectSub = TestSubscriber.create();
+      this.prefetch = Integer.MAX_VALUE;
+      super.init();
+    }
+
+    public void setStreamLimiter(ConcurrentStreamLimiter streamLimiter) {
+      this.streamLimiter = streamLimiter;
+      connection = new TestDuplexConnection(alloc());
+      connectSub = TestSubscriber.create();
+      this.prefetch = Integer.MAX_VALUE;
+      super.init();
+    }
+
     @Override
     protected RSocketResponder newRSocket() {
       return new RSocketResponder(
@@ -859,7 +1011,10 @@ protected RSocketResponder newRSocket() {
           PayloadDecoder.ZERO_COPY,
           ResponderLeaseHandler.None,
           0,
-          maxFrameLength);
+          maxFrameLength,
+          new ConnectionOptions()
+              .metadataMimeType(metadataMimeType)
+              .streamLimiter(streamLimiter));
     }
 
     private void sendRequest(int streamId, FrameType frameType) {
@@ -2,7 +2,16 @@
 
 import static io.rsocket.frame.FrameLengthCodec.FRAME_LENGTH_MASK;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.frame.SetupFrameCodec;
+import io.rsocket.plugins.LimitRateInterceptor;
+import io.rsocket.test.util.TestDuplexConnection;
 import io.rsocket.test.util.TestServerTransport;
+import io.rsocket.util.EmptyPayload;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import reactor.test.StepVerifier;
 
@@ -42,4 +51,41 @@ public void ensuresMaxFrameLengthCanNotBeGreaterThenMaxPossibleFrameLength() {
                 + FRAME_LENGTH_MASK)
         .verify();
   }
+
+  @Test
+  public void exposesConnectionMetricsOfInterceptedRequester() {
+    List<ConnectionMetrics> metrics = new CopyOnWriteArrayList<>();
+    TestServerTransport transport = new TestServerTransport();
+    RSocketServer.create()
+        .maxConcurrentStreams(16, 64)
+        .interceptors(registry -> registry.forRequester(LimitRateInterceptor.forRequester(64)))
+        .connectionMetrics(metrics::add)
+        .bind(transport)
+        .block();
+
+    TestDuplexConnection connection = transport.connect();
+    connection.addToReceivedBuffer(
+        SetupFrameCodec.encode(
+            ByteBufAllocator.DEFAULT,
+            false,
+            1000,
+            30_000,
+            "application/octet-stream",
+            "application/octet-stream",
+            EmptyPayload.INSTANCE));
+
+    Assertions.assertThat(metrics).hasSize(1);
+
+    ConnectionMetrics connectionMetrics = metrics.get(0);
+    Assertions.assertThat(connectionMetrics.isSendQueueWritable()).isTrue();
+    Assertions.assertThat(connectionMetrics.concurrentStreams()).isZero();
+
+    connection.dispose();
+
+    connectionMetrics
+        .onClose()
+        .as(StepVerifier::create)
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+  }
 }
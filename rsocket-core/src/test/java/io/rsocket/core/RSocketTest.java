@@ -569,7 +569,8 @@ public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
               PayloadDecoder.DEFAULT,
               ResponderLeaseHandler.None,
               0,
-              FRAME_LENGTH_MASK);
+              FRAME_LENGTH_MASK,
+              new ConnectionOptions());
 
       crs =
           new RSocketRequester(
@@ -582,7 +583,8 @@ public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
               0,
               null,
               RequesterLeaseHandler.None,
-              TestScheduler.INSTANCE);
+              TestScheduler.INSTANCE,
+              new ConnectionOptions());
     }
 
     public void setRequestAcceptor(RSocket requestAcceptor) {
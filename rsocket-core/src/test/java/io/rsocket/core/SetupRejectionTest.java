@@ -63,7 +63,8 @@ void requesterStreamsTerminatedOnZeroErrorFrame() {
             0,
             null,
             RequesterLeaseHandler.None,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
 
     String errorMsg = "error";
 
@@ -100,7 +101,8 @@ void requesterNewStreamsTerminatedAfterZeroErrorFrame() {
             0,
             null,
             RequesterLeaseHandler.None,
-            TestScheduler.INSTANCE);
+            TestScheduler.INSTANCE,
+            new ConnectionOptions());
 
     conn.addToReceivedBuffer(
         ErrorFrameCodec.encode(ByteBufAllocator.DEFAULT, 0, new RejectedSetupException("error")));
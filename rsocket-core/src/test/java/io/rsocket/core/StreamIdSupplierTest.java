@@ -20,42 +20,37 @@
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import io.netty.util.collection.IntObjectMap;
-import io.rsocket.internal.SynchronizedIntObjectHashMap;
 import org.junit.Test;
 
 public class StreamIdSupplierTest {
   @Test
   public void testClientSequence() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
     StreamIdSupplier s = StreamIdSupplier.clientSupplier();
-    assertEquals(1, s.nextStreamId(map));
-    assertEquals(3, s.nextStreamId(map));
-    assertEquals(5, s.nextStreamId(map));
+    assertEquals(1, s.nextStreamId());
+    assertEquals(3, s.nextStreamId());
+    assertEquals(5, s.nextStreamId());
   }
 
   @Test
   public void testServerSequence() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
     StreamIdSupplier s = StreamIdSupplier.serverSupplier();
-    assertEquals(2, s.nextStreamId(map));
-    assertEquals(4, s.nextStreamId(map));
-    assertEquals(6, s.nextStreamId(map));
+    assertEquals(2, s.nextStreamId());
+    assertEquals(4, s.nextStreamId());
+    assertEquals(6, s.nextStreamId());
   }
 
   @Test
   public void testClientIsValid() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
     StreamIdSupplier s = StreamIdSupplier.clientSupplier();
 
     assertFalse(s.isBeforeOrCurrent(1));
     assertFalse(s.isBeforeOrCurrent(3));
 
-    s.nextStreamId(map);
+    s.nextStreamId();
     assertTrue(s.isBeforeOrCurrent(1));
     assertFalse(s.isBeforeOrCurrent(3));
 
-    s.nextStreamId(map);
+    s.nextStreamId();
     assertTrue(s.isBeforeOrCurrent(3));
 
     // negative
@@ -68,17 +63,16 @@ public void testClientIsValid() {
 
   @Test
   public void testServerIsValid() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
     StreamIdSupplier s = StreamIdSupplier.serverSupplier();
 
     assertFalse(s.isBeforeOrCurrent(2));
     assertFalse(s.isBeforeOrCurrent(4));
 
-    s.nextStreamId(map);
+    s.nextStreamId();
     assertTrue(s.isBeforeOrCurrent(2));
     assertFalse(s.isBeforeOrCurrent(4));
 
-    s.nextStreamId(map);
+    s.nextStreamId();
     assertTrue(s.isBeforeOrCurrent(4));
 
     // negative
@@ -91,29 +85,93 @@ public void testServerIsValid() {
 
   @Test
   public void testWrap() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
     StreamIdSupplier s = new StreamIdSupplier(Integer.MAX_VALUE - 3);
 
-    assertEquals(2147483646, s.nextStreamId(map));
-    assertEquals(2, s.nextStreamId(map));
-    assertEquals(4, s.nextStreamId(map));
+    assertEquals(2147483646, s.nextStreamId());
+    assertEquals(2, s.nextStreamId());
+    assertEquals(4, s.nextStreamId());
 
     s = new StreamIdSupplier(Integer.MAX_VALUE - 2);
 
-    assertEquals(2147483647, s.nextStreamId(map));
-    assertEquals(1, s.nextStreamId(map));
-    assertEquals(3, s.nextStreamId(map));
+    assertEquals(2147483647, s.nextStreamId());
+    assertEquals(1, s.nextStreamId());
+    assertEquals(3, s.nextStreamId());
   }
 
   @Test
-  public void testSkipFound() {
-    IntObjectMap<Object> map = new SynchronizedIntObjectHashMap<>();
-    map.put(5, new Object());
-    map.put(9, new Object());
+  public void testSkipInUse() {
     StreamIdSupplier s = StreamIdSupplier.clientSupplier();
-    assertEquals(1, s.nextStreamId(map));
-    assertEquals(3, s.nextStreamId(map));
-    assertEquals(7, s.nextStreamId(map));
-    assertEquals(11, s.nextStreamId(map));
+    for (int i = 0; i < 6; i++) {
+      s.nextStreamId();
+    }
+    s.release(1);
+    s.release(3);
+    s.release(7);
+    s.release(11);
+
+    // wrap around right before stream 1
+    s.moveTo((1L << 31) - 1);
+
+    assertEquals(1, s.nextStreamId());
+    assertEquals(3, s.nextStreamId());
+    assertEquals(7, s.nextStreamId());
+    assertEquals(11, s.nextStreamId());
+    assertEquals(13, s.nextStreamId());
+  }
+
+  @Test
+  public void testRelease() {
+    StreamIdSupplier s = StreamIdSupplier.serverSupplier();
+    int streamId = s.nextStreamId();
+    assertTrue(s.isInUse(streamId));
+
+    s.release(streamId);
+    assertFalse(s.isInUse(streamId));
+
+    // releasing twice or releasing unknown streams is a noop
+    s.release(streamId);
+    s.release(1_000_000);
+    assertFalse(s.isInUse(streamId));
+    assertFalse(s.isInUse(1_000_000));
+  }
+
+  @Test
+  public void testSkipManyInUseAcrossWrap() {
+    StreamIdSupplier s = new StreamIdSupplier(Integer.MAX_VALUE - 2 * 50_000);
+    for (int i = 0; i < 100_000; i++) {
+      s.nextStreamId();
+    }
+    // 50,000 streams before the wrap and 50,000 after are running
+    assertTrue(s.isInUse(Integer.MAX_VALUE));
+    assertTrue(s.isInUse(99_999));
+    assertFalse(s.isInUse(100_001));
+
+    s.moveTo(Integer.MAX_VALUE - 2 * 50_000 + (1L << 31));
+    assertEquals(100_001, s.nextStreamId());
+
+    s.release(Integer.MAX_VALUE - 2);
+    s.moveTo(Integer.MAX_VALUE - 2 * 50_000 + (1L << 32));
+    assertEquals(Integer.MAX_VALUE - 2, s.nextStreamId());
+  }
+
+  @Test
+  public void testReturnToRetainedPages() {
+    StreamIdSupplier s = StreamIdSupplier.clientSupplier();
+    // 4 pages of 4096 ids, the first 3 are retained once the cursor has moved past them
+    for (int i = 0; i < 4 * 4096; i++) {
+      s.nextStreamId();
+    }
+
+    s.release(8193);
+    s.release(1);
+
+    // the second page is in the middle of the retained pages
+    s.moveTo(8191);
+    assertEquals(8193, s.nextStreamId());
+    assertEquals(32769, s.nextStreamId());
+
+    s.moveTo(-1);
+    assertEquals(1, s.nextStreamId());
+    assertEquals(32771, s.nextStreamId());
   }
 }
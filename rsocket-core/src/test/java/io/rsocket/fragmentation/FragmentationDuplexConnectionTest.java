@@ -78,6 +78,14 @@ void constructorMtuLessThanMin() {
         .withMessage("The smallest allowed mtu size is 64 bytes, provided: 2");
   }
 
+  @DisplayName("options throw IllegalArgumentException with negative maxFragmentBurst")
+  @Test
+  void optionsNegativeFragmentBurst() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new FragmentationOptions().maxFragmentBurst(-1))
+        .withMessage("The fragment burst must be greater than 0, provided: -1");
+  }
+
   @DisplayName("constructor throws NullPointerException with null delegate")
   @Test
   void constructorNullDelegate() {
@@ -109,4 +117,28 @@ void sendData() {
             })
         .verifyComplete();
   }
+
+  @DisplayName("fragments all frames within a single send of the delegate")
+  @Test
+  void sendFrames() {
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(
+            allocator, 1, false, Unpooled.EMPTY_BUFFER, Unpooled.wrappedBuffer(data));
+    ByteBuf small = RequestNFrameCodec.encode(allocator, 3, 5);
+
+    when(delegate.alloc()).thenReturn(allocator);
+
+    new FragmentationDuplexConnection(delegate, 64, Integer.MAX_VALUE, "")
+        .send(Flux.just(large, small));
+
+    verify(delegate).send(publishers.capture());
+    verify(delegate, never()).sendOne(any());
+
+    StepVerifier.create(Flux.from(publishers.getValue()))
+        .expectNextCount(18)
+        .assertNext(
+            byteBuf ->
+                Assert.assertEquals(FrameType.REQUEST_N, FrameHeaderCodec.frameType(byteBuf)))
+        .verifyComplete();
+  }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.frame.RequestNFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.internal.UnboundedProcessor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.test.StepVerifier;
+import reactor.test.util.RaceTestUtils;
+
+final class FragmentingFluxTest {
+  private static byte[] data = new byte[4096];
+
+  static {
+    ThreadLocalRandom.current().nextBytes(data);
+  }
+
+  private final ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+
+  @DisplayName("fragments large frames in place and passes others through")
+  @Test
+  void fragmentsLargeFramesInPlace() {
+    ByteBuf requestN = RequestNFrameCodec.encode(allocator, 3, 5);
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+    ByteBuf small = next(5);
+
+    StepVerifier.create(
+            new FragmentingFlux(
+                Flux.just(requestN, large, small), allocator, 1024, Integer.MAX_VALUE, null))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.REQUEST_N, false))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, false))
+        .assertNext(frame -> assertFrame(frame, 5, FrameType.NEXT_COMPLETE, false))
+        .verifyComplete();
+
+    assertThat(large.refCnt()).isZero();
+  }
+
+  @DisplayName("generates fragments on demand and releases the frame on cancel")
+  @Test
+  void generatesFragmentsOnDemand() {
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+    UnboundedProcessor<ByteBuf> frames = new UnboundedProcessor<>();
+    frames.onNext(large);
+
+    StepVerifier.create(new FragmentingFlux(frames, allocator, 1024, Integer.MAX_VALUE, null), 0)
+        .expectSubscription()
+        .then(() -> assertThat(large.refCnt()).isOne())
+        .thenRequest(2)
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .then(() -> assertThat(large.refCnt()).isOne())
+        .thenCancel()
+        .verify();
+
+    assertThat(large.refCnt()).isZero();
+  }
+
+  @DisplayName("interleaves fragments with frames of other streams")
+  @Test
+  void interleavesFragmentsWithFramesOfOtherStreams() {
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+
+    StepVerifier.create(
+            new FragmentingFlux(
+                Flux.just(large, next(3), next(5), next(7)), allocator, 1024, 2, null))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT_COMPLETE, false))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 5, FrameType.NEXT_COMPLETE, false))
+        .assertNext(frame -> assertFrame(frame, 7, FrameType.NEXT_COMPLETE, false))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, false))
+        .verifyComplete();
+
+    assertThat(large.refCnt()).isZero();
+  }
+
+  @DisplayName("keeps frames of a fragmented stream behind its last fragment")
+  @Test
+  void keepsFramesOfFragmentedStreamInOrder() {
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+
+    StepVerifier.create(
+            new FragmentingFlux(Flux.just(large, next(1), next(3)), allocator, 1024, 1, null))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT_COMPLETE, false))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, false))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT_COMPLETE, false))
+        .verifyComplete();
+  }
+
+  @DisplayName("fragments frames of different streams in turns")
+  @Test
+  void fragmentsFramesOfDifferentStreamsInTurns() {
+    ByteBuf first =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+    ByteBuf second =
+        RequestResponseFrameCodec.encode(allocator, 3, false, null, Unpooled.wrappedBuffer(data));
+
+    StepVerifier.create(new FragmentingFlux(Flux.just(first, second), allocator, 1024, 1, null))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.REQUEST_RESPONSE, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT, true))
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.NEXT, false))
+        .assertNext(frame -> assertFrame(frame, 3, FrameType.NEXT, false))
+        .verifyComplete();
+  }
+
+  @DisplayName("releases parked frames on cancel")
+  @Test
+  void releasesParkedFramesOnCancel() {
+    ByteBuf large =
+        RequestResponseFrameCodec.encode(allocator, 1, false, null, Unpooled.wrappedBuffer(data));
+    ByteBuf follower = next(1);
+
+    StepVerifier.create(
+            new FragmentingFlux(Flux.just(large, follower), allocator, 1024, 1, null), 1)
+        .assertNext(frame -> assertFrame(frame, 1, FrameType.REQUEST_RESPONSE, true))
+        .thenCancel()
+        .verify();
+
+    assertThat(large.refCnt()).isZero();
+    assertThat(follower.refCnt()).isZero();
+  }
+
+  @DisplayName("releases frames that race with cancel")
+  @Test
+  void releasesFramesRacingWithCancel() {
+    for (int i = 0; i < 10000; i++) {
+      AtomicReference<Subscriber<? super ByteBuf>> source = new AtomicReference<>();
+      BaseSubscriber<ByteBuf> subscriber =
+          new BaseSubscriber<ByteBuf>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+              // no demand, so that frames are queued
+            }
+          };
+      // not fuseable, so that frames are queued by the fragmenting subscriber itself
+      Flux<ByteBuf> frames =
+          Flux.from(
+              s -> {
+                source.set(s);
+                s.onSubscribe(Operators.emptySubscription());
+              });
+      new FragmentingFlux(frames, allocator, 1024, Integer.MAX_VALUE, null).subscribe(subscriber);
+      ByteBuf frame = next(1);
+
+      RaceTestUtils.race(() -> source.get().onNext(frame), subscriber::cancel);
+
+      assertThat(frame.refCnt()).isZero();
+    }
+  }
+
+  private ByteBuf next(int streamId) {
+    return PayloadFrameCodec.encode(
+        allocator, streamId, false, true, true, null, Unpooled.wrappedBuffer(new byte[16]));
+  }
+
+  private static void assertFrame(ByteBuf frame, int streamId, FrameType type, boolean follows) {
+    try {
+      assertThat(FrameHeaderCodec.streamId(frame)).isEqualTo(streamId);
+      assertThat(FrameHeaderCodec.frameType(frame)).isEqualTo(type);
+      assertThat(FrameHeaderCodec.hasFollows(frame)).isEqualTo(follows);
+      assertThat(frame.readableBytes()).isLessThanOrEqualTo(1024);
+    } finally {
+      frame.release();
+    }
+  }
+}
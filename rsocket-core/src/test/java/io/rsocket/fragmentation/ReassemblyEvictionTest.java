@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.DuplexConnection;
+import io.rsocket.buffer.LeaksTrackingByteBufAllocator;
+import io.rsocket.frame.ErrorFrameCodec;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.internal.ReassemblyBudget;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+final class ReassemblyEvictionTest {
+  private static byte[] data = new byte[1024];
+
+  static {
+    ThreadLocalRandom.current().nextBytes(data);
+  }
+
+  private final DuplexConnection delegate = mock(DuplexConnection.class, RETURNS_SMART_NULLS);
+  private final MonoProcessor<Void> onClose = MonoProcessor.create();
+  private final List<ByteBuf> sent = new ArrayList<>();
+
+  private final LeaksTrackingByteBufAllocator allocator =
+      LeaksTrackingByteBufAllocator.instrument(ByteBufAllocator.DEFAULT);
+
+  @DisplayName("rejects the oldest partial request once the budget is exhausted")
+  @Test
+  void evictsOldestRequest() {
+    ReassemblyBudget budget = new ReassemblyBudget(1536, null);
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(allocator, 1, true, null, dataBuffer()),
+                RequestResponseFrameCodec.encode(allocator, 3, true, null, dataBuffer()),
+                next(1, false),
+                next(3, false)),
+            budget);
+
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              assertThat(FrameHeaderCodec.streamId(frame)).isEqualTo(3);
+              assertThat(RequestResponseFrameCodec.data(frame).readableBytes())
+                  .isEqualTo(data.length * 2);
+              frame.release();
+            })
+        .verifyComplete();
+
+    assertThat(sent).hasSize(1);
+    ByteBuf error = sent.get(0);
+    assertThat(FrameHeaderCodec.frameType(error)).isEqualTo(FrameType.ERROR);
+    assertThat(FrameHeaderCodec.streamId(error)).isEqualTo(1);
+    assertThat(ErrorFrameCodec.errorCode(error)).isEqualTo(ErrorFrameCodec.REJECTED);
+
+    assertThat(budget.heldBytes()).isZero();
+    assertThat(budget.evictions()).isEqualTo(1);
+
+    sent.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("cancels the oldest partial response and terminates it locally")
+  @Test
+  void evictsOldestResponse() {
+    ReassemblyBudget budget = new ReassemblyBudget(1536, null);
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(next(1, true), next(3, true), next(1, false), next(3, false)), budget);
+
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              assertThat(FrameHeaderCodec.frameType(frame)).isEqualTo(FrameType.ERROR);
+              assertThat(FrameHeaderCodec.streamId(frame)).isEqualTo(1);
+              assertThat(ErrorFrameCodec.errorCode(frame)).isEqualTo(ErrorFrameCodec.CANCELED);
+              frame.release();
+            })
+        .assertNext(
+            frame -> {
+              assertThat(FrameHeaderCodec.streamId(frame)).isEqualTo(3);
+              assertThat(PayloadFrameCodec.data(frame).readableBytes())
+                  .isEqualTo(data.length * 2);
+              frame.release();
+            })
+        .verifyComplete();
+
+    assertThat(sent).hasSize(1);
+    assertThat(FrameHeaderCodec.frameType(sent.get(0))).isEqualTo(FrameType.CANCEL);
+    assertThat(FrameHeaderCodec.streamId(sent.get(0))).isEqualTo(1);
+
+    assertThat(budget.heldBytes()).isZero();
+    assertThat(budget.evictions()).isEqualTo(1);
+
+    sent.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("evicts the payload of the fragment itself if nothing else can be evicted")
+  @Test
+  void evictsCurrentPayload() {
+    ReassemblyBudget server = new ReassemblyBudget(1536, null);
+    ReassemblyBudget other = new ReassemblyBudget(Long.MAX_VALUE, server);
+    assertThat(other.tryAcquire(1024)).isTrue();
+
+    ReassemblyBudget budget = new ReassemblyBudget(Long.MAX_VALUE, server);
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(allocator, 1, true, null, dataBuffer()),
+                next(1, true),
+                next(1, false)),
+            budget);
+
+    connection.receive().as(StepVerifier::create).verifyComplete();
+
+    assertThat(sent).hasSize(1);
+    assertThat(FrameHeaderCodec.frameType(sent.get(0))).isEqualTo(FrameType.ERROR);
+    assertThat(budget.heldBytes()).isZero();
+    assertThat(server.heldBytes()).isEqualTo(1024);
+    assertThat(budget.evictions()).isEqualTo(1);
+    assertThat(server.evictions()).isEqualTo(1);
+
+    sent.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("returns the bytes of partial payloads to the budget when the connection closes")
+  @Test
+  void releasesBudgetOnClose() {
+    ReassemblyBudget server = new ReassemblyBudget(Long.MAX_VALUE, null);
+    ReassemblyBudget budget = new ReassemblyBudget(4096, server);
+    ReassemblyDuplexConnection connection =
+        connection(Flux.just(next(1, true), next(1, true), next(3, true)), budget);
+
+    connection.receive().as(StepVerifier::create).verifyComplete();
+
+    assertThat(budget.heldBytes()).isEqualTo(data.length * 3);
+    assertThat(server.heldBytes()).isEqualTo(data.length * 3);
+
+    onClose.onComplete();
+
+    assertThat(budget.heldBytes()).isZero();
+    assertThat(server.heldBytes()).isZero();
+    assertThat(budget.evictions()).isZero();
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("forgets the oldest evicted streams beyond the maximum")
+  @Test
+  void forgetsOldestEvictedStreams() {
+    FrameReassembler reassembler =
+        new FrameReassembler(
+            allocator, Integer.MAX_VALUE, new ReassemblyBudget(1024, null), delegate);
+
+    for (int i = 0; i <= FrameReassembler.MAX_EVICTED_STREAMS; i++) {
+      reassembler.addEvictedStream(2 * i + 1);
+    }
+
+    assertThat(reassembler.evictedStreams.size()).isEqualTo(FrameReassembler.MAX_EVICTED_STREAMS);
+    assertThat(reassembler.isEvicted(1)).isFalse();
+    assertThat(reassembler.isEvicted(3)).isTrue();
+    assertThat(reassembler.evictedStreams.oldest()).isEqualTo(3);
+
+    reassembler.removeEvictedStream(3);
+    assertThat(reassembler.evictedStreams.oldest()).isEqualTo(5);
+
+    reassembler.dispose();
+    assertThat(reassembler.evictedStreams.isEmpty()).isTrue();
+  }
+
+  private ReassemblyDuplexConnection connection(Flux<ByteBuf> frames, ReassemblyBudget budget) {
+    when(delegate.receive()).thenReturn(frames);
+    when(delegate.onClose()).thenReturn(onClose);
+    when(delegate.alloc()).thenReturn(allocator);
+    when(delegate.sendOne(any()))
+        .then(
+            invocation -> {
+              sent.add(invocation.getArgument(0));
+              return Mono.empty();
+            });
+    return new ReassemblyDuplexConnection(
+        delegate, Integer.MAX_VALUE, new FragmentationOptions().reassemblyBudget(budget));
+  }
+
+  private ByteBuf next(int streamId, boolean follows) {
+    return PayloadFrameCodec.encode(allocator, streamId, follows, false, true, null, dataBuffer());
+  }
+
+  private static ByteBuf dataBuffer() {
+    return Unpooled.wrappedBuffer(data);
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.fragmentation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.DuplexConnection;
+import io.rsocket.Payload;
+import io.rsocket.buffer.LeaksTrackingByteBufAllocator;
+import io.rsocket.frame.CancelFrameCodec;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.util.RaceTestUtils;
+
+final class StreamingReassemblyTest {
+  private static byte[] data = new byte[1024];
+  private static byte[] metadata = new byte[1024];
+
+  static {
+    ThreadLocalRandom.current().nextBytes(data);
+    ThreadLocalRandom.current().nextBytes(metadata);
+  }
+
+  private final DuplexConnection delegate = mock(DuplexConnection.class, RETURNS_SMART_NULLS);
+
+  private final LeaksTrackingByteBufAllocator allocator =
+      LeaksTrackingByteBufAllocator.instrument(ByteBufAllocator.DEFAULT);
+
+  @DisplayName("hands on the head of a payload and streams the data that follows")
+  @Test
+  void streamsData() {
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(
+                    allocator, 1, true, Unpooled.wrappedBuffer(metadata), dataBuffer()),
+                next(1, true),
+                next(1, true),
+                next(1, false)),
+            Integer.MAX_VALUE);
+
+    List<ByteBuf> chunks = new ArrayList<>();
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              assertThat(FrameHeaderCodec.hasFollows(frame)).isTrue();
+              assertThat(RequestResponseFrameCodec.metadata(frame))
+                  .isEqualTo(Unpooled.wrappedBuffer(metadata));
+              assertThat(RequestResponseFrameCodec.data(frame)).isEqualTo(dataBuffer());
+
+              Payload payload = connection.claimPayload(1, decode(frame));
+              assertThat(payload).isInstanceOf(StreamingPayload.class);
+              ((StreamingPayload) payload).chunks().subscribe(chunks::add);
+              payload.release();
+              frame.release();
+            })
+        .verifyComplete();
+
+    assertThat(chunks).hasSize(3).allMatch(chunk -> chunk.equals(dataBuffer()));
+    chunks.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("collects the metadata of a payload before handing on its head")
+  @Test
+  void collectsMetadata() {
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(
+                    allocator, 1, true, Unpooled.wrappedBuffer(metadata), Unpooled.EMPTY_BUFFER),
+                PayloadFrameCodec.encode(
+                    allocator,
+                    1,
+                    true,
+                    false,
+                    true,
+                    Unpooled.wrappedBuffer(metadata),
+                    dataBuffer()),
+                next(1, false)),
+            Integer.MAX_VALUE);
+
+    List<ByteBuf> chunks = new ArrayList<>();
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              assertThat(RequestResponseFrameCodec.metadata(frame))
+                  .isEqualTo(Unpooled.wrappedBuffer(metadata, metadata));
+              assertThat(RequestResponseFrameCodec.data(frame)).isEqualTo(dataBuffer());
+
+              StreamingPayload payload =
+                  (StreamingPayload) connection.claimPayload(1, decode(frame));
+              payload.chunks().subscribe(chunks::add);
+              payload.release();
+              frame.release();
+            })
+        .verifyComplete();
+
+    assertThat(chunks).hasSize(1);
+    chunks.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("reassembles payloads that are complete before any data is received")
+  @Test
+  void reassemblesPayloadsWithoutData() {
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(
+                    allocator, 1, true, Unpooled.wrappedBuffer(metadata), Unpooled.EMPTY_BUFFER),
+                PayloadFrameCodec.encode(
+                    allocator,
+                    1,
+                    false,
+                    false,
+                    true,
+                    Unpooled.wrappedBuffer(metadata),
+                    Unpooled.EMPTY_BUFFER)),
+            Integer.MAX_VALUE);
+
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              assertThat(RequestResponseFrameCodec.metadata(frame))
+                  .isEqualTo(Unpooled.wrappedBuffer(metadata, metadata));
+
+              Payload payload = decode(frame);
+              assertThat(connection.claimPayload(1, payload)).isSameAs(payload);
+              payload.release();
+              frame.release();
+            })
+        .verifyComplete();
+
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("fails the chunks of a payload that exceeds the max inbound payload size")
+  @Test
+  void failsPayloadsOutOfAllowedSize() {
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(allocator, 1, true, null, dataBuffer()),
+                next(1, true),
+                next(1, false)),
+            2048);
+
+    List<StreamingPayload> payloads = new ArrayList<>();
+    connection
+        .receive()
+        .as(StepVerifier::create)
+        .assertNext(
+            frame -> {
+              payloads.add((StreamingPayload) connection.claimPayload(1, decode(frame)));
+              frame.release();
+            })
+        .expectErrorMessage("Reassembled payload went out of allowed size")
+        .verify();
+
+    StreamingPayload payload = payloads.get(0);
+    payload
+        .chunks()
+        .doOnNext(ByteBuf::release)
+        .as(StepVerifier::create)
+        .expectNextCount(1)
+        .expectErrorMessage("Reassembled payload went out of allowed size")
+        .verify();
+    payload.release();
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("fails the chunks of a payload when the stream is cancelled")
+  @Test
+  void failsChunksOnCancel() {
+    ReassemblyDuplexConnection connection =
+        connection(
+            Flux.just(
+                RequestResponseFrameCodec.encode(allocator, 1, true, null, dataBuffer()),
+                next(1, true),
+                CancelFrameCodec.encode(allocator, 1)),
+            Integer.MAX_VALUE);
+
+    List<StreamingPayload> payloads = new ArrayList<>();
+    connection
+        .receive()
+        .doOnNext(
+            frame -> {
+              if (FrameHeaderCodec.hasFollows(frame)) {
+                payloads.add((StreamingPayload) connection.claimPayload(1, decode(frame)));
+              }
+              frame.release();
+            })
+        .as(StepVerifier::create)
+        .expectNextCount(2)
+        .verifyComplete();
+
+    StreamingPayload payload = payloads.get(0);
+    payload
+        .chunks()
+        .doOnNext(ByteBuf::release)
+        .as(StepVerifier::create)
+        .expectNextCount(1)
+        .expectError(CancellationException.class)
+        .verify();
+    payload.release();
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("stops requesting frames while the chunks of a claimed payload are not consumed")
+  @Test
+  void pausesReceivingWhileChunksAreNotConsumed() {
+    int fragments = 4 * StreamingFrameReassembler.ReceiveSubscriber.PREFETCH;
+    AtomicInteger received = new AtomicInteger();
+    ReassemblyDuplexConnection connection =
+        connection(
+            fragments(fragments).doOnNext(frame -> received.incrementAndGet()),
+            Integer.MAX_VALUE);
+
+    List<StreamingPayload> payloads = new ArrayList<>();
+    connection
+        .receive()
+        .subscribe(
+            frame -> {
+              payloads.add((StreamingPayload) connection.claimPayload(1, decode(frame)));
+              frame.release();
+            });
+
+    assertThat(received.get()).isEqualTo(StreamingFrameReassembler.ReceiveSubscriber.PREFETCH);
+
+    StreamingPayload payload = payloads.get(0);
+    AtomicInteger chunks = new AtomicInteger();
+    payload
+        .chunks()
+        .subscribe(
+            chunk -> {
+              chunk.release();
+              chunks.incrementAndGet();
+            },
+            null,
+            chunks::incrementAndGet);
+    payload.release();
+
+    assertThat(received.get()).isEqualTo(fragments);
+    // the chunks and the completion
+    assertThat(chunks.get()).isEqualTo(fragments);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("buffers the chunks of a payload that has not been claimed yet")
+  @Test
+  void doesNotPauseReceivingForUnclaimedPayloads() {
+    int fragments = 4 * StreamingFrameReassembler.ReceiveSubscriber.PREFETCH;
+    AtomicInteger received = new AtomicInteger();
+    ReassemblyDuplexConnection connection =
+        connection(
+            fragments(fragments).doOnNext(frame -> received.incrementAndGet()),
+            Integer.MAX_VALUE);
+
+    List<ByteBuf> heads = new ArrayList<>();
+    connection.receive().subscribe(heads::add);
+
+    assertThat(received.get()).isEqualTo(fragments);
+
+    connection.discardPayload(1);
+    heads.forEach(ByteBuf::release);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("fails the chunks of a payload that keep receiving paused for too long")
+  @Test
+  void failsChunksThatAreNotConsumedInTime() {
+    int fragments = 4 * StreamingFrameReassembler.ReceiveSubscriber.PREFETCH;
+    AtomicInteger received = new AtomicInteger();
+    StreamingFrameReassembler reassembler =
+        new StreamingFrameReassembler(allocator, Integer.MAX_VALUE, Duration.ofMillis(50));
+
+    List<StreamingPayload> payloads = new ArrayList<>();
+    reassembler
+        .reassemble(fragments(fragments).doOnNext(frame -> received.incrementAndGet()))
+        .subscribe(
+            frame -> {
+              payloads.add((StreamingPayload) reassembler.claimPayload(1, decode(frame)));
+              frame.release();
+            });
+
+    assertThat(received.get()).isEqualTo(StreamingFrameReassembler.ReceiveSubscriber.PREFETCH);
+
+    StreamingPayload payload = payloads.get(0);
+    payload
+        .chunks()
+        .as(chunks -> StepVerifier.create(chunks, 0))
+        .expectErrorMessage("Payload data not consumed within 50ms")
+        .verify(Duration.ofSeconds(5));
+    payload.release();
+
+    // the frames that follow are received again, the data of the failed payload is dropped
+    assertThat(received.get()).isEqualTo(fragments);
+    allocator.assertHasNoLeaks();
+  }
+
+  @DisplayName("releases chunks that race with the cancellation of their subscriber")
+  @Test
+  void releasesChunksRacingWithCancel() {
+    StreamingFrameReassembler reassembler =
+        new StreamingFrameReassembler(allocator, Integer.MAX_VALUE);
+    for (int i = 0; i < 10000; i++) {
+      PayloadChunks chunks = new PayloadChunks(reassembler);
+      BaseSubscriber<ByteBuf> subscriber =
+          new BaseSubscriber<ByteBuf>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+              // no demand, so that chunks are queued
+            }
+          };
+      chunks.subscribe(subscriber);
+      ByteBuf chunk = allocator.buffer().writeBytes(data);
+
+      RaceTestUtils.race(() -> chunks.onNext(chunk), subscriber::cancel);
+
+      assertThat(chunk.refCnt()).isZero();
+    }
+    allocator.assertHasNoLeaks();
+  }
+
+  private ReassemblyDuplexConnection connection(Flux<ByteBuf> frames, int maxInboundPayloadSize) {
+    when(delegate.receive()).thenReturn(frames);
+    when(delegate.onClose()).thenReturn(Mono.never());
+    when(delegate.alloc()).thenReturn(allocator);
+    return new ReassemblyDuplexConnection(
+        delegate, maxInboundPayloadSize, new FragmentationOptions().streaming(true));
+  }
+
+  private Flux<ByteBuf> fragments(int count) {
+    return Flux.range(0, count)
+        .map(
+            i ->
+                i == 0
+                    ? RequestResponseFrameCodec.encode(allocator, 1, true, null, dataBuffer())
+                    : next(1, i < count - 1));
+  }
+
+  private ByteBuf next(int streamId, boolean follows) {
+    return PayloadFrameCodec.encode(allocator, streamId, follows, false, true, null, dataBuffer());
+  }
+
+  private static ByteBuf dataBuffer() {
+    return Unpooled.wrappedBuffer(data);
+  }
+
+  private static Payload decode(ByteBuf frame) {
+    ByteBuf metadata = RequestResponseFrameCodec.metadata(frame);
+    return ByteBufPayload.create(
+        RequestResponseFrameCodec.data(frame).retain(),
+        metadata != null ? metadata.retain() : null);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class FrameHeaderTest {
+
+  final FrameHeader header = new FrameHeader();
+
+  @Test
+  void parsesRequestStreamFrame() {
+    ByteBuf frame =
+        RequestStreamFrameCodec.encode(
+            ByteBufAllocator.DEFAULT, 3, false, 10, text("meta"), text("data"));
+
+    header.wrap(frame);
+
+    assertThat(header.streamId()).isEqualTo(3);
+    assertThat(header.frameType()).isEqualTo(FrameType.REQUEST_STREAM);
+    assertThat(header.flags()).isEqualTo(FrameHeaderCodec.flags(frame));
+    assertThat(header.hasFollows()).isFalse();
+    assertThat(header.hasPayload()).isTrue();
+    assertThat(header.hasMetadata()).isTrue();
+    assertThat(slice(frame, header.metadataOffset(), header.metadataLength())).isEqualTo("meta");
+    assertThat(slice(frame, header.dataOffset(), header.dataLength())).isEqualTo("data");
+    assertThat(frame.readerIndex()).isZero();
+    frame.release();
+  }
+
+  @Test
+  void resolvesPayloadFrameTypeAndFollowsFlag() {
+    ByteBuf frame =
+        PayloadFrameCodec.encode(ByteBufAllocator.DEFAULT, 5, true, true, true, null, text("data"));
+
+    header.wrap(frame);
+
+    assertThat(header.frameType()).isEqualTo(FrameType.NEXT_COMPLETE);
+    assertThat(header.hasFollows()).isTrue();
+    assertThat(header.hasMetadata()).isFalse();
+    assertThat(header.metadataOffset()).isEqualTo(-1);
+    assertThat(slice(frame, header.dataOffset(), header.dataLength())).isEqualTo("data");
+    frame.release();
+  }
+
+  @Test
+  void parsesFrameWithoutPayload() {
+    ByteBuf frame = RequestNFrameCodec.encode(ByteBufAllocator.DEFAULT, 7, 42);
+
+    header.wrap(frame);
+
+    assertThat(header.streamId()).isEqualTo(7);
+    assertThat(header.frameType()).isEqualTo(FrameType.REQUEST_N);
+    assertThat(header.hasPayload()).isFalse();
+    assertThat(header.hasMetadata()).isFalse();
+    frame.release();
+  }
+
+  @Test
+  void parsesMetadataPushFrame() {
+    ByteBuf frame = MetadataPushFrameCodec.encode(ByteBufAllocator.DEFAULT, text("push"));
+
+    header.wrap(frame);
+
+    assertThat(header.streamId()).isZero();
+    assertThat(header.frameType()).isEqualTo(FrameType.METADATA_PUSH);
+    assertThat(slice(frame, header.metadataOffset(), header.metadataLength())).isEqualTo("push");
+    assertThat(header.dataLength()).isZero();
+    frame.release();
+  }
+
+  static ByteBuf text(String text) {
+    return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+  }
+
+  static String slice(ByteBuf frame, int index, int length) {
+    return frame.toString(index, length, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class FrameLengthCodecTest {
+
+  final ByteBufAllocator allocator = new LengthHeadroomAllocator(ByteBufAllocator.DEFAULT, 8);
+
+  @Test
+  void encodesSmallPayloadIntoSingleBuffer() {
+    ByteBuf frame = RequestStreamFrameCodec.encode(allocator, 1, false, 1, text("md"), text("d"));
+
+    assertThat(frame).isNotInstanceOf(CompositeByteBuf.class);
+    assertThat(frame.readerIndex()).isEqualTo(FrameLengthCodec.FRAME_LENGTH_SIZE);
+    assertThat(ByteBufUtil.hexDump(frame)).isEqualTo("00000001190000000001000002" + "6d6464");
+
+    frame = FrameLengthCodec.encode(allocator, frame.readableBytes(), frame);
+
+    assertThat(frame.unwrap()).isNotInstanceOf(CompositeByteBuf.class);
+    assertThat(ByteBufUtil.hexDump(frame))
+        .isEqualTo("000010" + "00000001190000000001000002" + "6d6464");
+    frame.release();
+  }
+
+  @Test
+  void composesLargePayload() {
+    ByteBuf metadata = text("metadata");
+    ByteBuf data = text("data");
+    ByteBuf frame = PayloadFrameCodec.encode(allocator, 1, false, false, true, metadata, data);
+
+    assertThat(frame).isInstanceOf(CompositeByteBuf.class);
+    assertThat(PayloadFrameCodec.metadata(frame).toString(StandardCharsets.UTF_8))
+        .isEqualTo("metadata");
+    assertThat(PayloadFrameCodec.data(frame).toString(StandardCharsets.UTF_8)).isEqualTo("data");
+
+    frame = FrameLengthCodec.encode(allocator, frame.readableBytes(), frame);
+
+    assertThat(frame.readableBytes()).isEqualTo(FrameLengthCodec.FRAME_LENGTH_SIZE + 21);
+    assertThat(FrameLengthCodec.length(frame)).isEqualTo(21);
+    ByteBuf unprefixed = FrameLengthCodec.frame(frame);
+    assertThat(FrameHeaderCodec.streamId(unprefixed)).isEqualTo(1);
+    assertThat(PayloadFrameCodec.data(unprefixed).toString(StandardCharsets.UTF_8))
+        .isEqualTo("data");
+    frame.release();
+    assertThat(metadata.refCnt()).isZero();
+    assertThat(data.refCnt()).isZero();
+  }
+
+  @Test
+  void encodesHeaderOnlyFrameInHeadroom() {
+    ByteBuf frame = RequestNFrameCodec.encode(allocator, 1, 5);
+
+    ByteBuf prefixed = FrameLengthCodec.prefixed(frame);
+
+    assertThat(prefixed).isNotNull();
+    assertThat(ByteBufUtil.hexDump(prefixed)).isEqualTo("00000a" + "00000001200000000005");
+    prefixed.release();
+    assertThat(frame.refCnt()).isZero();
+  }
+
+  @Test
+  void keepsFrameWithoutHeadroom() {
+    ByteBuf frame = Unpooled.wrappedBuffer(new byte[] {0, 0, 0, 1, 0x20, 0, 0, 0, 0, 5});
+
+    assertThat(FrameLengthCodec.prefixed(frame)).isNull();
+    assertThat(frame.refCnt()).isOne();
+
+    ByteBuf prefixed = FrameLengthCodec.encode(allocator, 10, frame);
+    assertThat(ByteBufUtil.hexDump(prefixed)).isEqualTo("00000a" + "00000001200000000005");
+    prefixed.release();
+  }
+
+  @Test
+  void keepsBytesInFrontOfFrameNotHoldingItsLength() {
+    ByteBuf buffer =
+        Unpooled.wrappedBuffer(new byte[] {1, 2, 3, 0, 0, 0, 1, 0x20, 0, 0, 0, 0, 5}).skipBytes(3);
+
+    ByteBuf prefixed = FrameLengthCodec.encode(allocator, 10, buffer);
+
+    assertThat(ByteBufUtil.hexDump(prefixed)).isEqualTo("00000a" + "00000001200000000005");
+    assertThat(buffer.getMedium(0)).isEqualTo(0x010203);
+    prefixed.release();
+  }
+
+  @Test
+  void keepsFrameChangedAfterEncoding() {
+    ByteBuf frame = RequestNFrameCodec.encode(allocator, 1, 5).writeByte(0);
+
+    assertThat(FrameLengthCodec.prefixed(frame)).isNull();
+    assertThat(frame.refCnt()).isOne();
+    frame.release();
+  }
+
+  @Test
+  void doesNotReserveHeadroomWithOtherAllocators() {
+    ByteBuf frame =
+        RequestStreamFrameCodec.encode(
+            ByteBufAllocator.DEFAULT, 1, false, 1, text("md"), text("d"));
+
+    assertThat(frame.readerIndex()).isZero();
+    assertThat(FrameLengthCodec.prefixed(frame)).isNull();
+    frame.release();
+  }
+
+  static ByteBuf text(String value) {
+    return Unpooled.copiedBuffer(value, StandardCharsets.UTF_8);
+  }
+}
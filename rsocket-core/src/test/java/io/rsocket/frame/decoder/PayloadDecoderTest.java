@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.frame.decoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeader;
+import io.rsocket.frame.MetadataPushFrameCodec;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.frame.RequestChannelFrameCodec;
+import io.rsocket.frame.RequestFireAndForgetFrameCodec;
+import io.rsocket.frame.RequestResponseFrameCodec;
+import io.rsocket.frame.RequestStreamFrameCodec;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class PayloadDecoderTest {
+
+  static final ByteBufAllocator ALLOCATOR = ByteBufAllocator.DEFAULT;
+  static final PayloadDecoder[] DECODERS = {
+    PayloadDecoder.DEFAULT, PayloadDecoder.ZERO_COPY, PayloadDecoder.POOLED
+  };
+
+  static Stream<ByteBuf> frames() {
+    return Stream.of(
+        RequestFireAndForgetFrameCodec.encode(ALLOCATOR, 1, false, text("m"), text("d")),
+        RequestResponseFrameCodec.encode(ALLOCATOR, 1, false, null, text("data")),
+        RequestStreamFrameCodec.encode(ALLOCATOR, 1, false, 5, text("meta"), text("data")),
+        RequestChannelFrameCodec.encode(
+            ALLOCATOR, 1, false, false, 5, text("meta"), Unpooled.EMPTY_BUFFER),
+        PayloadFrameCodec.encode(ALLOCATOR, 1, false, false, true, text(""), text("data")),
+        PayloadFrameCodec.encode(ALLOCATOR, 1, false, true, true, null, Unpooled.EMPTY_BUFFER),
+        MetadataPushFrameCodec.encode(ALLOCATOR, text("push")));
+  }
+
+  @ParameterizedTest
+  @MethodSource("frames")
+  public void pooledDecoderDecodesLikeDefaultDecoder(ByteBuf frame) {
+    Payload expected = PayloadDecoder.DEFAULT.apply(frame);
+    Payload payload = PayloadDecoder.POOLED.apply(frame);
+
+    assertThat(payload.hasMetadata()).isEqualTo(expected.hasMetadata());
+    assertThat(payload.getDataUtf8()).isEqualTo(expected.getDataUtf8());
+    if (expected.hasMetadata()) {
+      assertThat(payload.getMetadataUtf8()).isEqualTo(expected.getMetadataUtf8());
+    }
+
+    frame.release();
+    payload.release();
+    assertThat(frame.refCnt()).isZero();
+    expected.release();
+  }
+
+  @ParameterizedTest
+  @MethodSource("frames")
+  public void decodesWithParsedHeaderLikeWithoutHeader(ByteBuf frame) {
+    FrameHeader header = new FrameHeader().wrap(frame);
+
+    for (PayloadDecoder decoder : DECODERS) {
+      Payload expected = decoder.apply(frame);
+      Payload payload = decoder.apply(frame, header);
+
+      assertThat(payload.hasMetadata()).isEqualTo(expected.hasMetadata());
+      assertThat(payload.getDataUtf8()).isEqualTo(expected.getDataUtf8());
+      if (expected.hasMetadata()) {
+        assertThat(payload.getMetadataUtf8()).isEqualTo(expected.getMetadataUtf8());
+      }
+      payload.release();
+      expected.release();
+    }
+
+    frame.release();
+    assertThat(frame.refCnt()).isZero();
+  }
+
+  static ByteBuf text(String text) {
+    return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+  }
+}
@@ -26,9 +26,18 @@
 import io.rsocket.plugins.InitializingInterceptorRegistry;
 import io.rsocket.test.util.TestDuplexConnection;
 import io.rsocket.util.DefaultPayload;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.test.StepVerifier;
+import reactor.test.util.RaceTestUtils;
 
 public class ClientServerInputMultiplexerTest {
   private TestDuplexConnection source;
@@ -192,6 +201,75 @@ public void serverSplits() {
     assertEquals(3, setupFrames.get());
   }
 
+  @Test
+  public void deliversFramesReceivedBeforeSubscriptionInOrder() {
+    TestDuplexConnection source = new TestDuplexConnection(allocator);
+    ClientServerInputMultiplexer multiplexer =
+        new ClientServerInputMultiplexer(source, new InitializingInterceptorRegistry(), true);
+
+    source.addToReceivedBuffer(errorFrame(1), errorFrame(3));
+
+    List<Integer> streamIds = new ArrayList<>();
+    multiplexer
+        .asClientConnection()
+        .receive()
+        .subscribe(
+            frame -> {
+              streamIds.add(FrameHeaderCodec.streamId(frame));
+              frame.release();
+            });
+    source.addToReceivedBuffer(errorFrame(5));
+
+    assertEquals(Arrays.asList(1, 3, 5), streamIds);
+    allocator.assertHasNoLeaks();
+  }
+
+  @Test
+  public void releasesFramesOfCancelledConnection() {
+    TestDuplexConnection source = new TestDuplexConnection(allocator);
+    ClientServerInputMultiplexer multiplexer =
+        new ClientServerInputMultiplexer(source, new InitializingInterceptorRegistry(), false);
+
+    AtomicReference<ByteBuf> setup = new AtomicReference<>();
+    multiplexer.asSetupConnection().receive().next().subscribe(setup::set);
+    source.addToReceivedBuffer(resumeFrame(), resumeFrame());
+
+    assertEquals(1, setup.get().refCnt());
+    setup.get().release();
+    allocator.assertHasNoLeaks();
+  }
+
+  @Test
+  public void releasesFramesRacingWithCancel() {
+    for (int i = 0; i < 10000; i++) {
+      ClientServerInputMultiplexer.InboundFrames frames =
+          new ClientServerInputMultiplexer.InboundFrames();
+      BaseSubscriber<ByteBuf> subscriber =
+          new BaseSubscriber<ByteBuf>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+              // no demand, so that frames are queued
+            }
+          };
+      frames.subscribe(subscriber);
+      ByteBuf frame = errorFrame(1);
+
+      RaceTestUtils.race(() -> frames.onNext(frame), subscriber::cancel);
+
+      assertEquals(0, frame.refCnt());
+    }
+    allocator.assertHasNoLeaks();
+  }
+
+  @Test
+  public void rejectsSecondSubscriber() {
+    clientMultiplexer.asClientConnection().receive().subscribe();
+
+    StepVerifier.create(clientMultiplexer.asClientConnection().receive())
+        .expectError(IllegalStateException.class)
+        .verify(Duration.ofSeconds(1));
+  }
+
   private ByteBuf resumeFrame() {
     return ResumeFrameCodec.encode(allocator, Unpooled.EMPTY_BUFFER, 0, 0);
   }
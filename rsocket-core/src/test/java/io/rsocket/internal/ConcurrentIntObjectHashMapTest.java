@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.test.util.RaceTestUtils;
+
+public class ConcurrentIntObjectHashMapTest {
+
+  @Test
+  public void putGetRemove() {
+    ConcurrentIntObjectHashMap<String> map = new ConcurrentIntObjectHashMap<>();
+
+    assertThat(map.put(1, "a")).isNull();
+    assertThat(map.put(3, "b")).isNull();
+    assertThat(map.put(1, "c")).isEqualTo("a");
+
+    assertThat(map.get(1)).isEqualTo("c");
+    assertThat(map.get(3)).isEqualTo("b");
+    assertThat(map.get(5)).isNull();
+    assertThat(map.containsKey(3)).isTrue();
+    assertThat(map.size()).isEqualTo(2);
+
+    assertThat(map.remove(1)).isEqualTo("c");
+    assertThat(map.remove(1)).isNull();
+    assertThat(map.size()).isEqualTo(1);
+    assertThat(map.values()).containsExactly("b");
+
+    map.clear();
+    assertThat(map.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void conditionalRemoveUsesIdentity() {
+    ConcurrentIntObjectHashMap<Object> map = new ConcurrentIntObjectHashMap<>();
+    Object value = new Object();
+
+    map.put(7, value);
+
+    assertThat(map.remove(7, new Object())).isFalse();
+    assertThat(map.get(7)).isSameAs(value);
+    assertThat(map.remove(7, value)).isTrue();
+    assertThat(map.containsKey(7)).isFalse();
+  }
+
+  @Test
+  public void nullValuesAreSupported() {
+    ConcurrentIntObjectHashMap<Object> map = new ConcurrentIntObjectHashMap<>();
+
+    map.put(2, null);
+
+    assertThat(map.containsKey(2)).isTrue();
+    assertThat(map.get(2)).isNull();
+    assertThat(map.remove(2, null)).isTrue();
+    assertThat(map.containsKey(2)).isFalse();
+  }
+
+  @Test
+  public void growsAndCompactsUnderManyStreams() {
+    ConcurrentIntObjectHashMap<String> map = new ConcurrentIntObjectHashMap<>(4, 2);
+
+    for (int i = 1; i < 200_000; i += 2) {
+      map.put(i, String.valueOf(i));
+    }
+    assertThat(map.size()).isEqualTo(100_000);
+
+    for (int i = 1; i < 200_000; i += 4) {
+      assertThat(map.remove(i)).isEqualTo(String.valueOf(i));
+    }
+    assertThat(map.size()).isEqualTo(50_000);
+
+    for (int i = 3; i < 200_000; i += 4) {
+      assertThat(map.get(i)).isEqualTo(String.valueOf(i));
+    }
+    assertThat(map.keySet()).hasSize(50_000);
+  }
+
+  @Test
+  public void concurrentReadersAlwaysSeePresentEntries() {
+    for (int round = 0; round < 100; round++) {
+      ConcurrentIntObjectHashMap<String> map = new ConcurrentIntObjectHashMap<>(2, 2);
+      map.put(1, "1");
+      AtomicInteger misses = new AtomicInteger();
+
+      RaceTestUtils.race(
+          () -> {
+            for (int i = 3; i < 4_000; i += 2) {
+              map.put(i, "stream");
+              map.remove(i);
+            }
+          },
+          () -> {
+            for (int i = 0; i < 4_000; i++) {
+              if (map.get(1) == null) {
+                misses.incrementAndGet();
+              }
+            }
+          });
+
+      assertThat(misses.get()).isZero();
+      assertThat(map.size()).isEqualTo(1);
+    }
+  }
+}
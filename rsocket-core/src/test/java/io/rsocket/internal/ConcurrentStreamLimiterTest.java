@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentStreamLimiterTest {
+
+  @Test
+  public void rejectsStreamsAboveTheLimit() {
+    ConcurrentStreamLimiter limiter = new ConcurrentStreamLimiter(2, null);
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+    assertThat(limiter.activeStreams()).isEqualTo(2);
+    assertThat(limiter.rejectedStreams()).isEqualTo(1);
+
+    limiter.release();
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.activeStreams()).isEqualTo(2);
+  }
+
+  @Test
+  public void parentLimitsAllChildren() {
+    ConcurrentStreamLimiter server = new ConcurrentStreamLimiter(3, null);
+    ConcurrentStreamLimiter first = new ConcurrentStreamLimiter(2, server);
+    ConcurrentStreamLimiter second = new ConcurrentStreamLimiter(2, server);
+
+    assertThat(first.tryAcquire()).isTrue();
+    assertThat(first.tryAcquire()).isTrue();
+    assertThat(second.tryAcquire()).isTrue();
+    assertThat(second.tryAcquire()).isFalse();
+
+    // the rejection by the parent does not leak a stream of the child
+    assertThat(second.activeStreams()).isEqualTo(1);
+    assertThat(second.rejectedStreams()).isEqualTo(1);
+    assertThat(server.activeStreams()).isEqualTo(3);
+
+    first.release();
+
+    assertThat(second.tryAcquire()).isTrue();
+    assertThat(server.activeStreams()).isEqualTo(3);
+    assertThat(first.activeStreams()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsInvalidLimit() {
+    assertThatThrownBy(() -> new ConcurrentStreamLimiter(0, null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
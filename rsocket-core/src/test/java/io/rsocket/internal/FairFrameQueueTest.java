@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class FairFrameQueueTest {
+
+  @Test
+  public void keepsOrderWithinStream() {
+    FairFrameQueue queue = new FairFrameQueue(1024);
+
+    for (int i = 0; i < 10; i++) {
+      queue.offer(frame(1, 10 + i));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      ByteBuf frame = queue.poll();
+      assertThat(frame.getByte(frame.writerIndex() - 1)).isEqualTo((byte) (10 + i));
+      frame.release();
+    }
+    assertThat(queue.poll()).isNull();
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void smallStreamIsNotBlockedByBulkStream() {
+    FairFrameQueue queue = new FairFrameQueue(100);
+
+    for (int i = 0; i < 1000; i++) {
+      queue.offer(frame(1, 100));
+    }
+    queue.offer(frame(3, 10));
+
+    List<Integer> streamIds = drain(queue);
+
+    assertThat(streamIds).hasSize(1001);
+    // the bulk stream gets one quantum before the small stream gets its turn
+    assertThat(streamIds.indexOf(3)).isLessThanOrEqualTo(2);
+  }
+
+  @Test
+  public void sharesBytesEquallyBetweenBusyStreams() {
+    FairFrameQueue queue = new FairFrameQueue(100);
+
+    for (int i = 0; i < 100; i++) {
+      queue.offer(frame(1, 200));
+      queue.offer(frame(3, 50));
+      queue.offer(frame(3, 50));
+      queue.offer(frame(3, 50));
+      queue.offer(frame(3, 50));
+    }
+
+    List<ByteBuf> frames = new ArrayList<>();
+    int bytesOfStream1 = 0;
+    int bytesOfStream3 = 0;
+    for (int i = 0; i < 100; i++) {
+      ByteBuf frame = queue.poll();
+      if (FrameHeaderCodec.streamId(frame) == 1) {
+        bytesOfStream1 += frame.readableBytes();
+      } else {
+        bytesOfStream3 += frame.readableBytes();
+      }
+      frames.add(frame);
+    }
+    frames.forEach(ByteBuf::release);
+    drain(queue);
+
+    assertThat((double) bytesOfStream1 / bytesOfStream3).isBetween(0.8, 1.25);
+  }
+
+  @Test
+  public void tracksSize() {
+    FairFrameQueue queue = new FairFrameQueue(100);
+
+    queue.offer(frame(1, 10));
+    queue.offer(frame(3, 10));
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.isEmpty()).isFalse();
+
+    queue.poll().release();
+    assertThat(queue.size()).isEqualTo(1);
+
+    queue.poll().release();
+    assertThat(queue.size()).isZero();
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void peeksAndIteratesLikeAQueue() {
+    FairFrameQueue queue = new FairFrameQueue(10);
+
+    ByteBuf first = frame(1, 20);
+    ByteBuf second = frame(1, 10);
+    ByteBuf other = frame(3, 10);
+    queue.offer(first);
+    queue.offer(second);
+    queue.offer(other);
+
+    assertThat(queue.peek()).isSameAs(first);
+    assertThat(queue).containsExactly(first, second, other);
+    assertThat(queue.contains(other)).isTrue();
+
+    // stream 1 overdraws its quantum, so stream 3 is served next
+    assertThat(queue.poll()).isSameAs(first);
+    assertThat(queue.peek()).isSameAs(other);
+    assertThat(queue.poll()).isSameAs(other);
+    assertThat(queue.peek()).isSameAs(second);
+    assertThat(queue.poll()).isSameAs(second);
+    assertThat(queue.peek()).isNull();
+    assertThat(queue).isEmpty();
+
+    first.release();
+    second.release();
+    other.release();
+  }
+
+  @Test
+  public void unboundedProcessorEmitsFairly() {
+    FairFrameQueue queue = new FairFrameQueue(100);
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>(queue, null);
+
+    for (int i = 0; i < 10; i++) {
+      processor.onNext(frame(1, 100));
+    }
+    processor.onNext(frame(3, 10));
+    processor.onComplete();
+
+    List<Integer> streamIds = new ArrayList<>();
+    processor
+        .doOnNext(
+            frame -> {
+              streamIds.add(FrameHeaderCodec.streamId(frame));
+              frame.release();
+            })
+        .blockLast();
+
+    assertThat(streamIds).hasSize(11);
+    assertThat(streamIds.indexOf(3)).isLessThanOrEqualTo(2);
+  }
+
+  @Test
+  public void rejectsInvalidQuantum() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new FairFrameQueue(0));
+  }
+
+  static List<Integer> drain(FairFrameQueue queue) {
+    List<Integer> streamIds = new ArrayList<>();
+    ByteBuf frame;
+    while ((frame = queue.poll()) != null) {
+      streamIds.add(FrameHeaderCodec.streamId(frame));
+      frame.release();
+    }
+    return streamIds;
+  }
+
+  static ByteBuf frame(int streamId, int size) {
+    ByteBuf frame = FrameHeaderCodec.encode(ByteBufAllocator.DEFAULT, streamId, FrameType.NEXT, 0);
+    do {
+      frame.writeByte(size);
+    } while (frame.readableBytes() < size);
+    return frame;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.PayloadFrameCodec;
+import io.rsocket.util.FileRegionPayload;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileRegionByteBufTest {
+
+  static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+  @TempDir Path dir;
+
+  Path file;
+  FileChannel channel;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    file = Files.write(dir.resolve("content.txt"), CONTENT.getBytes(StandardCharsets.US_ASCII));
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    channel.close();
+  }
+
+  @Test
+  public void readsHeaderFollowedByFileRegion() {
+    ByteBuf header = Unpooled.copiedBuffer("header:", StandardCharsets.US_ASCII);
+    FileRegionByteBuf buffer = new FileRegionByteBuf(header, channel, 10, 6, null);
+
+    assertThat(buffer.readableBytes()).isEqualTo(13);
+    assertThat(buffer.toString(StandardCharsets.US_ASCII)).isEqualTo("header:abcdef");
+    assertThat(buffer.getByte(7)).isEqualTo((byte) 'a');
+    assertThat(buffer.getInt(5)).isEqualTo(buffer.copy(5, 4).getInt(0));
+    assertThat(buffer.slice(3, 6).toString(StandardCharsets.US_ASCII)).isEqualTo("der:ab");
+
+    buffer.release();
+    assertThat(header.refCnt()).isZero();
+  }
+
+  @Test
+  public void prependKeepsFileRegionAndReadableBytes() {
+    FileRegionByteBuf data = new FileRegionByteBuf(null, channel, 0, 10, null);
+    data.skipBytes(4);
+
+    FileRegionByteBuf frame =
+        data.prepend(ByteBufAllocator.DEFAULT, Unpooled.copiedBuffer("#", StandardCharsets.UTF_8));
+
+    assertThat(data.refCnt()).isZero();
+    assertThat(frame.toString(StandardCharsets.US_ASCII)).isEqualTo("#456789");
+    assertThat(frame.readableRegionPosition()).isEqualTo(4);
+    assertThat(frame.readableRegionLength()).isEqualTo(6);
+    frame.release();
+  }
+
+  @Test
+  public void payloadFrameOfFileRegionPayloadIsFileRegion() {
+    Payload payload =
+        FileRegionPayload.create(
+            channel, 0, 10, Unpooled.copiedBuffer("meta", StandardCharsets.UTF_8));
+
+    ByteBuf frame =
+        PayloadFrameCodec.encodeNextReleasingPayload(ByteBufAllocator.DEFAULT, 1, payload);
+
+    assertThat(frame).isInstanceOf(FileRegionByteBuf.class);
+    assertThat(((FileRegionByteBuf) frame).readableRegionLength()).isEqualTo(10);
+    assertThat(FrameHeaderCodec.frameType(frame)).isEqualTo(FrameType.NEXT);
+    assertThat(PayloadFrameCodec.metadata(frame).toString(StandardCharsets.UTF_8))
+        .isEqualTo("meta");
+    assertThat(PayloadFrameCodec.data(frame).toString(StandardCharsets.US_ASCII))
+        .isEqualTo("0123456789");
+    frame.release();
+    assertThat(payload.refCnt()).isZero();
+  }
+
+  @Test
+  public void streamsFileInChunksAndClosesItOnceReleased() {
+    List<Payload> chunks = FileRegionPayload.stream(file, 16).collectList().block();
+
+    assertThat(chunks)
+        .extracting(Payload::getDataUtf8)
+        .containsExactly(
+            CONTENT.substring(0, 16), CONTENT.substring(16, 32), CONTENT.substring(32));
+
+    FileChannel streamed = ((FileRegionByteBuf) chunks.get(0).data()).channel();
+    chunks.subList(0, 2).forEach(Payload::release);
+    assertThat(streamed.isOpen()).isTrue();
+    chunks.get(2).release();
+    assertThat(streamed.isOpen()).isFalse();
+  }
+}
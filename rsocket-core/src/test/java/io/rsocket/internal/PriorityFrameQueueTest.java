@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PriorityFrameQueueTest {
+
+  @Test
+  public void controlFramesOvertakePayloads() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {4, 1}, 1);
+
+    for (int i = 0; i < 10; i++) {
+      queue.offer(frame(1, FrameType.NEXT));
+    }
+    queue.offer(frame(3, FrameType.REQUEST_N));
+    queue.offer(frame(5, FrameType.CANCEL));
+
+    List<FrameType> frameTypes = drain(queue);
+
+    assertThat(frameTypes).hasSize(12);
+    assertThat(frameTypes.subList(0, 2)).containsExactly(FrameType.REQUEST_N, FrameType.CANCEL);
+  }
+
+  @Test
+  public void servesLanesByDrainQuota() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 2, 1}, 1);
+
+    for (int i = 0; i < 4; i++) {
+      queue.offer(frame(1, FrameType.NEXT));
+      queue.offer(frame(3, FrameType.NEXT), 2);
+    }
+
+    List<Integer> streamIds = new ArrayList<>();
+    ByteBuf frame;
+    while ((frame = queue.poll()) != null) {
+      streamIds.add(FrameHeaderCodec.streamId(frame));
+      frame.release();
+    }
+
+    assertThat(streamIds).containsExactly(1, 1, 3, 1, 1, 3, 3, 3);
+  }
+
+  @Test
+  public void controlFrameDoesNotOvertakeRequestOfItsStream() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 1, 1}, 1);
+
+    queue.offer(frame(1, FrameType.NEXT));
+    queue.offer(frame(3, FrameType.REQUEST_STREAM), 2);
+    queue.offer(frame(3, FrameType.REQUEST_N));
+
+    assertThat(drain(queue))
+        .containsExactly(FrameType.NEXT, FrameType.REQUEST_STREAM, FrameType.REQUEST_N);
+
+    // once the request frame is sent, control frames of the stream are prioritized again
+    queue.offer(frame(1, FrameType.NEXT));
+    queue.offer(frame(3, FrameType.REQUEST_N));
+
+    assertThat(drain(queue)).containsExactly(FrameType.REQUEST_N, FrameType.NEXT);
+  }
+
+  @Test
+  public void fallsBackToDefaultLaneForUnknownLanes() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 1, 1}, 2);
+
+    queue.offer(frame(1, FrameType.NEXT), 7);
+    queue.offer(frame(3, FrameType.NEXT), 1);
+
+    List<Integer> streamIds = new ArrayList<>();
+    ByteBuf frame;
+    while ((frame = queue.poll()) != null) {
+      streamIds.add(FrameHeaderCodec.streamId(frame));
+      frame.release();
+    }
+
+    assertThat(streamIds).containsExactly(3, 1);
+  }
+
+  @Test
+  public void tracksSize() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 1}, 1, 100);
+
+    queue.offer(frame(1, FrameType.NEXT));
+    queue.offer(frame(3, FrameType.CANCEL));
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.isEmpty()).isFalse();
+
+    queue.poll().release();
+    queue.poll().release();
+    assertThat(queue.size()).isZero();
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void peeksAndIteratesLikeAQueue() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 1, 1}, 1);
+
+    ByteBuf next = frame(1, FrameType.NEXT);
+    ByteBuf request = frame(3, FrameType.REQUEST_STREAM);
+    ByteBuf cancel = frame(5, FrameType.CANCEL);
+    queue.offer(next);
+    queue.offer(request, 2);
+    queue.offer(cancel);
+
+    assertThat(queue.peek()).isSameAs(cancel);
+    assertThat(queue).containsExactly(cancel, next, request);
+    assertThat(queue.contains(request)).isTrue();
+
+    assertThat(queue.poll()).isSameAs(cancel);
+    assertThat(queue.peek()).isSameAs(next);
+    assertThat(queue.poll()).isSameAs(next);
+    assertThat(queue.peek()).isSameAs(request);
+
+    queue.clear();
+
+    assertThat(queue.peek()).isNull();
+    assertThat(queue).isEmpty();
+    assertThat(queue.openingStreams.isEmpty()).isTrue();
+
+    next.release();
+    request.release();
+    cancel.release();
+  }
+
+  @Test
+  public void unboundedProcessorEmitsByLane() {
+    PriorityFrameQueue queue = new PriorityFrameQueue(new int[] {1, 1, 1}, 2);
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>(queue, null);
+
+    processor.onNext(frame(1, FrameType.NEXT));
+    processor.onNext(frame(1, FrameType.NEXT));
+    processor.onNext(frame(3, FrameType.NEXT), 1);
+    processor.onComplete();
+
+    List<Integer> streamIds = new ArrayList<>();
+    processor
+        .doOnNext(
+            frame -> {
+              streamIds.add(FrameHeaderCodec.streamId(frame));
+              frame.release();
+            })
+        .blockLast();
+
+    assertThat(streamIds).containsExactly(3, 1, 1);
+  }
+
+  @Test
+  public void rejectsInvalidLanes() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new PriorityFrameQueue(new int[] {1}, 1));
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new PriorityFrameQueue(new int[] {1, 0}, 1));
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new PriorityFrameQueue(new int[] {1, 1}, 0));
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new PriorityFrameQueue(new int[] {1, 1}, 2));
+  }
+
+  static List<FrameType> drain(PriorityFrameQueue queue) {
+    List<FrameType> frameTypes = new ArrayList<>();
+    ByteBuf frame;
+    while ((frame = queue.poll()) != null) {
+      frameTypes.add(FrameHeaderCodec.frameType(frame));
+      frame.release();
+    }
+    return frameTypes;
+  }
+
+  static ByteBuf frame(int streamId, FrameType frameType) {
+    return FrameHeaderCodec.encode(ByteBufAllocator.DEFAULT, streamId, frameType, 0);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class ReassemblyBudgetTest {
+
+  @Test
+  public void rejectsBytesAboveTheBudget() {
+    ReassemblyBudget budget = new ReassemblyBudget(1024, null);
+
+    assertThat(budget.tryAcquire(512)).isTrue();
+    assertThat(budget.tryAcquire(512)).isTrue();
+    assertThat(budget.tryAcquire(1)).isFalse();
+    assertThat(budget.heldBytes()).isEqualTo(1024);
+
+    budget.release(256);
+
+    assertThat(budget.tryAcquire(256)).isTrue();
+    assertThat(budget.heldBytes()).isEqualTo(1024);
+  }
+
+  @Test
+  public void parentLimitsAllChildren() {
+    ReassemblyBudget server = new ReassemblyBudget(1536, null);
+    ReassemblyBudget first = new ReassemblyBudget(1024, server);
+    ReassemblyBudget second = new ReassemblyBudget(1024, server);
+
+    assertThat(first.tryAcquire(1024)).isTrue();
+    assertThat(second.tryAcquire(512)).isTrue();
+    assertThat(second.tryAcquire(512)).isFalse();
+
+    // the rejection by the parent does not leak bytes of the child
+    assertThat(second.heldBytes()).isEqualTo(512);
+    assertThat(server.heldBytes()).isEqualTo(1536);
+
+    first.release(1024);
+    second.evicted();
+
+    assertThat(second.tryAcquire(512)).isTrue();
+    assertThat(server.heldBytes()).isEqualTo(1024);
+    assertThat(second.evictions()).isEqualTo(1);
+    assertThat(server.evictions()).isEqualTo(1);
+    assertThat(first.evictions()).isZero();
+  }
+
+  @Test
+  public void rejectsInvalidBudget() {
+    assertThatThrownBy(() -> new ReassemblyBudget(0, null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
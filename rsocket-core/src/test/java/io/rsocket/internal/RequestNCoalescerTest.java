@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.frame.CancelFrameCodec;
+import io.rsocket.frame.FrameHeaderCodec;
+import io.rsocket.frame.FrameType;
+import io.rsocket.frame.RequestNFrameCodec;
+import org.junit.jupiter.api.Test;
+
+public class RequestNCoalescerTest {
+
+  @Test
+  public void mergesGrantsWhileFrameIsQueued() {
+    RequestNCoalescer coalescer = new RequestNCoalescer(1);
+    RequestNCoalescer.Credit credit = coalescer.open(1, 10);
+
+    assertThat(credit.request(1)).isTrue();
+    for (int i = 0; i < 4; i++) {
+      assertThat(credit.request(1)).isFalse();
+    }
+
+    assertThat(send(coalescer, 1, 1)).isEqualTo(5);
+    assertThat(coalescer.coalescedFrames()).isEqualTo(4);
+
+    // the next grant needs a new frame
+    assertThat(credit.request(1)).isTrue();
+    assertThat(send(coalescer, 1, 1)).isEqualTo(1);
+  }
+
+  @Test
+  public void holdsBackSmallGrantsUntilMinCreditBatch() {
+    RequestNCoalescer coalescer = new RequestNCoalescer(4);
+    RequestNCoalescer.Credit credit = coalescer.open(1, 10);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(credit.request(1)).isFalse();
+    }
+    assertThat(credit.request(1)).isTrue();
+
+    assertThat(send(coalescer, 1, 1)).isEqualTo(4);
+    assertThat(coalescer.coalescedFrames()).isEqualTo(3);
+  }
+
+  @Test
+  public void flushesHeldBackGrantsOncePeerHasNoCreditLeft() {
+    RequestNCoalescer coalescer = new RequestNCoalescer(8);
+    RequestNCoalescer.Credit credit = coalescer.open(1, 2);
+
+    assertThat(credit.request(1)).isFalse();
+    assertThat(credit.onDelivered()).isFalse();
+    assertThat(credit.onDelivered()).isTrue();
+
+    assertThat(send(coalescer, 1, 1)).isEqualTo(1);
+    assertThat(coalescer.coalescedFrames()).isZero();
+
+    // once the granted element is delivered, the next grant is sent right away
+    assertThat(credit.onDelivered()).isFalse();
+    assertThat(credit.request(1)).isTrue();
+  }
+
+  @Test
+  public void doesNotSendMoreFramesOnceUnbounded() {
+    RequestNCoalescer coalescer = new RequestNCoalescer(1);
+    RequestNCoalescer.Credit credit = coalescer.open(1, Long.MAX_VALUE);
+
+    assertThat(credit.request(1)).isFalse();
+    assertThat(credit.onDelivered()).isFalse();
+  }
+
+  @Test
+  public void leavesFramesOfUnknownStreamsAndOtherFramesUntouched() {
+    RequestNCoalescer coalescer = new RequestNCoalescer(1);
+    RequestNCoalescer.Credit credit = coalescer.open(1, 10);
+
+    assertThat(credit.request(3)).isTrue();
+    assertThat(credit.request(4)).isFalse();
+    coalescer.close(1, credit);
+
+    assertThat(send(coalescer, 1, 3)).isEqualTo(3);
+
+    ByteBuf cancel = CancelFrameCodec.encode(ByteBufAllocator.DEFAULT, 1);
+    coalescer.onSend(cancel);
+    assertThat(FrameHeaderCodec.frameType(cancel)).isEqualTo(FrameType.CANCEL);
+    cancel.release();
+  }
+
+  @Test
+  public void rejectsInvalidMinCreditBatch() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new RequestNCoalescer(0));
+  }
+
+  static long send(RequestNCoalescer coalescer, int streamId, long requestN) {
+    ByteBuf frame = RequestNFrameCodec.encode(ByteBufAllocator.DEFAULT, streamId, requestN);
+    try {
+      coalescer.onSend(frame);
+      return RequestNFrameCodec.requestN(frame);
+    } finally {
+      frame.release();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SendQueueWatermarksTest {
+
+  @Test
+  public void unboundedOnlyCountsBytes() {
+    SendQueueWatermarks watermarks = new SendQueueWatermarks();
+
+    watermarks.onEnqueued(Integer.MAX_VALUE);
+    watermarks.onEnqueued(Integer.MAX_VALUE);
+
+    assertThat(watermarks.queuedBytes()).isEqualTo(2L * Integer.MAX_VALUE);
+    assertThat(watermarks.isWritable()).isTrue();
+  }
+
+  @Test
+  public void followsWatermarksWithHysteresis() {
+    SendQueueWatermarks watermarks = new SendQueueWatermarks(10, 100);
+
+    watermarks.onEnqueued(100);
+    assertThat(watermarks.isWritable()).isTrue();
+
+    watermarks.onEnqueued(1);
+    assertThat(watermarks.isWritable()).isFalse();
+
+    watermarks.onDequeued(50);
+    assertThat(watermarks.isWritable()).isFalse();
+
+    watermarks.onDequeued(41);
+    assertThat(watermarks.queuedBytes()).isEqualTo(10);
+    assertThat(watermarks.isWritable()).isTrue();
+  }
+
+  @Test
+  public void runsDeferredTasksInOrderOnceWritable() {
+    SendQueueWatermarks watermarks = new SendQueueWatermarks(0, 10);
+    List<Integer> executed = new ArrayList<>();
+
+    watermarks.whenWritable(() -> executed.add(0));
+    assertThat(executed).containsExactly(0);
+
+    watermarks.onEnqueued(11);
+    watermarks.whenWritable(() -> executed.add(1));
+    watermarks.whenWritable(() -> executed.add(2));
+    assertThat(executed).containsExactly(0);
+
+    watermarks.onDequeued(11);
+    assertThat(executed).containsExactly(0, 1, 2);
+  }
+
+  @Test
+  public void stopsRunningDeferredTasksWhenFilledAgain() {
+    SendQueueWatermarks watermarks = new SendQueueWatermarks(0, 10);
+    List<Integer> executed = new ArrayList<>();
+
+    watermarks.onEnqueued(11);
+    watermarks.whenWritable(
+        () -> {
+          executed.add(1);
+          watermarks.onEnqueued(11);
+        });
+    watermarks.whenWritable(() -> executed.add(2));
+
+    watermarks.onDequeued(11);
+    assertThat(executed).containsExactly(1);
+
+    watermarks.onDequeued(11);
+    assertThat(executed).containsExactly(1, 2);
+  }
+
+  @Test
+  public void unboundedProcessorAccountsQueuedBytes() {
+    SendQueueWatermarks watermarks = new SendQueueWatermarks(0, 10);
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>(watermarks);
+
+    processor.onNext(Unpooled.wrappedBuffer(new byte[6]));
+    processor.onNextPrioritized(Unpooled.wrappedBuffer(new byte[6]));
+
+    assertThat(processor.queuedBytes()).isEqualTo(12);
+    assertThat(watermarks.isWritable()).isFalse();
+
+    ByteBuf polled = processor.poll();
+    polled.release();
+    assertThat(processor.queuedBytes()).isEqualTo(6);
+    assertThat(watermarks.isWritable()).isFalse();
+
+    processor.clear();
+    assertThat(processor.queuedBytes()).isZero();
+    assertThat(watermarks.isWritable()).isTrue();
+  }
+
+  @Test
+  public void rejectsInvalidWatermarks() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new SendQueueWatermarks(-1, 10));
+    assertThatIllegalArgumentException().isThrownBy(() -> new SendQueueWatermarks(0, 0));
+    assertThatIllegalArgumentException().isThrownBy(() -> new SendQueueWatermarks(11, 10));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.metadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.rsocket.buffer.LeaksTrackingByteBufAllocator;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+public class DeadlineMetadataCodecTest {
+
+  final LeaksTrackingByteBufAllocator allocator =
+      LeaksTrackingByteBufAllocator.instrument(ByteBufAllocator.DEFAULT);
+
+  @Test
+  public void shouldEncodeAndDecodeDeadline() {
+    ByteBuf deadline = DeadlineMetadataCodec.encode(allocator, 1500);
+
+    assertThat(DeadlineMetadataCodec.decode(deadline)).isEqualTo(1500);
+
+    deadline.release();
+    allocator.assertHasNoLeaks();
+  }
+
+  @Test
+  public void shouldFindDeadlineAfterOtherEntries() {
+    CompositeByteBuf metadata = allocator.compositeBuffer();
+    CompositeMetadataCodec.encodeAndAddMetadata(
+        metadata,
+        allocator,
+        WellKnownMimeType.MESSAGE_RSOCKET_ROUTING,
+        TaggingMetadataCodec.createTaggingContent(allocator, Collections.singletonList("route")));
+    CompositeMetadataCodec.encodeAndAddMetadata(
+        metadata, allocator, "application/x.custom", allocator.buffer().writeInt(42));
+    DeadlineMetadataCodec.encodeAndAddDeadline(metadata, allocator, 250);
+
+    int readerIndex = metadata.readerIndex();
+    assertThat(DeadlineMetadataCodec.findDeadline(metadata)).isEqualTo(250);
+    assertThat(metadata.readerIndex()).isEqualTo(readerIndex);
+
+    CompositeMetadata.Entry last = null;
+    for (CompositeMetadata.Entry entry : new CompositeMetadata(metadata, false)) {
+      last = entry;
+    }
+    assertThat(last.getMimeType()).isEqualTo(DeadlineMetadataCodec.DEADLINE_MIME_TYPE);
+
+    metadata.release();
+    allocator.assertHasNoLeaks();
+  }
+
+  @Test
+  public void shouldNotFindDeadlineInMetadataWithoutOne() {
+    CompositeByteBuf metadata = allocator.compositeBuffer();
+    CompositeMetadataCodec.encodeAndAddMetadata(
+        metadata, allocator, "application/x.custom", allocator.buffer().writeInt(42));
+
+    assertThat(DeadlineMetadataCodec.findDeadline(metadata)).isEqualTo(-1);
+    // truncated entry
+    assertThat(DeadlineMetadataCodec.findDeadline(metadata.slice(0, metadata.readableBytes() - 1)))
+        .isEqualTo(-1);
+
+    metadata.release();
+    allocator.assertHasNoLeaks();
+  }
+}
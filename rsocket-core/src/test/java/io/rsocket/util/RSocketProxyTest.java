@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.util;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.plugins.LimitRateInterceptor;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+public class RSocketProxyTest {
+
+  @Test
+  public void interceptedRSocketDelegatesRequestResponseBatch() {
+    final Payload response = DefaultPayload.create("response");
+    final RSocket source =
+        new RSocket() {
+          @Override
+          public Mono<Payload> requestResponse(Payload payload) {
+            return Mono.error(new AssertionError("requestResponse should not be used"));
+          }
+
+          @Override
+          public Flux<Tuple2<Long, Payload>> requestResponseBatch(List<Payload> payloads) {
+            return Flux.just(Tuples.of(0L, response));
+          }
+
+          @Override
+          public Flux<Tuple2<Long, Payload>> requestResponseBatch(Publisher<Payload> payloads) {
+            return Flux.just(Tuples.of(1L, response));
+          }
+        };
+    final RSocket intercepted = LimitRateInterceptor.forRequester(64).apply(source);
+
+    StepVerifier.create(
+            intercepted.requestResponseBatch(
+                Arrays.asList(EmptyPayload.INSTANCE, EmptyPayload.INSTANCE)))
+        .expectNext(Tuples.of(0L, response))
+        .verifyComplete();
+    StepVerifier.create(intercepted.requestResponseBatch(Flux.just(EmptyPayload.INSTANCE)))
+        .expectNext(Tuples.of(1L, response))
+        .verifyComplete();
+  }
+
+  @Test
+  public void interceptedRSocketDelegatesFireAndForgetMany() {
+    final RSocket source =
+        new RSocket() {
+          @Override
+          public Mono<Void> fireAndForget(Payload payload) {
+            return Mono.error(new AssertionError("fireAndForget should not be used"));
+          }
+
+          @Override
+          public Mono<Void> fireAndForgetMany(Publisher<Payload> payloads) {
+            return Flux.from(payloads).then();
+          }
+        };
+    final RSocket intercepted = LimitRateInterceptor.forRequester(64).apply(source);
+
+    StepVerifier.create(intercepted.fireAndForgetMany(Flux.just(EmptyPayload.INSTANCE)))
+        .verifyComplete();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.micrometer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.rsocket.core.ConnectionMetrics;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A consumer of {@link ConnectionMetrics} that publishes them as Micrometer meters, summed over
+ * the open connections. Register it with {@link RSocketConnector#connectionMetrics(Consumer)} or
+ * {@link RSocketServer#connectionMetrics(Consumer)}.
+ *
+ * <p>The gauges {@code rsocket.connections}, {@code rsocket.send.queue.bytes}, {@code
+ * rsocket.send.queue.unwritable}, {@code rsocket.streams.active} and {@code
+ * rsocket.reassembly.bytes} reflect the open connections. The counters {@code
+ * rsocket.request.n.coalesced}, {@code rsocket.streams.rejected} and {@code
+ * rsocket.reassembly.evictions} also include connections that have been closed. All meters are
+ * tagged with the configured tags.
+ *
+ * <p>Micrometer holds gauges weakly, so the instance must be kept referenced, which the connector
+ * or server it is registered with does.
+ *
+ * @see <a href="https://micrometer.io">Micrometer</a>
+ * @since 1.1
+ */
+public final class MicrometerConnectionMetrics implements Consumer<ConnectionMetrics> {
+
+  private final Set<ConnectionMetrics> connections = ConcurrentHashMap.newKeySet();
+
+  private long closedCoalescedRequestNFrames;
+
+  private long closedRejectedStreams;
+
+  private long closedReassemblyEvictions;
+
+  /**
+   * Creates a new {@link MicrometerConnectionMetrics} and registers its meters.
+   *
+   * @param meterRegistry the {@link MeterRegistry} to use to create {@link Meter}s.
+   * @param tags the additional tags to attach to each {@link Meter}
+   * @throws NullPointerException if {@code meterRegistry} is {@code null}
+   */
+  public MicrometerConnectionMetrics(MeterRegistry meterRegistry, Tag... tags) {
+    Objects.requireNonNull(meterRegistry, "meterRegistry must not be null");
+    Tags meterTags = Tags.of(tags);
+
+    Gauge.builder("rsocket.connections", connections, Set::size)
+        .tags(meterTags)
+        .register(meterRegistry);
+    Gauge.builder(
+            "rsocket.send.queue.bytes", this, m -> m.sum(ConnectionMetrics::sendQueueBytes))
+        .tags(meterTags)
+        .register(meterRegistry);
+    Gauge.builder(
+            "rsocket.send.queue.unwritable",
+            this,
+            m -> m.sum(metrics -> metrics.isSendQueueWritable() ? 0 : 1))
+        .tags(meterTags)
+        .register(meterRegistry);
+    Gauge.builder("rsocket.streams.active", this, m -> m.sum(ConnectionMetrics::concurrentStreams))
+        .tags(meterTags)
+        .register(meterRegistry);
+    Gauge.builder(
+            "rsocket.reassembly.bytes", this, m -> m.sum(ConnectionMetrics::reassemblyBytes))
+        .tags(meterTags)
+        .register(meterRegistry);
+
+    FunctionCounter.builder(
+            "rsocket.request.n.coalesced",
+            this,
+            MicrometerConnectionMetrics::coalescedRequestNFrames)
+        .tags(meterTags)
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            "rsocket.streams.rejected", this, MicrometerConnectionMetrics::rejectedStreams)
+        .tags(meterTags)
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            "rsocket.reassembly.evictions",
+            this,
+            MicrometerConnectionMetrics::reassemblyEvictions)
+        .tags(meterTags)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void accept(ConnectionMetrics metrics) {
+    Objects.requireNonNull(metrics, "metrics must not be null");
+
+    connections.add(metrics);
+    metrics.onClose().doFinally(signalType -> onClose(metrics)).subscribe();
+  }
+
+  private synchronized void onClose(ConnectionMetrics metrics) {
+    if (connections.remove(metrics)) {
+      closedCoalescedRequestNFrames += metrics.coalescedRequestNFrames();
+      closedRejectedStreams += metrics.rejectedStreams();
+      closedReassemblyEvictions += metrics.reassemblyEvictions();
+    }
+  }
+
+  private long sum(ToLongFunction<ConnectionMetrics> value) {
+    long sum = 0;
+    for (ConnectionMetrics metrics : connections) {
+      sum += value.applyAsLong(metrics);
+    }
+    return sum;
+  }
+
+  private synchronized double coalescedRequestNFrames() {
+    return closedCoalescedRequestNFrames + sum(ConnectionMetrics::coalescedRequestNFrames);
+  }
+
+  private synchronized double rejectedStreams() {
+    return closedRejectedStreams + sum(ConnectionMetrics::rejectedStreams);
+  }
+
+  private synchronized double reassemblyEvictions() {
+    return closedReassemblyEvictions + sum(ConnectionMetrics::reassemblyEvictions);
+  }
+}
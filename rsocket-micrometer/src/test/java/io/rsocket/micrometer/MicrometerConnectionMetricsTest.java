@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.micrometer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNullPointerException;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.rsocket.core.ConnectionMetrics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+final class MicrometerConnectionMetricsTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @DisplayName("sums the metrics of open connections")
+  @Test
+  void sumsOpenConnections() {
+    MicrometerConnectionMetrics connectionMetrics =
+        new MicrometerConnectionMetrics(meterRegistry, Tag.of("test-key", "test-value"));
+
+    TestConnectionMetrics first = new TestConnectionMetrics();
+    first.sendQueueBytes = 100;
+    first.concurrentStreams = 2;
+    first.reassemblyBytes = 1024;
+    TestConnectionMetrics second = new TestConnectionMetrics();
+    second.sendQueueBytes = 50;
+    second.sendQueueWritable = false;
+    second.concurrentStreams = 3;
+
+    connectionMetrics.accept(first);
+    connectionMetrics.accept(second);
+
+    assertThat(gauge("rsocket.connections")).isEqualTo(2);
+    assertThat(gauge("rsocket.send.queue.bytes")).isEqualTo(150);
+    assertThat(gauge("rsocket.send.queue.unwritable")).isEqualTo(1);
+    assertThat(gauge("rsocket.streams.active")).isEqualTo(5);
+    assertThat(gauge("rsocket.reassembly.bytes")).isEqualTo(1024);
+
+    second.onClose.onComplete();
+
+    assertThat(gauge("rsocket.connections")).isEqualTo(1);
+    assertThat(gauge("rsocket.send.queue.bytes")).isEqualTo(100);
+    assertThat(gauge("rsocket.send.queue.unwritable")).isEqualTo(0);
+    assertThat(gauge("rsocket.streams.active")).isEqualTo(2);
+  }
+
+  @DisplayName("keeps the counts of closed connections")
+  @Test
+  void keepsCountsOfClosedConnections() {
+    MicrometerConnectionMetrics connectionMetrics =
+        new MicrometerConnectionMetrics(meterRegistry, Tag.of("test-key", "test-value"));
+
+    TestConnectionMetrics first = new TestConnectionMetrics();
+    first.coalescedRequestNFrames = 10;
+    first.rejectedStreams = 1;
+    first.reassemblyEvictions = 2;
+    TestConnectionMetrics second = new TestConnectionMetrics();
+    second.coalescedRequestNFrames = 5;
+    second.rejectedStreams = 4;
+
+    connectionMetrics.accept(first);
+    connectionMetrics.accept(second);
+
+    first.onClose.onComplete();
+
+    assertThat(counter("rsocket.request.n.coalesced")).isEqualTo(15);
+    assertThat(counter("rsocket.streams.rejected")).isEqualTo(5);
+    assertThat(counter("rsocket.reassembly.evictions")).isEqualTo(2);
+
+    second.rejectedStreams = 6;
+    second.onClose.onComplete();
+
+    assertThat(counter("rsocket.streams.rejected")).isEqualTo(7);
+    assertThat(gauge("rsocket.connections")).isEqualTo(0);
+  }
+
+  @DisplayName("constructor throws NullPointerException with null meterRegistry")
+  @Test
+  void constructorNullMeterRegistry() {
+    assertThatNullPointerException()
+        .isThrownBy(() -> new MicrometerConnectionMetrics(null))
+        .withMessage("meterRegistry must not be null");
+  }
+
+  private double gauge(String name) {
+    return meterRegistry.get(name).tag("test-key", "test-value").gauge().value();
+  }
+
+  private double counter(String name) {
+    return meterRegistry.get(name).tag("test-key", "test-value").functionCounter().count();
+  }
+
+  private static final class TestConnectionMetrics implements ConnectionMetrics {
+
+    final MonoProcessor<Void> onClose = MonoProcessor.create();
+
+    long sendQueueBytes;
+    boolean sendQueueWritable = true;
+    long coalescedRequestNFrames;
+    int concurrentStreams;
+    long rejectedStreams;
+    long reassemblyBytes;
+    long reassemblyEvictions;
+
+    @Override
+    public Mono<Void> onClose() {
+      return onClose;
+    }
+
+    @Override
+    public long sendQueueBytes() {
+      return sendQueueBytes;
+    }
+
+    @Override
+    public boolean isSendQueueWritable() {
+      return sendQueueWritable;
+    }
+
+    @Override
+    public long coalescedRequestNFrames() {
+      return coalescedRequestNFrames;
+    }
+
+    @Override
+    public int concurrentStreams() {
+      return concurrentStreams;
+    }
+
+    @Override
+    public long rejectedStreams() {
+      return rejectedStreams;
+    }
+
+    @Override
+    public long reassemblyBytes() {
+      return reassemblyBytes;
+    }
+
+    @Override
+    public long reassemblyEvictions() {
+      return reassemblyEvictions;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package io.rsocket.transport.netty;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request-response round trip latency over TCP loopback, with requests serialized either on a
+ * dedicated single threaded scheduler or on the connection event loop.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpEventLoopAffinityPerf {
+
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(EmptyPayload.INSTANCE);
+
+  @Param({"false", "true"})
+  boolean eventLoopAffinity;
+
+  RSocket client;
+  CloseableChannel server;
+
+  @Setup
+  public void setUp() {
+    server =
+        RSocketServer.create(
+                SocketAcceptor.forRequestResponse(
+                    payload -> {
+                      payload.release();
+                      return PAYLOAD_MONO;
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .eventLoopAffinity(eventLoopAffinity)
+            .bind(TcpServerTransport.create("localhost", 0))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .eventLoopAffinity(eventLoopAffinity)
+            .connect(TcpClientTransport.create(server.address()))
+            .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  public Payload requestResponse() {
+    Payload payload = client.requestResponse(EmptyPayload.INSTANCE).block();
+    payload.release();
+    return payload;
+  }
+}
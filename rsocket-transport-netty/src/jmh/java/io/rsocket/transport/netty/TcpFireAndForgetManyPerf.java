@@ -0,0 +1,110 @@
+package io.rsocket.transport.netty;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fire-and-forget messages per second over TCP loopback, once sent with one {@link
+ * RSocket#fireAndForget(Payload)} call per message and once streamed with {@link
+ * RSocket#fireAndForgetMany(org.reactivestreams.Publisher)}. An invocation ends once the server
+ * received all messages, so the figures are not inflated by frames still sitting in the send
+ * queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpFireAndForgetManyPerf {
+
+  static final int MESSAGES = 100_000;
+
+  final AtomicLong received = new AtomicLong();
+
+  RSocket client;
+  CloseableChannel server;
+
+  @Setup
+  public void setUp() {
+    server =
+        RSocketServer.create(
+                SocketAcceptor.with(
+                    new RSocket() {
+                      @Override
+                      public Mono<Void> fireAndForget(Payload payload) {
+                        payload.release();
+                        received.incrementAndGet();
+                        return Mono.empty();
+                      }
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .bind(TcpServerTransport.create("localhost", 0))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .connect(TcpClientTransport.create(server.address()))
+            .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public void fireAndForget() {
+    final long expected = received.get() + MESSAGES;
+    payloads().flatMap(client::fireAndForget, 256).blockLast();
+    awaitReceived(expected);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public void fireAndForgetMany() {
+    final long expected = received.get() + MESSAGES;
+    client.fireAndForgetMany(payloads()).block();
+    awaitReceived(expected);
+  }
+
+  Flux<Payload> payloads() {
+    return Flux.range(0, MESSAGES).map(i -> ByteBufPayload.create("telemetry"));
+  }
+
+  void awaitReceived(long expected) {
+    while (received.get() < expected) {
+      LockSupport.parkNanos(1000);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package io.rsocket.transport.netty;
+
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request-response round trip latency over TCP loopback for 4 concurrent callers while the client
+ * uploads 8MB payloads, fragmented at 16KB, on a request-channel of the same connection. The
+ * fragments of the upload are either sent back to back ({@code maxFragmentBurst} 0) or interleaved
+ * with the requests. Compare the {@code p0.99} and {@code p0.999} percentiles of the runs.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TcpFragmentInterleavingPerf {
+
+  static final int MTU = 16 * 1024;
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(EmptyPayload.INSTANCE);
+  static final byte[] UPLOAD = new byte[8 * 1024 * 1024];
+
+  @Param({"0", "1", "8"})
+  int maxFragmentBurst;
+
+  RSocket client;
+  CloseableChannel server;
+  Disposable upload;
+
+  @Setup
+  public void setUp() {
+    RSocketServer rSocketServer =
+        RSocketServer.create(
+                SocketAcceptor.with(
+                    new RSocket() {
+                      @Override
+                      public Mono<Payload> requestResponse(Payload payload) {
+                        payload.release();
+                        return PAYLOAD_MONO;
+                      }
+
+                      @Override
+                      public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+                        // keeps a couple of upload payloads queued at the client
+                        return Flux.from(payloads)
+                            .limitRate(2)
+                            .doOnNext(Payload::release)
+                            .thenMany(Flux.empty());
+                      }
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .fragment(MTU);
+    RSocketConnector connector =
+        RSocketConnector.create().payloadDecoder(PayloadDecoder.ZERO_COPY).fragment(MTU);
+
+    if (maxFragmentBurst > 0) {
+      rSocketServer.interleaveFragments(maxFragmentBurst);
+      connector.interleaveFragments(maxFragmentBurst);
+    }
+
+    server = rSocketServer.bind(TcpServerTransport.create("localhost", 0)).block();
+    client = connector.connect(TcpClientTransport.create(server.address())).block();
+
+    upload =
+        client
+            .requestChannel(
+                Flux.<Payload>generate(
+                    sink -> sink.next(ByteBufPayload.create(Unpooled.wrappedBuffer(UPLOAD)))))
+            .subscribe(Payload::release);
+  }
+
+  @TearDown
+  public void tearDown() {
+    upload.dispose();
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  public Payload requestResponse() {
+    Payload payload = client.requestResponse(EmptyPayload.INSTANCE).block();
+    payload.release();
+    return payload;
+  }
+}
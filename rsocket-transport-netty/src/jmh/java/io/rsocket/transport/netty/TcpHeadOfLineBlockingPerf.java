@@ -0,0 +1,107 @@
+package io.rsocket.transport.netty;
+
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request-response round trip latency over TCP loopback while a bulk request-stream of 64KB
+ * payloads runs on the same connection, with outbound frames sent in FIFO order ({@code
+ * fairSchedulingQuantum} 0) or scheduled fairly across streams. Compare the {@code p0.99}
+ * percentiles of the two runs.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpHeadOfLineBlockingPerf {
+
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(EmptyPayload.INSTANCE);
+  static final byte[] BULK = new byte[64 * 1024];
+
+  @Param({"0", "16384"})
+  int fairSchedulingQuantum;
+
+  RSocket client;
+  CloseableChannel server;
+  Disposable bulkStream;
+
+  @Setup
+  public void setUp() {
+    RSocketServer rSocketServer =
+        RSocketServer.create(
+                SocketAcceptor.with(
+                    new RSocket() {
+                      @Override
+                      public Mono<Payload> requestResponse(Payload payload) {
+                        payload.release();
+                        return PAYLOAD_MONO;
+                      }
+
+                      @Override
+                      public Flux<Payload> requestStream(Payload payload) {
+                        payload.release();
+                        return Flux.<Payload>generate(
+                            sink -> sink.next(ByteBufPayload.create(Unpooled.wrappedBuffer(BULK))));
+                      }
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY);
+    RSocketConnector connector =
+        RSocketConnector.create().payloadDecoder(PayloadDecoder.ZERO_COPY);
+
+    if (fairSchedulingQuantum > 0) {
+      rSocketServer.fairStreamScheduling(fairSchedulingQuantum);
+      connector.fairStreamScheduling(fairSchedulingQuantum);
+    }
+
+    server = rSocketServer.bind(TcpServerTransport.create("localhost", 0)).block();
+    client = connector.connect(TcpClientTransport.create(server.address())).block();
+
+    // keeps about 64 bulk frames queued ahead of the request-response replies
+    bulkStream =
+        client.requestStream(EmptyPayload.INSTANCE).limitRate(64).subscribe(Payload::release);
+  }
+
+  @TearDown
+  public void tearDown() {
+    bulkStream.dispose();
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  public Payload requestResponse() {
+    Payload payload = client.requestResponse(EmptyPayload.INSTANCE).block();
+    payload.release();
+    return payload;
+  }
+}
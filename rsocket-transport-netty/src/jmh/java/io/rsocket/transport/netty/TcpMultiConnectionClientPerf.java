@@ -0,0 +1,102 @@
+package io.rsocket.transport.netty;
+
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.Payload;
+import io.rsocket.RSocketClient;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request-response throughput over TCP loopback of a client that spreads its requests over {@code
+ * connections} connections, with {@link #IN_FLIGHT} requests in flight at any time. With a single
+ * connection all framing happens on one event loop, so throughput should scale with the number of
+ * connections up to the number of cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpMultiConnectionClientPerf {
+
+  static final int REQUESTS = 10_000;
+  static final int IN_FLIGHT = 256;
+
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(EmptyPayload.INSTANCE);
+
+  @Param({"1", "2", "4", "8"})
+  int connections;
+
+  RSocketClient client;
+  CloseableChannel server;
+
+  @Setup
+  public void setUp() {
+    server =
+        RSocketServer.create(
+                SocketAcceptor.forRequestResponse(
+                    payload -> {
+                      payload.release();
+                      return PAYLOAD_MONO;
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .bind(TcpServerTransport.create("localhost", 0))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .toRSocketClient(TcpClientTransport.create(server.address()), connections);
+
+    // establish all connections before measuring
+    Flux.range(0, connections * IN_FLIGHT)
+        .flatMap(i -> client.requestResponse(Mono.fromCallable(this::payload)), IN_FLIGHT)
+        .doOnNext(ReferenceCountUtil::safeRelease)
+        .blockLast();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(REQUESTS)
+  public void requestResponse() {
+    Flux.range(0, REQUESTS)
+        .flatMap(i -> client.requestResponse(Mono.fromCallable(this::payload)), IN_FLIGHT)
+        .doOnNext(ReferenceCountUtil::safeRelease)
+        .blockLast();
+  }
+
+  Payload payload() {
+    return ByteBufPayload.create("hello");
+  }
+}
@@ -0,0 +1,107 @@
+package io.rsocket.transport.netty;
+
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.EmptyPayload;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Latency over TCP loopback of a scatter-gather fan out of {@code batchSize} request-response
+ * interactions to the same peer, once sent as a single batch with {@link
+ * RSocket#requestResponseBatch(List)} and once as a plain {@code flatMap} of {@link
+ * RSocket#requestResponse(Payload)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpRequestResponseBatchPerf {
+
+  static final Mono<Payload> PAYLOAD_MONO = Mono.just(EmptyPayload.INSTANCE);
+
+  @Param({"10", "200"})
+  int batchSize;
+
+  RSocket client;
+  CloseableChannel server;
+
+  @Setup
+  public void setUp() {
+    server =
+        RSocketServer.create(
+                SocketAcceptor.forRequestResponse(
+                    payload -> {
+                      payload.release();
+                      return PAYLOAD_MONO;
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .bind(TcpServerTransport.create("localhost", 0))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .connect(TcpClientTransport.create(server.address()))
+            .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  public Tuple2<Long, Payload> requestResponseBatch() {
+    return client
+        .requestResponseBatch(payloads())
+        .doOnNext(response -> ReferenceCountUtil.safeRelease(response.getT2()))
+        .blockLast();
+  }
+
+  @Benchmark
+  public Payload flatMapRequestResponse() {
+    return Flux.fromIterable(payloads())
+        .flatMap(client::requestResponse, batchSize)
+        .doOnNext(ReferenceCountUtil::safeRelease)
+        .blockLast();
+  }
+
+  List<Payload> payloads() {
+    final List<Payload> payloads = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      payloads.add(ByteBufPayload.create("hello"));
+    }
+    return payloads;
+  }
+}
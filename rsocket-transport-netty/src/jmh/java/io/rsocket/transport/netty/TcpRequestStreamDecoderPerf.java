@@ -0,0 +1,91 @@
+package io.rsocket.transport.netty;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.frame.decoder.PayloadDecoder;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+/**
+ * Elements per second of a request-stream of 1M elements over TCP loopback, received with each of
+ * the {@link PayloadDecoder}s. Run with the GC profiler, {@code -prof gc}, to compare the bytes
+ * allocated per element.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class TcpRequestStreamDecoderPerf {
+
+  static final int ELEMENTS = 1_000_000;
+
+  @Param({"DEFAULT", "ZERO_COPY", "POOLED"})
+  String decoder;
+
+  RSocket client;
+  CloseableChannel server;
+
+  @Setup
+  public void setUp() throws Exception {
+    final PayloadDecoder payloadDecoder =
+        (PayloadDecoder) PayloadDecoder.class.getField(decoder).get(null);
+
+    server =
+        RSocketServer.create(
+                SocketAcceptor.forRequestStream(
+                    payload -> {
+                      payload.release();
+                      return Flux.range(0, ELEMENTS)
+                          .map(i -> ByteBufPayload.create("element", "metadata"));
+                    }))
+            .payloadDecoder(PayloadDecoder.ZERO_COPY)
+            .bind(TcpServerTransport.create("localhost", 0))
+            .block();
+
+    client =
+        RSocketConnector.create()
+            .payloadDecoder(payloadDecoder)
+            .connect(TcpClientTransport.create(server.address()))
+            .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public long requestStream() {
+    return client
+        .requestStream(ByteBufPayload.create("stream"))
+        .doOnNext(Payload::release)
+        .count()
+        .block();
+  }
+}
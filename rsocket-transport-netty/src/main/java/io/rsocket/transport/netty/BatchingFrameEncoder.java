@@ -0,0 +1,444 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.transport.netty;
+
+import static io.rsocket.frame.FrameLengthCodec.FRAME_LENGTH_SIZE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.frame.FrameLengthCodec;
+import io.rsocket.internal.FileRegionByteBuf;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Exceptions;
+import reactor.core.Fuseable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+import reactor.util.context.Context;
+
+/**
+ * Length-prefixes outbound frames and coalesces all frames that are available at the time of a
+ * drain into a single {@link CompositeByteBuf}, so that the transport issues one gathering write
+ * and one flush per drain cycle instead of one per frame.
+ *
+ * <p>If the source is an {@link io.rsocket.internal.UnboundedProcessor UnboundedProcessor}, or any
+ * other {@link Fuseable} source, its queue is drained directly. A batch is closed once it holds
+ * {@code maxBatchFrames} frames or at least {@code maxBatchBytes} bytes; frames are never split so
+ * a single large frame may exceed {@code maxBatchBytes}.
+ *
+ * <p>Frames whose data is a file region, i.e. {@link FileRegionByteBuf}s, are emitted on their own
+ * so that their file bytes are not pulled into the batch.
+ *
+ * <p>Frames encoded with their length in front of them, see {@link
+ * io.rsocket.frame.LengthHeadroomAllocator}, take a single component of the batch.
+ */
+final class BatchingFrameEncoder extends Flux<ByteBuf> {
+
+  /** Upper bound for the number of length prefixes allocated in a single buffer. */
+  static final int MAX_LENGTHS_PER_BUFFER = 64;
+
+  final Publisher<? extends ByteBuf> source;
+  final ByteBufAllocator allocator;
+  final int maxBatchFrames;
+  final int maxBatchBytes;
+
+  BatchingFrameEncoder(
+      Publisher<? extends ByteBuf> source,
+      ByteBufAllocator allocator,
+      int maxBatchFrames,
+      int maxBatchBytes) {
+    this.source = source;
+    this.allocator = allocator;
+    this.maxBatchFrames = maxBatchFrames;
+    this.maxBatchBytes = maxBatchBytes;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super ByteBuf> actual) {
+    source.subscribe(new BatchingSubscriber(actual, allocator, maxBatchFrames, maxBatchBytes));
+  }
+
+  static final class BatchingSubscriber implements CoreSubscriber<ByteBuf>, Subscription {
+
+    final CoreSubscriber<? super ByteBuf> actual;
+    final ByteBufAllocator allocator;
+    final int maxBatchFrames;
+    final int maxBatchBytes;
+    final int prefetch;
+    final int limit;
+
+    Subscription s;
+    Queue<ByteBuf> queue;
+    int sourceMode;
+    int consumed;
+
+    /** A file region frame polled while filling a batch, emitted as the next batch. */
+    @Nullable ByteBuf pendingFrame;
+
+    volatile boolean done;
+    Throwable error;
+
+    volatile boolean cancelled;
+
+    volatile int wip;
+    static final AtomicIntegerFieldUpdater<BatchingSubscriber> WIP =
+        AtomicIntegerFieldUpdater.newUpdater(BatchingSubscriber.class, "wip");
+
+    volatile long requested;
+    static final AtomicLongFieldUpdater<BatchingSubscriber> REQUESTED =
+        AtomicLongFieldUpdater.newUpdater(BatchingSubscriber.class, "requested");
+
+    BatchingSubscriber(
+        CoreSubscriber<? super ByteBuf> actual,
+        ByteBufAllocator allocator,
+        int maxBatchFrames,
+        int maxBatchBytes) {
+      this.actual = actual;
+      this.allocator = allocator;
+      this.maxBatchFrames = maxBatchFrames;
+      this.maxBatchBytes = maxBatchBytes;
+      this.prefetch = Queues.SMALL_BUFFER_SIZE;
+      this.limit = Operators.unboundedOrLimit(prefetch);
+    }
+
+    @Override
+    public Context currentContext() {
+      return actual.currentContext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onSubscribe(Subscription s) {
+      if (Operators.validate(this.s, s)) {
+        this.s = s;
+
+        if (s instanceof Fuseable.QueueSubscription) {
+          Fuseable.QueueSubscription<ByteBuf> qs = (Fuseable.QueueSubscription<ByteBuf>) s;
+
+          int m = qs.requestFusion(Fuseable.ANY);
+
+          if (m == Fuseable.SYNC) {
+            sourceMode = m;
+            queue = qs;
+            done = true;
+
+            actual.onSubscribe(this);
+            return;
+          }
+
+          if (m == Fuseable.ASYNC) {
+            sourceMode = m;
+            queue = qs;
+
+            actual.onSubscribe(this);
+
+            s.request(prefetch);
+            return;
+          }
+        }
+
+        queue = Queues.<ByteBuf>get(prefetch).get();
+
+        actual.onSubscribe(this);
+
+        s.request(prefetch);
+      }
+    }
+
+    @Override
+    public void onNext(ByteBuf frame) {
+      if (sourceMode == Fuseable.ASYNC) {
+        drain();
+        return;
+      }
+
+      if (done) {
+        ReferenceCountUtil.safeRelease(frame);
+        Operators.onNextDropped(frame, actual.currentContext());
+        return;
+      }
+
+      if (!queue.offer(frame)) {
+        ReferenceCountUtil.safeRelease(frame);
+        error =
+            Operators.onOperatorError(
+                s,
+                Exceptions.failWithOverflow(Exceptions.BACKPRESSURE_ERROR_QUEUE_FULL),
+                frame,
+                actual.currentContext());
+        done = true;
+      }
+
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (done) {
+        Operators.onErrorDropped(t, actual.currentContext());
+        return;
+      }
+
+      error = t;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (Operators.validate(n)) {
+        Operators.addCap(REQUESTED, this, n);
+        drain();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (cancelled) {
+        return;
+      }
+
+      cancelled = true;
+      s.cancel();
+
+      if (WIP.getAndIncrement(this) == 0) {
+        clear(queue);
+      }
+    }
+
+    void drain() {
+      if (WIP.getAndIncrement(this) != 0) {
+        return;
+      }
+
+      final CoreSubscriber<? super ByteBuf> a = actual;
+      final Queue<ByteBuf> q = queue;
+      int missed = 1;
+
+      for (; ; ) {
+        long r = requested;
+        long e = 0L;
+
+        while (e != r) {
+          boolean d = done;
+          ByteBuf batch;
+
+          try {
+            batch = pollBatch(q);
+          } catch (Throwable t) {
+            Exceptions.throwIfFatal(t);
+            s.cancel();
+            clear(q);
+            a.onError(Operators.onOperatorError(t, a.currentContext()));
+            return;
+          }
+
+          boolean empty = batch == null;
+
+          if (checkTerminated(d, empty, a, q)) {
+            if (batch != null) {
+              batch.release();
+            }
+            return;
+          }
+
+          if (empty) {
+            break;
+          }
+
+          a.onNext(batch);
+
+          e++;
+        }
+
+        if (e == r && checkTerminated(done, isEmpty(q), a, q)) {
+          return;
+        }
+
+        if (e != 0L && r != Long.MAX_VALUE) {
+          REQUESTED.addAndGet(this, -e);
+        }
+
+        missed = WIP.addAndGet(this, -missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    /**
+     * Polls frames until the queue is empty or one of the batch limits is reached and returns them
+     * as a single buffer of length-prefixed frames, or {@code null} if the queue is empty.
+     */
+    @Nullable
+    ByteBuf pollBatch(Queue<ByteBuf> q) {
+      ByteBuf frame = pendingFrame;
+      if (frame != null) {
+        pendingFrame = null;
+      } else {
+        frame = q.poll();
+        if (frame == null) {
+          return null;
+        }
+        consumed();
+      }
+
+      if (frame instanceof FileRegionByteBuf) {
+        return encodeFileRegion((FileRegionByteBuf) frame);
+      }
+
+      final ByteBufAllocator allocator = this.allocator;
+      final int maxBatchFrames = this.maxBatchFrames;
+      final int maxBatchBytes = this.maxBatchBytes;
+
+      CompositeByteBuf batch = allocator.compositeBuffer(maxBatchFrames << 1);
+      ByteBuf lengths = null;
+      int frames = 0;
+      int bytes = 0;
+
+      try {
+        for (; ; ) {
+          int length = frame.readableBytes();
+          ByteBuf prefixed = FrameLengthCodec.prefixed(frame);
+          if (prefixed != null) {
+            frame = null;
+            batch.addComponent(true, prefixed);
+          } else {
+            if (lengths == null || lengths.writableBytes() < FRAME_LENGTH_SIZE) {
+              if (lengths != null) {
+                lengths.release();
+              }
+              int remaining = Math.min(maxBatchFrames - frames, MAX_LENGTHS_PER_BUFFER);
+              lengths = allocator.buffer(remaining * FRAME_LENGTH_SIZE);
+            }
+
+            int index = lengths.writerIndex();
+            FrameLengthCodec.encodeLength(lengths, length);
+
+            batch.addComponent(true, lengths.retainedSlice(index, FRAME_LENGTH_SIZE));
+            batch.addComponent(true, frame);
+            frame = null;
+          }
+
+          bytes += FRAME_LENGTH_SIZE + length;
+          if (++frames >= maxBatchFrames || bytes >= maxBatchBytes) {
+            break;
+          }
+
+          frame = q.poll();
+          if (frame == null) {
+            break;
+          }
+          consumed();
+
+          if (frame instanceof FileRegionByteBuf) {
+            pendingFrame = frame;
+            frame = null;
+            break;
+          }
+        }
+      } catch (Throwable t) {
+        if (frame != null) {
+          ReferenceCountUtil.safeRelease(frame);
+        }
+        batch.release();
+        throw t;
+      } finally {
+        if (lengths != null) {
+          lengths.release();
+        }
+      }
+
+      return batch;
+    }
+
+    ByteBuf encodeFileRegion(FileRegionByteBuf frame) {
+      ByteBuf length = allocator.buffer(FRAME_LENGTH_SIZE);
+      FrameLengthCodec.encodeLength(length, frame.readableBytes());
+      return frame.prepend(allocator, length);
+    }
+
+    boolean isEmpty(Queue<ByteBuf> q) {
+      return pendingFrame == null && q.isEmpty();
+    }
+
+    /** Replenishes the upstream demand, unless the source is synchronously fused. */
+    void consumed() {
+      if (sourceMode != Fuseable.SYNC && ++consumed == limit) {
+        consumed = 0;
+        s.request(limit);
+      }
+    }
+
+    boolean checkTerminated(
+        boolean d, boolean empty, CoreSubscriber<? super ByteBuf> a, Queue<ByteBuf> q) {
+      if (cancelled) {
+        clear(q);
+        return true;
+      }
+
+      if (d && empty) {
+        Throwable e = error;
+        if (e != null) {
+          a.onError(e);
+        } else {
+          a.onComplete();
+        }
+        return true;
+      }
+
+      return false;
+    }
+
+    void clear(Queue<ByteBuf> q) {
+      final ByteBuf pendingFrame = this.pendingFrame;
+      if (pendingFrame != null) {
+        this.pendingFrame = null;
+        ReferenceCountUtil.safeRelease(pendingFrame);
+      }
+
+      if (sourceMode == Fuseable.ASYNC) {
+        // the fused source owns its queue and releases what is left on clear
+        q.clear();
+        return;
+      }
+
+      ByteBuf frame;
+      while ((frame = q.poll()) != null) {
+        ReferenceCountUtil.safeRelease(frame);
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.ssl.SslHandler;
+import io.rsocket.internal.FileRegionByteBuf;
+import java.util.List;
+
+/**
+ * Writes frames that are {@link FileRegionByteBuf}s as their in-memory header followed by a {@link
+ * FileRegion}, so that the file bytes go to the socket through {@code sendfile} instead of being
+ * copied through user space. Frames are passed on unchanged if the channel is encrypted, since TLS
+ * needs the bytes in memory.
+ */
+@ChannelHandler.Sharable
+final class FileRegionFrameEncoder extends MessageToMessageEncoder<FileRegionByteBuf> {
+
+  static final FileRegionFrameEncoder INSTANCE = new FileRegionFrameEncoder();
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, FileRegionByteBuf frame, List<Object> out) {
+    final int regionLength = frame.readableRegionLength();
+    if (regionLength == 0 || ctx.pipeline().get(SslHandler.class) != null) {
+      out.add(frame.retain());
+      return;
+    }
+
+    final ByteBuf header = frame.retainedReadableHeader();
+    if (header != null) {
+      out.add(header);
+    }
+    out.add(new FrameFileRegion(frame.retain(), regionLength));
+  }
+
+  /**
+   * {@link DefaultFileRegion}, so that native transports use {@code sendfile}, that leaves the
+   * channel open on release since it is owned by the frame.
+   */
+  static final class FrameFileRegion extends DefaultFileRegion {
+
+    final FileRegionByteBuf frame;
+
+    FrameFileRegion(FileRegionByteBuf frame, int regionLength) {
+      super(frame.channel(), frame.readableRegionPosition(), regionLength);
+      this.frame = frame;
+    }
+
+    @Override
+    protected void deallocate() {
+      frame.release();
+    }
+  }
+}
@@ -18,20 +18,28 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.EventExecutor;
 import io.rsocket.DuplexConnection;
 import io.rsocket.frame.FrameLengthCodec;
+import io.rsocket.frame.LengthHeadroomAllocator;
 import io.rsocket.internal.BaseDuplexConnection;
+import io.rsocket.internal.FileRegionByteBuf;
+import io.rsocket.transport.EventLoopAware;
 import java.util.Objects;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.Connection;
+import reactor.util.annotation.Nullable;
 
 /** An implementation of {@link DuplexConnection} that connects via TCP. */
-public final class TcpDuplexConnection extends BaseDuplexConnection {
+public final class TcpDuplexConnection extends BaseDuplexConnection implements EventLoopAware {
 
   private final Connection connection;
   private final boolean encodeLength;
+  private final int maxBatchFrames;
+  private final int maxBatchBytes;
+  @Nullable private final LengthHeadroomAllocator headroomAllocator;
 
   /**
    * Creates a new instance
@@ -39,7 +47,52 @@ public final class TcpDuplexConnection extends BaseDuplexConnection {
    * @param connection the {@link Connection} for managing the server
    */
   public TcpDuplexConnection(Connection connection) {
-    this(connection, true);
+    this(connection, true, 0, 0, -1);
+  }
+
+  /**
+   * Creates a new instance that coalesces outbound frames. All frames available when the outbound
+   * queue is drained are written as a single batch and flushed together, until either of the given
+   * limits is reached.
+   *
+   * @param connection the {@link Connection} for managing the server
+   * @param maxBatchFrames the maximum number of frames written in one batch
+   * @param maxBatchBytes the number of bytes after which a batch is closed. Frames are never split,
+   *     so a batch holding a single large frame may exceed this limit.
+   * @throws IllegalArgumentException if either limit is not positive
+   * @since 1.1
+   */
+  public TcpDuplexConnection(Connection connection, int maxBatchFrames, int maxBatchBytes) {
+    this(
+        connection,
+        true,
+        assertMaxBatchFrames(maxBatchFrames),
+        assertMaxBatchBytes(maxBatchBytes),
+        -1);
+  }
+
+  /**
+   * Creates a new instance whose frames are encoded with their length in front of them, see {@link
+   * LengthHeadroomAllocator}, so that the length prefix does not need a buffer of its own.
+   *
+   * @param connection the {@link Connection} for managing the server
+   * @param maxBatchFrames the maximum number of frames written in one batch, or {@code 0} together
+   *     with {@code maxBatchBytes} to write frames one at a time
+   * @param maxBatchBytes the number of bytes after which a batch is closed, or {@code 0}
+   * @param copyThreshold the maximum number of metadata and data bytes copied behind the frame
+   *     header
+   * @throws IllegalArgumentException if the batch limits are neither both {@code 0} nor both
+   *     positive, or if the copy threshold is negative
+   * @since 1.1
+   */
+  public TcpDuplexConnection(
+      Connection connection, int maxBatchFrames, int maxBatchBytes, int copyThreshold) {
+    this(
+        connection,
+        true,
+        maxBatchFrames == 0 && maxBatchBytes == 0 ? 0 : assertMaxBatchFrames(maxBatchFrames),
+        maxBatchFrames == 0 && maxBatchBytes == 0 ? 0 : assertMaxBatchBytes(maxBatchBytes),
+        LengthHeadroomAllocator.assertCopyThreshold(copyThreshold));
   }
 
   /**
@@ -52,8 +105,26 @@ public TcpDuplexConnection(Connection connection) {
    */
   @Deprecated
   public TcpDuplexConnection(Connection connection, boolean encodeLength) {
+    this(connection, encodeLength, 0, 0, -1);
+  }
+
+  private TcpDuplexConnection(
+      Connection connection,
+      boolean encodeLength,
+      int maxBatchFrames,
+      int maxBatchBytes,
+      int copyThreshold) {
     this.encodeLength = encodeLength;
+    this.maxBatchFrames = maxBatchFrames;
+    this.maxBatchBytes = maxBatchBytes;
     this.connection = Objects.requireNonNull(connection, "connection must not be null");
+    this.headroomAllocator =
+        copyThreshold >= 0
+            ? new LengthHeadroomAllocator(connection.channel().alloc(), copyThreshold)
+            : null;
+
+    // sends the data of file region frames with sendfile
+    connection.addHandlerLast(FileRegionFrameEncoder.INSTANCE);
 
     connection
         .channel()
@@ -64,9 +135,35 @@ public TcpDuplexConnection(Connection connection, boolean encodeLength) {
             });
   }
 
+  public static int assertMaxBatchFrames(int maxBatchFrames) {
+    if (maxBatchFrames <= 0) {
+      String msg =
+          String.format("The maxBatchFrames must be greater than 0, provided: %d", maxBatchFrames);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return maxBatchFrames;
+    }
+  }
+
+  public static int assertMaxBatchBytes(int maxBatchBytes) {
+    if (maxBatchBytes <= 0) {
+      String msg =
+          String.format("The maxBatchBytes must be greater than 0, provided: %d", maxBatchBytes);
+      throw new IllegalArgumentException(msg);
+    } else {
+      return maxBatchBytes;
+    }
+  }
+
   @Override
   public ByteBufAllocator alloc() {
-    return connection.channel().alloc();
+    final LengthHeadroomAllocator headroomAllocator = this.headroomAllocator;
+    return headroomAllocator != null ? headroomAllocator : connection.channel().alloc();
+  }
+
+  @Override
+  public EventExecutor eventLoop() {
+    return connection.channel().eventLoop();
   }
 
   @Override
@@ -86,11 +183,23 @@ public Mono<Void> send(Publisher<ByteBuf> frames) {
     if (frames instanceof Mono) {
       return connection.outbound().sendObject(((Mono<ByteBuf>) frames).map(this::encode)).then();
     }
+    if (maxBatchFrames > 0) {
+      return connection
+          .outbound()
+          .send(new BatchingFrameEncoder(frames, alloc(), maxBatchFrames, maxBatchBytes))
+          .then();
+    }
     return connection.outbound().send(Flux.from(frames).map(this::encode)).then();
   }
 
   private ByteBuf encode(ByteBuf frame) {
     if (encodeLength) {
+      if (frame instanceof FileRegionByteBuf) {
+        // keeps the frame type so that FileRegionFrameEncoder can pick it up
+        ByteBuf length = alloc().buffer(FrameLengthCodec.FRAME_LENGTH_SIZE);
+        FrameLengthCodec.encodeLength(length, frame.readableBytes());
+        return ((FileRegionByteBuf) frame).prepend(alloc(), length);
+      }
       return FrameLengthCodec.encode(alloc(), frame.readableBytes(), frame);
     } else {
       return frame;
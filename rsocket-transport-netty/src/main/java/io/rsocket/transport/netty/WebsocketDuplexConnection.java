@@ -18,8 +18,10 @@
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.concurrent.EventExecutor;
 import io.rsocket.DuplexConnection;
 import io.rsocket.internal.BaseDuplexConnection;
+import io.rsocket.transport.EventLoopAware;
 import java.util.Objects;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
@@ -33,7 +35,8 @@
  * for message oriented transports so this must be specifically dropped from Frames sent and
  * stitched back on for frames received.
  */
-public final class WebsocketDuplexConnection extends BaseDuplexConnection {
+public final class WebsocketDuplexConnection extends BaseDuplexConnection
+    implements EventLoopAware {
 
   private final Connection connection;
 
@@ -59,6 +62,11 @@ public ByteBufAllocator alloc() {
     return connection.channel().alloc();
   }
 
+  @Override
+  public EventExecutor eventLoop() {
+    return connection.channel().eventLoop();
+  }
+
   @Override
   protected void doOnClose() {
     if (!connection.isDisposed()) {
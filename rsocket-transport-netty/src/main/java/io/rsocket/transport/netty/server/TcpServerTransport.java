@@ -18,6 +18,7 @@
 
 import static io.rsocket.frame.FrameLengthCodec.FRAME_LENGTH_MASK;
 
+import io.rsocket.frame.LengthHeadroomAllocator;
 import io.rsocket.transport.ClientTransport;
 import io.rsocket.transport.ServerTransport;
 import io.rsocket.transport.netty.RSocketLengthCodec;
@@ -25,6 +26,7 @@
 import java.net.InetSocketAddress;
 import java.util.Objects;
 import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
 import reactor.netty.tcp.TcpServer;
 
 /**
@@ -34,10 +36,25 @@ public final class TcpServerTransport implements ServerTransport<CloseableChanne
 
   private final TcpServer server;
   private final int maxFrameLength;
+  private final int maxBatchFrames;
+  private final int maxBatchBytes;
+  private final int copyThreshold;
 
   private TcpServerTransport(TcpServer server, int maxFrameLength) {
+    this(server, maxFrameLength, 0, 0, -1);
+  }
+
+  private TcpServerTransport(
+      TcpServer server,
+      int maxFrameLength,
+      int maxBatchFrames,
+      int maxBatchBytes,
+      int copyThreshold) {
     this.server = server;
     this.maxFrameLength = maxFrameLength;
+    this.maxBatchFrames = maxBatchFrames;
+    this.maxBatchBytes = maxBatchBytes;
+    this.copyThreshold = copyThreshold;
   }
 
   /**
@@ -101,6 +118,46 @@ public static TcpServerTransport create(TcpServer server, int maxFrameLength) {
     return new TcpServerTransport(server, maxFrameLength);
   }
 
+  /**
+   * Enables outbound write coalescing. Frames that are queued for sending at the same time are
+   * written to the channel as a single batch and flushed once, which reduces the number of flushes
+   * and syscalls for workloads with many small frames. Disabled by default.
+   *
+   * @param maxBatchFrames the maximum number of frames written in one batch
+   * @param maxBatchBytes the number of bytes after which a batch is closed
+   * @return a new instance with write coalescing enabled
+   * @throws IllegalArgumentException if either limit is not positive
+   * @since 1.1
+   */
+  public TcpServerTransport writeBatching(int maxBatchFrames, int maxBatchBytes) {
+    return new TcpServerTransport(
+        server,
+        maxFrameLength,
+        TcpDuplexConnection.assertMaxBatchFrames(maxBatchFrames),
+        TcpDuplexConnection.assertMaxBatchBytes(maxBatchBytes),
+        copyThreshold);
+  }
+
+  /**
+   * Enables encoding frames with headroom for their length prefix, see {@link
+   * LengthHeadroomAllocator}. Frames are then written as slices of the buffers they were encoded
+   * into rather than as composites of a length prefix and the frame. Disabled by default.
+   *
+   * @param copyThreshold the maximum number of metadata and data bytes copied behind the frame
+   *     header, larger payloads are sent as composites of header, metadata and data
+   * @return a new instance with length headroom enabled
+   * @throws IllegalArgumentException if the copy threshold is negative
+   * @since 1.1
+   */
+  public TcpServerTransport lengthHeadroom(int copyThreshold) {
+    return new TcpServerTransport(
+        server,
+        maxFrameLength,
+        maxBatchFrames,
+        maxBatchBytes,
+        LengthHeadroomAllocator.assertCopyThreshold(copyThreshold));
+  }
+
   @Override
   public int maxFrameLength() {
     return maxFrameLength;
@@ -114,11 +171,21 @@ public Mono<CloseableChannel> start(ConnectionAcceptor acceptor) {
             c -> {
               c.addHandlerLast(new RSocketLengthCodec(maxFrameLength));
               acceptor
-                  .apply(new TcpDuplexConnection(c))
+                  .apply(newConnection(c))
                   .then(Mono.<Void>never())
                   .subscribe(c.disposeSubscriber());
             })
         .bind()
         .map(CloseableChannel::new);
   }
+
+  private TcpDuplexConnection newConnection(Connection connection) {
+    if (copyThreshold >= 0) {
+      return new TcpDuplexConnection(connection, maxBatchFrames, maxBatchBytes, copyThreshold);
+    }
+    if (maxBatchFrames > 0) {
+      return new TcpDuplexConnection(connection, maxBatchFrames, maxBatchBytes);
+    }
+    return new TcpDuplexConnection(connection);
+  }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.transport.netty;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.frame.FrameLengthCodec;
+import io.rsocket.internal.FileRegionByteBuf;
+import io.rsocket.internal.UnboundedProcessor;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class BatchingFrameEncoderTest {
+
+  @Test
+  void coalescesAllAvailableFramesIntoOneBatch() {
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>();
+    List<ByteBuf> frames = frames(5, 8);
+    frames.forEach(processor::onNext);
+    processor.onComplete();
+
+    new BatchingFrameEncoder(processor, ByteBufAllocator.DEFAULT, 64, 64 * 1024)
+        .as(StepVerifier::create)
+        .assertNext(batch -> assertBatch(batch, frames))
+        .verifyComplete();
+
+    assertReleased(frames);
+  }
+
+  @Test
+  void splitsBatchesAtMaxBatchFrames() {
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>();
+    List<ByteBuf> frames = frames(5, 8);
+    frames.forEach(processor::onNext);
+    processor.onComplete();
+
+    new BatchingFrameEncoder(processor, ByteBufAllocator.DEFAULT, 2, 64 * 1024)
+        .as(StepVerifier::create)
+        .assertNext(batch -> assertBatch(batch, frames.subList(0, 2)))
+        .assertNext(batch -> assertBatch(batch, frames.subList(2, 4)))
+        .assertNext(batch -> assertBatch(batch, frames.subList(4, 5)))
+        .verifyComplete();
+
+    assertReleased(frames);
+  }
+
+  @Test
+  void splitsBatchesAtMaxBatchBytes() {
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>();
+    List<ByteBuf> frames = frames(4, 100);
+    frames.forEach(processor::onNext);
+    processor.onComplete();
+
+    new BatchingFrameEncoder(processor, ByteBufAllocator.DEFAULT, 64, 150)
+        .as(StepVerifier::create)
+        .assertNext(batch -> assertBatch(batch, frames.subList(0, 2)))
+        .assertNext(batch -> assertBatch(batch, frames.subList(2, 4)))
+        .verifyComplete();
+
+    assertReleased(frames);
+  }
+
+  @Test
+  void batchesNonFuseableSource() {
+    List<ByteBuf> frames = frames(3, 8);
+
+    new BatchingFrameEncoder(
+            Flux.fromIterable(frames).hide(), ByteBufAllocator.DEFAULT, 64, 64 * 1024)
+        .as(StepVerifier::create)
+        .thenConsumeWhile(
+            batch -> {
+              batch.release();
+              return true;
+            })
+        .verifyComplete();
+
+    assertReleased(frames);
+  }
+
+  @Test
+  void releasesQueuedFramesOnCancel() {
+    UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>();
+    List<ByteBuf> frames = frames(5, 8);
+    frames.forEach(processor::onNext);
+
+    new BatchingFrameEncoder(processor, ByteBufAllocator.DEFAULT, 64, 64 * 1024)
+        .as(publisher -> StepVerifier.create(publisher, 0))
+        .thenCancel()
+        .verify();
+
+    assertReleased(frames);
+  }
+
+  @Test
+  void emitsFileRegionFrameAsBatchOfItsOwn(@TempDir Path dir) throws IOException {
+    Path file = Files.write(dir.resolve("content.txt"), "0123456789".getBytes(UTF_8));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      UnboundedProcessor<ByteBuf> processor = new UnboundedProcessor<>();
+      List<ByteBuf> frames = frames(2, 8);
+      ByteBuf fileFrame =
+          new FileRegionByteBuf(Unpooled.copiedBuffer("header", UTF_8), channel, 0, 10, null);
+      processor.onNext(frames.get(0));
+      processor.onNext(fileFrame);
+      processor.onNext(frames.get(1));
+      processor.onComplete();
+
+      new BatchingFrameEncoder(processor, ByteBufAllocator.DEFAULT, 64, 64 * 1024)
+          .as(StepVerifier::create)
+          .assertNext(batch -> assertBatch(batch, frames.subList(0, 1)))
+          .assertNext(
+              batch -> {
+                assertThat(batch).isInstanceOf(FileRegionByteBuf.class);
+                assertThat(FrameLengthCodec.length(batch)).isEqualTo(16);
+                assertThat(batch.skipBytes(FrameLengthCodec.FRAME_LENGTH_SIZE).toString(UTF_8))
+                    .isEqualTo("header0123456789");
+                batch.release();
+              })
+          .assertNext(batch -> assertBatch(batch, frames.subList(1, 2)))
+          .verifyComplete();
+
+      assertReleased(frames);
+      assertThat(fileFrame.refCnt()).isZero();
+    }
+  }
+
+  static List<ByteBuf> frames(int count, int size) {
+    List<ByteBuf> frames = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      ByteBuf frame = Unpooled.buffer(size);
+      for (int j = 0; j < size; j++) {
+        frame.writeByte('a' + i);
+      }
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  static void assertBatch(ByteBuf batch, List<ByteBuf> expectedFrames) {
+    try {
+      for (ByteBuf expected : expectedFrames) {
+        int length = FrameLengthCodec.length(batch);
+        assertThat(length).isEqualTo(expected.readableBytes());
+        batch.skipBytes(FrameLengthCodec.FRAME_LENGTH_SIZE);
+
+        ByteBuf frame = batch.readSlice(length);
+        assertThat(frame.toString(StandardCharsets.UTF_8))
+            .isEqualTo(expected.toString(StandardCharsets.UTF_8));
+      }
+      assertThat(batch.isReadable()).isFalse();
+    } finally {
+      batch.release();
+    }
+  }
+
+  static void assertReleased(List<ByteBuf> frames) {
+    assertThat(frames).allMatch(frame -> frame.refCnt() == 0, "frame is released");
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.rsocket.transport.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.rsocket.internal.FileRegionByteBuf;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileRegionFrameEncoderTest {
+
+  @TempDir Path dir;
+
+  FileChannel channel;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Path file = Files.write(dir.resolve("content.txt"), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    channel.close();
+  }
+
+  @Test
+  void writesHeaderFollowedByFileRegion() {
+    EmbeddedChannel embedded = new EmbeddedChannel(FileRegionFrameEncoder.INSTANCE);
+    FileRegionByteBuf frame = frame("header", 2, 6);
+
+    embedded.writeOutbound(frame);
+
+    ByteBuf header = embedded.readOutbound();
+    assertThat(header.toString(StandardCharsets.US_ASCII)).isEqualTo("header");
+    header.release();
+
+    DefaultFileRegion region = embedded.readOutbound();
+    assertThat(region.position()).isEqualTo(2);
+    assertThat(region.count()).isEqualTo(6);
+    assertThat(frame.refCnt()).isOne();
+
+    region.release();
+    assertThat(frame.refCnt()).isZero();
+    assertThat(channel.isOpen()).isTrue();
+    assertThat((Object) embedded.readOutbound()).isNull();
+  }
+
+  @Test
+  void passesOnFrameWithoutFileRegion() {
+    EmbeddedChannel embedded = new EmbeddedChannel(FileRegionFrameEncoder.INSTANCE);
+    FileRegionByteBuf frame = frame("header", 0, 0);
+
+    embedded.writeOutbound(frame);
+
+    ByteBuf written = embedded.readOutbound();
+    assertThat(written).isSameAs(frame);
+    assertThat(written.toString(StandardCharsets.US_ASCII)).isEqualTo("header");
+    written.release();
+    assertThat(frame.refCnt()).isZero();
+  }
+
+  FileRegionByteBuf frame(String header, long position, int length) {
+    return new FileRegionByteBuf(
+        Unpooled.copiedBuffer(header, StandardCharsets.US_ASCII), channel, position, length, null);
+  }
+}